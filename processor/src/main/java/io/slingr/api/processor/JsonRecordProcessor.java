@@ -0,0 +1,354 @@
+package io.slingr.api.processor;
+
+import io.slingr.api.common.Json;
+import io.slingr.api.common.JsonField;
+import io.slingr.api.common.JsonParameter;
+import io.slingr.api.common.JsonRecord;
+import org.apache.commons.lang.StringUtils;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * <p>Annotation processor that generates code for the interfaces annotated with {@link JsonRecord}.
+ * For each interface it generates:
+ * <ul>
+ * <li>an enum implementing {@link JsonParameter} with one constant per field</li>
+ * <li>a class implementing the interface over a {@link Json}, with accessors that call directly the
+ * typed getters of the Json (so there is no type dispatch like in {@link Json#get(JsonParameter)}),
+ * fluent setters and helpers to wrap single records and lists</li>
+ * </ul>
+ * <p/>
+ * <p>It is in its own artifact, <code>app-java-sdk-processor</code>, that is registered as a service, so the
+ * compiler runs it in the projects that have it in the processor path. The SDK jar does not include it.
+ */
+@SupportedAnnotationTypes("io.slingr.api.common.JsonRecord")
+public class JsonRecordProcessor extends AbstractProcessor {
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(JsonRecord.class)) {
+            if (element.getKind() != ElementKind.INTERFACE) {
+                error(element, "@JsonRecord can only be used in interfaces");
+                continue;
+            }
+            try {
+                generate((TypeElement) element);
+            } catch (IllegalArgumentException e) {
+                error(element, e.getMessage());
+            } catch (IOException e) {
+                error(element, String.format("Could not generate code [%s]", e.getMessage()));
+            }
+        }
+        return true;
+    }
+
+    private void generate(TypeElement type) throws IOException {
+        final String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        final String baseName = StringUtils.isNotBlank(type.getAnnotation(JsonRecord.class).value())
+                ? type.getAnnotation(JsonRecord.class).value() : type.getSimpleName().toString();
+
+        final List<Field> fields = new ArrayList<>();
+        for (Element member : processingEnv.getElementUtils().getAllMembers(type)) {
+            if (member.getKind() != ElementKind.METHOD || member.getModifiers().contains(Modifier.DEFAULT)
+                    || member.getModifiers().contains(Modifier.STATIC) || !member.getModifiers().contains(Modifier.ABSTRACT)) {
+                continue;
+            }
+            final ExecutableElement method = (ExecutableElement) member;
+            if (!method.getParameters().isEmpty()) {
+                throw new IllegalArgumentException(String.format("Method [%s] cannot have parameters", method.getSimpleName()));
+            }
+            fields.add(new Field(method));
+        }
+
+        writeParameterEnum(packageName, baseName, fields, type);
+        writeRecordClass(packageName, baseName, fields, type);
+    }
+
+    private void writeParameterEnum(String packageName, String baseName, List<Field> fields, TypeElement type) throws IOException {
+        final String enumName = baseName + "Parameter";
+        final StringBuilder code = new StringBuilder();
+        header(code, packageName, type);
+        code.append("public enum ").append(enumName).append(" implements JsonParameter {\n");
+        for (int i = 0; i < fields.size(); i++) {
+            final Field field = fields.get(i);
+            code.append("    ").append(field.constant).append("(\"").append(field.name).append("\", ")
+                    .append(field.elementClass).append(".class, ").append(field.list).append(")")
+                    .append(i < fields.size() - 1 ? ",\n" : ";\n");
+        }
+        if (fields.isEmpty()) {
+            code.append("    ;\n");
+        }
+        code.append("\n")
+                .append("    private final String name;\n")
+                .append("    private final Class<?> clazz;\n")
+                .append("    private final boolean list;\n\n")
+                .append("    ").append(enumName).append("(String name, Class<?> clazz, boolean list) {\n")
+                .append("        this.name = name;\n")
+                .append("        this.clazz = clazz;\n")
+                .append("        this.list = list;\n")
+                .append("    }\n\n")
+                .append("    @Override\n    public String getName() {\n        return name;\n    }\n\n")
+                .append("    @Override\n    public Class<?> getClazz() {\n        return clazz;\n    }\n\n")
+                .append("    @Override\n    public boolean isList() {\n        return list;\n    }\n")
+                .append("}\n");
+        write(packageName, enumName, code, type);
+    }
+
+    private void writeRecordClass(String packageName, String baseName, List<Field> fields, TypeElement type) throws IOException {
+        final String className = baseName + "Record";
+        final String interfaceName = type.getQualifiedName().toString();
+        final StringBuilder code = new StringBuilder();
+        header(code, packageName, type);
+        code.append("public class ").append(className).append(" implements ").append(interfaceName).append(" {\n")
+                .append("    private final Json json;\n\n")
+                .append("    public ").append(className).append("() {\n        this(Json.map());\n    }\n\n")
+                .append("    public ").append(className).append("(Json json) {\n")
+                .append("        if (json == null || !json.isMap()) {\n")
+                .append("            throw new IllegalArgumentException(\"Records can only wrap maps\");\n")
+                .append("        }\n")
+                .append("        this.json = json;\n")
+                .append("    }\n\n")
+                .append("    public static ").append(className).append(" wrap(Json json) {\n")
+                .append("        return json != null ? new ").append(className).append("(json) : null;\n")
+                .append("    }\n\n")
+                .append("    public static java.util.List<").append(className).append("> wrapAll(Json list) {\n")
+                .append("        final java.util.List<").append(className).append("> records = new java.util.ArrayList<>(list.size());\n")
+                .append("        for (Json json : list.jsons()) {\n")
+                .append("            records.add(new ").append(className).append("(json));\n")
+                .append("        }\n")
+                .append("        return records;\n")
+                .append("    }\n\n")
+                .append("    public Json toJson() {\n        return json;\n    }\n");
+
+        for (Field field : fields) {
+            code.append("\n    @Override\n")
+                    .append(field.unchecked ? "    @SuppressWarnings(\"unchecked\")\n" : "")
+                    .append("    public ").append(field.type).append(" ").append(field.method).append("() {\n")
+                    .append("        ").append(field.getter).append("\n")
+                    .append("    }\n\n")
+                    .append("    public ").append(className).append(" ").append(field.setter).append("(").append(field.type).append(" value) {\n")
+                    // lists are stored as Json, that is what the getters of lists read
+                    .append("        json.set(\"").append(field.name).append("\", ")
+                    .append(field.list ? "value != null ? Json.fromList(value) : null" : "value").append(");\n")
+                    .append("        return this;\n")
+                    .append("    }\n");
+        }
+
+        code.append("\n    @Override\n    public String toString() {\n        return json.toString();\n    }\n")
+                .append("}\n");
+        write(packageName, className, code, type);
+    }
+
+    private void header(StringBuilder code, String packageName, TypeElement type) {
+        if (StringUtils.isNotBlank(packageName)) {
+            code.append("package ").append(packageName).append(";\n\n");
+        }
+        code.append("import io.slingr.api.common.Json;\n")
+                .append("import io.slingr.api.common.JsonParameter;\n\n")
+                .append("/**\n * Generated from {@link ").append(type.getQualifiedName()).append("}. Do not modify.\n */\n");
+    }
+
+    private void write(String packageName, String name, StringBuilder code, TypeElement type) throws IOException {
+        final String qualifiedName = StringUtils.isNotBlank(packageName) ? packageName + "." + name : name;
+        try (Writer writer = processingEnv.getFiler().createSourceFile(qualifiedName, type).openWriter()) {
+            writer.write(code.toString());
+        }
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    /**
+     * Field of the record, with the code to read it
+     */
+    private class Field {
+        private final String method;
+        private final String name;
+        private final String constant;
+        private final String setter;
+        private final String type;
+        private final String elementClass;
+        // the getter returns a raw type from Json as a parameterized one
+        private final boolean unchecked;
+        private final boolean list;
+        private final String getter;
+
+        private Field(ExecutableElement element) {
+            this.method = element.getSimpleName().toString();
+            final JsonField jsonField = element.getAnnotation(JsonField.class);
+            this.name = jsonField != null && StringUtils.isNotBlank(jsonField.value()) ? jsonField.value() : fieldName(method);
+            this.constant = constantName(name);
+            // name(value) for plain methods and setName(value) for getName() or isName()
+            this.setter = method.equals(fieldName(method)) ? method : "set" + StringUtils.capitalize(fieldName(method));
+
+            final TypeMirror returnType = element.getReturnType();
+            String fieldType = returnType.toString();
+            boolean unchecked = false;
+            final String erasure = processingEnv.getTypeUtils().erasure(returnType).toString();
+            final String accessor = "json.%s(\"" + name + "\")";
+            if (returnType.getKind().isPrimitive()) {
+                this.list = false;
+                switch (returnType.getKind()) {
+                    case BOOLEAN:
+                        this.elementClass = "Boolean";
+                        this.getter = "return " + String.format(accessor, "is") + ";";
+                        break;
+                    case INT:
+                        this.elementClass = "Integer";
+                        this.getter = primitiveGetter(String.format(accessor, "integer"), "Integer", "0");
+                        break;
+                    case LONG:
+                        this.elementClass = "Long";
+                        this.getter = primitiveGetter(String.format(accessor, "long_"), "Long", "0L");
+                        break;
+                    case DOUBLE:
+                        this.elementClass = "Double";
+                        this.getter = primitiveGetter(String.format(accessor, "decimal"), "Double", "0d");
+                        break;
+                    default:
+                        throw new IllegalArgumentException(String.format("Type [%s] of method [%s] is not supported", fieldType, method));
+                }
+            } else if (erasure.equals("java.util.List")) {
+                this.list = true;
+                final List<? extends TypeMirror> arguments = ((DeclaredType) returnType).getTypeArguments();
+                final String argument = arguments.isEmpty() ? "java.lang.Object" : arguments.get(0).toString();
+                switch (argument) {
+                    case "java.lang.String":
+                        this.elementClass = "String";
+                        this.getter = "return " + String.format(accessor, "strings") + ";";
+                        break;
+                    case "java.lang.Boolean":
+                        this.elementClass = "Boolean";
+                        this.getter = "return " + String.format(accessor, "bools") + ";";
+                        break;
+                    case "java.lang.Integer":
+                        this.elementClass = "Integer";
+                        this.getter = "return " + String.format(accessor, "integers") + ";";
+                        break;
+                    case "java.lang.Long":
+                        this.elementClass = "Long";
+                        this.getter = "return " + String.format(accessor, "longs") + ";";
+                        break;
+                    case "java.lang.Double":
+                        this.elementClass = "Double";
+                        this.getter = "return " + String.format(accessor, "decimals") + ";";
+                        break;
+                    case "java.util.Date":
+                        this.elementClass = "java.util.Date";
+                        this.getter = "return " + String.format(accessor, "dates") + ";";
+                        break;
+                    case "io.slingr.api.common.Json":
+                        this.elementClass = "Json";
+                        this.getter = "return " + String.format(accessor, "jsons") + ";";
+                        break;
+                    case "java.lang.Object":
+                    case "?":
+                        this.elementClass = "Object";
+                        this.getter = "return " + String.format(accessor, "objects") + ";";
+                        break;
+                    default:
+                        // Json cannot return lists of other types, like maps, so they are not generated
+                        throw new IllegalArgumentException(String.format("Type [%s] of method [%s] is not supported", fieldType, method));
+                }
+            } else {
+                this.list = false;
+                switch (erasure) {
+                    case "java.lang.String":
+                        this.elementClass = "String";
+                        this.getter = "return " + String.format(accessor, "string") + ";";
+                        break;
+                    case "java.lang.Boolean":
+                        this.elementClass = "Boolean";
+                        this.getter = "return " + String.format(accessor, "bool") + ";";
+                        break;
+                    case "java.lang.Integer":
+                        this.elementClass = "Integer";
+                        this.getter = "return " + String.format(accessor, "integer") + ";";
+                        break;
+                    case "java.lang.Long":
+                        this.elementClass = "Long";
+                        this.getter = "return " + String.format(accessor, "long_") + ";";
+                        break;
+                    case "java.lang.Double":
+                        this.elementClass = "Double";
+                        this.getter = "return " + String.format(accessor, "decimal") + ";";
+                        break;
+                    case "java.util.Date":
+                        this.elementClass = "java.util.Date";
+                        this.getter = "return " + String.format(accessor, "date") + ";";
+                        break;
+                    case "io.slingr.api.common.Json":
+                        this.elementClass = "Json";
+                        this.getter = "return " + String.format(accessor, "json") + ";";
+                        break;
+                    case "java.util.Map":
+                        // maps of Json always have string keys and any kind of values
+                        final List<? extends TypeMirror> arguments = ((DeclaredType) returnType).getTypeArguments();
+                        if (!arguments.isEmpty() && !(arguments.get(0).toString().equals("java.lang.String") && arguments.get(1).toString().equals("java.lang.Object"))) {
+                            throw new IllegalArgumentException(String.format("Type [%s] of method [%s] is not supported, use Map<String, Object>", fieldType, method));
+                        }
+                        fieldType = "java.util.Map<String, Object>";
+                        unchecked = true;
+                        this.elementClass = "java.util.Map";
+                        this.getter = "return " + String.format(accessor, "map") + ";";
+                        break;
+                    case "java.lang.Object":
+                        this.elementClass = "Object";
+                        this.getter = "return " + String.format(accessor, "object") + ";";
+                        break;
+                    default:
+                        throw new IllegalArgumentException(String.format("Type [%s] of method [%s] is not supported", fieldType, method));
+                }
+            }
+            if (returnType.getKind() == TypeKind.VOID) {
+                throw new IllegalArgumentException(String.format("Method [%s] must return a value", method));
+            }
+            this.type = fieldType;
+            this.unchecked = unchecked;
+        }
+
+        private String primitiveGetter(String accessor, String boxed, String defaultValue) {
+            return "final " + boxed + " value = " + accessor + ";\n        return value != null ? value : " + defaultValue + ";";
+        }
+    }
+
+    private static String fieldName(String method) {
+        if (method.length() > 3 && method.startsWith("get") && Character.isUpperCase(method.charAt(3))) {
+            return StringUtils.uncapitalize(method.substring(3));
+        } else if (method.length() > 2 && method.startsWith("is") && Character.isUpperCase(method.charAt(2))) {
+            return StringUtils.uncapitalize(method.substring(2));
+        }
+        return method;
+    }
+
+    private static String constantName(String name) {
+        final StringBuilder constant = new StringBuilder();
+        for (int i = 0; i < name.length(); i++) {
+            final char c = name.charAt(i);
+            if (Character.isUpperCase(c) && i > 0 && !Character.isUpperCase(name.charAt(i - 1))) {
+                constant.append('_');
+            }
+            constant.append(Character.isLetterOrDigit(c) ? Character.toUpperCase(c) : '_');
+        }
+        return constant.toString();
+    }
+}
@@ -0,0 +1,40 @@
+package io.slingr.api.processor;
+
+import io.slingr.api.common.Json;
+import io.slingr.api.common.JsonField;
+import io.slingr.api.common.JsonRecord;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Record used by the tests, its classes are generated by the processor when the tests are compiled
+ */
+@JsonRecord
+public interface Customer {
+    String name();
+
+    Integer age();
+
+    int visits();
+
+    boolean isActive();
+
+    Double balance();
+
+    Date created();
+
+    Json address();
+
+    Map<String, Object> settings();
+
+    List<String> tags();
+
+    List<Json> contacts();
+
+    List<Object> values();
+
+    @JsonField("external_id")
+    String getExternalId();
+}
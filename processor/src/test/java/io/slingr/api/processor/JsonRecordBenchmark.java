@@ -0,0 +1,57 @@
+package io.slingr.api.processor;
+
+import io.slingr.api.common.Json;
+import org.junit.Test;
+
+import java.util.List;
+
+import static io.slingr.api.common.BenchmarkSupport.measure;
+import static io.slingr.api.common.BenchmarkSupport.report;
+
+/**
+ * Speed of the accessors of a generated record against {@link Json#get(io.slingr.api.common.JsonParameter)}
+ * with its parameters. It is not run by the build, run it with <code>mvn test -Dtest=JsonRecordBenchmark</code>.
+ */
+public class JsonRecordBenchmark {
+    private static final int RECORDS = 100000;
+
+    @Test
+    public void accessors() throws Exception {
+        final Json records = Json.list();
+        for (int i = 0; i < RECORDS; i++) {
+            records.push(Json.map()
+                    .set("name", "customer " + i)
+                    .set("age", i % 90)
+                    .set("visits", i)
+                    .set("balance", i * 1.25)
+                    .set("tags", Json.list().push("a").push("b")));
+        }
+        final List<Json> jsons = records.jsons();
+        final List<CustomerRecord> customers = CustomerRecord.wrapAll(records);
+
+        final double parameters = measure(5, 11, () -> {
+            long total = 0;
+            for (Json json : jsons) {
+                final String name = json.get(CustomerParameter.NAME);
+                final Integer age = json.get(CustomerParameter.AGE);
+                final Integer visits = json.get(CustomerParameter.VISITS);
+                final Double balance = json.get(CustomerParameter.BALANCE);
+                final List<String> tags = json.get(CustomerParameter.TAGS);
+                total += name.length() + age + visits + balance.longValue() + tags.size();
+            }
+            return total;
+        });
+        final double record = measure(5, 11, () -> {
+            long total = 0;
+            for (CustomerRecord customer : customers) {
+                total += customer.name().length() + customer.age() + customer.visits()
+                        + customer.balance().longValue() + customer.tags().size();
+            }
+            return total;
+        });
+
+        report("%d records, 5 fields each", RECORDS);
+        report("%-22s %8.1f ms", "Json.get(parameter)", parameters);
+        report("%-22s %8.1f ms", "generated record", record);
+    }
+}
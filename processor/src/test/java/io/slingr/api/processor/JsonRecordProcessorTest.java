@@ -0,0 +1,178 @@
+package io.slingr.api.processor;
+
+import io.slingr.api.common.Json;
+import org.junit.Test;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class JsonRecordProcessorTest {
+
+    @Test
+    public void generatedRecordReadsAndWritesTheJson() {
+        final Date created = new Date(1500000000000L);
+        final CustomerRecord customer = new CustomerRecord()
+                .name("John")
+                .age(30)
+                .visits(5)
+                .setActive(true)
+                .balance(10.5)
+                .created(created)
+                .address(Json.map().set("city", "Mendoza"))
+                .tags(Arrays.asList("a", "b"))
+                .contacts(Collections.singletonList(Json.map().set("email", "john@example.com")))
+                .values(Arrays.asList(1, "two"))
+                .setExternalId("x1");
+
+        assertEquals("John", customer.name());
+        assertEquals(Integer.valueOf(30), customer.age());
+        assertEquals(5, customer.visits());
+        assertTrue(customer.isActive());
+        assertEquals(10.5, customer.balance(), 0);
+        assertEquals(created, customer.created());
+        assertEquals("Mendoza", customer.address().string("city"));
+        assertEquals(Arrays.asList("a", "b"), customer.tags());
+        assertEquals("john@example.com", customer.contacts().get(0).string("email"));
+        assertEquals(Arrays.<Object>asList(1, "two"), customer.values());
+        assertEquals("x1", customer.getExternalId());
+        assertEquals("x1", customer.toJson().string("external_id"));
+        assertEquals("John", customer.toJson().get(CustomerParameter.NAME));
+    }
+
+    @Test
+    public void missingPrimitivesAreDefaults() {
+        final CustomerRecord customer = CustomerRecord.wrap(Json.map());
+        assertEquals(0, customer.visits());
+        assertFalse(customer.isActive());
+        assertNull(customer.age());
+        assertNull(CustomerRecord.wrap(null));
+    }
+
+    @Test
+    public void wrapsLists() {
+        final List<CustomerRecord> customers = CustomerRecord.wrapAll(Json.list()
+                .push(Json.map().set("name", "a"))
+                .push(Json.map().set("name", "b")));
+        assertEquals(2, customers.size());
+        assertEquals("b", customers.get(1).name());
+    }
+
+    @Test
+    public void parametersHaveTheTypesOfTheFields() {
+        assertEquals("external_id", CustomerParameter.EXTERNAL_ID.getName());
+        assertEquals(String.class, CustomerParameter.TAGS.getClazz());
+        assertTrue(CustomerParameter.TAGS.isList());
+        assertFalse(CustomerParameter.AGE.isList());
+    }
+
+    @Test
+    public void unsupportedListElementsAreErrors() throws Exception {
+        final List<Diagnostic<? extends JavaFileObject>> errors = compile("package test;\n" +
+                "@io.slingr.api.common.JsonRecord\n" +
+                "public interface Invalid {\n" +
+                "    java.util.List<java.util.Map> items();\n" +
+                "}\n");
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0).getMessage(null), errors.get(0).getMessage(null).contains("items"));
+    }
+
+    @Test
+    public void methodsWithParametersAreErrors() throws Exception {
+        final List<Diagnostic<? extends JavaFileObject>> errors = compile("package test;\n" +
+                "@io.slingr.api.common.JsonRecord\n" +
+                "public interface Invalid {\n" +
+                "    String name(String value);\n" +
+                "}\n");
+        assertEquals(1, errors.size());
+    }
+
+    @Test
+    public void rawListsAreObjects() throws Exception {
+        assertTrue(compile("package test;\n" +
+                "@io.slingr.api.common.JsonRecord\n" +
+                "public interface Valid {\n" +
+                "    java.util.List items();\n" +
+                "    java.util.List<?> others();\n" +
+                "}\n").isEmpty());
+    }
+
+    @Test
+    public void mapsAreTypedWithoutWarnings() throws Exception {
+        final File output = Files.createTempDirectory("processor").toFile();
+        // warnings are errors, so unchecked conversions in the generated code would fail
+        assertTrue(compile(output, "package test;\n" +
+                "@io.slingr.api.common.JsonRecord\n" +
+                "public interface Settings {\n" +
+                "    java.util.Map raw();\n" +
+                "    java.util.Map<String, Object> typed();\n" +
+                "}\n", "-Xlint:unchecked", "-Werror").isEmpty());
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{output.toURI().toURL()}, getClass().getClassLoader())) {
+            final Class<?> record = loader.loadClass("test.SettingsRecord");
+            assertEquals("java.util.Map<java.lang.String, java.lang.Object>", record.getMethod("raw").getGenericReturnType().getTypeName());
+            assertEquals("java.util.Map<java.lang.String, java.lang.Object>", record.getMethod("typed").getGenericReturnType().getTypeName());
+        }
+    }
+
+    @Test
+    public void mapsWithOtherTypesAreErrors() throws Exception {
+        final List<Diagnostic<? extends JavaFileObject>> errors = compile("package test;\n" +
+                "@io.slingr.api.common.JsonRecord\n" +
+                "public interface Invalid {\n" +
+                "    java.util.Map<String, String> settings();\n" +
+                "}\n");
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0).getMessage(null), errors.get(0).getMessage(null).contains("settings"));
+    }
+
+    private static List<Diagnostic<? extends JavaFileObject>> compile(String source) throws Exception {
+        return compile(Files.createTempDirectory("processor").toFile(), source);
+    }
+
+    /**
+     * Compiles the source with the processor into the output directory and returns the errors
+     */
+    private static List<Diagnostic<? extends JavaFileObject>> compile(File output, String source, String... options) throws Exception {
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, null)) {
+            final String name = source.substring(source.indexOf("interface ") + 10, source.indexOf(" {"));
+            final JavaFileObject file = new SimpleJavaFileObject(URI.create("string:///test/" + name + ".java"), JavaFileObject.Kind.SOURCE) {
+                @Override
+                public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                    return source;
+                }
+            };
+            final String classPath = System.getProperty("surefire.test.class.path", System.getProperty("java.class.path"));
+            final List<String> arguments = new ArrayList<>(Arrays.asList("-classpath", classPath, "-d", output.getPath()));
+            arguments.addAll(Arrays.asList(options));
+            final JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics,
+                    arguments, null, Collections.singletonList(file));
+            task.setProcessors(Collections.singletonList(new JsonRecordProcessor()));
+            task.call();
+        }
+        final List<Diagnostic<? extends JavaFileObject>> errors = new ArrayList<>();
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                errors.add(diagnostic);
+            }
+        }
+        return errors;
+    }
+}
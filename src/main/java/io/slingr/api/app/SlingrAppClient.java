@@ -1,27 +1,44 @@
 package io.slingr.api.app;
 
 import io.slingr.api.common.Json;
+import io.slingr.api.common.RestCallContext;
 import io.slingr.api.common.RestException;
-import io.slingr.api.common.RestMethod;
+import io.slingr.api.common.RestInterceptor;
 import io.slingr.api.common.SimpleRestClient;
+import io.slingr.api.common.Transport;
 
-import javax.ws.rs.client.WebTarget;
-import java.util.Map;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class SlingrAppClient extends SimpleRestClient {
     private static final String DOMAIN = ".slingrs.io";
+    private static final String LOGIN_PATH = "/auth/login";
 
+    private final String loginPath;
     private String email;
     private String password;
-    private String token;
+    // updated by the asynchronous logins from other threads
+    private volatile String token;
 
     private SlingrAppClient(String apiUri) throws RestException {
         super(apiUri);
+        this.loginPath = URI.create(apiUri).getPath() + LOGIN_PATH;
+        addInterceptor(new LoginInterceptor());
     }
 
     public static SlingrAppClient getInstance(String appName, Environment env, String email, String password) {
         String uri = "https://"+appName+DOMAIN+"/"+env.getPath()+"/runtime/api";
+        return create(uri, null, email, password);
+    }
+
+    /**
+     * Creates a client of the given API that sends the requests with the transport, or with Jersey if it is
+     * <code>null</code>
+     */
+    static SlingrAppClient create(String uri, Transport transport, String email, String password) {
         SlingrAppClient client = new SlingrAppClient(uri);
+        client.setTransport(transport);
         client.email = email;
         client.password = password;
         client.login();
@@ -33,22 +50,63 @@ public class SlingrAppClient extends SimpleRestClient {
         Json credentials = Json.map()
                 .set("email", email)
                 .set("password", password);
-        Json res = post("/auth/login", credentials);
+        Json res = post(LOGIN_PATH, credentials);
         this.token = res.string("token");
         setupDefaultHeader("token", this.token);
     }
 
-    @Override
-    protected Json execute(RestMethod method, WebTarget target, Object content, Map<String, Object> additionalHeaders) throws RestException {
-        try {
-            return super.execute(method, target, content, additionalHeaders);
-        } catch (RestException re) {
-            if (re.getStatusCode() == 401) {
+    /**
+     * Logs in again when the token expired and repeats the request with the new token
+     */
+    private class LoginInterceptor implements RestInterceptor {
+
+        @Override
+        public Json intercept(RestCallContext context, Chain chain) throws RestException {
+            try {
+                return chain.proceed(context);
+            } catch (RestException re) {
+                if (!isExpiredToken(context, re)) {
+                    throw re;
+                }
                 login();
-                return super.execute(method, target, content, additionalHeaders);
-            } else {
-                throw re;
+                context.setHeader("token", token);
+                return chain.proceed(context);
             }
         }
+
+        @Override
+        public CompletableFuture<Json> interceptAsync(RestCallContext context, AsyncChain chain) {
+            final CompletableFuture<Json> result = new CompletableFuture<>();
+            chain.proceed(context).whenComplete((json, e) -> {
+                final Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                if (cause == null) {
+                    result.complete(json);
+                } else if (cause instanceof RestException && isExpiredToken(context, (RestException) cause)) {
+                    // the login is done asynchronously too, so this thread is not blocked
+                    postAsync(LOGIN_PATH, Json.map().set("email", email).set("password", password))
+                            .thenCompose(res -> {
+                                token = res.string("token");
+                                setupDefaultHeader("token", token);
+                                context.setHeader("token", token);
+                                return chain.proceed(context);
+                            })
+                            .whenComplete((retried, re) -> {
+                                if (re != null) {
+                                    result.completeExceptionally(re instanceof CompletionException && re.getCause() != null ? re.getCause() : re);
+                                } else {
+                                    result.complete(retried);
+                                }
+                            });
+                } else {
+                    result.completeExceptionally(cause);
+                }
+            });
+            return result;
+        }
+
+        private boolean isExpiredToken(RestCallContext context, RestException re) {
+            // failed logins are not retried
+            return re.getStatusCode() == 401 && !loginPath.equals(context.getTarget().getUri().getPath());
+        }
     }
 }
@@ -0,0 +1,378 @@
+package io.slingr.api.common;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.glassfish.jersey.media.multipart.MultiPart;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Transport that sends the requests with an Apache <code>CloseableHttpClient</code>, without going through
+ * the JAX-RS layer of Jersey: there is no lookup of providers nor negotiation of entities, and the runtime of
+ * Jersey is not initialized by the first request. Json bodies are written directly to the connection and
+ * responses are parsed from it by the client.
+ * <p/>
+ * <p>It has its own connection pool, configured by the {@link RestClientFactory.RestClientOptions} like the
+ * pools of Jersey, and it should be shared by the clients and closed when it is not needed anymore:
+ * <p/>
+ * <code>
+ * Transport transport = Transport.apacheHttpClient(new RestClientFactory.RestClientOptions());
+ * SimpleRestClient client = SimpleRestClient.uri("https://api.example.com").transport(transport);
+ * </code>
+ * <p/>
+ * <p>Multipart bodies and the authentication features of Jersey are not supported; those clients need the
+ * Jersey transport.
+ */
+public class ApacheHttpTransport implements Transport {
+    private static final AtomicInteger threadCount = new AtomicInteger();
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient client;
+    private final RequestConfig defaultConfig;
+    private final boolean compressResponses;
+    private final boolean compressRequests;
+    private final int compressRequestsThreshold;
+    // requests are blocking in the Apache client, so asynchronous requests are done in these threads; there are
+    // as many as connections in the pool, as more threads would only wait for a connection
+    private final ThreadPoolExecutor executor;
+
+    public ApacheHttpTransport() {
+        this(new RestClientFactory.RestClientOptions());
+    }
+
+    public ApacheHttpTransport(RestClientFactory.RestClientOptions options) {
+        this.connectionManager = RestClientFactory.createConnectionManager(options);
+        this.defaultConfig = RequestConfig.custom()
+                .setRedirectsEnabled(options.followRedirects)
+                // compression is done like in the Jersey clients, with the pooled buffers of HttpCompression
+                .setContentCompressionEnabled(false)
+                .build();
+        final HttpClientBuilder builder = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(defaultConfig)
+                .disableContentCompression();
+        if (options.idleConnectionTimeout >= 0) {
+            builder.evictExpiredConnections().evictIdleConnections(options.idleConnectionTimeout, TimeUnit.MILLISECONDS);
+        }
+        this.client = builder.build();
+        this.compressResponses = options.compressResponses;
+        this.compressRequests = options.compressRequests;
+        this.compressRequestsThreshold = Math.max(options.compressRequestsThreshold, 0);
+        final int threads = Math.max(options.maxConnections, 1);
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            final Thread thread = new Thread(runnable, "rest-client-apache-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public Response execute(TransportRequest request) {
+        return execute(buildRequest(request));
+    }
+
+    @Override
+    public CompletableFuture<Response> executeAsync(TransportRequest request) {
+        final ApacheRequest httpRequest = buildRequest(request);
+        final CompletableFuture<Response> result = new CompletableFuture<>();
+        // the phases of the request are recorded by the pool in the thread that sends it
+        final RequestPhases phases = RequestPhases.current();
+        final Future<?> task = executor.submit(() -> {
+            final RequestPhases previous = phases != null ? RequestPhases.attach(phases) : null;
+            try {
+                final Response response = execute(httpRequest);
+                if (!result.complete(response)) {
+                    // cancelled while the response was received
+                    response.close();
+                }
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            } finally {
+                if (phases != null) {
+                    RequestPhases.detach(previous);
+                }
+            }
+        });
+        result.whenComplete((response, e) -> {
+            if (e != null) {
+                // aborting cancels the lease of the connection or closes it; interrupting the thread while it
+                // waits for a connection of the pool could leak it
+                httpRequest.abort();
+                task.cancel(false);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Returns the connections of the pool of the transport, like {@link RestClient#poolStats()}
+     */
+    public Json poolStats() {
+        return RestClientRegistry.poolStats(connectionManager);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            client.close();
+        } catch (IOException e) {
+            // the connections are closed anyway
+        } finally {
+            connectionManager.shutdown();
+        }
+    }
+
+    private Response execute(ApacheRequest httpRequest) {
+        final CloseableHttpResponse response;
+        try {
+            response = client.execute(httpRequest);
+        } catch (IOException e) {
+            // the message has the class of the cause, as in Jersey, so connect timeouts are detected by the client
+            throw new ProcessingException(e);
+        }
+        try {
+            return toResponse(httpRequest, response);
+        } catch (IOException | RuntimeException e) {
+            try {
+                response.close();
+            } catch (IOException ce) {
+                // the connection is discarded
+            }
+            throw e instanceof IOException ? new ProcessingException(e) : (RuntimeException) e;
+        }
+    }
+
+    private ApacheRequest buildRequest(TransportRequest request) {
+        request.checkNoAuthentication("Apache");
+        final ApacheRequest httpRequest = new ApacheRequest(request.getMethod().name(), request);
+        if (request.getConnectionTimeout() != null || request.getReadTimeout() != null) {
+            final RequestConfig.Builder config = RequestConfig.copy(defaultConfig);
+            if (request.getConnectionTimeout() != null) {
+                config.setConnectTimeout(request.getConnectionTimeout());
+            }
+            if (request.getReadTimeout() != null) {
+                config.setSocketTimeout(request.getReadTimeout());
+            }
+            httpRequest.setConfig(config.build());
+        }
+        for (Map.Entry<String, Object> header : request.getHeaders().entrySet()) {
+            // the length and encoding of the body are set by the client
+            if (header.getValue() != null
+                    && !header.getKey().equalsIgnoreCase(HttpHeaders.CONTENT_LENGTH)
+                    && !header.getKey().equalsIgnoreCase("Transfer-Encoding")) {
+                httpRequest.addHeader(header.getKey(), header.getValue().toString());
+            }
+        }
+        if (!httpRequest.containsHeader(HttpHeaders.ACCEPT)) {
+            httpRequest.addHeader(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON);
+        }
+        if (compressResponses && !httpRequest.containsHeader(HttpHeaders.ACCEPT_ENCODING)) {
+            httpRequest.addHeader(HttpHeaders.ACCEPT_ENCODING, HttpCompression.ACCEPT_ENCODING);
+        }
+        if (request.hasBody()) {
+            final HttpEntity entity = buildEntity(request.getEntity());
+            if (!httpRequest.containsHeader(HttpHeaders.CONTENT_TYPE) && entity.getContentType() != null) {
+                httpRequest.addHeader(entity.getContentType());
+            }
+            if (entity.getContentEncoding() != null && !httpRequest.containsHeader(HttpHeaders.CONTENT_ENCODING)) {
+                httpRequest.addHeader(entity.getContentEncoding());
+            }
+            httpRequest.setEntity(entity);
+        }
+        return httpRequest;
+    }
+
+    HttpEntity buildEntity(Entity<?> entity) {
+        final Object body = entity.getEntity();
+        final MediaType mediaType = entity.getMediaType();
+        final AbstractHttpEntity httpEntity;
+        if (body instanceof MultiPart) {
+            throw new IllegalStateException("Multipart bodies are not supported by the Apache transport");
+        } else if (body instanceof byte[]) {
+            httpEntity = bytesEntity((byte[]) body);
+        } else if (body instanceof String) {
+            httpEntity = bytesEntity(((String) body).getBytes(charset(mediaType)));
+        } else {
+            final Json json = body instanceof Json ? (Json) body : Json.fromObject(body, false);
+            if (compressRequests) {
+                // the size is needed to know if the body is compressed
+                httpEntity = bytesEntity(json.toString().getBytes(StandardCharsets.UTF_8));
+            } else {
+                httpEntity = new JsonEntity(json);
+            }
+        }
+        if (mediaType != null) {
+            httpEntity.setContentType(mediaType.toString());
+        }
+        return httpEntity;
+    }
+
+    private AbstractHttpEntity bytesEntity(byte[] bytes) {
+        if (compressRequests && bytes.length >= compressRequestsThreshold) {
+            final GzipEntity gzip = new GzipEntity(bytes);
+            gzip.setContentEncoding(HttpCompression.GZIP);
+            return gzip;
+        }
+        return new ByteArrayEntity(bytes);
+    }
+
+    private static Response toResponse(ApacheRequest httpRequest, CloseableHttpResponse response) throws IOException {
+        final Map<String, List<String>> headers = new HashMap<>();
+        for (Header header : response.getAllHeaders()) {
+            headers.computeIfAbsent(header.getName(), name -> new ArrayList<>(1)).add(header.getValue());
+        }
+        final HttpEntity entity = response.getEntity();
+        if (entity == null) {
+            // the connection is released by the client when there is no body
+            return new StreamResponse(response.getStatusLine().getStatusCode(), headers, null);
+        }
+        InputStream body = entity.getContent();
+        final Header encoding = response.getFirstHeader(HttpHeaders.CONTENT_ENCODING);
+        if (encoding != null && !httpRequest.getMethod().equals(RestMethod.HEAD.name())) {
+            final InputStream decoded = HttpCompression.decode(encoding.getValue(), body);
+            if (decoded != null) {
+                body = decoded;
+                headers.keySet().removeIf(name -> name.equalsIgnoreCase(HttpHeaders.CONTENT_ENCODING) || name.equalsIgnoreCase(HttpHeaders.CONTENT_LENGTH));
+            }
+        }
+        // closing the stream of the body gives the connection back to the pool
+        return new StreamResponse(response.getStatusLine().getStatusCode(), headers, body);
+    }
+
+    private static Charset charset(MediaType mediaType) {
+        final String charset = mediaType != null ? mediaType.getParameters().get(MediaType.CHARSET_PARAMETER) : null;
+        try {
+            return charset != null ? Charset.forName(charset) : StandardCharsets.UTF_8;
+        } catch (Exception e) {
+            return StandardCharsets.UTF_8;
+        }
+    }
+
+    /**
+     * Request with any method, that can have a body
+     */
+    private static class ApacheRequest extends HttpEntityEnclosingRequestBase {
+        private final String method;
+
+        private ApacheRequest(String method, TransportRequest request) {
+            this.method = method;
+            setURI(request.getUri());
+        }
+
+        @Override
+        public String getMethod() {
+            return method;
+        }
+    }
+
+    /**
+     * Body that writes the Json to the connection while it is sent
+     */
+    private static class JsonEntity extends AbstractHttpEntity {
+        private final Json json;
+
+        private JsonEntity(Json json) {
+            this.json = json;
+            setChunked(true);
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        @Override
+        public long getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            // only used when the body is read again, like when it is logged
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            writeTo(out);
+            return new ByteArrayInputStream(out.toByteArray());
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            json.writeTo(out);
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return false;
+        }
+    }
+
+    /**
+     * Body compressed with gzip while it is sent
+     */
+    private static class GzipEntity extends AbstractHttpEntity {
+        private final byte[] bytes;
+
+        private GzipEntity(byte[] bytes) {
+            this.bytes = bytes;
+            setChunked(true);
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        @Override
+        public long getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            // only used when the body is read again, like when it is logged
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            writeTo(out);
+            return new ByteArrayInputStream(out.toByteArray());
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            final HttpCompression.GzipOutputStream gzip = new HttpCompression.GzipOutputStream(out);
+            try {
+                gzip.write(bytes);
+                gzip.finish();
+            } finally {
+                gzip.release();
+            }
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package io.slingr.api.common;
+
+import java.util.function.Consumer;
+
+/**
+ * <p>Options of a batch of calls done by {@link SimpleRestClient#executeAll(java.util.Collection, BatchOptions)}:
+ * <ul>
+ * <li>parallelism: max calls in flight at the same time, 16 by default. Calls share the connection pool of the
+ * client, so a parallelism higher than its connections only makes calls wait for a connection.</li>
+ * <li>fail fast: when a call fails no more calls are started and the ones in flight are cancelled. By default
+ * the batch continues and the error is kept in the result of the call.</li>
+ * <li>timeout: max milliseconds for the whole batch, after them the calls in flight are cancelled and the
+ * pending ones are skipped. There is no limit by default.</li>
+ * <li>result listener: receives the result of each call as soon as it finishes, instead of keeping them
+ * until the end of the batch. It is called by one thread at a time, but not always the same one, so it
+ * must not block.</li>
+ * </ul>
+ * <code>
+ * BatchResult result = client.executeAll(calls, new BatchOptions().parallelism(32).timeout(60000));
+ * </code>
+ */
+public class BatchOptions {
+    private static final int DEFAULT_PARALLELISM = 16;
+
+    private int parallelism = DEFAULT_PARALLELISM;
+    private boolean failFast = false;
+    private long timeout = -1;
+    private Consumer<RestCallResult> resultListener;
+
+    public BatchOptions parallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException(String.format("Invalid parallelism [%s]", parallelism));
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    public BatchOptions failFast(boolean failFast) {
+        this.failFast = failFast;
+        return this;
+    }
+
+    /**
+     * Sets the max milliseconds for the whole batch, or no limit when it is not positive
+     */
+    public BatchOptions timeout(long timeout) {
+        this.timeout = timeout > 0 ? timeout : -1;
+        return this;
+    }
+
+    /**
+     * Sets the listener of the results, that are not kept in the {@link BatchResult} then
+     */
+    public BatchOptions resultListener(Consumer<RestCallResult> resultListener) {
+        this.resultListener = resultListener;
+        return this;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public boolean isFailFast() {
+        return failFast;
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+
+    public Consumer<RestCallResult> getResultListener() {
+        return resultListener;
+    }
+}
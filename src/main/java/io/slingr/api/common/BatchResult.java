@@ -0,0 +1,103 @@
+package io.slingr.api.common;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>Result of a batch of calls done by {@link SimpleRestClient#executeAll(java.util.Collection, BatchOptions)}:
+ * the result of each call in the order of the calls, and how many of them succeeded, failed or were skipped.
+ * <p/>
+ * <p>When the batch has a result listener the results are given to it and not kept here, so only the counts
+ * are available.
+ */
+public class BatchResult {
+    private final List<RestCallResult> results;
+    private final int succeeded;
+    private final int failed;
+    private final int skipped;
+    private final boolean timedOut;
+    private final boolean stopped;
+    private final long time;
+
+    BatchResult(List<RestCallResult> results, int succeeded, int failed, int skipped, boolean timedOut, boolean stopped, long time) {
+        this.results = results != null ? Collections.unmodifiableList(results) : Collections.emptyList();
+        this.succeeded = succeeded;
+        this.failed = failed;
+        this.skipped = skipped;
+        this.timedOut = timedOut;
+        this.stopped = stopped;
+        this.time = time;
+    }
+
+    /**
+     * Results of the calls in the order they were given, or an empty list if they went to the result listener
+     */
+    public List<RestCallResult> getResults() {
+        return results;
+    }
+
+    /**
+     * Returns the responses of the calls in the order they were given, with <code>null</code> for the calls that
+     * failed or were skipped
+     */
+    public List<Json> getResponses() {
+        final Json[] responses = new Json[results.size()];
+        for (int i = 0; i < responses.length; i++) {
+            responses[i] = results.get(i).getResponse();
+        }
+        return Arrays.asList(responses);
+    }
+
+    public int getSucceeded() {
+        return succeeded;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+
+    public int getSkipped() {
+        return skipped;
+    }
+
+    public boolean isSuccess() {
+        return failed == 0 && skipped == 0;
+    }
+
+    /**
+     * Returns true if the timeout of the batch expired before all the calls finished
+     */
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * Returns true if the batch stopped at the first failure, in fail fast mode
+     */
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * Milliseconds the batch took
+     */
+    public long getTime() {
+        return time;
+    }
+
+    public Json toJson() {
+        return Json.map()
+                .set("succeeded", succeeded)
+                .set("failed", failed)
+                .set("skipped", skipped)
+                .set("timedOut", timedOut)
+                .set("stopped", stopped)
+                .set("time", time);
+    }
+
+    @Override
+    public String toString() {
+        return toJson().toString();
+    }
+}
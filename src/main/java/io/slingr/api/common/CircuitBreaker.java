@@ -0,0 +1,229 @@
+package io.slingr.api.common;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Circuit breaker of the requests to a host or route. It is created by a {@link CircuitBreakerRegistry}.
+ * <p/>
+ * <p>The outcome of the last requests is kept in a sliding window. While the circuit is closed, requests go
+ * through; when the rate of failures or of slow calls in the window reaches its threshold the circuit opens
+ * and requests fail immediately with a {@link CircuitOpenException}. After the wait duration the circuit is
+ * half-open and lets a few trial requests go through: if all of them succeed it closes again, and if any of
+ * them fails it opens again.
+ * <p/>
+ * <p>Failures are connection errors, timeouts and responses with status 408, 429 or 5xx. Other errors mean
+ * that the service is answering, so they are not failures for the circuit.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    /**
+     * Listener of the changes of state of the circuit breakers
+     */
+    public interface Listener {
+        void onStateChange(CircuitBreaker circuitBreaker, State from, State to);
+    }
+
+    private final String key;
+    private final CircuitBreakerRegistry registry;
+
+    // outcomes of the last calls, as a ring buffer
+    private final boolean[] failures;
+    private final boolean[] slowCalls;
+    private int position = 0;
+    private int calls = 0;
+    private int failedCalls = 0;
+    private int slowCallsCount = 0;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int halfOpenPermits;
+    private int halfOpenSuccesses;
+
+    private long notPermittedCalls;
+
+    CircuitBreaker(String key, CircuitBreakerRegistry registry) {
+        this.key = key;
+        this.registry = registry;
+        this.failures = new boolean[registry.getWindowSize()];
+        this.slowCalls = new boolean[registry.getWindowSize()];
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public synchronized State getState() {
+        return currentState(System.currentTimeMillis());
+    }
+
+    /**
+     * Checks if a request can be done
+     *
+     * @throws CircuitOpenException if the circuit is open
+     */
+    void acquire() throws CircuitOpenException {
+        final State from;
+        synchronized (this) {
+            from = currentState(System.currentTimeMillis());
+            if (from == State.CLOSED) {
+                return;
+            }
+            if (from == State.OPEN || halfOpenPermits <= 0) {
+                notPermittedCalls++;
+                throw new CircuitOpenException(key);
+            }
+            halfOpenPermits--;
+            if (state == State.HALF_OPEN) {
+                return;
+            }
+            state = State.HALF_OPEN;
+        }
+        registry.notifyStateChange(this, State.OPEN, State.HALF_OPEN);
+    }
+
+    /**
+     * Records the outcome of a request
+     *
+     * @param error    the error of the request, or <code>null</code> if it was successful
+     * @param duration duration of the request in nanoseconds
+     */
+    void record(Throwable error, long duration) {
+        final boolean failure = error != null && isFailure(error);
+        final boolean slow = duration >= TimeUnit.MILLISECONDS.toNanos(registry.getSlowCallDuration());
+        State from = null;
+        State to = null;
+        synchronized (this) {
+            if (state == State.HALF_OPEN) {
+                if (failure || slow) {
+                    from = state;
+                    to = open();
+                } else if (++halfOpenSuccesses >= registry.getHalfOpenCalls()) {
+                    from = state;
+                    to = close();
+                }
+            } else if (state == State.CLOSED) {
+                add(failure, slow);
+                if (calls >= registry.getMinimumCalls()
+                        && (failedCalls * 100.0 / calls >= registry.getFailureRateThreshold()
+                        || slowCallsCount * 100.0 / calls >= registry.getSlowCallRateThreshold())) {
+                    from = state;
+                    to = open();
+                }
+            }
+        }
+        if (to != null) {
+            registry.notifyStateChange(this, from, to);
+        }
+    }
+
+    /**
+     * Gives back the permit of a request that was cancelled, so it does not count as an outcome
+     */
+    synchronized void release() {
+        if (state == State.HALF_OPEN) {
+            halfOpenPermits++;
+        }
+    }
+
+    /**
+     * Closes the circuit and clears the window
+     */
+    public void reset() {
+        final State from;
+        synchronized (this) {
+            from = state;
+            close();
+        }
+        if (from != State.CLOSED) {
+            registry.notifyStateChange(this, from, State.CLOSED);
+        }
+    }
+
+    private State currentState(long now) {
+        if (state == State.OPEN && now - openedAt >= registry.getWaitInOpenState()) {
+            // the first request that is permitted moves it to half-open
+            if (halfOpenPermits > 0) {
+                return State.HALF_OPEN;
+            }
+        }
+        return state;
+    }
+
+    private State open() {
+        state = State.OPEN;
+        openedAt = System.currentTimeMillis();
+        halfOpenPermits = registry.getHalfOpenCalls();
+        halfOpenSuccesses = 0;
+        return state;
+    }
+
+    private State close() {
+        state = State.CLOSED;
+        position = 0;
+        calls = 0;
+        failedCalls = 0;
+        slowCallsCount = 0;
+        return state;
+    }
+
+    private void add(boolean failure, boolean slow) {
+        if (calls == failures.length) {
+            if (failures[position]) {
+                failedCalls--;
+            }
+            if (slowCalls[position]) {
+                slowCallsCount--;
+            }
+        } else {
+            calls++;
+        }
+        failures[position] = failure;
+        slowCalls[position] = slow;
+        if (failure) {
+            failedCalls++;
+        }
+        if (slow) {
+            slowCallsCount++;
+        }
+        position = (position + 1) % failures.length;
+    }
+
+    static boolean isFailure(Throwable error) {
+        if (error instanceof RestException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        if (error instanceof WebApplicationException) {
+            final Response response = ((WebApplicationException) error).getResponse();
+            final int status = response != null ? response.getStatus() : 500;
+            return status == 408 || status == 429 || status >= 500;
+        }
+        if (error instanceof ProcessingException) {
+            return !(error.getCause() instanceof WebApplicationException) || isFailure(error.getCause());
+        }
+        return false;
+    }
+
+    public synchronized Json toJson() {
+        return Json.map()
+                .set("key", key)
+                .set("state", currentState(System.currentTimeMillis()).name())
+                .set("calls", calls)
+                .set("failureRate", calls > 0 ? failedCalls * 100.0 / calls : 0.0)
+                .set("slowCallRate", calls > 0 ? slowCallsCount * 100.0 / calls : 0.0)
+                .set("notPermittedCalls", notPermittedCalls);
+    }
+
+    @Override
+    public String toString() {
+        return toJson().toString();
+    }
+}
@@ -0,0 +1,204 @@
+package io.slingr.api.common;
+
+import org.apache.log4j.Logger;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * <p>Circuit breakers of the hosts, or routes, called by {@link RestClient}. The same registry can be set in
+ * several clients so all the requests to a host share its circuit breaker.
+ * <p/>
+ * <code>
+ * CircuitBreakerRegistry circuitBreakers = new CircuitBreakerRegistry()
+ *         .failureRateThreshold(50)
+ *         .slowCallDuration(5000)
+ *         .waitInOpenState(30000)
+ *         .listener((circuitBreaker, from, to) -> logger.warn(circuitBreaker.getKey() + " is " + to));
+ * SimpleRestClient client = SimpleRestClient.uri("https://api.example.com").circuitBreakers(circuitBreakers);
+ * </code>
+ * <p/>
+ * <p>The configuration has to be done before using the registry.
+ */
+public class CircuitBreakerRegistry {
+    private static final Logger logger = Logger.getLogger(CircuitBreakerRegistry.class);
+
+    private final ConcurrentHashMap<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+    private final List<CircuitBreaker.Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private boolean perRoute = false;
+    private int windowSize = 100;
+    private int minimumCalls = 20;
+    private double failureRateThreshold = 50;
+    private double slowCallRateThreshold = 100;
+    private long slowCallDuration = 60 * 1000;
+    private long waitInOpenState = 30 * 1000;
+    private int halfOpenCalls = 5;
+
+    /**
+     * Sets true to have a circuit breaker for each route (host and path) instead of one for each host
+     */
+    public CircuitBreakerRegistry perRoute(boolean perRoute) {
+        this.perRoute = perRoute;
+        return this;
+    }
+
+    /**
+     * Number of last calls used to calculate the rates (100 by default)
+     */
+    public CircuitBreakerRegistry windowSize(int windowSize) {
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException(String.format("Invalid window size [%s]", windowSize));
+        }
+        this.windowSize = windowSize;
+        return this;
+    }
+
+    /**
+     * Minimum number of calls in the window before the circuit can open (20 by default)
+     */
+    public CircuitBreakerRegistry minimumCalls(int minimumCalls) {
+        this.minimumCalls = Math.max(minimumCalls, 1);
+        return this;
+    }
+
+    /**
+     * Percentage of failed calls that opens the circuit (50 by default)
+     */
+    public CircuitBreakerRegistry failureRateThreshold(double failureRateThreshold) {
+        this.failureRateThreshold = checkRate(failureRateThreshold);
+        return this;
+    }
+
+    /**
+     * Percentage of slow calls that opens the circuit (100 by default)
+     */
+    public CircuitBreakerRegistry slowCallRateThreshold(double slowCallRateThreshold) {
+        this.slowCallRateThreshold = checkRate(slowCallRateThreshold);
+        return this;
+    }
+
+    /**
+     * Duration in milliseconds from which a call is slow (60 seconds by default)
+     */
+    public CircuitBreakerRegistry slowCallDuration(long slowCallDuration) {
+        this.slowCallDuration = Math.max(slowCallDuration, 1);
+        return this;
+    }
+
+    /**
+     * Milliseconds that the circuit stays open before letting trial calls go through (30 seconds by default)
+     */
+    public CircuitBreakerRegistry waitInOpenState(long waitInOpenState) {
+        this.waitInOpenState = Math.max(waitInOpenState, 0);
+        return this;
+    }
+
+    /**
+     * Number of trial calls that have to succeed in half-open state to close the circuit (5 by default)
+     */
+    public CircuitBreakerRegistry halfOpenCalls(int halfOpenCalls) {
+        this.halfOpenCalls = Math.max(halfOpenCalls, 1);
+        return this;
+    }
+
+    public CircuitBreakerRegistry listener(CircuitBreaker.Listener listener) {
+        if (listener != null) {
+            listeners.add(listener);
+        }
+        return this;
+    }
+
+    /**
+     * Returns the circuit breaker of the URI, creating it if needed
+     */
+    public CircuitBreaker get(URI uri) {
+        return get(key(uri));
+    }
+
+    /**
+     * Returns the circuit breaker with the key, that is the host (like <code>https://api.example.com:443</code>)
+     * or the route (the host followed by the path), creating it if needed
+     */
+    public CircuitBreaker get(String key) {
+        return circuitBreakers.computeIfAbsent(key, k -> new CircuitBreaker(k, this));
+    }
+
+    public List<CircuitBreaker> getCircuitBreakers() {
+        return new ArrayList<>(circuitBreakers.values());
+    }
+
+    public Json toJson() {
+        final Json json = Json.list();
+        for (CircuitBreaker circuitBreaker : circuitBreakers.values()) {
+            json.push(circuitBreaker.toJson());
+        }
+        return json;
+    }
+
+    @Override
+    public String toString() {
+        return toJson().toString();
+    }
+
+    String key(URI uri) {
+        int port = uri.getPort();
+        if (port < 0) {
+            port = "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+        }
+        final String host = String.format("%s://%s:%s", uri.getScheme(), uri.getHost(), port);
+        if (perRoute) {
+            return host + (uri.getRawPath() != null ? uri.getRawPath() : "");
+        }
+        return host;
+    }
+
+    void notifyStateChange(CircuitBreaker circuitBreaker, CircuitBreaker.State from, CircuitBreaker.State to) {
+        logger.info(String.format("Circuit breaker of [%s] changed from [%s] to [%s]", circuitBreaker.getKey(), from, to));
+        for (CircuitBreaker.Listener listener : listeners) {
+            try {
+                listener.onStateChange(circuitBreaker, from, to);
+            } catch (Exception e) {
+                logger.warn("Error in circuit breaker listener", e);
+            }
+        }
+    }
+
+    private static double checkRate(double rate) {
+        if (rate <= 0 || rate > 100) {
+            throw new IllegalArgumentException(String.format("Invalid rate [%s], it has to be a percentage", rate));
+        }
+        return rate;
+    }
+
+    int getWindowSize() {
+        return windowSize;
+    }
+
+    int getMinimumCalls() {
+        return minimumCalls;
+    }
+
+    double getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    double getSlowCallRateThreshold() {
+        return slowCallRateThreshold;
+    }
+
+    long getSlowCallDuration() {
+        return slowCallDuration;
+    }
+
+    long getWaitInOpenState() {
+        return waitInOpenState;
+    }
+
+    int getHalfOpenCalls() {
+        return halfOpenCalls;
+    }
+}
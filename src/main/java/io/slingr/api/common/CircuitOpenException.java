@@ -0,0 +1,21 @@
+package io.slingr.api.common;
+
+/**
+ * Exception thrown without doing the request when the circuit breaker of the target is open, because
+ * too many of the last requests to it failed or were too slow. It can be retried after a while.
+ */
+public class CircuitOpenException extends RetryableRestException {
+    private final String circuit;
+
+    public CircuitOpenException(String circuit) {
+        super(RestErrorType.API_EXCEPTION, String.format("Circuit breaker of [%s] is open", circuit));
+        this.circuit = circuit;
+    }
+
+    /**
+     * Returns the key of the circuit breaker, that is the host or the route of the request
+     */
+    public String getCircuit() {
+        return circuit;
+    }
+}
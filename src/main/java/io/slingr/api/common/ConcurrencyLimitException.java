@@ -0,0 +1,21 @@
+package io.slingr.api.common;
+
+/**
+ * Exception thrown without doing the request when the {@link ConcurrencyLimiter} of the client sheds it,
+ * because there are too many requests in flight to the target. It can be retried after a while.
+ */
+public class ConcurrencyLimitException extends RetryableRestException {
+    private final int limit;
+
+    public ConcurrencyLimitException(String key, int limit) {
+        super(RestErrorType.API_EXCEPTION, String.format("Concurrency limit [%s] of [%s] exceeded", limit, key));
+        this.limit = limit;
+    }
+
+    /**
+     * Returns the limit of requests in flight when the request was rejected
+     */
+    public int getLimit() {
+        return limit;
+    }
+}
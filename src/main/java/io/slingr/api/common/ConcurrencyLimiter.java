@@ -0,0 +1,415 @@
+package io.slingr.api.common;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.WebApplicationException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p>Adaptive limit of the requests in flight of a {@link RestClient} to each target host. Instead of a fixed
+ * number of connections, the limit is adjusted with the round trip time of the requests and the errors that
+ * show that the server is overloaded (connection errors, timeouts, 408, 429 and 5xx), so the throughput
+ * settles where the latency starts to grow:
+ * <ul>
+ * <li><code>AIMD</code>: increases the limit by one with each successful request and reduces it by 10%
+ * with each error</li>
+ * <li><code>VEGAS</code>: estimates the requests queued in the server comparing the round trip time with the
+ * minimum one, increasing the limit when the queue is small and reducing it when it grows</li>
+ * <li><code>GRADIENT</code>: reduces the limit when the round trip time is higher than its long term
+ * average</li>
+ * </ul>
+ * <p/>
+ * <p>The limit only grows while the requests in flight are close to it. Requests over the limit wait for a
+ * request to finish (<code>QUEUE</code>, by default) or fail with a {@link ConcurrencyLimitException}
+ * (<code>REJECT</code>).
+ * <p/>
+ * <code>
+ * ConcurrencyLimiter limiter = new ConcurrencyLimiter(ConcurrencyLimiter.Algorithm.VEGAS).maxLimit(50);
+ * SimpleRestClient client = SimpleRestClient.uri("https://api.example.com").concurrencyLimiter(limiter);
+ * </code>
+ */
+public class ConcurrencyLimiter {
+    private static final double BACKOFF_RATIO = 0.9;
+    // the minimum round trip time of Vegas is measured again after this number of samples
+    private static final int VEGAS_PROBE_SAMPLES = 1000;
+    // samples of the long term average of the round trip time of Gradient
+    private static final int GRADIENT_WINDOW = 600;
+    private static final double GRADIENT_TOLERANCE = 1.5;
+    private static final double GRADIENT_SMOOTHING = 0.2;
+
+    public enum Algorithm {
+        AIMD,
+        VEGAS,
+        GRADIENT
+    }
+
+    public enum Mode {
+        QUEUE,
+        REJECT
+    }
+
+    private final Algorithm algorithm;
+    private final ConcurrentHashMap<String, Target> targets = new ConcurrentHashMap<>();
+    private volatile int initialLimit = 20;
+    private volatile int minLimit = 1;
+    private volatile int maxLimit = 200;
+    private volatile Mode mode = Mode.QUEUE;
+    private volatile long maxWait = Long.MAX_VALUE;
+    private volatile boolean perHost = true;
+
+    public ConcurrencyLimiter(Algorithm algorithm) {
+        if (algorithm == null) {
+            throw new IllegalArgumentException("Algorithm cannot be null");
+        }
+        this.algorithm = algorithm;
+    }
+
+    /**
+     * Limit of new targets (20 by default)
+     */
+    public ConcurrencyLimiter initialLimit(int initialLimit) {
+        this.initialLimit = checkLimit(initialLimit);
+        return this;
+    }
+
+    /**
+     * Minimum limit (1 by default)
+     */
+    public ConcurrencyLimiter minLimit(int minLimit) {
+        this.minLimit = checkLimit(minLimit);
+        return this;
+    }
+
+    /**
+     * Maximum limit (200 by default). It should not be higher than the connections of the client.
+     */
+    public ConcurrencyLimiter maxLimit(int maxLimit) {
+        this.maxLimit = checkLimit(maxLimit);
+        return this;
+    }
+
+    public ConcurrencyLimiter mode(Mode mode) {
+        if (mode == null) {
+            throw new IllegalArgumentException("Mode cannot be null");
+        }
+        this.mode = mode;
+        return this;
+    }
+
+    /**
+     * Maximum milliseconds that a request waits in <code>QUEUE</code> mode before it is rejected (no limit by default)
+     */
+    public ConcurrencyLimiter maxWait(long maxWait) {
+        this.maxWait = maxWait >= 0 ? maxWait : Long.MAX_VALUE;
+        return this;
+    }
+
+    /**
+     * Sets false to share the limit among all the hosts called by the client (true by default)
+     */
+    public ConcurrencyLimiter perHost(boolean perHost) {
+        this.perHost = perHost;
+        return this;
+    }
+
+    public Algorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Returns the current limit of requests in flight to the host of the URI
+     */
+    public int getLimit(String uri) {
+        final Target target = targets.get(key(uri));
+        return target != null ? target.limit() : initialLimit;
+    }
+
+    /**
+     * Returns the permit to do a request to the URI. The future completes when the permit is granted, or
+     * with a {@link ConcurrencyLimitException} if the request is rejected.
+     */
+    CompletableFuture<Permit> acquire(String uri) {
+        return target(key(uri)).acquire();
+    }
+
+    /**
+     * Waits for the permit to do a request to the URI
+     *
+     * @throws RestException if the request is rejected or the thread is interrupted
+     */
+    Permit acquireAndWait(String uri) throws RestException {
+        final String key = key(uri);
+        final CompletableFuture<Permit> future = target(key).acquire();
+        try {
+            return future.get(maxWait, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            if (future.cancel(false)) {
+                throw new ConcurrencyLimitException(key, getLimit(uri));
+            }
+            // it was granted at the same time
+            return future.join();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RestException) {
+                throw (RestException) e.getCause();
+            }
+            throw new PermanentRestException(RestErrorType.GENERIC_ERROR, e.getMessage(), e);
+        } catch (InterruptedException e) {
+            if (!future.cancel(false)) {
+                future.join().release(null);
+            }
+            Thread.currentThread().interrupt();
+            throw new RetryableRestException(RestErrorType.GENERIC_ERROR, "Interrupted while waiting for the concurrency limit", e);
+        }
+    }
+
+    private String key(String uri) {
+        if (!perHost || uri == null) {
+            return "*";
+        }
+        return RateLimiter.host(uri);
+    }
+
+    private Target target(String key) {
+        return targets.computeIfAbsent(key, Target::new);
+    }
+
+    private static int checkLimit(int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException(String.format("Invalid limit [%s]", limit));
+        }
+        return limit;
+    }
+
+    public Json toJson() {
+        final Json json = Json.map()
+                .set("algorithm", algorithm.name())
+                .set("mode", mode.name());
+        final Json hosts = Json.map();
+        targets.forEach((key, target) -> hosts.set(key, target.toJson()));
+        return json.set("targets", hosts);
+    }
+
+    @Override
+    public String toString() {
+        return toJson().toString();
+    }
+
+    /**
+     * Permit of a request in flight. It has to be released once with the outcome of the request.
+     */
+    class Permit {
+        private final Target target;
+        private final AtomicBoolean released = new AtomicBoolean();
+        private volatile boolean started;
+        private volatile long start;
+
+        private Permit(Target target) {
+            this.target = target;
+        }
+
+        /**
+         * Marks the start of the request, to measure its round trip time
+         */
+        void start() {
+            start = System.nanoTime();
+            started = true;
+        }
+
+        /**
+         * Releases the permit. Responses and errors of overload are used to adjust the limit; other errors,
+         * like cancellations, and requests that were not started only release the permit.
+         *
+         * @param error the error of the request, or <code>null</code> if it was successful
+         */
+        void release(Throwable error) {
+            if (!released.compareAndSet(false, true)) {
+                return;
+            }
+            if (!started) {
+                target.release(-1, false);
+            } else if (error == null || CircuitBreaker.isFailure(error) || isResponse(error)) {
+                target.release(System.nanoTime() - start, error != null && CircuitBreaker.isFailure(error));
+            } else {
+                target.release(-1, false);
+            }
+        }
+    }
+
+    private static boolean isResponse(Throwable error) {
+        if (error instanceof RestException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        if (error instanceof ProcessingException && error.getCause() instanceof WebApplicationException) {
+            error = error.getCause();
+        }
+        return error instanceof WebApplicationException;
+    }
+
+    /**
+     * Limit and requests in flight of a host
+     */
+    private class Target {
+        private final String key;
+        private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+        private double limit = initialLimit;
+        private int inFlight;
+
+        // round trip times in nanoseconds
+        private long minRtt;
+        private int samplesSinceProbe;
+        private double longRtt;
+
+        private long requests;
+        private long queued;
+        private long rejected;
+        private long dropped;
+
+        private Target(String key) {
+            this.key = key;
+        }
+
+        private synchronized int limit() {
+            return (int) limit;
+        }
+
+        private CompletableFuture<Permit> acquire() {
+            synchronized (this) {
+                requests++;
+                if (inFlight < (int) limit) {
+                    inFlight++;
+                    return CompletableFuture.completedFuture(new Permit(this));
+                }
+                if (mode == Mode.QUEUE) {
+                    queued++;
+                    final Waiter waiter = new Waiter(maxWait);
+                    waiters.add(waiter);
+                    return waiter.future;
+                }
+                rejected++;
+            }
+            final CompletableFuture<Permit> future = new CompletableFuture<>();
+            future.completeExceptionally(new ConcurrencyLimitException(key, limit()));
+            return future;
+        }
+
+        /**
+         * Releases a permit and grants the permits of the waiting requests that fit in the limit
+         *
+         * @param rtt     round trip time of the request, or -1 if it is not a sample
+         * @param dropped true if the request failed because of overload
+         */
+        private void release(long rtt, boolean dropped) {
+            final List<Waiter> granted = new ArrayList<>();
+            final List<Waiter> expired = new ArrayList<>();
+            synchronized (this) {
+                if (rtt >= 0) {
+                    if (dropped) {
+                        this.dropped++;
+                    }
+                    update(rtt, dropped);
+                }
+                inFlight--;
+                final long now = System.nanoTime();
+                while (!waiters.isEmpty() && inFlight < (int) limit) {
+                    final Waiter waiter = waiters.poll();
+                    if (waiter.future.isDone()) {
+                        continue;
+                    }
+                    if (waiter.isExpired(now)) {
+                        expired.add(waiter);
+                        continue;
+                    }
+                    inFlight++;
+                    granted.add(waiter);
+                }
+            }
+            for (Waiter waiter : expired) {
+                waiter.future.completeExceptionally(new ConcurrencyLimitException(key, limit()));
+            }
+            for (Waiter waiter : granted) {
+                final Permit permit = new Permit(this);
+                if (!waiter.future.complete(permit)) {
+                    // cancelled in the meantime
+                    permit.release(null);
+                }
+            }
+        }
+
+        private void update(long rtt, boolean dropped) {
+            // the limit only grows if it is being used
+            final boolean limited = inFlight * 2 >= limit;
+            switch (algorithm) {
+                case AIMD:
+                    if (dropped) {
+                        limit = limit * BACKOFF_RATIO;
+                    } else if (limited) {
+                        limit = limit + 1;
+                    }
+                    break;
+                case VEGAS:
+                    if (minRtt == 0 || rtt < minRtt || ++samplesSinceProbe >= VEGAS_PROBE_SAMPLES) {
+                        minRtt = rtt;
+                        samplesSinceProbe = 0;
+                    }
+                    final double log = Math.max(1, Math.log10(limit));
+                    if (dropped) {
+                        limit = limit - log;
+                    } else if (limited) {
+                        final double queueSize = Math.ceil(limit * (1 - (double) minRtt / rtt));
+                        if (queueSize <= log) {
+                            limit = limit + 6 * log;
+                        } else if (queueSize < 3 * log) {
+                            limit = limit + log;
+                        } else if (queueSize > 6 * log) {
+                            limit = limit - log;
+                        }
+                    }
+                    break;
+                case GRADIENT:
+                    longRtt = longRtt == 0 ? rtt : longRtt + (rtt - longRtt) * 2 / (GRADIENT_WINDOW + 1);
+                    if (dropped) {
+                        limit = limit * BACKOFF_RATIO;
+                    } else if (limited) {
+                        if (longRtt / rtt > 2) {
+                            // the load is lower now, so the average has to recover faster
+                            longRtt = longRtt * 0.95;
+                        }
+                        final double gradient = Math.max(0.5, Math.min(1.0, GRADIENT_TOLERANCE * longRtt / rtt));
+                        final double newLimit = limit * gradient + Math.sqrt(limit);
+                        limit = limit * (1 - GRADIENT_SMOOTHING) + newLimit * GRADIENT_SMOOTHING;
+                    }
+                    break;
+            }
+            limit = Math.max(minLimit, Math.min(maxLimit, limit));
+        }
+
+        private synchronized Json toJson() {
+            return Json.map()
+                    .set("limit", (int) limit)
+                    .set("inFlight", inFlight)
+                    .set("waiting", waiters.size())
+                    .set("requests", requests)
+                    .set("queued", queued)
+                    .set("rejected", rejected)
+                    .set("dropped", dropped);
+        }
+    }
+
+    private class Waiter {
+        private final CompletableFuture<Permit> future = new CompletableFuture<>();
+        private final long since = System.nanoTime();
+        // requests that wait longer than this (in nanoseconds) are rejected when a permit is released
+        private final long maxWait;
+
+        private Waiter(long maxWait) {
+            this.maxWait = TimeUnit.MILLISECONDS.toNanos(maxWait);
+        }
+
+        private boolean isExpired(long now) {
+            return now - since > maxWait;
+        }
+    }
+}
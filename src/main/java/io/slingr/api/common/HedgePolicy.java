@@ -0,0 +1,157 @@
+package io.slingr.api.common;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Hedging of idempotent requests (GET, HEAD and OPTIONS) of a {@link RestClient}: when the response of a
+ * request has not arrived after a delay, the same request is sent again and the first response wins, while
+ * the other request is cancelled. This cuts the tail latency caused by slow instances of a service.
+ * <p/>
+ * <p>The delay can be fixed or follow a percentile of the latencies of the responses, so only the slowest
+ * requests are hedged. Hedges are extra load on the service, so they are limited by a {@link RetryBudget}
+ * where they count as retries, 5% of the requests by default:
+ * <p/>
+ * <code>
+ * client.setHedgePolicy(HedgePolicy.percentile(95, 20, 2000));
+ * </code>
+ * <p/>
+ * <p>Policies keep the latencies of the requests, so a policy should only be shared by clients that call the
+ * same service.
+ */
+public class HedgePolicy {
+    private static final double DEFAULT_BUDGET_RATIO = 0.05;
+    private static final int DEFAULT_BUDGET_MIN_PER_SECOND = 1;
+    // responses needed before the delay follows the percentile
+    private static final int MIN_SAMPLES = 100;
+    // the delay is calculated again every this number of responses
+    private static final int UPDATE_SAMPLES = 64;
+    // latencies are forgotten after this number of responses, so the delay follows changes of the service
+    private static final int WINDOW_SAMPLES = 10000;
+
+    private final double percentile;
+    private final long minDelay;
+    private final long maxDelay;
+    private final RetryBudget budget;
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final AtomicLong samples = new AtomicLong();
+    private volatile long delay;
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder rejectedHedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+
+    private HedgePolicy(double percentile, long minDelay, long maxDelay, RetryBudget budget) {
+        if (minDelay < 0 || maxDelay < minDelay) {
+            throw new IllegalArgumentException(String.format("Invalid hedge delays [%s] and [%s]", minDelay, maxDelay));
+        }
+        if (budget == null) {
+            throw new IllegalArgumentException("Hedge budget cannot be null");
+        }
+        this.percentile = percentile;
+        this.minDelay = minDelay;
+        this.maxDelay = maxDelay;
+        this.budget = budget;
+        // until there are enough responses to know the percentile
+        this.delay = maxDelay;
+    }
+
+    /**
+     * Sends a hedge when there is no response after the given milliseconds
+     */
+    public static HedgePolicy fixed(long delay) {
+        return new HedgePolicy(-1, delay, delay, defaultBudget());
+    }
+
+    /**
+     * Sends a hedge when there is no response after the given percentile of the latencies of the responses,
+     * limited to a range of milliseconds. The max delay is used until there are enough responses.
+     *
+     * @param percentile percentile between 0 and 100, like 95
+     * @param minDelay   min delay in milliseconds
+     * @param maxDelay   max delay in milliseconds
+     */
+    public static HedgePolicy percentile(double percentile, long minDelay, long maxDelay) {
+        if (percentile <= 0 || percentile >= 100) {
+            throw new IllegalArgumentException(String.format("Invalid hedge percentile [%s]", percentile));
+        }
+        return new HedgePolicy(percentile, minDelay, maxDelay, defaultBudget());
+    }
+
+    /**
+     * Returns a copy of the policy that limits the hedges with the given budget
+     */
+    public HedgePolicy withBudget(RetryBudget budget) {
+        return new HedgePolicy(percentile, minDelay, maxDelay, budget);
+    }
+
+    private static RetryBudget defaultBudget() {
+        return new RetryBudget(DEFAULT_BUDGET_RATIO, DEFAULT_BUDGET_MIN_PER_SECOND);
+    }
+
+    /**
+     * Milliseconds to wait for a response before sending a hedge
+     */
+    public long getDelay() {
+        return delay;
+    }
+
+    public RetryBudget getBudget() {
+        return budget;
+    }
+
+    void onRequest() {
+        requests.increment();
+        budget.onRequest();
+    }
+
+    /**
+     * Returns true if a hedge can be sent, counting it in the budget
+     */
+    boolean tryHedge() {
+        if (budget.tryRetry()) {
+            hedges.increment();
+            return true;
+        }
+        rejectedHedges.increment();
+        return false;
+    }
+
+    void onHedgeWin() {
+        hedgeWins.increment();
+    }
+
+    /**
+     * Records the latency of a response, since its request was sent
+     */
+    void record(long nanos) {
+        if (percentile < 0) {
+            return;
+        }
+        latencies.recordNanos(nanos);
+        final long count = samples.incrementAndGet();
+        if (count >= MIN_SAMPLES && count % UPDATE_SAMPLES == 0) {
+            final long value = latencies.getValueAtPercentile(percentile) / 1000;
+            delay = Math.max(minDelay, Math.min(value, maxDelay));
+            if (count >= WINDOW_SAMPLES) {
+                latencies.reset();
+                samples.set(0);
+            }
+        }
+    }
+
+    public Json toJson() {
+        return Json.map()
+                .set("percentile", percentile > 0 ? percentile : null)
+                .set("delay", delay)
+                .set("requests", requests.sum())
+                .set("hedges", hedges.sum())
+                .set("rejectedHedges", rejectedHedges.sum())
+                .set("hedgeWins", hedgeWins.sum());
+    }
+
+    @Override
+    public String toString() {
+        return toJson().toString();
+    }
+}
@@ -0,0 +1,445 @@
+package io.slingr.api.common;
+
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.ext.ReaderInterceptor;
+import javax.ws.rs.ext.ReaderInterceptorContext;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+import java.io.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.*;
+
+/**
+ * <p>Compression of the bodies of requests and responses with gzip and deflate. It is registered in the
+ * clients by {@link RestClientFactory} according to the options of compression.
+ * <p/>
+ * <p>Responses are decompressed while they are read, so the compressed body is never kept in memory.
+ * Request bodies are compressed with gzip when they are bigger than the threshold; only bodies of known
+ * size (strings and bytes, like the Json content sent by {@link RestClient}) are compressed.
+ * <p/>
+ * <p>Deflaters and inflaters use native memory that is only released when they are ended or collected,
+ * so they are kept in pools and reused between requests.
+ */
+class HttpCompression implements ClientRequestFilter, WriterInterceptor, ReaderInterceptor {
+    static final String GZIP = "gzip";
+    static final String DEFLATE = "deflate";
+
+    private static final String COMPRESS_PROPERTY = HttpCompression.class.getName() + ".compress";
+    static final String ACCEPT_ENCODING = "gzip, deflate";
+    private static final int POOL_SIZE = 32;
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private static final Pool<Deflater> DEFLATERS = new Pool<>();
+    private static final Pool<Inflater> GZIP_INFLATERS = new Pool<>();
+    private static final Pool<Inflater> ZLIB_INFLATERS = new Pool<>();
+
+    private final boolean compressResponses;
+    private final boolean compressRequests;
+    private final int requestThreshold;
+
+    /**
+     * @param compressResponses if responses can be compressed by the server
+     * @param compressRequests  if bodies of requests are compressed
+     * @param requestThreshold  minimum size in bytes of the bodies of requests to compress them
+     */
+    HttpCompression(boolean compressResponses, boolean compressRequests, int requestThreshold) {
+        this.compressResponses = compressResponses;
+        this.compressRequests = compressRequests;
+        this.requestThreshold = Math.max(requestThreshold, 0);
+    }
+
+    @Override
+    public void filter(ClientRequestContext request) {
+        if (compressResponses && !request.getHeaders().containsKey(HttpHeaders.ACCEPT_ENCODING)) {
+            request.getHeaders().putSingle(HttpHeaders.ACCEPT_ENCODING, ACCEPT_ENCODING);
+        }
+        if (compressRequests && request.hasEntity() && !request.getHeaders().containsKey(HttpHeaders.CONTENT_ENCODING)) {
+            final long size = bodySize(request.getEntity());
+            if (size >= requestThreshold) {
+                request.getHeaders().putSingle(HttpHeaders.CONTENT_ENCODING, GZIP);
+                request.setProperty(COMPRESS_PROPERTY, Boolean.TRUE);
+            }
+        }
+    }
+
+    @Override
+    public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+        if (!Boolean.TRUE.equals(context.getProperty(COMPRESS_PROPERTY))) {
+            context.proceed();
+            return;
+        }
+        final GzipOutputStream gzip = new GzipOutputStream(context.getOutputStream());
+        context.setOutputStream(gzip);
+        try {
+            context.proceed();
+            gzip.finish();
+        } finally {
+            gzip.release();
+        }
+    }
+
+    @Override
+    public Object aroundReadFrom(ReaderInterceptorContext context) throws IOException {
+        final String encoding = context.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING);
+        if (encoding != null) {
+            final InputStream decoded = decode(encoding, context.getInputStream());
+            if (decoded != null) {
+                context.getHeaders().remove(HttpHeaders.CONTENT_ENCODING);
+                context.setInputStream(decoded);
+            }
+        }
+        return context.proceed();
+    }
+
+    /**
+     * Returns the stream that decompresses a body with the given content encoding, or <code>null</code> if
+     * the encoding is not supported
+     */
+    static InputStream decode(String encoding, InputStream in) throws IOException {
+        final String value = encoding.trim().toLowerCase();
+        if (value.equals(GZIP) || value.equals("x-gzip")) {
+            return new GzipInputStream(in);
+        } else if (value.equals(DEFLATE)) {
+            return deflateInputStream(in);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the size in bytes of the body, or -1 if it is not known before writing it
+     */
+    private static long bodySize(Object entity) {
+        if (entity instanceof byte[]) {
+            return ((byte[]) entity).length;
+        } else if (entity instanceof String) {
+            // the length in chars is a lower bound of the size in bytes, good enough for the threshold
+            return ((String) entity).length();
+        }
+        return -1;
+    }
+
+    /**
+     * The deflate encoding of HTTP should be a zlib stream, but some servers send raw deflate data, so
+     * the zlib header is checked first
+     */
+    private static InputStream deflateInputStream(InputStream in) throws IOException {
+        final PushbackInputStream pushback = new PushbackInputStream(in, 2);
+        final int b0 = pushback.read();
+        final int b1 = b0 >= 0 ? pushback.read() : -1;
+        if (b1 >= 0) {
+            pushback.unread(b1);
+        }
+        if (b0 >= 0) {
+            pushback.unread(b0);
+        }
+        final boolean zlib = b0 >= 0 && b1 >= 0 && (b0 & 0x0F) == 8 && ((b0 << 8) | b1) % 31 == 0;
+        return new PooledInflaterInputStream(pushback, zlib ? ZLIB_INFLATERS : GZIP_INFLATERS, !zlib);
+    }
+
+    /**
+     * Bounded pool of deflaters and inflaters. Instances that do not fit in the pool are ended.
+     */
+    private static class Pool<T> {
+        private final BlockingQueue<T> instances = new ArrayBlockingQueue<>(POOL_SIZE);
+
+        private T poll() {
+            return instances.poll();
+        }
+
+        private void release(T instance) {
+            if (instance instanceof Deflater) {
+                ((Deflater) instance).reset();
+            } else {
+                ((Inflater) instance).reset();
+            }
+            if (!instances.offer(instance)) {
+                if (instance instanceof Deflater) {
+                    ((Deflater) instance).end();
+                } else {
+                    ((Inflater) instance).end();
+                }
+            }
+        }
+    }
+
+    private static Deflater deflater() {
+        final Deflater deflater = DEFLATERS.poll();
+        return deflater != null ? deflater : new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    }
+
+    private static Inflater inflater(Pool<Inflater> pool, boolean nowrap) {
+        final Inflater inflater = pool.poll();
+        return inflater != null ? inflater : new Inflater(nowrap);
+    }
+
+    /**
+     * Writes the gzip format (RFC 1952) with a pooled deflater
+     */
+    static class GzipOutputStream extends DeflaterOutputStream {
+        private static final byte[] HEADER = {(byte) 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+        private final CRC32 crc = new CRC32();
+        private boolean headerWritten = false;
+        private boolean finished = false;
+        private boolean released = false;
+
+        GzipOutputStream(OutputStream out) {
+            super(out, deflater(), BUFFER_SIZE);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            checkNotReleased();
+            writeHeader();
+            super.write(b, off, len);
+            crc.update(b, off, len);
+        }
+
+        @Override
+        public void finish() throws IOException {
+            if (finished) {
+                return;
+            }
+            checkNotReleased();
+            writeHeader();
+            super.finish();
+            final long crcValue = crc.getValue();
+            final long size = def.getBytesRead();
+            final byte[] trailer = new byte[8];
+            writeInt(trailer, 0, (int) crcValue);
+            writeInt(trailer, 4, (int) size);
+            out.write(trailer);
+            finished = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                // a stream released before it was finished failed, so it is closed without writing anything else
+                if (!released) {
+                    finish();
+                }
+                out.close();
+            } finally {
+                release();
+            }
+        }
+
+        /**
+         * Returns the deflater to the pool. The stream cannot be used after it, because the deflater may be
+         * used by another stream.
+         */
+        void release() {
+            if (!released) {
+                released = true;
+                DEFLATERS.release(def);
+            }
+        }
+
+        private void checkNotReleased() throws IOException {
+            if (released) {
+                throw new IOException("Stream cannot be used after its deflater was released");
+            }
+        }
+
+        private void writeHeader() throws IOException {
+            if (!headerWritten) {
+                out.write(HEADER);
+                headerWritten = true;
+            }
+        }
+
+        private static void writeInt(byte[] buffer, int offset, int value) {
+            buffer[offset] = (byte) value;
+            buffer[offset + 1] = (byte) (value >> 8);
+            buffer[offset + 2] = (byte) (value >> 16);
+            buffer[offset + 3] = (byte) (value >> 24);
+        }
+    }
+
+    /**
+     * Inflates a stream with a pooled inflater, that is returned to the pool when the end of the data
+     * is reached or the stream is closed
+     */
+    private static class PooledInflaterInputStream extends InflaterInputStream {
+        private final Pool<Inflater> pool;
+        private boolean released = false;
+
+        private PooledInflaterInputStream(InputStream in, Pool<Inflater> pool, boolean nowrap) {
+            super(in, inflater(pool, nowrap), BUFFER_SIZE);
+            this.pool = pool;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (released) {
+                return -1;
+            }
+            final int read = super.read(b, off, len);
+            if (read < 0) {
+                release();
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                release();
+            }
+        }
+
+        private void release() {
+            if (!released) {
+                released = true;
+                pool.release(inf);
+            }
+        }
+    }
+
+    /**
+     * Reads the gzip format (RFC 1952) with a pooled inflater. Concatenated members are read as a single
+     * stream, like {@link GZIPInputStream} does.
+     */
+    static class GzipInputStream extends InflaterInputStream {
+        private static final int FHCRC = 2;
+        private static final int FEXTRA = 4;
+        private static final int FNAME = 8;
+        private static final int FCOMMENT = 16;
+
+        private final CRC32 crc = new CRC32();
+        private boolean eos = false;
+        private boolean released = false;
+
+        GzipInputStream(InputStream in) throws IOException {
+            super(new PushbackInputStream(in, BUFFER_SIZE), inflater(GZIP_INFLATERS, true), BUFFER_SIZE);
+            try {
+                readHeader(this.in);
+            } catch (IOException e) {
+                release();
+                throw e;
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (eos) {
+                return -1;
+            }
+            int read = super.read(b, off, len);
+            if (read == -1) {
+                if (readTrailer()) {
+                    eos = true;
+                    release();
+                } else {
+                    return read(b, off, len);
+                }
+            } else {
+                crc.update(b, off, read);
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                release();
+            }
+        }
+
+        private void release() {
+            if (!released) {
+                released = true;
+                GZIP_INFLATERS.release(inf);
+            }
+        }
+
+        private void readHeader(InputStream stream) throws IOException {
+            final CheckedInputStream checked = new CheckedInputStream(stream, crc);
+            crc.reset();
+            if (readUShort(checked) != 0x8b1f) {
+                throw new ZipException("Not in GZIP format");
+            }
+            if (readUByte(checked) != Deflater.DEFLATED) {
+                throw new ZipException("Unsupported compression method");
+            }
+            final int flags = readUByte(checked);
+            skipBytes(checked, 6);
+            if ((flags & FEXTRA) == FEXTRA) {
+                skipBytes(checked, readUShort(checked));
+            }
+            if ((flags & FNAME) == FNAME) {
+                while (readUByte(checked) != 0) {
+                    // skip name
+                }
+            }
+            if ((flags & FCOMMENT) == FCOMMENT) {
+                while (readUByte(checked) != 0) {
+                    // skip comment
+                }
+            }
+            if ((flags & FHCRC) == FHCRC) {
+                final int headerCrc = (int) crc.getValue() & 0xffff;
+                if (readUShort(checked) != headerCrc) {
+                    throw new ZipException("Corrupt GZIP header");
+                }
+            }
+            crc.reset();
+        }
+
+        /**
+         * Checks the trailer of the member. Returns true if it is the end of the stream, or false if
+         * another member follows and its header has been read.
+         */
+        private boolean readTrailer() throws IOException {
+            final PushbackInputStream pushback = (PushbackInputStream) this.in;
+            final int remaining = inf.getRemaining();
+            if (remaining > 0) {
+                pushback.unread(buf, len - remaining, remaining);
+            }
+            if (readUInt(pushback) != crc.getValue() || readUInt(pushback) != (inf.getBytesWritten() & 0xffffffffL)) {
+                throw new ZipException("Corrupt GZIP trailer");
+            }
+            final int next = pushback.read();
+            if (next < 0) {
+                return true;
+            }
+            pushback.unread(next);
+            inf.reset();
+            readHeader(pushback);
+            return false;
+        }
+
+        private static long readUInt(InputStream in) throws IOException {
+            final long s = readUShort(in);
+            return ((long) readUShort(in) << 16) | s;
+        }
+
+        private static int readUShort(InputStream in) throws IOException {
+            final int b = readUByte(in);
+            return (readUByte(in) << 8) | b;
+        }
+
+        private static int readUByte(InputStream in) throws IOException {
+            final int b = in.read();
+            if (b == -1) {
+                throw new EOFException();
+            }
+            return b;
+        }
+
+        private static void skipBytes(InputStream in, int n) throws IOException {
+            while (n > 0) {
+                readUByte(in);
+                n--;
+            }
+        }
+    }
+}
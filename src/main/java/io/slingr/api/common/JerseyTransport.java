@@ -0,0 +1,96 @@
+package io.slingr.api.common;
+
+import org.glassfish.jersey.client.ClientProperties;
+
+import javax.ws.rs.client.AsyncInvoker;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.client.InvocationCallback;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+/**
+ * Transport that sends the requests with the Jersey client of the target, the default one
+ */
+final class JerseyTransport implements Transport {
+    static final JerseyTransport INSTANCE = new JerseyTransport();
+
+    private JerseyTransport() {
+    }
+
+    @Override
+    public Response execute(TransportRequest request) {
+        final Invocation.Builder invocationBuilder = buildInvocation(request);
+        final Entity<?> postData = request.getEntity();
+        switch (request.getMethod()) {
+            case POST:
+                return invocationBuilder.post(postData);
+            case PUT:
+                return invocationBuilder.put(postData);
+            case PATCH:
+                return invocationBuilder.method(RestMethod.PATCH.name(), postData);
+            case DELETE:
+                if (postData != null) {
+                    return invocationBuilder.method(RestMethod.DELETE.name(), postData);
+                } else {
+                    return invocationBuilder.delete();
+                }
+            case HEAD:
+                return invocationBuilder.head();
+            case OPTIONS:
+                return invocationBuilder.options();
+            default:
+                // GET by default
+                return invocationBuilder.get();
+        }
+    }
+
+    @Override
+    public CompletableFuture<Response> executeAsync(TransportRequest request) {
+        final CompletableFuture<Response> result = new CompletableFuture<>();
+        final InvocationCallback<Response> callback = new InvocationCallback<Response>() {
+            @Override
+            public void completed(Response response) {
+                if (!result.complete(response)) {
+                    // cancelled while the response was received
+                    response.close();
+                }
+            }
+
+            @Override
+            public void failed(Throwable throwable) {
+                result.completeExceptionally(throwable);
+            }
+        };
+        final AsyncInvoker invoker = buildInvocation(request).async();
+        final Future<Response> future;
+        if (request.hasBody()) {
+            future = invoker.method(request.getMethod().name(), request.getEntity(), callback);
+        } else {
+            future = invoker.method(request.getMethod().name(), callback);
+        }
+        result.whenComplete((response, ex) -> {
+            if (ex != null) {
+                // like in the Apache transport, the thread that sends the request is not interrupted, as it could
+                // leak the connection it is waiting for; the response is closed by the callback when it arrives
+                future.cancel(false);
+            }
+        });
+        return result;
+    }
+
+    private static Invocation.Builder buildInvocation(TransportRequest request) {
+        final Invocation.Builder invocationBuilder = request.getTarget().request();
+        invocationBuilder.accept(MediaType.APPLICATION_JSON_TYPE);
+        request.getHeaders().forEach(invocationBuilder::header);
+        if (request.getConnectionTimeout() != null) {
+            invocationBuilder.property(ClientProperties.CONNECT_TIMEOUT, request.getConnectionTimeout());
+        }
+        if (request.getReadTimeout() != null) {
+            invocationBuilder.property(ClientProperties.READ_TIMEOUT, request.getReadTimeout());
+        }
+        return invocationBuilder;
+    }
+}
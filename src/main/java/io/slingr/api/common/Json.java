@@ -2,11 +2,15 @@ package io.slingr.api.common;
 
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonSerializer;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializerProvider;
 import com.fasterxml.jackson.databind.module.SimpleModule;
 import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
@@ -14,6 +18,9 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
 import java.util.*;
 
 import static org.apache.commons.io.FileUtils.toFile;
@@ -52,9 +59,15 @@ public class Json {
 
     private Map<String, Object> map;
     private List<Object> list;
+    // secondary indexes attached to the list, see JsonIndex
+    private List<JsonIndex> indexes;
 
     private final static String NULL_TOKEN = "null";
     private final static ObjectMapper OBJECT_MAPPER;
+    private final static JsonArrayParser ARRAY_PARSER;
+    private final static JsonTreeCodec TEXT_CODEC;
+    private final static JsonTreeCodec SMILE_CODEC;
+    private final static JsonTreeCodec CBOR_CODEC;
 
     static {
         OBJECT_MAPPER = new ObjectMapper();
@@ -66,6 +79,16 @@ public class Json {
         mod.addSerializer(new CustomSerializer(Json.class));
 
         OBJECT_MAPPER.registerModule(mod);    // Register the module on the mapper
+
+        ARRAY_PARSER = new JsonArrayParser(OBJECT_MAPPER);
+        TEXT_CODEC = new JsonTreeCodec(OBJECT_MAPPER.getFactory(), OBJECT_MAPPER);
+
+        // binary formats; smile back-references make repeated field names and short values almost free
+        SmileFactory smileFactory = new SmileFactory();
+        smileFactory.configure(SmileGenerator.Feature.CHECK_SHARED_NAMES, true);
+        smileFactory.configure(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES, true);
+        SMILE_CODEC = new JsonTreeCodec(smileFactory, OBJECT_MAPPER);
+        CBOR_CODEC = new JsonTreeCodec(new CBORFactory(), OBJECT_MAPPER);
     }
 
     public interface ListGenerator<T> {
@@ -166,6 +189,8 @@ public class Json {
         if (!isList()) {
             throw new IllegalStateException("Operation not supported for a map");
         }
+        // indexes go first, so a duplicated key in a unique index leaves the list untouched
+        indexAdded(value);
         list.add(value);
         return this;
     }
@@ -174,10 +199,32 @@ public class Json {
         if (!isList() || !value.isList()) {
             throw new IllegalStateException("Operation not supported for a map");
         }
+        if (indexes != null) {
+            // all the values are indexed before they are added, and a failure leaves the indexes as they were
+            for (int i = 0; i < value.list.size(); i++) {
+                try {
+                    indexAdded(value.list.get(i));
+                } catch (RuntimeException e) {
+                    for (int j = 0; j < i; j++) {
+                        indexRemoved(value.list.get(j));
+                    }
+                    throw e;
+                }
+            }
+        }
         list.addAll(value.list);
         return this;
     }
 
+    public Json remove(int index) {
+        if (!isList()) {
+            throw new IllegalStateException("Operation not supported for a map");
+        }
+        Object value = list.remove(index);
+        indexRemoved(value);
+        return this;
+    }
+
     // Methods to read JSON
 
     public Object findPropInRootLevel(String prop) {
@@ -455,7 +502,7 @@ public class Json {
                 map.put(entry.getKey(), entry.getValue());
             }
         } else if (isList() && json.isList()) {
-            list.addAll(json.list);
+            pushAll(json);
         } else {
             throw new IllegalArgumentException("You cannot merge a list with a map");
         }
@@ -468,6 +515,104 @@ public class Json {
         return map.keySet();
     }
 
+    // Indexes
+
+    public JsonIndex index(JsonIndex.Type type, String path) {
+        switch (type) {
+            case UNIQUE: return JsonIndex.unique(this, path);
+            case SORTED: return JsonIndex.sorted(this, path);
+            default: return JsonIndex.multi(this, path);
+        }
+    }
+
+    Map<String, Object> rawMap() {
+        return map;
+    }
+
+    void addIndex(JsonIndex index) {
+        if (indexes == null) {
+            indexes = new ArrayList<>(2);
+        }
+        indexes.add(index);
+    }
+
+    /**
+     * Returns a hash index attached to this list over the given path, if there is one
+     */
+    JsonIndex findIndex(String path) {
+        if (indexes != null) {
+            for (JsonIndex jsonIndex : indexes) {
+                if (jsonIndex.getType() != JsonIndex.Type.SORTED && jsonIndex.getPath().equals(path)) {
+                    return jsonIndex;
+                }
+            }
+        }
+        return null;
+    }
+
+    void removeIndex(JsonIndex index) {
+        if (indexes != null) {
+            indexes.remove(index);
+            if (indexes.isEmpty()) {
+                indexes = null;
+            }
+        }
+    }
+
+    private void indexAdded(Object value) {
+        if (indexes != null) {
+            for (int i = 0; i < indexes.size(); i++) {
+                try {
+                    indexes.get(i).added(value);
+                } catch (RuntimeException e) {
+                    // the value is taken out of the indexes updated before the failure
+                    for (int j = 0; j < i; j++) {
+                        indexes.get(j).removed(value);
+                    }
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private void indexRemoved(Object value) {
+        if (indexes != null) {
+            for (JsonIndex jsonIndex : indexes) {
+                jsonIndex.removed(value);
+            }
+        }
+    }
+
+    /**
+     * Inserts the value in the list at the given position, updating the indexes
+     */
+    private void insert(int index, Object value) {
+        list.add(index, value);
+        try {
+            indexAdded(value);
+        } catch (RuntimeException e) {
+            list.remove(index);
+            throw e;
+        }
+    }
+
+    /**
+     * Replaces the value in the given position of the list, updating the indexes
+     */
+    private void replace(int index, Object value) {
+        final Object previous = list.get(index);
+        if (indexes != null) {
+            indexRemoved(previous);
+            try {
+                indexAdded(value);
+            } catch (RuntimeException e) {
+                indexAdded(previous);
+                throw e;
+            }
+        }
+        list.set(index, value);
+    }
+
     // Methods to convert
 
     public Map<String, Object> toMap() {
@@ -611,6 +756,14 @@ public class Json {
     public static Json parse(String stringBody, boolean allowEscaped, boolean throwException) {
         // if the string starts with a square brakets we assume it is an array
         if (StringUtils.isNotBlank(stringBody) && stringBody.trim().startsWith("[")) {
+            if (ARRAY_PARSER.accepts(stringBody)) {
+                // big arrays are parsed in chunks in parallel
+                configureToAllowEscapeChars(allowEscaped);
+                Json json = ARRAY_PARSER.parse(stringBody);
+                if (json != null) {
+                    return json;
+                }
+            }
             List list = stringToList(stringBody, allowEscaped);
             return fromList(list);
         } else {
@@ -619,6 +772,41 @@ public class Json {
         }
     }
 
+    /**
+     * Parses the JSON read from the stream, building the tree directly from the tokens without reading
+     * the whole content into a string first. The encoding (UTF-8, UTF-16 or UTF-32) is detected from the
+     * content.
+     * <p/>
+     * <p>Like {@link #parse(String)}, empty content is parsed as an empty map and content that is not
+     * well-formed is logged and parsed as an empty map.
+     *
+     * @throws IOException if the stream cannot be read
+     */
+    public static Json parse(InputStream stream) throws IOException {
+        configureToAllowEscapeChars(false);
+        try {
+            return TEXT_CODEC.decode(stream);
+        } catch (JsonProcessingException e) {
+            logger.warn("Could not convert stream to Json", e);
+            return Json.map();
+        }
+    }
+
+    /**
+     * Parses the JSON read from the reader. See {@link #parse(InputStream)}.
+     *
+     * @throws IOException if the reader cannot be read
+     */
+    public static Json parse(Reader reader) throws IOException {
+        configureToAllowEscapeChars(false);
+        try {
+            return TEXT_CODEC.decode(reader);
+        } catch (JsonProcessingException e) {
+            logger.warn("Could not convert reader to Json", e);
+            return Json.map();
+        }
+    }
+
     public static Json fromFile(String filename) throws IOException {
         File file = toFile(Json.class.getResource(filename));
         String fileContent = FileUtils.readFileToString(file);
@@ -759,6 +947,52 @@ public class Json {
         return result;
     }
 
+    /**
+     * Writes the Json as text to the stream, without building the string first. The stream is not closed.
+     */
+    void writeTo(OutputStream out) throws IOException {
+        TEXT_CODEC.writeTo(this, out);
+    }
+
+    /**
+     * Encodes the Json in the binary Smile format. It is more compact and faster to read than
+     * the text representation, so it is useful to cache or store Json objects.
+     */
+    public byte[] toSmile() {
+        return SMILE_CODEC.encode(this);
+    }
+
+    public static Json fromSmile(byte[] smile) {
+        return SMILE_CODEC.decode(smile);
+    }
+
+    public static Json fromSmile(InputStream smile) throws IOException {
+        return SMILE_CODEC.decode(smile);
+    }
+
+    /**
+     * Encodes the Json in the binary CBOR format (RFC 7049)
+     */
+    public byte[] toCbor() {
+        return CBOR_CODEC.encode(this);
+    }
+
+    public static Json fromCbor(byte[] cbor) {
+        return CBOR_CODEC.decode(cbor);
+    }
+
+    /**
+     * Returns an estimation of the bytes of heap retained by this Json, including nested values.
+     * See {@link JsonMemoryStats} for a detailed report.
+     */
+    public long estimateRetainedBytes() {
+        return JsonMemoryStats.estimate(this);
+    }
+
+    public JsonMemoryStats memoryStats() {
+        return JsonMemoryStats.of(this);
+    }
+
     public Json cloneJson() {
         Json json;
         if (isMap()) {
@@ -769,6 +1003,48 @@ public class Json {
         return json;
     }
 
+    /**
+     * Returns a copy of the Json where nested maps, lists and dates are copied too, so changes in the
+     * copy never affect this Json. {@link #cloneJson()} keeps the references to nested Json objects.
+     */
+    public Json deepClone() {
+        return (Json) deepCloneValue(this);
+    }
+
+    private static Object deepCloneValue(Object value) {
+        if (value instanceof Json) {
+            final Json json = (Json) value;
+            if (json.isMap()) {
+                final Json copy = Json.map();
+                for (Map.Entry<String, Object> entry : json.map.entrySet()) {
+                    copy.map.put(entry.getKey(), deepCloneValue(entry.getValue()));
+                }
+                return copy;
+            } else {
+                final Json copy = Json.list();
+                for (Object element : json.list) {
+                    copy.list.add(deepCloneValue(element));
+                }
+                return copy;
+            }
+        } else if (value instanceof Map) {
+            final Json copy = Json.map();
+            for (Map.Entry<String, Object> entry : ((Map<String, Object>) value).entrySet()) {
+                copy.map.put(entry.getKey(), deepCloneValue(entry.getValue()));
+            }
+            return copy;
+        } else if (value instanceof Collection) {
+            final Json copy = Json.list();
+            for (Object element : (Collection<Object>) value) {
+                copy.list.add(deepCloneValue(element));
+            }
+            return copy;
+        } else if (value instanceof Date) {
+            return ((Date) value).clone();
+        }
+        return value;
+    }
+
     public int size() {
         if (isMap()) {
             return map.size();
@@ -1201,9 +1477,9 @@ public class Json {
             if (path.isEmpty()) {
                 Boolean shiftElements = Boolean.TRUE.equals(options.object("shiftElements"));
                 if (shiftElements) {
-                    list.list.add(index, value);
+                    list.insert(index, value);
                 } else {
-                    list.list.set(index, value);
+                    list.replace(index, value);
                 }
             } else {
                 Json nestedMap = (Json) list.list.get(index);
@@ -1239,7 +1515,7 @@ public class Json {
             Json list = (Json) map.object(PathUtils.removeIndex(key));
             int index = PathUtils.getIndex(key);
             if (path.isEmpty()) {
-                list.list.remove(index);
+                list.remove(index);
             } else {
                 Object nestedMap = list.list.get(index);
                 if (nestedMap instanceof Json) {
@@ -0,0 +1,220 @@
+package io.slingr.api.common;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * <p>Parser for big JSON strings with an array at the top level. It does a quick scan of the
+ * string to find where each element of the array starts and ends (skipping strings and escaped
+ * characters), and then parses groups of elements in parallel, joining the results in order.
+ * The string is read in place, so the input is not copied to parse it.
+ * <p/>
+ * <p>It is used by {@link Json#parse(String)} when the string is big enough to be worth it.
+ */
+class JsonArrayParser {
+    private static final Logger logger = LoggerFactory.getLogger(JsonArrayParser.class);
+
+    // strings shorter than this are parsed sequentially
+    static final int PARALLEL_THRESHOLD = 1024 * 1024;
+    // minimum number of characters that a chunk of elements should have
+    private static final int MIN_CHUNK_SIZE = 64 * 1024;
+    // number of chunks per thread, so threads that finish earlier can take more work
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private final ObjectMapper mapper;
+    private final ForkJoinPool pool;
+
+    JsonArrayParser(ObjectMapper mapper) {
+        this(mapper, ForkJoinPool.commonPool());
+    }
+
+    JsonArrayParser(ObjectMapper mapper, ForkJoinPool pool) {
+        this.mapper = mapper;
+        this.pool = pool;
+    }
+
+    /**
+     * Returns true if the string should be parsed with this parser
+     */
+    boolean accepts(String jsonString) {
+        return jsonString != null && jsonString.length() >= PARALLEL_THRESHOLD && pool.getParallelism() > 1;
+    }
+
+    /**
+     * Parses the array. It returns <code>null</code> if the string is not a well-formed array, so the
+     * caller can fall back to the sequential parser (that takes care of reporting the error).
+     */
+    Json parse(String jsonString) {
+        final int[] bounds = scan(jsonString);
+        if (bounds == null) {
+            return null;
+        }
+        final int elements = bounds.length / 2;
+        final Json result = Json.list();
+        if (elements == 0) {
+            return result;
+        }
+
+        // groups of consecutive elements of similar size
+        final int targetChunkSize = Math.max(MIN_CHUNK_SIZE, jsonString.length() / (pool.getParallelism() * CHUNKS_PER_THREAD));
+        final List<Callable<Json>> chunks = new ArrayList<>();
+        int first = 0;
+        for (int i = 0; i < elements; i++) {
+            final boolean last = i == elements - 1;
+            if (last || bounds[2 * i + 1] - bounds[2 * first] >= targetChunkSize) {
+                final int from = first;
+                final int to = i + 1;
+                chunks.add(() -> parseChunk(jsonString, bounds, from, to));
+                first = to;
+            }
+        }
+
+        try {
+            for (Future<Json> chunk : pool.invokeAll(chunks)) {
+                result.pushAll(chunk.get());
+            }
+        } catch (Exception e) {
+            logger.debug("Could not parse array in parallel", e);
+            return null;
+        }
+        return result;
+    }
+
+    private Json parseChunk(String jsonString, int[] bounds, int from, int to) throws Exception {
+        final List<Object> values = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            final int start = bounds[2 * i];
+            try (JsonParser parser = mapper.getFactory().createParser(new RangeReader(jsonString, start, bounds[2 * i + 1]))) {
+                parser.nextToken();
+                values.add(mapper.readValue(parser, Object.class));
+                if (parser.nextToken() != null) {
+                    throw new IllegalArgumentException(String.format("Unexpected content after element at position [%s]", start));
+                }
+            }
+        }
+        return Json.fromList(values);
+    }
+
+    /**
+     * Finds the start (inclusive) and end (exclusive) positions of the elements of the top level
+     * array. They are returned as consecutive pairs. If the array is not well-formed it returns
+     * <code>null</code>.
+     */
+    static int[] scan(String chars) {
+        final int length = chars.length();
+        int i = skipWhitespace(chars, 0);
+        if (i >= length || chars.charAt(i) != '[') {
+            return null;
+        }
+        i++;
+
+        int[] bounds = new int[1024];
+        int count = 0;
+        int depth = 0;
+        int start = -1;
+        boolean inString = false;
+        boolean escaped = false;
+        int end = -1;
+        for (; i < length; i++) {
+            final char c = chars.charAt(i);
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    inString = false;
+                }
+                continue;
+            }
+            if (start < 0 && !isWhitespace(c) && c != ',' && c != ']') {
+                start = i;
+            }
+            if (c == '"') {
+                inString = true;
+            } else if (c == '{' || c == '[') {
+                depth++;
+            } else if ((c == '}' || c == ']') && depth > 0) {
+                depth--;
+            } else if (depth == 0 && (c == ',' || c == ']')) {
+                if (start >= 0) {
+                    if (count + 2 > bounds.length) {
+                        bounds = Arrays.copyOf(bounds, bounds.length * 2);
+                    }
+                    bounds[count++] = start;
+                    bounds[count++] = trimEnd(chars, start, i);
+                    start = -1;
+                } else if (c == ',' || count > 0) {
+                    // empty element like in [1,,2] or [1,]
+                    return null;
+                }
+                if (c == ']') {
+                    end = i;
+                    break;
+                }
+            }
+        }
+        if (end < 0 || inString || skipWhitespace(chars, end + 1) != length) {
+            return null;
+        }
+        return Arrays.copyOf(bounds, count);
+    }
+
+    private static int trimEnd(String chars, int start, int end) {
+        while (end > start && isWhitespace(chars.charAt(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+
+    private static int skipWhitespace(String chars, int i) {
+        while (i < chars.length() && isWhitespace(chars.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    /**
+     * Reader of a range of a string, that copies the characters to the buffer of the parser as they are read
+     */
+    private static class RangeReader extends Reader {
+        private final String string;
+        private final int end;
+        private int position;
+
+        private RangeReader(String string, int start, int end) {
+            this.string = string;
+            this.position = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) {
+            if (position >= end) {
+                return -1;
+            }
+            final int count = Math.min(length, end - position);
+            string.getChars(position, position + count, buffer, offset);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package io.slingr.api.common;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p>Overrides the name of the field in the Json for a method of a {@link JsonRecord} interface.
+ * By default the name of the method is used (without the <code>get</code> or <code>is</code> prefix).
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.METHOD)
+public @interface JsonField {
+    String value();
+}
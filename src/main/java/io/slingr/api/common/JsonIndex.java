@@ -0,0 +1,367 @@
+package io.slingr.api.common;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * <p>Secondary index over the elements of a list {@link Json}. It allows to look up records by
+ * a field (for example <code>id</code> or <code>customer.id</code>) without scanning the whole list:
+ * <p/>
+ * <code>
+ * JsonIndex byId = JsonIndex.unique(records, "id");
+ * Json record = byId.get("5506fc44c2eee3b1a7025c4e");
+ * <p/>
+ * JsonIndex byCustomer = JsonIndex.multi(records, "customer.id");
+ * List&lt;Json&gt; orders = byCustomer.getAll(customerId);
+ * <p/>
+ * JsonIndex byAmount = JsonIndex.sorted(records, "amount");
+ * List&lt;Json&gt; orders = byAmount.range(100, true, 500, false);
+ * </code>
+ * <p/>
+ * <p>Once created, the index is attached to the list and it is updated when elements are added or
+ * removed through {@link Json#push(Object)}, {@link Json#pushAll(Json)}, {@link Json#remove(int)}, and
+ * {@link Json#setByPath} or {@link Json#removeByPath(String)} with a path that ends in an element of the
+ * list (like <code>items[2]</code>). When one of the indexes rejects an element, none of them keeps it.
+ * Changes done directly on the underlying list or on the fields of the elements (including paths like
+ * <code>items[2].id</code>) are not tracked; in that case the index has to be rebuilt with {@link #rebuild()}.
+ * <p/>
+ * <p>Elements whose indexed value is <code>null</code> (or that are not maps) are not indexed.
+ * Numeric keys are normalized, so <code>1</code>, <code>1L</code> and <code>1.0</code> are the same key.
+ * <p/>
+ * <p>Indexes are not thread safe, in the same way than {@link Json} is not.
+ */
+public class JsonIndex {
+    // below this number of elements, keys are extracted sequentially
+    private static final int PARALLEL_THRESHOLD = 10000;
+
+    public enum Type {
+        /**
+         * Hash index where each key identifies at most one element
+         */
+        UNIQUE,
+        /**
+         * Hash index where several elements can share the same key
+         */
+        MULTI,
+        /**
+         * Index sorted by key that allows range queries
+         */
+        SORTED
+    }
+
+    private final Json source;
+    private final Type type;
+    private final String path;
+    private final String[] pathParts;
+
+    private Map<Object, Object> entries;
+
+    JsonIndex(Json source, Type type, String path) {
+        if (source == null || !source.isList()) {
+            throw new IllegalArgumentException("Indexes can only be created over a list");
+        }
+        if (type == null) {
+            throw new IllegalArgumentException("Index type is null");
+        }
+        if (StringUtils.isBlank(path) || PathUtils.hasIndex(path)) {
+            throw new IllegalArgumentException(String.format("Invalid index path [%s]", path));
+        }
+        this.source = source;
+        this.type = type;
+        this.path = path;
+        this.pathParts = StringUtils.split(path, ".");
+        rebuild();
+    }
+
+    /**
+     * Creates an index where each value of the path identifies only one element of the list. An
+     * {@link IllegalStateException} is thrown if two elements share the same key.
+     */
+    public static JsonIndex unique(Json list, String path) {
+        return attach(new JsonIndex(list, Type.UNIQUE, path));
+    }
+
+    /**
+     * Creates an index where many elements of the list can share the same value in the path.
+     */
+    public static JsonIndex multi(Json list, String path) {
+        return attach(new JsonIndex(list, Type.MULTI, path));
+    }
+
+    /**
+     * Creates an index sorted by the value in the path, that can be used for range queries.
+     */
+    public static JsonIndex sorted(Json list, String path) {
+        return attach(new JsonIndex(list, Type.SORTED, path));
+    }
+
+    private static JsonIndex attach(JsonIndex index) {
+        index.source.addIndex(index);
+        return index;
+    }
+
+    /**
+     * Detaches the index from the list, so it won't be updated anymore.
+     */
+    public void drop() {
+        source.removeIndex(this);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Rebuilds the index from the current content of the list.
+     */
+    public void rebuild() {
+        final List<Object> elements = source.objects();
+        final Object[] keys = new Object[elements.size()];
+        IntStream range = IntStream.range(0, keys.length);
+        if (keys.length >= PARALLEL_THRESHOLD) {
+            range = range.parallel();
+        }
+        range.forEach(i -> keys[i] = keyOf(elements.get(i)));
+
+        // the new entries replace the current ones only when all the elements were indexed
+        final Map<Object, Object> rebuilt = type == Type.SORTED ? new TreeMap<>(KEY_COMPARATOR) : new HashMap<>(Math.max(16, (int) (keys.length / 0.75f) + 1));
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                put(rebuilt, keys[i], (Json) elements.get(i));
+            }
+        }
+        entries = rebuilt;
+    }
+
+    /**
+     * Returns the only element with the given key, or <code>null</code> if there is no one. In
+     * non-unique indexes it returns the first element indexed with that key.
+     */
+    public Json get(Object key) {
+        final Object entry = entries.get(normalizeKey(key));
+        if (entry instanceof Bucket) {
+            return ((Bucket) entry).elements.get(0);
+        }
+        return (Json) entry;
+    }
+
+    /**
+     * Returns all the elements with the given key, in the order they were indexed.
+     */
+    public List<Json> getAll(Object key) {
+        return toList(entries.get(normalizeKey(key)));
+    }
+
+    public boolean containsKey(Object key) {
+        return entries.containsKey(normalizeKey(key));
+    }
+
+    /**
+     * Returns the set of distinct keys in the index. For sorted indexes they are returned in order.
+     */
+    public Set<Object> keys() {
+        return Collections.unmodifiableSet(entries.keySet());
+    }
+
+    /**
+     * Number of distinct keys in the index
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the elements with keys between <code>from</code> and <code>to</code> sorted by key. Any
+     * of the bounds can be <code>null</code> to leave the range open on that side.
+     */
+    public List<Json> range(Object from, boolean fromInclusive, Object to, boolean toInclusive) {
+        NavigableMap<Object, Object> sortedEntries = sortedEntries();
+        if (from != null && to != null) {
+            sortedEntries = sortedEntries.subMap(normalizeKey(from), fromInclusive, normalizeKey(to), toInclusive);
+        } else if (from != null) {
+            sortedEntries = sortedEntries.tailMap(normalizeKey(from), fromInclusive);
+        } else if (to != null) {
+            sortedEntries = sortedEntries.headMap(normalizeKey(to), toInclusive);
+        }
+        final List<Json> result = new ArrayList<>();
+        for (Object entry : sortedEntries.values()) {
+            addTo(result, entry);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the elements with the smallest key, or an empty list if the index is empty.
+     */
+    public List<Json> first() {
+        final NavigableMap<Object, Object> sortedEntries = sortedEntries();
+        return sortedEntries.isEmpty() ? new ArrayList<>() : toList(sortedEntries.firstEntry().getValue());
+    }
+
+    /**
+     * Returns the elements with the biggest key, or an empty list if the index is empty.
+     */
+    public List<Json> last() {
+        final NavigableMap<Object, Object> sortedEntries = sortedEntries();
+        return sortedEntries.isEmpty() ? new ArrayList<>() : toList(sortedEntries.lastEntry().getValue());
+    }
+
+    // hooks called by the list when it is modified
+
+    void added(Object element) {
+        final Object key = keyOf(element);
+        if (key != null) {
+            put(entries, key, (Json) element);
+        }
+    }
+
+    void removed(Object element) {
+        final Object key = keyOf(element);
+        if (key == null) {
+            return;
+        }
+        final Object entry = entries.get(key);
+        if (entry == element) {
+            entries.remove(key);
+        } else if (entry instanceof Bucket) {
+            final Bucket bucket = (Bucket) entry;
+            bucket.removeElement(element);
+            if (bucket.elements.isEmpty()) {
+                entries.remove(key);
+            } else if (bucket.elements.size() == 1) {
+                entries.put(key, bucket.elements.get(0));
+            }
+        }
+    }
+
+    // helpers
+
+    /**
+     * Resolves the indexed value of an element. It is package visible so joins can reuse the same
+     * key resolution.
+     */
+    Object keyOf(Object element) {
+        return normalizeKey(resolve(element, pathParts));
+    }
+
+    static Object resolve(Object element, String[] pathParts) {
+        Object value = element;
+        for (String part : pathParts) {
+            if (!(value instanceof Json) || !((Json) value).isMap()) {
+                return null;
+            }
+            value = ((Json) value).object(part);
+        }
+        return value;
+    }
+
+    static Object normalizeKey(Object key) {
+        if (key instanceof Integer || key instanceof Long || key instanceof Short || key instanceof Byte) {
+            return ((Number) key).longValue();
+        } else if (key instanceof Double || key instanceof Float) {
+            final double d = ((Number) key).doubleValue();
+            if (d == Math.rint(d) && !Double.isInfinite(d) && Math.abs(d) < Long.MAX_VALUE) {
+                return (long) d;
+            }
+            return d;
+        } else if (key instanceof Enum<?>) {
+            return ((Enum<?>) key).name();
+        }
+        return key;
+    }
+
+    private void put(Map<Object, Object> target, Object key, Json element) {
+        final Object entry = target.get(key);
+        if (entry == null) {
+            target.put(key, element);
+        } else if (type == Type.UNIQUE) {
+            throw new IllegalStateException(String.format("Duplicated key [%s] in unique index over [%s]", key, path));
+        } else if (entry instanceof Bucket) {
+            ((Bucket) entry).elements.add(element);
+        } else {
+            final Bucket bucket = new Bucket();
+            bucket.elements.add((Json) entry);
+            bucket.elements.add(element);
+            target.put(key, bucket);
+        }
+    }
+
+    private NavigableMap<Object, Object> sortedEntries() {
+        if (type != Type.SORTED) {
+            throw new IllegalStateException("Operation only supported for sorted indexes");
+        }
+        return (NavigableMap<Object, Object>) entries;
+    }
+
+    private static List<Json> toList(Object entry) {
+        final List<Json> result = new ArrayList<>();
+        addTo(result, entry);
+        return result;
+    }
+
+    private static void addTo(List<Json> result, Object entry) {
+        if (entry instanceof Bucket) {
+            result.addAll(((Bucket) entry).elements);
+        } else if (entry != null) {
+            result.add((Json) entry);
+        }
+    }
+
+    /**
+     * Group of elements sharing the same key. It has its own class to tell apart buckets from the
+     * single elements stored directly in the map.
+     */
+    private static class Bucket {
+        private final List<Json> elements = new ArrayList<>(4);
+
+        void removeElement(Object element) {
+            for (int i = 0; i < elements.size(); i++) {
+                if (elements.get(i) == element) {
+                    elements.remove(i);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Numbers are compared by value and strings lexicographically. Keys of different kinds are
+     * sorted by kind, so a sorted index never fails with mixed values.
+     */
+    @SuppressWarnings("unchecked")
+    static final Comparator<Object> KEY_COMPARATOR = (k1, k2) -> {
+        if (k1 instanceof Number && k2 instanceof Number) {
+            if (k1 instanceof Long && k2 instanceof Long) {
+                return Long.compare((Long) k1, (Long) k2);
+            }
+            return Double.compare(((Number) k1).doubleValue(), ((Number) k2).doubleValue());
+        }
+        if (k1.getClass() == k2.getClass() && k1 instanceof Comparable) {
+            return ((Comparable<Object>) k1).compareTo(k2);
+        }
+        final int kind = Integer.compare(kindOf(k1), kindOf(k2));
+        if (kind != 0) {
+            return kind;
+        }
+        return k1.toString().compareTo(k2.toString());
+    };
+
+    private static int kindOf(Object key) {
+        if (key instanceof Boolean) {
+            return 0;
+        } else if (key instanceof Number) {
+            return 1;
+        } else if (key instanceof Date) {
+            return 2;
+        } else if (key instanceof String) {
+            return 3;
+        }
+        return 4;
+    }
+}
@@ -0,0 +1,342 @@
+package io.slingr.api.common;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * <p>Hash join between two list {@link Json}. The right list is the build side: a hash table is
+ * built over its key path (or an index already attached to it is reused) and then the left list is
+ * probed, so the cost is linear on the size of both lists. For example:
+ * <p/>
+ * <code>
+ * Json orders = JsonJoin.of(orders, "customer", customers, "id")
+ * .type(JsonJoin.Type.LEFT)
+ * .embed()
+ * .execute();
+ * </code>
+ * <p/>
+ * <p>Relationship fields are resolved automatically: when the value found in the left path is a map
+ * with an <code>id</code> (like <code>{id, label}</code> references), the join is done by that id.
+ * <p/>
+ * <p>By default the result records contain the fields of the left record plus the fields of the
+ * matched right record that are not present in the left one. If {@link #prefix(String)} is set,
+ * all the fields of the right record are copied with that prefix. If {@link #embed()} is set, the
+ * matched right record replaces the value of the left path instead (when the left path points to a
+ * relationship field, the full related record is placed in the relationship field).
+ */
+public class JsonJoin {
+    // below this number of left records, the probe is done sequentially
+    private static final int PARALLEL_THRESHOLD = 10000;
+    private static final String ID_FIELD = "id";
+
+    public enum Type {
+        /**
+         * One result for each pair of matching records
+         */
+        INNER,
+        /**
+         * Like {@link #INNER}, but left records without matches are returned as they are
+         */
+        LEFT,
+        /**
+         * Left records that have at least one match, without merging them
+         */
+        SEMI,
+        /**
+         * Left records that do not have any match
+         */
+        ANTI
+    }
+
+    private final Json left;
+    private final Json right;
+    private final String leftPath;
+    private final String[] leftPathParts;
+    private final String rightPath;
+
+    private Type type = Type.INNER;
+    private boolean embed = false;
+    private String prefix = null;
+
+    private volatile JsonIndex buildSide;
+
+    private JsonJoin(Json left, String leftPath, Json right, String rightPath) {
+        if (left == null || !left.isList() || right == null || !right.isList()) {
+            throw new IllegalArgumentException("Joins can only be done between lists");
+        }
+        if (StringUtils.isBlank(leftPath) || PathUtils.hasIndex(leftPath)) {
+            throw new IllegalArgumentException(String.format("Invalid join path [%s]", leftPath));
+        }
+        if (StringUtils.isBlank(rightPath) || PathUtils.hasIndex(rightPath)) {
+            throw new IllegalArgumentException(String.format("Invalid join path [%s]", rightPath));
+        }
+        this.left = left;
+        this.right = right;
+        this.leftPath = leftPath;
+        this.leftPathParts = StringUtils.split(leftPath, ".");
+        this.rightPath = rightPath;
+    }
+
+    /**
+     * Joins the records of the left list with the records of the right list where the value in the
+     * left path is equal to the value in the right path.
+     */
+    public static JsonJoin of(Json left, String leftPath, Json right, String rightPath) {
+        return new JsonJoin(left, leftPath, right, rightPath);
+    }
+
+    public JsonJoin type(Type type) {
+        if (type == null) {
+            throw new IllegalArgumentException("Join type is null");
+        }
+        this.type = type;
+        return this;
+    }
+
+    /**
+     * Places the matched right record in the left path instead of merging its fields.
+     */
+    public JsonJoin embed() {
+        this.embed = true;
+        return this;
+    }
+
+    /**
+     * Copies all the fields of the right record with the given prefix.
+     */
+    public JsonJoin prefix(String prefix) {
+        this.prefix = prefix;
+        return this;
+    }
+
+    /**
+     * Executes the join and returns a list with the result records. Left and right records are not
+     * modified; result records are new maps that share the nested values with the original ones.
+     */
+    public Json execute() {
+        final List<Object> leftRecords = left.objects();
+        buildSide();
+        final int size = leftRecords.size();
+        final Object[] results = new Object[size];
+        IntStream range = IntStream.range(0, size);
+        if (size >= PARALLEL_THRESHOLD) {
+            range = range.parallel();
+        }
+        range.forEach(i -> results[i] = probe(leftRecords.get(i)));
+
+        final Json result = Json.list();
+        for (Object r : results) {
+            if (r instanceof ProbeResult) {
+                for (Json o : ((ProbeResult) r).records) {
+                    result.push(o);
+                }
+            } else if (r != null) {
+                result.push(r);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns a lazy view of the join. Matches are looked up while the rows are iterated and the
+     * result records are only built when {@link Row#merged()} is called.
+     */
+    public Iterable<Row> rows() {
+        return () -> new RowIterator(left.objects().iterator());
+    }
+
+    /**
+     * Pair of records produced by the join. In left joins the right record is <code>null</code> when
+     * there is no match, and in semi and anti joins it is always <code>null</code>.
+     */
+    public class Row {
+        private final Object left;
+        private final Json right;
+
+        private Row(Object left, Json right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        /**
+         * Left record. It is usually a map, but in left and anti joins elements of the left list
+         * that are not maps are returned as they are.
+         */
+        public Object left() {
+            return left;
+        }
+
+        public Json right() {
+            return right;
+        }
+
+        public Object merged() {
+            if (right == null) {
+                return left;
+            }
+            return merge((Json) left, right);
+        }
+    }
+
+    // helpers
+
+    private Object probe(Object leftRecord) {
+        final List<Json> matches = matches(leftRecord);
+        switch (type) {
+            case SEMI:
+                return matches.isEmpty() ? null : leftRecord;
+            case ANTI:
+                return matches.isEmpty() ? leftRecord : null;
+            case LEFT:
+                return matches.isEmpty() ? leftRecord : mergeAll(leftRecord, matches);
+            default:
+                return mergeAll(leftRecord, matches);
+        }
+    }
+
+    private Object mergeAll(Object leftRecord, List<Json> matches) {
+        if (matches.size() == 1) {
+            return merge((Json) leftRecord, matches.get(0));
+        }
+        final ProbeResult merged = new ProbeResult(matches.size());
+        for (Json match : matches) {
+            merged.records.add(merge((Json) leftRecord, match));
+        }
+        return merged;
+    }
+
+    private List<Json> matches(Object leftRecord) {
+        Object key = JsonIndex.resolve(leftRecord, leftPathParts);
+        if (Json.isMap(key)) {
+            // relationship field
+            key = ((Json) key).object(ID_FIELD);
+        }
+        if (key == null) {
+            return Collections.emptyList();
+        }
+        return buildSide().getAll(key);
+    }
+
+    private JsonIndex buildSide() {
+        if (buildSide == null) {
+            synchronized (this) {
+                if (buildSide == null) {
+                    JsonIndex index = right.findIndex(rightPath);
+                    if (index == null) {
+                        index = new JsonIndex(right, JsonIndex.Type.MULTI, rightPath);
+                    }
+                    buildSide = index;
+                }
+            }
+        }
+        return buildSide;
+    }
+
+    private Json merge(Json leftRecord, Json rightRecord) {
+        final Json merged = leftRecord.cloneJson();
+        if (embed) {
+            embed(merged, rightRecord);
+        } else if (prefix != null) {
+            for (String key : rightRecord.keys()) {
+                merged.set(prefix + key, rightRecord.object(key));
+            }
+        } else {
+            for (String key : rightRecord.keys()) {
+                if (!merged.contains(key)) {
+                    merged.set(key, rightRecord.object(key));
+                }
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * The right record goes in the relationship field when the left path points to one. If the left
+     * path points to the id inside a relationship field (like <code>customer.id</code>), it goes in
+     * the parent field. Maps along the path are copied so the left record is not modified.
+     */
+    private void embed(Json merged, Json rightRecord) {
+        int depth = leftPathParts.length;
+        if (depth > 1 && ID_FIELD.equals(leftPathParts[depth - 1])) {
+            depth--;
+        }
+        Json current = merged;
+        for (int i = 0; i < depth - 1; i++) {
+            final Object nested = current.object(leftPathParts[i]);
+            if (!Json.isMap(nested)) {
+                return;
+            }
+            final Json copy = ((Json) nested).cloneJson();
+            current.set(leftPathParts[i], copy);
+            current = copy;
+        }
+        current.set(leftPathParts[depth - 1], rightRecord);
+    }
+
+    /**
+     * Several results for the same left record. It has its own class so it is not confused with
+     * elements of the left list that are lists themselves.
+     */
+    private static class ProbeResult {
+        private final List<Json> records;
+
+        ProbeResult(int size) {
+            this.records = new ArrayList<>(size);
+        }
+    }
+
+    private class RowIterator implements Iterator<Row> {
+        private final Iterator<Object> leftIterator;
+        private final Deque<Row> pending = new ArrayDeque<>();
+
+        private RowIterator(Iterator<Object> leftIterator) {
+            this.leftIterator = leftIterator;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (pending.isEmpty() && leftIterator.hasNext()) {
+                final Object leftRecord = leftIterator.next();
+                final List<Json> matches = matches(leftRecord);
+                switch (type) {
+                    case SEMI:
+                        if (!matches.isEmpty()) {
+                            pending.add(new Row(leftRecord, null));
+                        }
+                        break;
+                    case ANTI:
+                        if (matches.isEmpty()) {
+                            pending.add(new Row(leftRecord, null));
+                        }
+                        break;
+                    case LEFT:
+                        if (matches.isEmpty()) {
+                            pending.add(new Row(leftRecord, null));
+                        } else {
+                            addRows(leftRecord, matches);
+                        }
+                        break;
+                    default:
+                        addRows(leftRecord, matches);
+                }
+            }
+            return !pending.isEmpty();
+        }
+
+        private void addRows(Object leftRecord, List<Json> matches) {
+            for (Json match : matches) {
+                pending.add(new Row(leftRecord, match));
+            }
+        }
+
+        @Override
+        public Row next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return pending.poll();
+        }
+    }
+}
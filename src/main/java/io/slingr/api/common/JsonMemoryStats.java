@@ -0,0 +1,382 @@
+package io.slingr.api.common;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+
+/**
+ * <p>Estimation of the heap used by a {@link Json} tree. Sizes are calculated for a 64 bits JVM with
+ * compressed references, taking into account the maps and lists that hold the values, strings and
+ * boxed numbers. Objects referenced from several places of the tree are counted only once, and
+ * values cached by the JVM (like small integers or booleans) are not counted at all.
+ * <p/>
+ * <p>Besides the total size, the report contains the number of nodes of each kind, the largest
+ * subtrees and the strings that are repeated with different instances, which are a good hint of
+ * memory that could be saved:
+ * <p/>
+ * <code>
+ * JsonMemoryStats stats = JsonMemoryStats.of(response);
+ * logger.info(stats.toJson().toString());
+ * </code>
+ */
+@SuppressWarnings("unchecked")
+public class JsonMemoryStats {
+    private static final int DEFAULT_TOP = 10;
+    private static final int MAX_STRING_PREVIEW = 50;
+
+    private static final int OBJECT_HEADER = 12;
+    private static final int ARRAY_HEADER = 16;
+    private static final int REFERENCE = 4;
+    private static final boolean COMPACT_STRINGS = !System.getProperty("java.specification.version", "").startsWith("1.");
+
+    private static final int JSON_SIZE = align(OBJECT_HEADER + 3 * REFERENCE);
+    private static final int LINKED_HASH_MAP_SIZE = 56;
+    private static final int LINKED_HASH_MAP_ENTRY_SIZE = 40;
+    private static final int HASH_MAP_SIZE = 48;
+    private static final int HASH_MAP_ENTRY_SIZE = 32;
+    private static final int ARRAY_LIST_SIZE = 24;
+    private static final int STRING_SIZE = 24;
+    private static final int SMALL_BOX_SIZE = 16;
+    private static final int LARGE_BOX_SIZE = 24;
+    private static final int UNKNOWN_OBJECT_SIZE = 16;
+
+    private long totalBytes;
+    private int maps;
+    private int lists;
+    private int strings;
+    private int numbers;
+    private int otherValues;
+    private int maxDepth;
+    private final List<Subtree> largestSubtrees = new ArrayList<>();
+    private final List<DuplicatedString> duplicatedStrings = new ArrayList<>();
+
+    private JsonMemoryStats() {
+    }
+
+    /**
+     * Returns the estimated number of bytes retained by the Json tree.
+     */
+    public static long estimate(Json json) {
+        if (json == null) {
+            return 0;
+        }
+        return new Walker(null, 0).size(json, null, 0);
+    }
+
+    public static JsonMemoryStats of(Json json) {
+        return of(json, DEFAULT_TOP);
+    }
+
+    /**
+     * Calculates the report of the Json tree.
+     *
+     * @param json the tree to analyze
+     * @param top  number of largest subtrees and duplicated strings to include in the report
+     */
+    public static JsonMemoryStats of(Json json, int top) {
+        final JsonMemoryStats stats = new JsonMemoryStats();
+        if (json == null) {
+            return stats;
+        }
+        final Walker walker = new Walker(stats, top);
+        stats.totalBytes = walker.size(json, "", 0);
+
+        stats.largestSubtrees.addAll(walker.subtrees);
+        stats.largestSubtrees.sort((s1, s2) -> Long.compare(s2.bytes, s1.bytes));
+
+        walker.stringInstances.forEach((value, instances) -> {
+            if (instances[0] > 1) {
+                stats.duplicatedStrings.add(new DuplicatedString(value, instances[0], (instances[0] - 1) * stringSize(value)));
+            }
+        });
+        stats.duplicatedStrings.sort((s1, s2) -> Long.compare(s2.wastedBytes, s1.wastedBytes));
+        if (stats.duplicatedStrings.size() > top) {
+            stats.duplicatedStrings.subList(top, stats.duplicatedStrings.size()).clear();
+        }
+        return stats;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public int getMaps() {
+        return maps;
+    }
+
+    public int getLists() {
+        return lists;
+    }
+
+    public int getStrings() {
+        return strings;
+    }
+
+    public int getNumbers() {
+        return numbers;
+    }
+
+    public int getOtherValues() {
+        return otherValues;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public List<Subtree> getLargestSubtrees() {
+        return largestSubtrees;
+    }
+
+    public List<DuplicatedString> getDuplicatedStrings() {
+        return duplicatedStrings;
+    }
+
+    /**
+     * Returns the estimated bytes wasted by strings with the same content in different instances
+     */
+    public long getDuplicatedStringsBytes() {
+        long bytes = 0;
+        for (DuplicatedString duplicatedString : duplicatedStrings) {
+            bytes += duplicatedString.wastedBytes;
+        }
+        return bytes;
+    }
+
+    public Json toJson() {
+        final Json json = Json.map()
+                .set("totalBytes", totalBytes)
+                .set("maps", maps)
+                .set("lists", lists)
+                .set("strings", strings)
+                .set("numbers", numbers)
+                .set("otherValues", otherValues)
+                .set("maxDepth", maxDepth);
+        json.set("largestSubtrees", Json.list(largestSubtrees, subtree -> Json.map()
+                .set("path", subtree.path)
+                .set("bytes", subtree.bytes)
+                .set("nodes", subtree.nodes)));
+        json.set("duplicatedStrings", Json.list(duplicatedStrings, duplicatedString -> Json.map()
+                .set("value", duplicatedString.value.length() > MAX_STRING_PREVIEW ? duplicatedString.value.substring(0, MAX_STRING_PREVIEW) + "..." : duplicatedString.value)
+                .set("instances", duplicatedString.instances)
+                .set("wastedBytes", duplicatedString.wastedBytes)));
+        return json;
+    }
+
+    @Override
+    public String toString() {
+        return toJson().toString();
+    }
+
+    public static class Subtree {
+        private final String path;
+        private final long bytes;
+        private final int nodes;
+
+        private Subtree(String path, long bytes, int nodes) {
+            this.path = path;
+            this.bytes = bytes;
+            this.nodes = nodes;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public int getNodes() {
+            return nodes;
+        }
+    }
+
+    public static class DuplicatedString {
+        private final String value;
+        private final int instances;
+        private final long wastedBytes;
+
+        private DuplicatedString(String value, int instances, long wastedBytes) {
+            this.value = value;
+            this.instances = instances;
+            this.wastedBytes = wastedBytes;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public int getInstances() {
+            return instances;
+        }
+
+        public long getWastedBytes() {
+            return wastedBytes;
+        }
+    }
+
+    // estimation
+
+    /**
+     * Walks the tree adding the size of each object the first time it is found. When there is a
+     * report to fill, it also collects the information of nodes and strings.
+     */
+    private static class Walker {
+        private final JsonMemoryStats stats;
+        private final Map<Object, Boolean> visited = new IdentityHashMap<>();
+        // smallest of the largest subtrees at the head
+        private final PriorityQueue<Subtree> subtrees = new PriorityQueue<>((s1, s2) -> Long.compare(s1.bytes, s2.bytes));
+        private final Map<String, int[]> stringInstances = new HashMap<>();
+        private final int top;
+        private int nodes;
+
+        private Walker(JsonMemoryStats stats, int top) {
+            this.stats = stats;
+            this.top = top;
+        }
+
+        private long size(Object value, String path, int depth) {
+            if (value == null || isCached(value) || visited.put(value, Boolean.TRUE) != null) {
+                return 0;
+            }
+            if (stats != null && depth > stats.maxDepth) {
+                stats.maxDepth = depth;
+            }
+            if (value instanceof Json) {
+                final Json json = (Json) value;
+                final int nodesBefore = nodes++;
+                long bytes = JSON_SIZE;
+                if (json.isMap()) {
+                    bytes += mapSize(json.rawMap(), path, depth);
+                } else {
+                    bytes += listSize(json.objects(), path, depth);
+                }
+                if (stats != null && depth > 0 && top > 0) {
+                    if (subtrees.size() < top) {
+                        subtrees.add(new Subtree(path, bytes, nodes - nodesBefore));
+                    } else if (subtrees.peek().bytes < bytes) {
+                        subtrees.poll();
+                        subtrees.add(new Subtree(path, bytes, nodes - nodesBefore));
+                    }
+                }
+                return bytes;
+            } else if (value instanceof Map) {
+                nodes++;
+                return mapSize((Map<String, Object>) value, path, depth);
+            } else if (value instanceof Collection) {
+                nodes++;
+                return listSize((Collection<Object>) value, path, depth);
+            } else if (value instanceof String) {
+                if (stats != null) {
+                    stats.strings++;
+                    stringInstances.computeIfAbsent((String) value, k -> new int[1])[0]++;
+                }
+                return stringSize((String) value);
+            } else if (value instanceof Number) {
+                if (stats != null) {
+                    stats.numbers++;
+                }
+                return numberSize((Number) value);
+            }
+            if (stats != null) {
+                stats.otherValues++;
+            }
+            if (value instanceof Date) {
+                return LARGE_BOX_SIZE;
+            }
+            return UNKNOWN_OBJECT_SIZE;
+        }
+
+        private long mapSize(Map<String, Object> map, String path, int depth) {
+            if (stats != null) {
+                stats.maps++;
+            }
+            final boolean linked = map instanceof LinkedHashMap;
+            long bytes = linked ? LINKED_HASH_MAP_SIZE : HASH_MAP_SIZE;
+            if (!map.isEmpty()) {
+                bytes += align(ARRAY_HEADER + (long) REFERENCE * tableCapacity(map.size()));
+                bytes += (long) map.size() * (linked ? LINKED_HASH_MAP_ENTRY_SIZE : HASH_MAP_ENTRY_SIZE);
+            }
+            for (Map.Entry<String, Object> entry : map.entrySet()) {
+                bytes += size(entry.getKey(), null, depth + 1);
+                bytes += size(entry.getValue(), stats != null ? PathUtils.buildPath(path, entry.getKey()) : null, depth + 1);
+            }
+            return bytes;
+        }
+
+        private long listSize(Collection<Object> list, String path, int depth) {
+            if (stats != null) {
+                stats.lists++;
+            }
+            long bytes = ARRAY_LIST_SIZE;
+            if (!list.isEmpty()) {
+                bytes += align(ARRAY_HEADER + (long) REFERENCE * listCapacity(list.size()));
+            }
+            int index = 0;
+            for (Object element : list) {
+                bytes += size(element, stats != null ? PathUtils.buildPath(path, index) : null, depth + 1);
+                index++;
+            }
+            return bytes;
+        }
+    }
+
+    private static boolean isCached(Object value) {
+        if (value instanceof Boolean) {
+            return true;
+        }
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            final long l = ((Number) value).longValue();
+            return l >= -128 && l <= 127;
+        }
+        return false;
+    }
+
+    private static long numberSize(Number number) {
+        if (number instanceof Integer || number instanceof Float || number instanceof Short || number instanceof Byte) {
+            return SMALL_BOX_SIZE;
+        } else if (number instanceof BigInteger) {
+            return 40 + align(ARRAY_HEADER + 4 * ((((BigInteger) number).bitLength() + 31) / 32));
+        } else if (number instanceof BigDecimal) {
+            final BigInteger unscaled = ((BigDecimal) number).unscaledValue();
+            return 40 + (unscaled.bitLength() < 63 ? 0 : numberSize(unscaled));
+        }
+        return LARGE_BOX_SIZE;
+    }
+
+    private static long stringSize(String value) {
+        boolean latin1 = COMPACT_STRINGS;
+        for (int i = 0; latin1 && i < value.length(); i++) {
+            if (value.charAt(i) > 0xFF) {
+                latin1 = false;
+            }
+        }
+        return STRING_SIZE + align(ARRAY_HEADER + (long) value.length() * (latin1 ? 1 : 2));
+    }
+
+    private static int tableCapacity(int size) {
+        int capacity = 16;
+        while (capacity * 0.75f < size) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static int listCapacity(int size) {
+        // same growth than ArrayList when elements are added one by one
+        int capacity = 10;
+        while (capacity < size) {
+            capacity += capacity >> 1;
+        }
+        return capacity;
+    }
+
+    private static int align(int size) {
+        return (size + 7) & ~7;
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+}
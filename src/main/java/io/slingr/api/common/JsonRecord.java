@@ -0,0 +1,35 @@
+package io.slingr.api.common;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p>Marks an interface that describes the fields of a record, so the processor of the
+ * <code>app-java-sdk-processor</code> artifact generates at compile time a {@link JsonParameter} enum and a typed wrapper over {@link Json} for it. For example:
+ * <p/>
+ * <code>
+ * &#64;JsonRecord
+ * public interface Customer {
+ * String name();
+ * Integer age();
+ * List&lt;String&gt; tags();
+ * }
+ * </code>
+ * <p/>
+ * <p>generates <code>CustomerParameter</code> (with <code>NAME</code>, <code>AGE</code> and <code>TAGS</code>)
+ * and <code>CustomerRecord</code>, that implements the interface reading the fields directly from the Json.
+ * <p/>
+ * <p>The processor is not in the SDK jar, so it is only run when it is added to the processor path of the project.
+ *
+ * @see JsonField
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface JsonRecord {
+    /**
+     * Base name of the generated classes. By default it is the name of the interface.
+     */
+    String value() default "";
+}
@@ -0,0 +1,595 @@
+package io.slingr.api.common;
+
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * <p>Store of {@link Json} records outside of the Java heap. It is useful to keep a local copy of big
+ * datasets (like the records of several entities) without having millions of small objects in the
+ * heap.
+ * <p/>
+ * <p>Records are encoded with Smile and appended to segments of direct or memory-mapped buffers.
+ * The only thing kept in the heap is an index from the id of the record to its position, stored in
+ * arrays of primitives. Updates append a new version of the record and leave the old one as garbage
+ * that is reclaimed by {@link #compact()}.
+ * <p/>
+ * <code>
+ * JsonStore store = JsonStore.offHeap();
+ * store.put(record);
+ * JsonStore.Record view = store.get(id);
+ * String name = view.json().string("name");
+ * </code>
+ * <p/>
+ * <p>The store can be used by many threads at the same time. Writes are serialized, but readers do
+ * not wait for each other and the views they get are never affected by later writes: a view always
+ * shows the version of the record that was current when it was obtained.
+ * <p/>
+ * <p>Views keep their segment alive, even after {@link #compact()} or {@link #close()}. Files of
+ * mapped stores are deleted while they may still be mapped by views; that is fine on Linux and macOS,
+ * where the mapping is kept until it is garbage collected, but on Windows mapped files cannot be
+ * deleted and they are deleted when the JVM exits instead.
+ */
+public class JsonStore implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(JsonStore.class);
+
+    private static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final String DEFAULT_ID_FIELD = "id";
+    // bytes used by the header of each record, where its length is stored
+    private static final int HEADER_SIZE = 4;
+
+    private final int segmentSize;
+    private final File directory;
+    private volatile String idField = DEFAULT_ID_FIELD;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile ByteBuffer[] segments = new ByteBuffer[0];
+    private final List<File> segmentFiles = new ArrayList<>();
+    private int fileSequence = 0;
+    private int currentSegment = -1;
+    private final Index index = new Index();
+    private long usedBytes = 0;
+    private long deadBytes = 0;
+    private boolean closed = false;
+
+    private JsonStore(int segmentSize, File directory) {
+        if (segmentSize <= HEADER_SIZE) {
+            throw new IllegalArgumentException(String.format("Invalid segment size [%s]", segmentSize));
+        }
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalArgumentException(String.format("Invalid directory [%s]", directory));
+        }
+        this.segmentSize = segmentSize;
+        this.directory = directory;
+    }
+
+    /**
+     * Creates a store that keeps records in direct buffers
+     */
+    public static JsonStore offHeap() {
+        return offHeap(DEFAULT_SEGMENT_SIZE);
+    }
+
+    public static JsonStore offHeap(int segmentSize) {
+        return new JsonStore(segmentSize, null);
+    }
+
+    /**
+     * Creates a store that keeps records in files of the given directory mapped to memory, so
+     * the operating system can page them out when memory is needed. Files are deleted when the
+     * store is closed.
+     */
+    public static JsonStore mapped(File directory) {
+        return mapped(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    public static JsonStore mapped(File directory, int segmentSize) {
+        if (directory == null) {
+            throw new IllegalArgumentException("Directory is null");
+        }
+        return new JsonStore(segmentSize, directory);
+    }
+
+    /**
+     * Sets the field used to get the id of the records (<code>id</code> by default). It has to be
+     * called before adding records.
+     */
+    public JsonStore idField(String idField) {
+        if (StringUtils.isBlank(idField)) {
+            throw new IllegalArgumentException("Id field is empty");
+        }
+        if (size() > 0) {
+            throw new IllegalStateException("The id field cannot be changed when there are records");
+        }
+        this.idField = idField;
+        return this;
+    }
+
+    // write operations
+
+    /**
+     * Adds or replaces the record. The id is taken from the id field of the record.
+     */
+    public void put(Json record) {
+        if (record == null || !record.isMap()) {
+            throw new IllegalArgumentException("Only maps can be stored");
+        }
+        final Object id = record.object(idField);
+        if (id == null) {
+            throw new IllegalArgumentException(String.format("Record does not have field [%s]", idField));
+        }
+        put(id.toString(), record);
+    }
+
+    /**
+     * Adds or replaces the record with the given id
+     */
+    public void put(String id, Json record) {
+        if (StringUtils.isBlank(id)) {
+            throw new IllegalArgumentException("Id is empty");
+        }
+        if (record == null) {
+            throw new IllegalArgumentException("Record is null");
+        }
+        // encoding is done before taking the lock
+        final byte[] data = record.toSmile();
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            final long address = append(data);
+            final long previous = index.put(id, address);
+            if (previous >= 0) {
+                deadBytes += HEADER_SIZE + length(previous);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void putAll(Json records) {
+        if (records == null || !records.isList()) {
+            throw new IllegalArgumentException("Records must be a list");
+        }
+        for (Json record : records.jsons()) {
+            put(record);
+        }
+    }
+
+    public boolean remove(String id) {
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            final long previous = index.remove(id);
+            if (previous >= 0) {
+                deadBytes += HEADER_SIZE + length(previous);
+                return true;
+            }
+            return false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Copies the current version of all records to new segments, releasing the space used by
+     * old versions and removed records. Operations wait while it runs, but the views obtained
+     * before are still valid after it finishes: they keep a reference to the old segments, so the
+     * memory of each old segment is released when no view points to it anymore.
+     */
+    public void compact() {
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            final ByteBuffer[] oldSegments = segments;
+            final List<File> oldFiles = new ArrayList<>(segmentFiles);
+            final String[] ids = index.ids();
+            final long[] addresses = new long[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                addresses[i] = index.get(ids[i]);
+            }
+
+            segments = new ByteBuffer[0];
+            segmentFiles.clear();
+            currentSegment = -1;
+            usedBytes = 0;
+            deadBytes = 0;
+            for (int i = 0; i < ids.length; i++) {
+                final ByteBuffer data = slice(oldSegments, addresses[i]);
+                final byte[] bytes = new byte[data.remaining()];
+                data.get(bytes);
+                index.put(ids[i], append(bytes));
+            }
+            deleteFiles(oldFiles);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes all the records and releases the segments. The store cannot be used after that, but
+     * views obtained before can still be read, in the same way than after {@link #compact()}.
+     */
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            if (!closed) {
+                closed = true;
+                segments = new ByteBuffer[0];
+                index.clear();
+                deleteFiles(segmentFiles);
+                segmentFiles.clear();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // read operations
+
+    /**
+     * Returns a view of the record, or <code>null</code> if there is no record with that id. The
+     * record is not decoded until it is needed.
+     */
+    public Record get(String id) {
+        lock.readLock().lock();
+        try {
+            checkOpen();
+            final long address = index.get(id);
+            if (address < 0) {
+                return null;
+            }
+            return new Record(id, slice(segments, address));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the decoded record, or <code>null</code> if there is no record with that id
+     */
+    public Json json(String id) {
+        final Record record = get(id);
+        return record != null ? record.json() : null;
+    }
+
+    public boolean contains(String id) {
+        lock.readLock().lock();
+        try {
+            return index.get(id) >= 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Iterates over the views of all records. Records added or removed during the iteration are
+     * not taken into account.
+     */
+    public void forEach(Consumer<Record> consumer) {
+        final String[] ids;
+        final long[] addresses;
+        final ByteBuffer[] currentSegments;
+        lock.readLock().lock();
+        try {
+            checkOpen();
+            ids = index.ids();
+            addresses = new long[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                addresses[i] = index.get(ids[i]);
+            }
+            currentSegments = segments;
+        } finally {
+            lock.readLock().unlock();
+        }
+        for (int i = 0; i < ids.length; i++) {
+            consumer.accept(new Record(ids[i], slice(currentSegments, addresses[i])));
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return index.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Bytes used in segments, including old versions of records
+     */
+    public long getUsedBytes() {
+        lock.readLock().lock();
+        try {
+            return usedBytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Bytes used by old versions of records and removed records, that can be reclaimed with
+     * {@link #compact()}
+     */
+    public long getDeadBytes() {
+        lock.readLock().lock();
+        try {
+            return deadBytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Bytes reserved for segments
+     */
+    public long getCapacityBytes() {
+        long capacity = 0;
+        for (ByteBuffer segment : segments) {
+            capacity += segment.capacity();
+        }
+        return capacity;
+    }
+
+    /**
+     * <p>Flyweight view of a stored record. It points to the encoded record and only decodes it the
+     * first time {@link #json()} is called.
+     */
+    public static class Record {
+        private final String id;
+        private final ByteBuffer data;
+        private volatile Json json;
+
+        private Record(String id, ByteBuffer data) {
+            this.id = id;
+            this.data = data;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * Size of the encoded record
+         */
+        public int getEncodedSize() {
+            return data.remaining();
+        }
+
+        /**
+         * Returns a copy of the encoded record, in Smile format
+         */
+        public byte[] toSmile() {
+            final byte[] bytes = new byte[data.remaining()];
+            data.duplicate().get(bytes);
+            return bytes;
+        }
+
+        /**
+         * Decodes the record. The returned Json is cached in the view, so changes on it are
+         * visible for the next calls but they are not saved in the store.
+         */
+        public Json json() {
+            Json result = json;
+            if (result == null) {
+                try (InputStream in = new ByteBufferBackedInputStream(data.duplicate())) {
+                    result = Json.fromSmile(in);
+                } catch (IOException e) {
+                    throw new IllegalStateException(String.format("Could not decode record [%s]", id), e);
+                }
+                json = result;
+            }
+            return result;
+        }
+    }
+
+    // helpers
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Store is closed");
+        }
+    }
+
+    /**
+     * Appends the record to the current segment, or to a new one if it does not fit, and returns
+     * its address. It must be called with the write lock.
+     */
+    private long append(byte[] data) {
+        final int recordSize = HEADER_SIZE + data.length;
+        ByteBuffer segment = currentSegment >= 0 ? segments[currentSegment] : null;
+        if (segment == null || segment.capacity() - segment.position() < recordSize) {
+            segment = newSegment(Math.max(segmentSize, recordSize));
+        }
+        final int offset = segment.position();
+        segment.putInt(data.length);
+        segment.put(data);
+        usedBytes += recordSize;
+        return ((long) currentSegment << 32) | offset;
+    }
+
+    private ByteBuffer newSegment(int size) {
+        final ByteBuffer segment;
+        if (directory != null) {
+            final File file = new File(directory, String.format("segment-%s-%06d.dat", Integer.toHexString(System.identityHashCode(this)), fileSequence++));
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+                final MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                segment = mapped;
+            } catch (IOException e) {
+                throw new IllegalStateException(String.format("Could not create segment [%s]", file), e);
+            }
+            segmentFiles.add(file);
+        } else {
+            segment = ByteBuffer.allocateDirect(size);
+        }
+        final ByteBuffer[] newSegments = Arrays.copyOf(segments, segments.length + 1);
+        newSegments[newSegments.length - 1] = segment;
+        // published after the segment is in the array, so readers always see a complete array
+        segments = newSegments;
+        currentSegment = newSegments.length - 1;
+        return segment;
+    }
+
+    private int length(long address) {
+        return segments[(int) (address >>> 32)].getInt((int) address);
+    }
+
+    private static ByteBuffer slice(ByteBuffer[] segments, long address) {
+        final ByteBuffer segment = segments[(int) (address >>> 32)].duplicate();
+        final int offset = (int) address;
+        final int length = segment.getInt(offset);
+        segment.limit(offset + HEADER_SIZE + length);
+        segment.position(offset + HEADER_SIZE);
+        return segment.slice();
+    }
+
+    private static void deleteFiles(List<File> files) {
+        for (File file : files) {
+            if (!file.delete()) {
+                logger.warn(String.format("Could not delete segment file [%s]", file));
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Open addressing hash table from ids to addresses. Addresses are kept in an array of
+     * primitive longs, so the only objects in the heap are the ids.
+     */
+    private static class Index {
+        private static final String REMOVED = new String("<removed>");
+        private static final float LOAD_FACTOR = 0.6f;
+
+        private String[] keys = new String[64];
+        private long[] values = new long[64];
+        private int size = 0;
+        // used slots, including removed ones
+        private int used = 0;
+
+        long get(String id) {
+            if (id == null) {
+                return -1;
+            }
+            final int mask = keys.length - 1;
+            int i = hash(id) & mask;
+            String key;
+            while ((key = keys[i]) != null) {
+                if (key != REMOVED && key.equals(id)) {
+                    return values[i];
+                }
+                i = (i + 1) & mask;
+            }
+            return -1;
+        }
+
+        /**
+         * Returns the previous address or -1 if the id was not in the index
+         */
+        long put(String id, long address) {
+            if (used + 1 > keys.length * LOAD_FACTOR) {
+                resize(size + 1 > keys.length * LOAD_FACTOR / 2 ? keys.length * 2 : keys.length);
+            }
+            final int mask = keys.length - 1;
+            int i = hash(id) & mask;
+            int firstRemoved = -1;
+            String key;
+            while ((key = keys[i]) != null) {
+                if (key == REMOVED) {
+                    if (firstRemoved < 0) {
+                        firstRemoved = i;
+                    }
+                } else if (key.equals(id)) {
+                    final long previous = values[i];
+                    values[i] = address;
+                    return previous;
+                }
+                i = (i + 1) & mask;
+            }
+            if (firstRemoved >= 0) {
+                i = firstRemoved;
+            } else {
+                used++;
+            }
+            keys[i] = id;
+            values[i] = address;
+            size++;
+            return -1;
+        }
+
+        long remove(String id) {
+            if (id == null) {
+                return -1;
+            }
+            final int mask = keys.length - 1;
+            int i = hash(id) & mask;
+            String key;
+            while ((key = keys[i]) != null) {
+                if (key != REMOVED && key.equals(id)) {
+                    keys[i] = REMOVED;
+                    size--;
+                    return values[i];
+                }
+                i = (i + 1) & mask;
+            }
+            return -1;
+        }
+
+        String[] ids() {
+            final String[] ids = new String[size];
+            int j = 0;
+            for (String key : keys) {
+                if (key != null && key != REMOVED) {
+                    ids[j++] = key;
+                }
+            }
+            return ids;
+        }
+
+        int size() {
+            return size;
+        }
+
+        void clear() {
+            keys = new String[64];
+            values = new long[64];
+            size = 0;
+            used = 0;
+        }
+
+        private void resize(int capacity) {
+            final String[] oldKeys = keys;
+            final long[] oldValues = values;
+            keys = new String[capacity];
+            values = new long[capacity];
+            size = 0;
+            used = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != null && oldKeys[i] != REMOVED) {
+                    put(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        private static int hash(String id) {
+            final int h = id.hashCode();
+            return h ^ (h >>> 16);
+        }
+    }
+}
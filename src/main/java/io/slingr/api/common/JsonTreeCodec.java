@@ -0,0 +1,205 @@
+package io.slingr.api.common;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Writes and reads {@link Json} trees directly with Jackson generators and parsers, without
+ * converting them to intermediate maps and lists first. As it works with any {@link JsonFactory},
+ * it is used for text as well as for binary formats like Smile and CBOR.
+ * <p/>
+ * <p>Values are written in the same way than {@link Json#toString()} does: dates as timestamps and
+ * <code>null</code> elements of lists are skipped.
+ */
+@SuppressWarnings("unchecked")
+class JsonTreeCodec {
+    private final JsonFactory factory;
+    private final ObjectMapper fallbackMapper;
+
+    /**
+     * @param factory        factory of the format to read and write
+     * @param fallbackMapper mapper used to write values that are not JSON types (like beans)
+     */
+    JsonTreeCodec(JsonFactory factory, ObjectMapper fallbackMapper) {
+        this.factory = factory;
+        this.fallbackMapper = fallbackMapper;
+    }
+
+    JsonFactory getFactory() {
+        return factory;
+    }
+
+    byte[] encode(Json json) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        write(json, out);
+        return out.toByteArray();
+    }
+
+    void write(Json json, OutputStream out) {
+        try {
+            writeTo(json, out);
+        } catch (IOException e) {
+            throw new IllegalStateException(String.format("Could not write Json [%s]", e.getMessage()), e);
+        }
+    }
+
+    /**
+     * Writes the Json to the stream, that is flushed but not closed
+     */
+    void writeTo(Json json, OutputStream out) throws IOException {
+        try (JsonGenerator generator = factory.createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setCodec(fallbackMapper);
+            writeValue(json, generator);
+        }
+    }
+
+    Json decode(byte[] data) {
+        if (data == null || data.length == 0) {
+            return Json.map();
+        }
+        try (JsonParser parser = factory.createParser(data)) {
+            return read(parser);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(String.format("Could not read Json [%s]", e.getMessage()), e);
+        }
+    }
+
+    Json decode(InputStream in) throws IOException {
+        try (JsonParser parser = factory.createParser(in)) {
+            return read(parser);
+        }
+    }
+
+    Json decode(Reader reader) throws IOException {
+        try (JsonParser parser = factory.createParser(reader)) {
+            return read(parser);
+        }
+    }
+
+    /**
+     * Reads the next value of the parser as a {@link Json}. Empty content is read as an empty map.
+     */
+    static Json read(JsonParser parser) throws IOException {
+        final JsonToken token = parser.nextToken();
+        if (token == null || token == JsonToken.VALUE_NULL) {
+            return Json.map();
+        }
+        if (token != JsonToken.START_OBJECT && token != JsonToken.START_ARRAY) {
+            throw new JsonParseException(parser, String.format("Expected an object or an array but found [%s]", token));
+        }
+        return (Json) readValue(parser, token);
+    }
+
+    private static Object readValue(JsonParser parser, JsonToken token) throws IOException {
+        switch (token) {
+            case START_OBJECT:
+                final Json map = Json.map();
+                final Map<String, Object> values = map.rawMap();
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    final String name = parser.getCurrentName();
+                    values.put(name, readValue(parser, parser.nextToken()));
+                }
+                return map;
+            case START_ARRAY:
+                final Json list = Json.list();
+                final List<Object> elements = list.objects();
+                JsonToken next;
+                while ((next = parser.nextToken()) != JsonToken.END_ARRAY) {
+                    elements.add(readValue(parser, next));
+                }
+                return list;
+            case VALUE_STRING:
+                return parser.getText();
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                return parser.getNumberValue();
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            case VALUE_NULL:
+                return null;
+            case VALUE_EMBEDDED_OBJECT:
+                return parser.getEmbeddedObject();
+            default:
+                throw new JsonParseException(parser, String.format("Unexpected token [%s]", token));
+        }
+    }
+
+    static void writeValue(Object value, JsonGenerator generator) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        } else if (value instanceof Json) {
+            final Json json = (Json) value;
+            if (json.isMap()) {
+                writeMap(json.rawMap(), generator);
+            } else {
+                writeList(json.objects(), generator);
+            }
+        } else if (value instanceof String) {
+            generator.writeString((String) value);
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            generator.writeNumber(((Number) value).intValue());
+        } else if (value instanceof Long) {
+            generator.writeNumber((Long) value);
+        } else if (value instanceof Double) {
+            generator.writeNumber((Double) value);
+        } else if (value instanceof Float) {
+            generator.writeNumber((Float) value);
+        } else if (value instanceof BigDecimal) {
+            generator.writeNumber((BigDecimal) value);
+        } else if (value instanceof BigInteger) {
+            generator.writeNumber((BigInteger) value);
+        } else if (value instanceof Boolean) {
+            generator.writeBoolean((Boolean) value);
+        } else if (value instanceof Date) {
+            generator.writeNumber(((Date) value).getTime());
+        } else if (value instanceof Enum<?>) {
+            generator.writeString(((Enum) value).name());
+        } else if (value instanceof Map) {
+            writeMap((Map<String, Object>) value, generator);
+        } else if (value instanceof Collection) {
+            writeList((Collection<Object>) value, generator);
+        } else if (value instanceof byte[]) {
+            generator.writeBinary((byte[]) value);
+        } else {
+            generator.writeObject(value);
+        }
+    }
+
+    private static void writeMap(Map<String, Object> map, JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            generator.writeFieldName(String.valueOf(entry.getKey()));
+            writeValue(entry.getValue(), generator);
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writeList(Collection<Object> list, JsonGenerator generator) throws IOException {
+        generator.writeStartArray();
+        for (Object element : list) {
+            if (element != null) {
+                writeValue(element, generator);
+            }
+        }
+        generator.writeEndArray();
+    }
+}
@@ -0,0 +1,166 @@
+package io.slingr.api.common;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Histogram of latencies in microseconds with log-linear buckets, like HDR histograms: each power of two is
+ * split in {@value #SUB_BUCKETS} linear buckets, so percentiles have an error lower than 3.2% from 1
+ * microsecond up to about 19 hours. Values out of the range are counted in the first or the last bucket.
+ * <p/>
+ * <p>Recording a value does not allocate nor lock, so it can be done by many threads in the hot path of the
+ * requests. The buckets take about 8KB.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // values up to 2^36 microseconds
+    private static final int MAX_VALUE_BITS = 36;
+    private static final long MAX_VALUE = (1L << MAX_VALUE_BITS) - 1;
+    private static final int BUCKETS = (MAX_VALUE_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong(0);
+
+    /**
+     * Records a latency in microseconds
+     */
+    public void record(long micros) {
+        final long value = Math.max(0, Math.min(micros, MAX_VALUE));
+        counts.incrementAndGet(index(value));
+        count.increment();
+        sum.add(value);
+        long current;
+        while (value < (current = min.get()) && !min.compareAndSet(current, value)) {
+            // retry
+        }
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // retry
+        }
+    }
+
+    /**
+     * Records a latency in nanoseconds
+     */
+    public void recordNanos(long nanos) {
+        record(nanos / 1000);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Min value in microseconds, or 0 if there are no values
+     */
+    public long getMin() {
+        final long value = min.get();
+        return value == Long.MAX_VALUE ? 0 : value;
+    }
+
+    /**
+     * Max value in microseconds
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Mean value in microseconds
+     */
+    public double getMean() {
+        final long n = count.sum();
+        return n > 0 ? (double) sum.sum() / n : 0;
+    }
+
+    /**
+     * Returns the value in microseconds below which there are the given percentage of values. The value is
+     * the middle of the bucket, limited to the min and max values recorded.
+     *
+     * @param percentile percentage between 0 and 100
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException(String.format("Invalid percentile [%s]", percentile));
+        }
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                final long value = (lowestValue(i) + highestValue(i)) / 2;
+                return Math.max(getMin(), Math.min(value, getMax()));
+            }
+        }
+        return getMax();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        min.set(Long.MAX_VALUE);
+        max.set(0);
+    }
+
+    /**
+     * Returns the count and the min, mean, max and percentiles 50, 90, 99 and 99.9 in milliseconds
+     */
+    public Json toJson() {
+        return Json.map()
+                .set("count", getCount())
+                .set("min", getMin() / 1000.0)
+                .set("mean", Math.round(getMean()) / 1000.0)
+                .set("p50", getValueAtPercentile(50) / 1000.0)
+                .set("p90", getValueAtPercentile(90) / 1000.0)
+                .set("p99", getValueAtPercentile(99) / 1000.0)
+                .set("p999", getValueAtPercentile(99.9) / 1000.0)
+                .set("max", getMax() / 1000.0);
+    }
+
+    @Override
+    public String toString() {
+        return toJson().toString();
+    }
+
+    /**
+     * Values lower than two sub buckets have their own bucket, the others are in the sub bucket of their
+     * power of two
+     */
+    static int index(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    static long lowestValue(int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+        final int shift = index / SUB_BUCKETS - 1;
+        return (long) (index % SUB_BUCKETS + SUB_BUCKETS) << shift;
+    }
+
+    static long highestValue(int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+        final int shift = index / SUB_BUCKETS - 1;
+        return ((long) (index % SUB_BUCKETS + SUB_BUCKETS + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,21 @@
+package io.slingr.api.common;
+
+/**
+ * Exception thrown without doing the request when the {@link RateLimiter} of the client rejects it, because
+ * it would have to wait for the rate limit. It can be retried after the returned delay.
+ */
+public class RateLimitedException extends RetryableRestException {
+    private final long retryAfter;
+
+    public RateLimitedException(String key, long retryAfter) {
+        super(RestErrorType.API_EXCEPTION, String.format("Rate limit of [%s] exceeded, retry after [%s] ms", key, retryAfter));
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * Returns the milliseconds to wait until the request is permitted by the rate limiter
+     */
+    public long getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,246 @@
+package io.slingr.api.common;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.http.client.utils.DateUtils;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Client side rate limiter of the requests done by {@link RestClient}. It is a token bucket that allows
+ * bursts of <code>burst</code> requests and <code>permitsPerSecond</code> requests per second after that,
+ * for the whole client or for each host.
+ * <p/>
+ * <p>It adapts to the server: when a response has status 429, or status 503 with a <code>Retry-After</code>
+ * header, requests are paused until the time given by the server and the rate is halved. Each successful
+ * response increases the rate again up to the configured one, so bulk jobs run at the rate the server
+ * accepts.
+ * <p/>
+ * <p>When the limit is reached, requests wait for their turn (<code>QUEUE</code>, by default) or fail with a
+ * {@link RateLimitedException} (<code>REJECT</code>).
+ * <p/>
+ * <code>
+ * RateLimiter rateLimiter = new RateLimiter(20, 5).mode(RateLimiter.Mode.QUEUE).maxWait(60000);
+ * SimpleRestClient client = SimpleRestClient.uri("https://api.example.com").rateLimiter(rateLimiter);
+ * </code>
+ */
+public class RateLimiter {
+    // each successful response increases the rate by this fraction of the configured one
+    private static final double RECOVERY_STEP = 0.01;
+    // the rate is never reduced below this fraction of the configured one
+    private static final double MIN_RATE_FRACTION = 0.01;
+
+    public enum Mode {
+        QUEUE,
+        REJECT
+    }
+
+    private final double permitsPerSecond;
+    private final int burst;
+    private final ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private volatile Mode mode = Mode.QUEUE;
+    private volatile long maxWait = Long.MAX_VALUE;
+    private volatile boolean perHost = true;
+
+    /**
+     * @param permitsPerSecond maximum number of requests per second
+     * @param burst            number of requests that can be done at once after a period without requests
+     */
+    public RateLimiter(double permitsPerSecond, int burst) {
+        if (permitsPerSecond <= 0 || burst <= 0) {
+            throw new IllegalArgumentException(String.format("Invalid rate limit, permits per second [%s] and burst [%s]", permitsPerSecond, burst));
+        }
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+    }
+
+    public RateLimiter mode(Mode mode) {
+        if (mode == null) {
+            throw new IllegalArgumentException("Mode cannot be null");
+        }
+        this.mode = mode;
+        return this;
+    }
+
+    /**
+     * Maximum milliseconds that a request waits in <code>QUEUE</code> mode before it is rejected (no limit by default)
+     */
+    public RateLimiter maxWait(long maxWait) {
+        this.maxWait = maxWait >= 0 ? maxWait : Long.MAX_VALUE;
+        return this;
+    }
+
+    /**
+     * Sets false to share the limit among all the hosts called by the client (true by default)
+     */
+    public RateLimiter perHost(boolean perHost) {
+        this.perHost = perHost;
+        return this;
+    }
+
+    public double getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+
+    public int getBurst() {
+        return burst;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Reserves the permit for a request to the URI and returns the milliseconds to wait before doing it
+     *
+     * @throws RateLimitedException if the request has to wait and it is not allowed by the mode or the max wait
+     */
+    long acquire(String uri) throws RateLimitedException {
+        final String key = key(uri);
+        final long wait = bucket(key).reserve(mode == Mode.REJECT ? 0 : maxWait);
+        if (wait < 0) {
+            throw new RateLimitedException(key, TimeUnit.NANOSECONDS.toMillis(-wait) + 1);
+        }
+        return TimeUnit.NANOSECONDS.toMillis(wait);
+    }
+
+    /**
+     * Records a successful response from the URI
+     */
+    void onSuccess(String uri) {
+        final Bucket bucket = buckets.get(key(uri));
+        if (bucket != null) {
+            bucket.recover();
+        }
+    }
+
+    /**
+     * Records a response from the URI asking to slow down
+     *
+     * @param retryAfter milliseconds given by the server in <code>Retry-After</code>, or -1 if there were none
+     */
+    void onThrottled(String uri, long retryAfter) {
+        bucket(key(uri)).throttle(retryAfter);
+    }
+
+    /**
+     * Returns the milliseconds of the <code>Retry-After</code> header of the response, that can be a number
+     * of seconds or a date, or -1 if there is none
+     */
+    static long retryAfter(Response response) {
+        if (response == null) {
+            return -1;
+        }
+        final String value = response.getHeaderString(HttpHeaders.RETRY_AFTER);
+        if (StringUtils.isBlank(value)) {
+            return -1;
+        }
+        try {
+            return Math.max(Long.parseLong(value.trim()), 0) * 1000;
+        } catch (NumberFormatException e) {
+            final Date date = DateUtils.parseDate(value.trim());
+            if (date == null) {
+                return -1;
+            }
+            return Math.max(date.getTime() - System.currentTimeMillis(), 0);
+        }
+    }
+
+    private String key(String uri) {
+        if (!perHost || uri == null) {
+            return "*";
+        }
+        return host(uri);
+    }
+
+    /**
+     * Returns the scheme, host and port of the URI, without parsing it
+     */
+    static String host(String uri) {
+        final int scheme = uri.indexOf("://");
+        final int path = scheme < 0 ? -1 : uri.indexOf('/', scheme + 3);
+        return path < 0 ? uri : uri.substring(0, path);
+    }
+
+    private Bucket bucket(String key) {
+        return buckets.computeIfAbsent(key, k -> new Bucket());
+    }
+
+    public Json toJson() {
+        final Json json = Json.map()
+                .set("permitsPerSecond", permitsPerSecond)
+                .set("burst", burst)
+                .set("mode", mode.name());
+        final Json hosts = Json.map();
+        buckets.forEach((key, bucket) -> hosts.set(key, bucket.toJson()));
+        return json.set("buckets", hosts);
+    }
+
+    @Override
+    public String toString() {
+        return toJson().toString();
+    }
+
+    /**
+     * Bucket of a host. It keeps the theoretical arrival time of the next request instead of counting tokens.
+     */
+    private class Bucket {
+        private double rate = permitsPerSecond;
+        // time, in nanoseconds, when the bucket would be empty if requests were done at the current rate
+        private long tat = System.nanoTime();
+        private long requests;
+        private long delayed;
+        private long rejected;
+        private long throttled;
+
+        private double interval() {
+            return TimeUnit.SECONDS.toNanos(1) / rate;
+        }
+
+        /**
+         * Returns the nanoseconds to wait, or a negative number with the wait if it exceeds the max wait
+         */
+        private synchronized long reserve(long maxWait) {
+            final long now = System.nanoTime();
+            final double interval = interval();
+            final long next = Math.max(tat, now) + (long) interval;
+            final long wait = Math.max(next - (long) (burst * interval) - now, 0);
+            if (wait > TimeUnit.MILLISECONDS.toNanos(maxWait)) {
+                rejected++;
+                return -wait;
+            }
+            tat = next;
+            requests++;
+            if (wait > 0) {
+                delayed++;
+            }
+            return wait;
+        }
+
+        private synchronized void recover() {
+            rate = Math.min(rate + permitsPerSecond * RECOVERY_STEP, permitsPerSecond);
+        }
+
+        private synchronized void throttle(long retryAfter) {
+            throttled++;
+            rate = Math.max(rate / 2, permitsPerSecond * MIN_RATE_FRACTION);
+            if (retryAfter > 0) {
+                // the first request after the pause can go and the next ones follow at the new rate
+                final long pausedUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(retryAfter);
+                tat = Math.max(tat, pausedUntil + (long) ((burst - 1) * interval()));
+            }
+        }
+
+        private synchronized Json toJson() {
+            return Json.map()
+                    .set("rate", rate)
+                    .set("requests", requests)
+                    .set("delayed", delayed)
+                    .set("rejected", rejected)
+                    .set("throttled", throttled);
+        }
+    }
+}
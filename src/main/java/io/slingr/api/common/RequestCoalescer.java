@@ -0,0 +1,200 @@
+package io.slingr.api.common;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Coalesces identical GET requests that are done at the same time by a {@link RestClient}. While a request
+ * is in flight, other calls with the same key do not send a new request; they wait for the result of the
+ * first one and share it. Errors are shared too.
+ * <p/>
+ * <p>By default the key is built with the URI and the <code>Authorization</code>, <code>token</code> and
+ * <code>Accept</code> headers, so clients with different credentials do not share responses. Clients that
+ * authenticate with other headers need a {@link KeyNormalizer} with them, and requests of clients with basic or
+ * digest authentication are not coalesced, because their credentials are not in the headers.
+ * <p/>
+ * <p>Each caller receives its own copy of the response, including the caller that did the request, so
+ * changes done by any of them are not seen by the others. If callers do not modify the responses,
+ * the same instance can be shared by all of them to avoid the copies:
+ * <p/>
+ * <code>
+ * RequestCoalescer coalescer = new RequestCoalescer().sharedResponses(true);
+ * SimpleRestClient client = SimpleRestClient.uri("https://api.example.com").requestCoalescer(coalescer);
+ * </code>
+ */
+public class RequestCoalescer {
+    private static final String[] DEFAULT_KEY_HEADERS = {"Authorization", "token", "Accept"};
+
+    /**
+     * Builds the key of a request. Requests with the same key share the response.
+     */
+    public interface KeyNormalizer {
+        String key(RestMethod method, String uri, Map<String, Object> headers);
+    }
+
+    /**
+     * Key with the method, the URI and the given headers. Header names are not case sensitive.
+     */
+    public static KeyNormalizer headersKey(String... headerNames) {
+        return (method, uri, headers) -> {
+            final StringBuilder key = new StringBuilder(method.name()).append(' ').append(uri);
+            if (headers != null && headerNames.length > 0) {
+                final Map<String, Object> sorted = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+                sorted.putAll(headers);
+                for (String name : headerNames) {
+                    final Object value = sorted.get(name);
+                    if (value != null) {
+                        key.append('\n').append(name.toLowerCase()).append(':').append(value);
+                    }
+                }
+            }
+            return key.toString();
+        };
+    }
+
+    private final ConcurrentHashMap<String, CompletableFuture<Json>> inFlight = new ConcurrentHashMap<>();
+    private volatile KeyNormalizer keyNormalizer = headersKey(DEFAULT_KEY_HEADERS);
+    private volatile boolean sharedResponses = false;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    public RequestCoalescer keyNormalizer(KeyNormalizer keyNormalizer) {
+        if (keyNormalizer == null) {
+            throw new IllegalArgumentException("Key normalizer cannot be null");
+        }
+        this.keyNormalizer = keyNormalizer;
+        return this;
+    }
+
+    /**
+     * Sets true to give the same Json instance to all the callers that share a response. They must not modify it.
+     */
+    public RequestCoalescer sharedResponses(boolean sharedResponses) {
+        this.sharedResponses = sharedResponses;
+        return this;
+    }
+
+    String key(RestMethod method, String uri, Map<String, Object> headers) {
+        return keyNormalizer.key(method, uri, headers);
+    }
+
+    /**
+     * Executes the request, or waits for the one in flight with the same key
+     *
+     * @param maxWait max milliseconds to wait for the request in flight, or no limit when it is not positive
+     */
+    Json execute(String key, Callable<Json> request, long maxWait) throws RestException {
+        requests.incrementAndGet();
+        final CompletableFuture<Json> future = new CompletableFuture<>();
+        final CompletableFuture<Json> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            try {
+                return copy(maxWait > 0 ? existing.get(maxWait, TimeUnit.MILLISECONDS) : existing.get());
+            } catch (ExecutionException e) {
+                throw rethrow(e.getCause());
+            } catch (TimeoutException e) {
+                throw new RetryableRestException(RestErrorType.API_EXCEPTION, String.format("Timeout of [%s] ms exceeded waiting for a coalesced request", maxWait), e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RetryableRestException(RestErrorType.GENERIC_ERROR, "Interrupted while waiting for a coalesced request", e);
+            }
+        }
+        try {
+            final Json json = request.call();
+            // the response in the future is only read by the followers, the leader gets its own copy
+            future.complete(json);
+            return copy(json);
+        } catch (Throwable e) {
+            // the callers waiting for the request are released with any error, even the ones that are not exceptions
+            future.completeExceptionally(e);
+            if (e instanceof Error) {
+                throw (Error) e;
+            }
+            throw rethrow(e);
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    /**
+     * Executes the request asynchronously, or shares the one in flight with the same key. The returned
+     * futures depend on the request, so cancelling them does not cancel it for the other callers.
+     */
+    CompletableFuture<Json> executeAsync(String key, Callable<CompletableFuture<Json>> request) {
+        requests.incrementAndGet();
+        final CompletableFuture<Json> future = new CompletableFuture<>();
+        final CompletableFuture<Json> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            return existing.thenApply(this::copy);
+        }
+        try {
+            request.call().whenComplete((json, e) -> {
+                inFlight.remove(key, future);
+                if (e != null) {
+                    future.completeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+                } else {
+                    future.complete(json);
+                }
+            });
+        } catch (Throwable e) {
+            inFlight.remove(key, future);
+            future.completeExceptionally(e);
+        }
+        return future.thenApply(this::copy);
+    }
+
+    private Json copy(Json json) {
+        if (json == null || sharedResponses) {
+            return json;
+        }
+        return json.deepClone();
+    }
+
+    private static RuntimeException rethrow(Throwable e) {
+        if (e instanceof RuntimeException) {
+            return (RuntimeException) e;
+        }
+        return new PermanentRestException(RestErrorType.GENERIC_ERROR, e.getMessage(), e instanceof Exception ? (Exception) e : new ExecutionException(e));
+    }
+
+    /**
+     * Number of requests that were executed or coalesced
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * Number of requests that shared the response of another one
+     */
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    /**
+     * Number of requests in flight now
+     */
+    public int getInFlight() {
+        return inFlight.size();
+    }
+
+    public Json toJson() {
+        final long total = requests.get();
+        final long shared = coalesced.get();
+        return Json.map()
+                .set("requests", total)
+                .set("coalesced", shared)
+                .set("inFlight", inFlight.size())
+                .set("coalescedRate", total > 0 ? (double) shared / total : 0.0);
+    }
+
+    @Override
+    public String toString() {
+        return toJson().toString();
+    }
+}
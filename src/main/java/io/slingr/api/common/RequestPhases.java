@@ -0,0 +1,155 @@
+package io.slingr.api.common;
+
+/**
+ * <p>Time spent by an attempt of a request in each of its phases, in nanoseconds:
+ * <ul>
+ * <li>pool wait: waiting for a connection of the pool, including the check of stale connections</li>
+ * <li>connect: resolving the host and opening the connection, 0 when a pooled connection is reused</li>
+ * <li>TLS: handshake of new secure connections, 0 when a pooled connection is reused</li>
+ * <li>time to first byte: since the connection is ready until the headers of the response are received,
+ * that is sending the request and the time the server takes to answer</li>
+ * <li>download: waiting for and decompressing the body of the response</li>
+ * <li>parse: building the Json of the body</li>
+ * </ul>
+ * Phases that were not measured are -1. The connection phases are measured by hooks in the connection pools
+ * of the Jersey and Apache transports while the request runs in the thread that sends it, so they are not
+ * known for asynchronous requests of the Jersey transport nor for the JDK transport. In that case the time to
+ * first byte includes them.
+ * <p/>
+ * <p>Hedged requests (see {@link HedgePolicy}) do not record the pool wait, connect and TLS phases with any
+ * transport: the primary request and the hedge run in other threads, and the connection could be the one of
+ * the request that loses. Their time to first byte is since the attempt started.
+ * <p/>
+ * <p>They are recorded when phase timings are enabled in the {@link RestClient}, given to its
+ * {@link RestMetricsListener} in {@link RestRequestMetrics#getPhases()} and attached to the
+ * {@link RestException} of failed requests.
+ */
+public class RequestPhases {
+    // phases of the request being sent by the current thread, set by the client for the hooks of the pools
+    private static final ThreadLocal<RequestPhases> current = new ThreadLocal<>();
+
+    private final long start = System.nanoTime();
+    private long poolWait = -1;
+    private long connect = -1;
+    private long tls = -1;
+    private long firstByte = -1;
+    private long download = -1;
+    private long parse = -1;
+
+    RequestPhases() {
+    }
+
+    public long getPoolWait() {
+        return poolWait;
+    }
+
+    public long getConnect() {
+        return connect;
+    }
+
+    public long getTls() {
+        return tls;
+    }
+
+    public long getTimeToFirstByte() {
+        return firstByte;
+    }
+
+    public long getDownload() {
+        return download;
+    }
+
+    public long getParse() {
+        return parse;
+    }
+
+    /**
+     * Returns the phases in milliseconds, without the ones that were not measured
+     */
+    public Json toJson() {
+        final Json json = Json.map();
+        set(json, "poolWait", poolWait);
+        set(json, "connect", connect);
+        set(json, "tls", tls);
+        set(json, "timeToFirstByte", firstByte);
+        set(json, "download", download);
+        set(json, "parse", parse);
+        return json;
+    }
+
+    @Override
+    public String toString() {
+        return toJson().toString();
+    }
+
+    private static void set(Json json, String name, long nanos) {
+        if (nanos >= 0) {
+            json.set(name, nanos / 1000000.0);
+        }
+    }
+
+    /**
+     * A connection was taken from the pool. It is reused until it is connected.
+     */
+    void connectionLeased(long nanos) {
+        poolWait = nanos;
+        if (connect < 0) {
+            connect = 0;
+            tls = 0;
+        }
+    }
+
+    /**
+     * A new connection was opened, including the TLS handshake that was recorded before
+     */
+    void connected(long nanos) {
+        connect = Math.max(0, nanos - Math.max(tls, 0));
+        if (tls < 0) {
+            tls = 0;
+        }
+    }
+
+    void handshake(long nanos) {
+        tls = nanos;
+    }
+
+    /**
+     * The headers of the response were received
+     */
+    void responseReceived() {
+        final long elapsed = System.nanoTime() - start;
+        firstByte = Math.max(0, elapsed - Math.max(poolWait, 0) - Math.max(connect, 0) - Math.max(tls, 0));
+    }
+
+    /**
+     * The body was read and parsed
+     *
+     * @param read  nanoseconds spent reading the body
+     * @param total nanoseconds spent reading and parsing the body
+     */
+    void bodyParsed(long read, long total) {
+        download = read;
+        parse = Math.max(0, total - read);
+    }
+
+    static RequestPhases current() {
+        return current.get();
+    }
+
+    /**
+     * Sets the phases of the request sent by this thread, returning the previous ones to restore them
+     */
+    static RequestPhases attach(RequestPhases phases) {
+        final RequestPhases previous = current.get();
+        current.set(phases);
+        return previous;
+    }
+
+    static void detach(RequestPhases previous) {
+        if (previous != null) {
+            current.set(previous);
+        } else {
+            current.remove();
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package io.slingr.api.common;
+
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * <p>Batch of calls of a {@link SimpleRestClient} done with its asynchronous requests. Up to the parallelism of
+ * the batch calls are in flight, and each one that finishes starts the next one, so no thread is blocked while
+ * the requests are done and they go through the retries, limits and connection pool of the client.
+ * <p/>
+ * <p>The batch stops at the first failure in fail fast mode or when its timeout expires: the calls in flight are
+ * cancelled and the pending ones are skipped.
+ */
+class RestBatch {
+    private static final Logger logger = Logger.getLogger(RestBatch.class);
+
+    private final SimpleRestClient client;
+    private final RestCall[] calls;
+    private final BatchOptions options;
+    private final Consumer<RestCallResult> listener;
+    private final Object listenerLock = new Object();
+    // results in the order of the calls, when there is no listener
+    private final RestCallResult[] results;
+    private final Map<Integer, CompletableFuture<Json>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicInteger remaining;
+    private final AtomicInteger succeeded = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicInteger skipped = new AtomicInteger();
+    private final CompletableFuture<BatchResult> result = new CompletableFuture<>();
+    private final long start = System.nanoTime();
+    // error of the calls that are cancelled or skipped once the batch stopped
+    private volatile RestException stopError;
+    private volatile boolean timedOut;
+    private volatile boolean stopped;
+    private volatile ScheduledFuture<?> timer;
+
+    RestBatch(SimpleRestClient client, Collection<RestCall> calls, BatchOptions options) {
+        if (calls == null) {
+            throw new IllegalArgumentException("Calls cannot be null");
+        }
+        this.client = client;
+        this.calls = calls.toArray(new RestCall[0]);
+        for (RestCall call : this.calls) {
+            if (call == null) {
+                throw new IllegalArgumentException("Calls cannot contain null");
+            }
+        }
+        this.options = options != null ? options : new BatchOptions();
+        this.listener = this.options.getResultListener();
+        this.results = listener == null ? new RestCallResult[this.calls.length] : null;
+        this.remaining = new AtomicInteger(this.calls.length);
+    }
+
+    CompletableFuture<BatchResult> start() {
+        if (calls.length == 0) {
+            finish();
+            return result;
+        }
+        if (options.getTimeout() > 0) {
+            timer = RestClient.scheduler().schedule(() -> stop(new RetryableRestException(RestErrorType.API_EXCEPTION,
+                    String.format("Timeout of [%s] ms exceeded for batch of [%s] calls", options.getTimeout(), calls.length)), true),
+                    options.getTimeout(), TimeUnit.MILLISECONDS);
+        }
+        final int parallelism = Math.min(options.getParallelism(), calls.length);
+        for (int i = 0; i < parallelism; i++) {
+            sendNext();
+        }
+        return result;
+    }
+
+    /**
+     * Stops the batch, cancelling the calls in flight and skipping the pending ones
+     */
+    void stop(RestException error, boolean timeout) {
+        synchronized (this) {
+            if (stopped) {
+                return;
+            }
+            stopError = error;
+            timedOut = timeout;
+            stopped = true;
+        }
+        for (CompletableFuture<Json> future : inFlight.values()) {
+            future.cancel(true);
+        }
+        // skips the pending calls when there were none in flight
+        sendNext();
+    }
+
+    /**
+     * Starts the next pending call. Calls that finish without waiting, like cached ones, are recorded in a loop
+     * so they do not nest.
+     */
+    private void sendNext() {
+        while (true) {
+            final int index = next.getAndIncrement();
+            if (index >= calls.length) {
+                return;
+            }
+            if (stopped) {
+                record(index, null, stopError, true, 0);
+                continue;
+            }
+            final long sent = System.nanoTime();
+            CompletableFuture<Json> future;
+            try {
+                future = client.executeAsync(calls[index]);
+            } catch (Exception e) {
+                future = new CompletableFuture<>();
+                future.completeExceptionally(e);
+            }
+            if (future.isDone()) {
+                completed(index, future, sent);
+                continue;
+            }
+            inFlight.put(index, future);
+            final CompletableFuture<Json> call = future;
+            future.whenComplete((json, e) -> {
+                inFlight.remove(index);
+                completed(index, call, sent);
+                sendNext();
+            });
+            if (stopped) {
+                // stopped before the call was in flight
+                future.cancel(true);
+            }
+            return;
+        }
+    }
+
+    private void completed(int index, CompletableFuture<Json> future, long sent) {
+        final long time = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - sent);
+        try {
+            record(index, future.join(), null, false, time);
+        } catch (CancellationException e) {
+            record(index, null, stopError != null ? stopError : toRestException(e), true, time);
+        } catch (CompletionException e) {
+            final RestException error = toRestException(e.getCause());
+            if (options.isFailFast()) {
+                stop(new RetryableRestException(RestErrorType.API_EXCEPTION,
+                        String.format("Batch stopped by the failure of call [%s] %s: %s", index, calls[index], error.getDescription()), error), false);
+            }
+            record(index, null, error, false, time);
+        }
+    }
+
+    private void record(int index, Json response, RestException error, boolean skip, long time) {
+        final RestCallResult callResult = new RestCallResult(index, calls[index], response, error, skip, time);
+        if (skip) {
+            skipped.incrementAndGet();
+        } else if (error != null) {
+            failed.incrementAndGet();
+        } else {
+            succeeded.incrementAndGet();
+        }
+        if (listener != null) {
+            synchronized (listenerLock) {
+                try {
+                    listener.accept(callResult);
+                } catch (Exception e) {
+                    logger.warn(String.format("Error in result listener of call [%s] %s", index, calls[index]), e);
+                }
+            }
+        } else {
+            results[index] = callResult;
+        }
+        if (remaining.decrementAndGet() == 0) {
+            finish();
+        }
+    }
+
+    private void finish() {
+        final ScheduledFuture<?> timeout = timer;
+        if (timeout != null) {
+            timeout.cancel(false);
+        }
+        final List<RestCallResult> list = results != null ? new ArrayList<>(Arrays.asList(results)) : null;
+        result.complete(new BatchResult(list, succeeded.get(), failed.get(), skipped.get(), timedOut,
+                stopped && !timedOut, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+    }
+
+    private static RestException toRestException(Throwable e) {
+        if (e instanceof RestException) {
+            return (RestException) e;
+        }
+        if (e instanceof Exception) {
+            return new RestException(RestErrorType.CLIENT_EXCEPTION, (Exception) e);
+        }
+        return new RestException(RestErrorType.CLIENT_EXCEPTION, String.valueOf(e));
+    }
+}
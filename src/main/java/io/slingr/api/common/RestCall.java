@@ -0,0 +1,93 @@
+package io.slingr.api.common;
+
+/**
+ * <p>Request to be done by a {@link SimpleRestClient}, relative to its URI, like the ones given to
+ * {@link SimpleRestClient#executeAll(java.util.Collection, BatchOptions)}:
+ * <p/>
+ * <code>
+ * List&lt;RestCall&gt; calls = ids.stream().map(id -&gt; RestCall.get("/records/" + id)).collect(Collectors.toList());
+ * </code>
+ * <p/>
+ * <p>Calls are immutable, so they can be kept and executed again.
+ */
+public class RestCall {
+    private final RestMethod method;
+    private final String path;
+    private final Json params;
+    private final Json content;
+
+    private RestCall(RestMethod method, String path, Json params, Json content) {
+        if (method == null) {
+            throw new IllegalArgumentException("Method cannot be null");
+        }
+        this.method = method;
+        this.path = path;
+        this.params = params;
+        this.content = content;
+    }
+
+    /**
+     * Creates a call
+     *
+     * @param method  method of the request
+     * @param path    path relative to the URI of the client, or <code>null</code> to use the URI
+     * @param params  query parameters, or <code>null</code> if there are none
+     * @param content body of the request, or <code>null</code> if there is none
+     */
+    public static RestCall of(RestMethod method, String path, Json params, Json content) {
+        return new RestCall(method, path, params, content);
+    }
+
+    public static RestCall get(String path) {
+        return new RestCall(RestMethod.GET, path, null, null);
+    }
+
+    public static RestCall get(String path, Json params) {
+        return new RestCall(RestMethod.GET, path, params, null);
+    }
+
+    public static RestCall post(String path, Json content) {
+        return new RestCall(RestMethod.POST, path, null, content);
+    }
+
+    public static RestCall put(String path, Json content) {
+        return new RestCall(RestMethod.PUT, path, null, content);
+    }
+
+    public static RestCall patch(String path, Json content) {
+        return new RestCall(RestMethod.PATCH, path, null, content);
+    }
+
+    public static RestCall delete(String path) {
+        return new RestCall(RestMethod.DELETE, path, null, null);
+    }
+
+    public static RestCall head(String path) {
+        return new RestCall(RestMethod.HEAD, path, null, null);
+    }
+
+    public static RestCall options(String path) {
+        return new RestCall(RestMethod.OPTIONS, path, null, null);
+    }
+
+    public RestMethod getMethod() {
+        return method;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public Json getParams() {
+        return params;
+    }
+
+    public Json getContent() {
+        return content;
+    }
+
+    @Override
+    public String toString() {
+        return path != null ? String.format("%s %s", method.name(), path) : method.name();
+    }
+}
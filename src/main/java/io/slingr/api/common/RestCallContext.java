@@ -0,0 +1,122 @@
+package io.slingr.api.common;
+
+import javax.ws.rs.client.WebTarget;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>Call of a {@link RestClient} that goes through its {@link RestInterceptor}s: the method, target, body and
+ * headers of the request, and attributes that interceptors can use to share state during the call.
+ * <p/>
+ * <p>Headers are an immutable snapshot: the default headers of the client are shared by all its calls and
+ * they are only copied when an interceptor changes them. Contexts are not thread safe; they belong to a
+ * single call.
+ */
+public class RestCallContext {
+    private final RestMethod method;
+    private WebTarget target;
+    private String uri;
+    private Object content;
+    private Map<String, Object> headers;
+    private Map<String, Object> attributes;
+
+    RestCallContext(RestMethod method, WebTarget target, Map<String, Object> headers, Object content) {
+        this.method = method;
+        this.target = target;
+        this.headers = headers;
+        this.content = content;
+    }
+
+    public RestMethod getMethod() {
+        return method;
+    }
+
+    public WebTarget getTarget() {
+        return target;
+    }
+
+    public void setTarget(WebTarget target) {
+        if (target == null) {
+            throw new IllegalArgumentException("Target cannot be null");
+        }
+        this.target = target;
+        this.uri = null;
+    }
+
+    /**
+     * URI of the target, built once until the target changes
+     */
+    public String getUri() {
+        if (uri == null && target != null) {
+            uri = target.getUri().toString();
+        }
+        return uri;
+    }
+
+    /**
+     * Body of the request, or <code>null</code> if there is none
+     */
+    public Object getContent() {
+        return content;
+    }
+
+    public void setContent(Object content) {
+        this.content = content;
+    }
+
+    /**
+     * Returns the headers of the request, that cannot be modified
+     */
+    public Map<String, Object> getHeaders() {
+        return headers;
+    }
+
+    public Object getHeader(String name) {
+        return headers.get(name);
+    }
+
+    /**
+     * Sets a header of the request, or removes it if the value is <code>null</code>
+     */
+    public void setHeader(String name, Object value) {
+        if (name == null) {
+            throw new IllegalArgumentException("Header name cannot be null");
+        }
+        if (value == null ? !headers.containsKey(name) : value.equals(headers.get(name))) {
+            return;
+        }
+        final Map<String, Object> copy = new HashMap<>(headers);
+        if (value == null) {
+            copy.remove(name);
+        } else {
+            copy.put(name, value);
+        }
+        headers = Collections.unmodifiableMap(copy);
+    }
+
+    public Object getAttribute(String name) {
+        return attributes != null ? attributes.get(name) : null;
+    }
+
+    /**
+     * Sets an attribute of the call, or removes it if the value is <code>null</code>
+     */
+    public void setAttribute(String name, Object value) {
+        if (value == null) {
+            if (attributes != null) {
+                attributes.remove(name);
+            }
+            return;
+        }
+        if (attributes == null) {
+            attributes = new HashMap<>();
+        }
+        attributes.put(name, value);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s", method.name(), getUri());
+    }
+}
@@ -0,0 +1,74 @@
+package io.slingr.api.common;
+
+/**
+ * Result of a call of a batch: the response, or the error when the call failed or was skipped because the batch
+ * stopped before it was done
+ */
+public class RestCallResult {
+    private final int index;
+    private final RestCall call;
+    private final Json response;
+    private final RestException error;
+    private final boolean skipped;
+    private final long time;
+
+    RestCallResult(int index, RestCall call, Json response, RestException error, boolean skipped, long time) {
+        this.index = index;
+        this.call = call;
+        this.response = response;
+        this.error = error;
+        this.skipped = skipped;
+        this.time = time;
+    }
+
+    /**
+     * Position of the call in the batch
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public RestCall getCall() {
+        return call;
+    }
+
+    /**
+     * Response of the call, or <code>null</code> if it failed
+     */
+    public Json getResponse() {
+        return response;
+    }
+
+    /**
+     * Error of the call, or <code>null</code> if it succeeded
+     */
+    public RestException getError() {
+        return error;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    /**
+     * Returns true if the call was not done, or cancelled before it finished, because the batch stopped
+     */
+    public boolean isSkipped() {
+        return skipped;
+    }
+
+    /**
+     * Milliseconds since the call was started until it finished, 0 if it was not started
+     */
+    public long getTime() {
+        return time;
+    }
+
+    @Override
+    public String toString() {
+        if (error == null) {
+            return String.format("[%s] %s: %s ms", index, call, time);
+        }
+        return String.format("[%s] %s: %s%s", index, call, skipped ? "skipped - " : "", error.getDescription());
+    }
+}
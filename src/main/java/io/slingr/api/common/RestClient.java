@@ -1,42 +1,65 @@
 package io.slingr.api.common;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
-import org.glassfish.jersey.client.ClientProperties;
 import org.glassfish.jersey.client.authentication.HttpAuthenticationFeature;
 import org.glassfish.jersey.media.multipart.Boundary;
 import org.glassfish.jersey.media.multipart.MultiPart;
 
-import javax.ws.rs.ProcessingException;
-import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.*;
 import javax.ws.rs.client.*;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response;
-import java.io.IOException;
-import java.io.InputStream;
+import java.io.*;
+import java.net.URI;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * <p>REST client to help to consume external services
  * <p/>
  * <p>Created by lefunes on 14/05/15.
  */
-public abstract class RestClient {
+public abstract class RestClient implements AutoCloseable {
     private static final Logger logger = Logger.getLogger(RestClient.class);
 
     private static final int MAX_RETRIES = 12;
+    // max bytes of the bodies written to the trace logs
+    private static final int TRACE_LIMIT = 7000;
+    // Retry-After delays longer than this are not waited, the request fails instead
+    private static final long MAX_RETRY_AFTER = 10 * 60 * 1000;
 
+    private static volatile ScheduledExecutorService scheduler;
+    private static final RestInterceptor[] NO_INTERCEPTORS = new RestInterceptor[0];
+
+    private RestClientRegistry.SharedClient sharedClient;
     private Client client;
     private WebTarget apiTarget;
 
-    private final Map<String, Object> apiHeaders = new HashMap<>();
+    // immutable, it is replaced by a copy when a header changes, so it can be updated from any thread (like the
+    // callbacks of async requests) while other requests are sending the headers they started with
+    private volatile Map<String, Object> apiHeaders = Collections.emptyMap();
     // max number of retries during service call
     private Integer retries;
     private Integer connectionTimeout = 5 * 1000; // 5 seconds by default
     private Integer readTimeout = 60 * 1000; // 60 seconds by default
+    private Integer asyncTimeout; // no limit by default for the whole asynchronous request, including retries
+    private RetryPolicy retryPolicy = RetryPolicy.DEFAULT;
+    private RetryBudget retryBudget;
+    private RestResponseCache responseCache;
+    private RequestCoalescer requestCoalescer;
+    private CircuitBreakerRegistry circuitBreakers;
+    private RateLimiter rateLimiter;
+    private ConcurrencyLimiter concurrencyLimiter;
+    private Transport transport;
+    private RestMetricsListener metricsListener;
+    private boolean phaseTimings = false;
+    private HedgePolicy hedgePolicy;
+    private volatile RestInterceptor[] interceptors = NO_INTERCEPTORS;
 
     private boolean silenceLogger = false;
     private boolean convertContentToString = true;
@@ -60,13 +83,10 @@ public abstract class RestClient {
         if (StringUtils.isBlank(apiUri)) {
             throw new RestException(RestErrorType.ARGUMENT_EXCEPTION, String.format("Empty URI API parameter [%s]", apiUri));
         }
-        if (allowSelfSignedCertificate) {
-            RestClientFactory.RestClientOptions options = new RestClientFactory.RestClientOptions();
-            options.allowSelfSignedCertificate = true;
-            this.client = RestClientFactory.configureClient(options);
-        } else {
-            this.client = RestClientFactory.configureClient();
-        }
+        RestClientFactory.RestClientOptions options = new RestClientFactory.RestClientOptions();
+        options.allowSelfSignedCertificate = allowSelfSignedCertificate;
+        this.sharedClient = RestClientRegistry.acquire(options);
+        this.client = sharedClient.getClient();
         this.apiTarget = client.target(apiUri);
     }
 
@@ -74,8 +94,45 @@ public abstract class RestClient {
         if (StringUtils.isBlank(apiUri)) {
             throw new RestException(RestErrorType.ARGUMENT_EXCEPTION, String.format("Empty URI API parameter [%s]", apiUri));
         }
-        this.client = RestClientFactory.configureClient(options);
+        this.sharedClient = RestClientRegistry.acquire(options);
+        this.client = sharedClient.getClient();
         this.apiTarget = client.target(apiUri);
+        if (options.rateLimit > 0) {
+            this.rateLimiter = new RateLimiter(options.rateLimit, options.rateLimitBurst)
+                    .perHost(options.rateLimitPerHost)
+                    .mode(options.rateLimitMode)
+                    .maxWait(options.rateLimitMaxWait);
+        }
+    }
+
+    /**
+     * Releases the Jersey client used by this client. It is closed when no other client with the same
+     * options uses it. Requests cannot be done after closing the client.
+     */
+    @Override
+    public void close() {
+        final RestClientRegistry.SharedClient released;
+        synchronized (this) {
+            released = sharedClient;
+            sharedClient = null;
+        }
+        if (released != null) {
+            released.release();
+        }
+    }
+
+    /**
+     * Returns the statistics of the connection pool of the client: the connections that are
+     * <code>leased</code> (in use) and <code>available</code> (idle), and the requests that are
+     * <code>pending</code> (waiting for a connection), in total and for each route. The pool is shared by
+     * the clients with the same options.
+     */
+    public Json poolStats() {
+        final RestClientRegistry.SharedClient shared = sharedClient;
+        if (shared == null) {
+            return Json.map();
+        }
+        return RestClientRegistry.poolStats(shared.getConnectionManager());
     }
 
     /**
@@ -120,7 +177,11 @@ public abstract class RestClient {
      * case where you need this.
      */
     protected void setupDefaultHeader(String name, Object value) {
-        this.apiHeaders.put(name, value);
+        synchronized (this) {
+            final Map<String, Object> headers = new HashMap<>(this.apiHeaders);
+            headers.put(name, value);
+            this.apiHeaders = Collections.unmodifiableMap(headers);
+        }
     }
 
     /**
@@ -248,21 +309,148 @@ public abstract class RestClient {
      * Perform the specified request in the method with the target information
      */
     protected Json execute(RestMethod method, WebTarget target, Object content) throws RestException {
-        return execute(method, (target != null ? target : apiTarget), apiHeaders, content, retries, connectionTimeout, readTimeout);
+        return intercept(method, (target != null ? target : apiTarget), apiHeaders, content);
     }
 
     /**
      * Perform the specified request in the method with the target information
      */
     protected Json execute(RestMethod method, WebTarget target, Object content, Map<String, Object> additionalHeaders) throws RestException {
-        Map<String, Object> mixedHeaders = new HashMap<>();
-        if (apiHeaders != null) {
-            mixedHeaders.putAll(apiHeaders);
+        return intercept(method, (target != null ? target : apiTarget), addHeaders(apiHeaders, additionalHeaders), content);
+    }
+
+    /**
+     * Perform the specified request in the method with the target information without blocking the caller.
+     * <p/>
+     * <p>Retries follow the same rules than {@link #execute(RestMethod, WebTarget, Object)}, but waits between them
+     * are scheduled instead of sleeping a thread. The returned future is completed with the response or
+     * exceptionally with the {@link RestException} that the synchronous call would throw. Cancelling it
+     * aborts the request in progress and any pending retry.
+     */
+    protected CompletableFuture<Json> executeAsync(RestMethod method, WebTarget target, Object content) {
+        return interceptAsync(method, (target != null ? target : apiTarget), apiHeaders, content);
+    }
+
+    /**
+     * Perform the specified request in the method with the target information without blocking the caller
+     */
+    protected CompletableFuture<Json> executeAsync(RestMethod method, WebTarget target, Object content, Map<String, Object> additionalHeaders) {
+        return interceptAsync(method, (target != null ? target : apiTarget), addHeaders(apiHeaders, additionalHeaders), content);
+    }
+
+    /**
+     * Adds an interceptor at the end of the chain of the requests, so it is called after the ones that were
+     * added before
+     */
+    public synchronized void addInterceptor(RestInterceptor interceptor) {
+        if (interceptor == null) {
+            throw new IllegalArgumentException("Interceptor cannot be null");
+        }
+        final RestInterceptor[] list = Arrays.copyOf(interceptors, interceptors.length + 1);
+        list[list.length - 1] = interceptor;
+        interceptors = list;
+    }
+
+    /**
+     * Removes an interceptor from the chain of the requests
+     *
+     * @return true if the interceptor was in the chain
+     */
+    public synchronized boolean removeInterceptor(RestInterceptor interceptor) {
+        final List<RestInterceptor> list = new ArrayList<>(Arrays.asList(interceptors));
+        if (!list.remove(interceptor)) {
+            return false;
+        }
+        interceptors = list.toArray(NO_INTERCEPTORS);
+        return true;
+    }
+
+    /**
+     * Returns the interceptors of the requests in the order they are called
+     */
+    public List<RestInterceptor> getInterceptors() {
+        return Collections.unmodifiableList(Arrays.asList(interceptors));
+    }
+
+    private Json intercept(RestMethod method, WebTarget target, Map<String, Object> headers, Object content) throws RestException {
+        final RestInterceptor[] list = interceptors;
+        if (list.length == 0) {
+            return execute(method, target, headers, content, retries, connectionTimeout, readTimeout);
+        }
+        return new InterceptorChain(list, 0).proceed(new RestCallContext(method, target, headersSnapshot(headers), content));
+    }
+
+    private CompletableFuture<Json> interceptAsync(RestMethod method, WebTarget target, Map<String, Object> headers, Object content) {
+        final RestInterceptor[] list = interceptors;
+        if (list.length == 0) {
+            return executeAsync(method, target, headers, content, retries, connectionTimeout, readTimeout);
+        }
+        return new AsyncInterceptorChain(list, 0).proceed(new RestCallContext(method, target, headersSnapshot(headers), content));
+    }
+
+    /**
+     * Immutable headers for a call. The default headers are already immutable, and other headers were merged
+     * for the call.
+     */
+    private Map<String, Object> headersSnapshot(Map<String, Object> headers) {
+        if (headers == apiHeaders) {
+            return headers;
+        }
+        return Collections.unmodifiableMap(headers);
+    }
+
+    /**
+     * Links of the chain of interceptors of a synchronous request. The last one does the request.
+     */
+    private class InterceptorChain implements RestInterceptor.Chain {
+        private final RestInterceptor[] list;
+        private final int index;
+
+        private InterceptorChain(RestInterceptor[] list, int index) {
+            this.list = list;
+            this.index = index;
+        }
+
+        @Override
+        public Json proceed(RestCallContext context) throws RestException {
+            if (context == null) {
+                throw new IllegalArgumentException("Context cannot be null");
+            }
+            if (index < list.length) {
+                return list[index].intercept(context, new InterceptorChain(list, index + 1));
+            }
+            return execute(context.getMethod(), context.getTarget(), context.getHeaders(), context.getContent(), retries, connectionTimeout, readTimeout);
         }
-        if (additionalHeaders != null) {
-            mixedHeaders.putAll(additionalHeaders);
+    }
+
+    /**
+     * Links of the chain of interceptors of an asynchronous request. The last one does the request.
+     */
+    private class AsyncInterceptorChain implements RestInterceptor.AsyncChain {
+        private final RestInterceptor[] list;
+        private final int index;
+
+        private AsyncInterceptorChain(RestInterceptor[] list, int index) {
+            this.list = list;
+            this.index = index;
+        }
+
+        @Override
+        public CompletableFuture<Json> proceed(RestCallContext context) {
+            if (context == null) {
+                throw new IllegalArgumentException("Context cannot be null");
+            }
+            if (index < list.length) {
+                try {
+                    return list[index].interceptAsync(context, new AsyncInterceptorChain(list, index + 1));
+                } catch (RuntimeException e) {
+                    final CompletableFuture<Json> failed = new CompletableFuture<>();
+                    failed.completeExceptionally(e);
+                    return failed;
+                }
+            }
+            return executeAsync(context.getMethod(), context.getTarget(), context.getHeaders(), context.getContent(), retries, connectionTimeout, readTimeout);
         }
-        return execute(method, (target != null ? target : apiTarget), mixedHeaders, content, retries, connectionTimeout, readTimeout);
     }
 
     public Integer getRetries() {
@@ -277,6 +465,155 @@ public abstract class RestClient {
         }
     }
 
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Sets the policy that decides the delay between retries. By default the delay grows one second on each
+     * retry. If it is <code>null</code> the default policy is used.
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy != null ? retryPolicy : RetryPolicy.DEFAULT;
+    }
+
+    public RetryBudget getRetryBudget() {
+        return retryBudget;
+    }
+
+    /**
+     * Sets the budget that limits the retries of the client, or <code>null</code> to not limit them
+     */
+    public void setRetryBudget(RetryBudget retryBudget) {
+        this.retryBudget = retryBudget;
+    }
+
+    public RestResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    /**
+     * Sets the cache for the responses of GET requests, or <code>null</code> to disable it (default)
+     */
+    public void setResponseCache(RestResponseCache responseCache) {
+        this.responseCache = responseCache;
+    }
+
+    public RequestCoalescer getRequestCoalescer() {
+        return requestCoalescer;
+    }
+
+    /**
+     * Sets the coalescer of identical GET requests done at the same time, or <code>null</code> to disable
+     * it (default)
+     */
+    public void setRequestCoalescer(RequestCoalescer requestCoalescer) {
+        this.requestCoalescer = requestCoalescer;
+    }
+
+    public CircuitBreakerRegistry getCircuitBreakers() {
+        return circuitBreakers;
+    }
+
+    /**
+     * Sets the registry of circuit breakers of the called hosts, or <code>null</code> to disable them (default).
+     * When the circuit of a host is open, requests fail immediately with a {@link CircuitOpenException}.
+     */
+    public void setCircuitBreakers(CircuitBreakerRegistry circuitBreakers) {
+        this.circuitBreakers = circuitBreakers;
+    }
+
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Sets the rate limiter of the requests, or <code>null</code> to disable it. The same rate limiter can be
+     * set in several clients to share the limit.
+     */
+    public void setRateLimiter(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    public ConcurrencyLimiter getConcurrencyLimiter() {
+        return concurrencyLimiter;
+    }
+
+    /**
+     * Sets the adaptive limit of requests in flight, or <code>null</code> to disable it (default). The same
+     * limiter can be set in several clients to share the limit.
+     */
+    public void setConcurrencyLimiter(ConcurrencyLimiter concurrencyLimiter) {
+        this.concurrencyLimiter = concurrencyLimiter;
+    }
+
+    public Transport getTransport() {
+        return transport();
+    }
+
+    /**
+     * Sets the transport that sends the requests, or <code>null</code> to send them with Jersey (default).
+     * Downloads are always done with Jersey.
+     */
+    public void setTransport(Transport transport) {
+        this.transport = transport;
+    }
+
+    private Transport transport() {
+        final Transport t = transport;
+        return t != null ? t : Transport.jersey();
+    }
+
+    public RestMetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+
+    /**
+     * Sets the listener that receives the metrics of the requests, or <code>null</code> to disable it (default)
+     */
+    public void setMetricsListener(RestMetricsListener metricsListener) {
+        this.metricsListener = metricsListener;
+    }
+
+    public boolean isPhaseTimings() {
+        return phaseTimings;
+    }
+
+    /**
+     * Enables recording the time spent in each phase of the requests (see {@link RequestPhases}). They are
+     * given to the metrics listener and attached to the exceptions of the failed requests. Hedged requests
+     * do not record the phases of the connection.
+     */
+    public void setPhaseTimings(boolean phaseTimings) {
+        this.phaseTimings = phaseTimings;
+    }
+
+    public HedgePolicy getHedgePolicy() {
+        return hedgePolicy;
+    }
+
+    /**
+     * Sets the policy to hedge GET, HEAD and OPTIONS requests, or <code>null</code> to disable it (default)
+     */
+    public void setHedgePolicy(HedgePolicy hedgePolicy) {
+        this.hedgePolicy = hedgePolicy;
+    }
+
+    /**
+     * Hedge policy for the method, only for idempotent methods
+     */
+    private HedgePolicy hedgePolicy(RestMethod method) {
+        final HedgePolicy policy = hedgePolicy;
+        return policy != null && (method == RestMethod.GET || method == RestMethod.HEAD || method == RestMethod.OPTIONS) ? policy : null;
+    }
+
+    /**
+     * Metrics of a new request, or <code>null</code> if they are not needed
+     */
+    private RestRequestMetrics newMetrics(RestMetricsListener listener, RestMethod method, String uri, boolean download) {
+        return listener != null || phaseTimings ? new RestRequestMetrics(method, uri, download, phaseTimings) : null;
+    }
+
     public Integer getReadTimeout() {
         return readTimeout;
     }
@@ -301,6 +638,22 @@ public abstract class RestClient {
         }
     }
 
+    public Integer getAsyncTimeout() {
+        return asyncTimeout;
+    }
+
+    /**
+     * Sets the maximum time in milliseconds for asynchronous requests, including retries. When it is exceeded
+     * the request is cancelled and the future completes with a {@link RetryableRestException}.
+     */
+    public void setAsyncTimeout(Integer asyncTimeout) {
+        if (asyncTimeout != null && asyncTimeout > 0) {
+            this.asyncTimeout = asyncTimeout;
+        } else {
+            this.asyncTimeout = null;
+        }
+    }
+
     /**
      * Perform the specified request in the method with the target information and content
      */
@@ -308,12 +661,632 @@ public abstract class RestClient {
         if (target == null) {
             throw new PermanentRestException(RestErrorType.ARGUMENT_EXCEPTION, "Invalid web and API target.");
         }
+        final RequestCoalescer coalescer = requestCoalescer;
+        if (coalescer != null && method == RestMethod.GET && !TransportRequest.hasAuthentication(target)) {
+            final String key = coalescer.key(method, target.getUri().toString(), apiHeaders);
+            // callers of the request in flight wait up to the time an attempt can take
+            final long maxWait = (connectionTimeout != null ? connectionTimeout : 0) + (readTimeout != null ? readTimeout : 0);
+            return coalescer.execute(key, () -> executeRequest(method, target, apiHeaders, content, retries, connectionTimeout, readTimeout), maxWait);
+        }
+        return executeRequest(method, target, apiHeaders, content, retries, connectionTimeout, readTimeout);
+    }
+
+    private Json executeRequest(RestMethod method, WebTarget target, Map<String, Object> apiHeaders, Object content, Integer retries, Integer connectionTimeout, Integer readTimeout) throws RestException {
+        final URI targetUri = target.getUri();
+        final String uri = targetUri.toString();
+        final RestMetricsListener listener = metricsListener;
+        final RestRequestMetrics metrics = newMetrics(listener, method, uri, false);
+        Json json = null;
+        Throwable error = null;
+        try {
+            final RestResponseCache.Lookup cached = lookupCache(method, target, uri, apiHeaders);
+            if (cached != null) {
+                final Json fresh = cached.fresh();
+                if (fresh != null) {
+                    logInfo(decorateLog("Cached response for [%s %s]", method.name(), uri));
+                    if (metrics != null) {
+                        metrics.setCached(true);
+                    }
+                    json = fresh;
+                    return json;
+                }
+                apiHeaders = addHeaders(apiHeaders, cached.conditionalHeaders());
+            }
+            final Entity postData = buildEntity(content, apiHeaders);
+            final TransportRequest request = new TransportRequest(method, target, targetUri, apiHeaders, postData, connectionTimeout, readTimeout);
+            logRequest(method, uri, postData);
+            if (metrics != null) {
+                metrics.setBytesSent(request.hasBody() ? bodySize(postData.getEntity()) : 0);
+            }
+
+            final CircuitBreaker circuitBreaker = circuitBreakers != null ? circuitBreakers.get(targetUri) : null;
+            final RetryState retry = new RetryState(retries);
+            while (true) {
+                try {
+                    json = executeAttempt(method, uri, request, cached, circuitBreaker, metrics);
+                    return json;
+                } catch (Exception e) {
+                    if (!checkRetry(e, method, uri, retry)) {
+                        return null;
+                    }
+                    notifyRetry(listener, metrics, retry, e);
+                    try {
+                        Thread.sleep(retry.delay);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        throw new RetryableRestException(RestErrorType.GENERIC_ERROR, String.format("Interrupted while waiting to retry [%s %s]", method.name(), uri), ie);
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            error = e;
+            attachPhases(e, metrics);
+            throw e;
+        } finally {
+            notifyComplete(listener, metrics, json != null, error);
+        }
+    }
+
+    /**
+     * Does one attempt of a request, waiting for the rate and concurrency limits
+     */
+    private Json executeAttempt(RestMethod method, String uri, TransportRequest request, RestResponseCache.Lookup cached, CircuitBreaker circuitBreaker, RestRequestMetrics metrics) throws Exception {
+        if (rateLimiter != null) {
+            final long wait = rateLimiter.acquire(uri);
+            if (wait > 0) {
+                try {
+                    Thread.sleep(wait);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new RetryableRestException(RestErrorType.GENERIC_ERROR, String.format("Interrupted while waiting for the rate limit of [%s %s]", method.name(), uri), ie);
+                }
+            }
+        }
+        // calls rejected by the circuit breaker do not wait for the concurrency limit or count in it
+        if (circuitBreaker != null) {
+            circuitBreaker.acquire();
+        }
+        final ConcurrencyLimiter.Permit permit;
+        try {
+            permit = concurrencyLimiter != null ? concurrencyLimiter.acquireAndWait(uri) : null;
+        } catch (RuntimeException e) {
+            if (circuitBreaker != null) {
+                circuitBreaker.release();
+            }
+            throw e;
+        }
+        Exception error = null;
+        try {
+            if (permit != null) {
+                permit.start();
+            }
+            final long start = System.nanoTime();
+            try {
+                final RequestPhases phases = metrics != null ? metrics.startAttempt() : null;
+                final HedgePolicy hedge = hedgePolicy(method);
+                final Response response;
+                if (phases != null) {
+                    // the hooks of the connection pool record the phases of the request sent by this thread
+                    final RequestPhases previous = RequestPhases.attach(phases);
+                    try {
+                        response = hedge != null ? executeHedged(method, uri, request, hedge) : transport().execute(request);
+                    } finally {
+                        RequestPhases.detach(previous);
+                    }
+                    phases.responseReceived();
+                } else {
+                    response = hedge != null ? executeHedged(method, uri, request, hedge) : transport().execute(request);
+                }
+                return readResponse(method, uri, response, cached, metrics);
+            } catch (Exception e) {
+                error = e;
+                throw e;
+            } finally {
+                if (circuitBreaker != null) {
+                    circuitBreaker.record(error, System.nanoTime() - start);
+                }
+            }
+        } finally {
+            if (permit != null) {
+                permit.release(error);
+            }
+        }
+    }
+
+    /**
+     * Sends a hedged request and waits for the first response
+     */
+    private Response executeHedged(RestMethod method, String uri, TransportRequest request, HedgePolicy hedge) throws Exception {
+        final CompletableFuture<Response> response = new HedgedCall(request, hedge).start();
+        try {
+            return response.get();
+        } catch (InterruptedException ie) {
+            response.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RetryableRestException(RestErrorType.GENERIC_ERROR, String.format("Interrupted while waiting for [%s %s]", method.name(), uri), ie);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            // errors of the status are thrown like in synchronous requests
+            if (cause instanceof ProcessingException && cause.getCause() instanceof WebApplicationException) {
+                cause = cause.getCause();
+            }
+            throw cause instanceof Exception ? (Exception) cause : new ProcessingException(cause);
+        }
+    }
+
+    /**
+     * Request that is sent again if there is no response after the delay of the hedge policy. The first
+     * response wins and the other request is cancelled. Failures only win if they come with a response or
+     * there is no other request in progress.
+     */
+    private class HedgedCall {
+        private final CompletableFuture<Response> result = new CompletableFuture<>();
+        private final TransportRequest request;
+        private final HedgePolicy policy;
+        private final Transport transport;
+        private final AtomicInteger pending = new AtomicInteger(1);
+        private volatile Future<?> primary;
+        private volatile Future<?> hedge;
+        private volatile Future<?> timer;
+
+        private HedgedCall(TransportRequest request, HedgePolicy policy) {
+            this.request = request;
+            this.policy = policy;
+            this.transport = transport();
+        }
+
+        private CompletableFuture<Response> start() {
+            policy.onRequest();
+            result.whenComplete((response, e) -> {
+                // the loser is still in progress, or it was not sent yet
+                cancel(timer);
+                cancel(primary);
+                cancel(hedge);
+            });
+            primary = send(false);
+            if (!result.isDone()) {
+                timer = scheduler().schedule(this::sendHedge, policy.getDelay(), TimeUnit.MILLISECONDS);
+            }
+            return result;
+        }
+
+        private void sendHedge() {
+            if (result.isDone() || !policy.tryHedge()) {
+                return;
+            }
+            pending.incrementAndGet();
+            hedge = send(true);
+            if (result.isDone()) {
+                cancel(hedge);
+            }
+        }
+
+        private CompletableFuture<Response> send(boolean hedged) {
+            final long start = System.nanoTime();
+            final CompletableFuture<Response> response;
+            // the hedge is sent by the scheduler and the requests run in the threads of the transport, so the
+            // connection phases are not recorded; they could also be of the request that loses
+            final RequestPhases phases = RequestPhases.attach(null);
+            try {
+                response = transport.executeAsync(request);
+            } catch (RuntimeException e) {
+                failed(e);
+                return null;
+            } finally {
+                RequestPhases.detach(phases);
+            }
+            response.whenComplete((r, e) -> {
+                if (e == null) {
+                    policy.record(System.nanoTime() - start);
+                    if (result.complete(r)) {
+                        if (hedged) {
+                            policy.onHedgeWin();
+                        }
+                    } else {
+                        r.close();
+                    }
+                } else {
+                    failed(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+                }
+            });
+            return response;
+        }
+
+        private void failed(Throwable e) {
+            final boolean hasResponse = e instanceof WebApplicationException
+                    || (e instanceof ProcessingException && e.getCause() instanceof WebApplicationException);
+            if (pending.decrementAndGet() == 0 || hasResponse) {
+                result.completeExceptionally(e);
+            }
+        }
+
+        private void cancel(Future<?> future) {
+            if (future != null && !future.isDone()) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Perform the specified request asynchronously. Retries are scheduled instead of waiting in a thread.
+     */
+    private CompletableFuture<Json> executeAsync(RestMethod method, WebTarget target, Map<String, Object> apiHeaders, Object content, Integer retries, Integer connectionTimeout, Integer readTimeout) {
+        final RequestCoalescer coalescer = requestCoalescer;
+        if (coalescer != null && method == RestMethod.GET && target != null && !TransportRequest.hasAuthentication(target)) {
+            final String key = coalescer.key(method, target.getUri().toString(), apiHeaders);
+            return coalescer.executeAsync(key, () -> executeRequestAsync(method, target, apiHeaders, content, retries, connectionTimeout, readTimeout));
+        }
+        return executeRequestAsync(method, target, apiHeaders, content, retries, connectionTimeout, readTimeout);
+    }
+
+    private CompletableFuture<Json> executeRequestAsync(RestMethod method, WebTarget target, Map<String, Object> apiHeaders, Object content, Integer retries, Integer connectionTimeout, Integer readTimeout) {
+        final CompletableFuture<Json> result = new CompletableFuture<>();
+        try {
+            if (target == null) {
+                throw new PermanentRestException(RestErrorType.ARGUMENT_EXCEPTION, "Invalid web and API target.");
+            }
+            final URI targetUri = target.getUri();
+            final String uri = targetUri.toString();
+            final RestMetricsListener listener = metricsListener;
+            final RestRequestMetrics metrics = newMetrics(listener, method, uri, false);
+            final RestResponseCache.Lookup cached = lookupCache(method, target, uri, apiHeaders);
+            if (cached != null) {
+                final Json fresh = cached.fresh();
+                if (fresh != null) {
+                    logInfo(decorateLog("Cached response for [%s %s]", method.name(), uri));
+                    if (metrics != null) {
+                        metrics.setCached(true);
+                        notifyComplete(listener, metrics, true, null);
+                    }
+                    result.complete(fresh);
+                    return result;
+                }
+                apiHeaders = addHeaders(apiHeaders, cached.conditionalHeaders());
+            }
+            final Entity postData = buildEntity(content, apiHeaders);
+            final TransportRequest request = new TransportRequest(method, target, targetUri, apiHeaders, postData, connectionTimeout, readTimeout);
+            logRequest(method, uri, postData);
+
+            final CircuitBreaker circuitBreaker = circuitBreakers != null ? circuitBreakers.get(targetUri) : null;
+            final RetryState retry = new RetryState(retries);
+            if (metrics != null) {
+                metrics.setBytesSent(request.hasBody() ? bodySize(postData.getEntity()) : 0);
+                result.whenComplete((json, ex) -> notifyComplete(listener, metrics, json != null, ex));
+            }
+            final AsyncCall call = new AsyncCall(result, method, uri, request, retry, cached, circuitBreaker, listener, metrics);
+            if (asyncTimeout != null && asyncTimeout > 0) {
+                final ScheduledFuture<?> timeout = scheduler().schedule(() -> {
+                    result.completeExceptionally(new RetryableRestException(RestErrorType.API_EXCEPTION, String.format("Timeout of [%s] ms exceeded for request [%s %s]", asyncTimeout, method.name(), uri)));
+                }, asyncTimeout, TimeUnit.MILLISECONDS);
+                result.whenComplete((json, ex) -> timeout.cancel(false));
+            }
+            call.attempt();
+        } catch (Exception e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * State of an asynchronous request through its retries
+     */
+    private class AsyncCall {
+        private final CompletableFuture<Json> result;
+        private final RestMethod method;
+        private final String uri;
+        private final TransportRequest request;
+        private final RetryState retry;
+        private final RestResponseCache.Lookup cached;
+        private final CircuitBreaker circuitBreaker;
+        private final RestMetricsListener listener;
+        private final RestRequestMetrics metrics;
+        private volatile Future<?> current;
+        private volatile ConcurrencyLimiter.Permit permit;
+        private volatile long attemptStart;
+
+        private AsyncCall(CompletableFuture<Json> result, RestMethod method, String uri, TransportRequest request, RetryState retry, RestResponseCache.Lookup cached, CircuitBreaker circuitBreaker, RestMetricsListener listener, RestRequestMetrics metrics) {
+            this.result = result;
+            this.method = method;
+            this.uri = uri;
+            this.request = request;
+            this.retry = retry;
+            this.cached = cached;
+            this.circuitBreaker = circuitBreaker;
+            this.listener = listener;
+            this.metrics = metrics;
+            // cancelling or timing out the result cancels the request in progress or the pending retry
+            result.whenComplete((json, ex) -> {
+                final Future<?> f = current;
+                if (ex != null && f != null) {
+                    f.cancel(true);
+                }
+                if (ex != null) {
+                    releasePermit(ex);
+                }
+            });
+        }
+
+        private void attempt() {
+            if (result.isDone()) {
+                return;
+            }
+            if (rateLimiter != null) {
+                final long wait;
+                try {
+                    wait = rateLimiter.acquire(uri);
+                } catch (RateLimitedException e) {
+                    result.completeExceptionally(e);
+                    return;
+                }
+                if (wait > 0) {
+                    current = scheduler().schedule(this::send, wait, TimeUnit.MILLISECONDS);
+                    return;
+                }
+            }
+            send();
+        }
+
+        private void send() {
+            if (result.isDone()) {
+                return;
+            }
+            // calls rejected by the circuit breaker do not wait for the concurrency limit or count in it
+            if (circuitBreaker != null) {
+                try {
+                    circuitBreaker.acquire();
+                } catch (CircuitOpenException e) {
+                    result.completeExceptionally(e);
+                    return;
+                }
+            }
+            if (concurrencyLimiter == null) {
+                dispatch(null);
+                return;
+            }
+            final CompletableFuture<ConcurrencyLimiter.Permit> acquired = concurrencyLimiter.acquire(uri);
+            current = acquired;
+            acquired.whenComplete((granted, e) -> {
+                if (e == null) {
+                    dispatch(granted);
+                    return;
+                }
+                if (circuitBreaker != null) {
+                    circuitBreaker.release();
+                }
+                if (!(e instanceof CancellationException)) {
+                    result.completeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+                }
+            });
+        }
+
+        private void dispatch(ConcurrencyLimiter.Permit granted) {
+            permit = granted;
+            if (result.isDone()) {
+                if (circuitBreaker != null) {
+                    circuitBreaker.release();
+                }
+                releasePermit(null);
+                return;
+            }
+            if (granted != null) {
+                granted.start();
+            }
+            attemptStart = System.nanoTime();
+            final RequestPhases phases = metrics != null ? metrics.startAttempt() : null;
+            final CompletableFuture<Response> response;
+            // transports that send the request in their own threads take the phases from this one
+            final RequestPhases previous = phases != null ? RequestPhases.attach(phases) : null;
+            try {
+                final HedgePolicy hedge = hedgePolicy(method);
+                response = hedge != null ? new HedgedCall(request, hedge).start() : transport().executeAsync(request);
+            } catch (Exception e) {
+                failed(e);
+                return;
+            } finally {
+                if (phases != null) {
+                    RequestPhases.detach(previous);
+                }
+            }
+            current = response;
+            response.whenComplete((r, e) -> {
+                if (e == null) {
+                    completed(r);
+                } else {
+                    failed(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+                }
+            });
+        }
+
+        private void completed(Response response) {
+            final RequestPhases phases = metrics != null ? metrics.getPhases() : null;
+            if (phases != null) {
+                phases.responseReceived();
+            }
+            final Json json;
+            try {
+                json = readResponse(method, uri, response, cached, metrics);
+            } catch (Exception e) {
+                failed(e);
+                return;
+            }
+            record(null);
+            result.complete(json);
+        }
+
+        private void failed(Throwable throwable) {
+            if (result.isDone()) {
+                // cancelled or timed out
+                if (circuitBreaker != null) {
+                    circuitBreaker.release();
+                }
+                releasePermit(throwable);
+                return;
+            }
+            record(throwable);
+            Throwable cause = throwable;
+            // errors are wrapped by the async invoker
+            if (cause instanceof ProcessingException && cause.getCause() instanceof WebApplicationException) {
+                cause = cause.getCause();
+            }
+            try {
+                if (checkRetry(cause instanceof Exception ? (Exception) cause : new ProcessingException(cause), method, uri, retry)) {
+                    notifyRetry(listener, metrics, retry, cause);
+                    current = scheduler().schedule(this::attempt, retry.delay, TimeUnit.MILLISECONDS);
+                } else {
+                    result.complete(null);
+                }
+            } catch (Exception e) {
+                attachPhases(e, metrics);
+                result.completeExceptionally(e);
+            }
+        }
+
+        private void record(Throwable error) {
+            if (circuitBreaker != null) {
+                circuitBreaker.record(error, System.nanoTime() - attemptStart);
+            }
+            releasePermit(error);
+        }
+
+        private void releasePermit(Throwable error) {
+            final ConcurrencyLimiter.Permit p = permit;
+            if (p != null) {
+                permit = null;
+                p.release(error);
+            }
+        }
+    }
+
+    /**
+     * Retries done by a request and the delay before the next one
+     */
+    private class RetryState {
+        private final int maxRetries;
+        private final RetryPolicy policy;
+        private final RetryBudget budget;
+        private final long start = System.currentTimeMillis();
+        private int retryCount = 0;
+        private long delay = 0;
+
+        private RetryState(Integer retries) {
+            this.maxRetries = retries != null ? retries : MAX_RETRIES;
+            this.policy = retryPolicy;
+            this.budget = retryBudget;
+            if (budget != null) {
+                budget.onRequest();
+            }
+        }
+
+        /**
+         * Calculates the delay of the next retry. It returns false if there are no more retries for the
+         * request, because of the max number of attempts, the retry policy or the retry budget.
+         */
+        private boolean next() {
+            if (retryCount >= maxRetries) {
+                return false;
+            }
+            final long nextDelay = policy.nextDelay(retryCount, delay, System.currentTimeMillis() - start);
+            if (nextDelay < 0 || (budget != null && !budget.tryRetry())) {
+                return false;
+            }
+            delay = nextDelay;
+            return true;
+        }
+    }
+
+    /**
+     * Decides what to do when an attempt of a request fails. It returns <code>true</code> if the request has to
+     * be retried after the delay of the retry state, <code>false</code> if the request has to return
+     * <code>null</code> and throws an exception if the request has to fail.
+     *
+     * @param e     the exception thrown by the attempt
+     * @param retry retries of the request, updated with this failure
+     */
+    private boolean checkRetry(Exception e, RestMethod method, String uri, RetryState retry) throws RestException {
+        final int retryCount = ++retry.retryCount;
+        if (e instanceof ResponseProcessingException) {
+            ResponseProcessingException rpe = (ResponseProcessingException) e;
+            throw new PermanentRestException(RestErrorType.API_EXCEPTION, String.format("Error processing response [%s]: %s", rpe.getMessage(), rpe.getResponse() != null ? rpe.getResponse() : "-"), rpe);
+        } else if (e instanceof ProcessingException) {
+            ProcessingException pe = (ProcessingException) e;
+            if (!retry.next()) {
+                if (pe.getCause() instanceof IOException) {
+                    throw new PermanentRestException(RestErrorType.CLIENT_EXCEPTION, String.format("Error processing request [%s]", RestException.getProcessingExceptionMessage(pe)), pe);
+                } else {
+                    throw new RetryableRestException(RestErrorType.API_EXCEPTION, String.format("Error processing request [%s]", pe.getMessage()), pe);
+                }
+            } else if ((StringUtils.isNotBlank(pe.getMessage()) && pe.getMessage().contains("org.apache.http.NoHttpResponseException"))) {
+                if (pe.getMessage().contains("ConnectTimeoutException")) {
+                    logInfo("No Http response error received", pe);
+                    return false;
+                } else {
+                    logWarn(decorateLog("Retry [%s] for request [%s %s]. Reason: [%s].", retryCount, method.name(), uri, pe.getMessage()));
+                    return true;
+                }
+            } else {
+                logWarn(decorateLog("Retry [%s] for request [%s %s]. Reason: [%s]", retryCount, method.name(), uri, pe.getMessage()));
+                return true;
+            }
+        } else if (e instanceof WebApplicationException) {
+            WebApplicationException wae = (WebApplicationException) e;
+            Response r = wae.getResponse();
+            String details = readErrorDetails(r);
+            // these might be retryable status codes according to W3: http://www.w3.org/Protocols/rfc2616/rfc2616-sec10.html
+            // and 429 (too many requests) from https://tools.ietf.org/html/rfc6585#section-4
+            if (r != null && (r.getStatus() == 408 || r.getStatus() == 429 || r.getStatus() == 500 || r.getStatus() == 502 || r.getStatus() == 503 || r.getStatus() == 504)) {
+                final long retryAfter = RateLimiter.retryAfter(r);
+                if (rateLimiter != null && (r.getStatus() == 429 || (r.getStatus() == 503 && retryAfter >= 0))) {
+                    rateLimiter.onThrottled(uri, retryAfter);
+                }
+                if (retryAfter > MAX_RETRY_AFTER || !retry.next()) {
+                    throw new RetryableRestException(RestErrorType.API_EXCEPTION, wae.getMessage(), wae);
+                } else {
+                    // the server knows better when it can be retried
+                    retry.delay = Math.max(retry.delay, retryAfter);
+                    logWarn(decorateLog("Retry [%s] for request [%s %s] in [%s] ms. Reason: [%s]", retryCount, method.name(), uri, retry.delay, r.getStatus()));
+                    return true;
+                }
+            } else {
+                // add more information for bad request status code
+                Map<String, Object> errorDetails = null;
+                if (details != null) {
+                    // try to parse messages
+                    try {
+                        final Json jsonDetail = Json.parse(details);
+                        errorDetails = jsonDetail.toMap();
+                    } catch (Exception ex) {
+                        // do nothing
+                    }
+                }
+                throw new PermanentRestException(RestErrorType.API_EXCEPTION, wae.getMessage(), wae, errorDetails);
+            }
+        } else if (e instanceof RestException) {
+            if (e.toString().contains("ConnectTimeoutException")) {
+                logInfo("No Http response error received", e);
+                return false;
+            } else {
+                throw (RestException) e;
+            }
+        } else {
+            // we assume this is an unhandled exception that is a programming error
+            throw new PermanentRestException(RestErrorType.GENERIC_ERROR, e.getMessage(), e);
+        }
+    }
+
+    private Entity buildEntity(Object content, Map<String, Object> apiHeaders) {
         if (content == null) {
             content = Json.map();
         }
 
         Entity postData = null;
-        if (content instanceof Json) {
+        if (content instanceof Json && !(transport() instanceof JerseyTransport)) {
+            // other transports write the Json to the request without converting it to a string first
+            if (apiHeaders.containsKey("Content-Type")) {
+                postData = Entity.entity(content, (String) apiHeaders.get("Content-Type"));
+            } else {
+                postData = Entity.json(content);
+            }
+        } else if (content instanceof Json) {
             if (apiHeaders.containsKey("Content-Type")) {
                 // in this case need to override content type
                 postData = Entity.entity(content.toString(), (String) apiHeaders.get("Content-Type"));
@@ -329,31 +1302,81 @@ public abstract class RestClient {
             contentType = Boundary.addBoundary(contentType);
             postData = Entity.entity(content, contentType);
         }
+        return postData;
+    }
 
-        final Invocation.Builder invocationBuilder = target.request();
-        invocationBuilder.accept(MediaType.APPLICATION_JSON_TYPE);
-        if (apiHeaders != null) {
-            apiHeaders.forEach(invocationBuilder::header);
+    private void notifyRetry(RestMetricsListener listener, RestRequestMetrics metrics, RetryState retry, Throwable cause) {
+        if (metrics == null) {
+            return;
         }
-        if (connectionTimeout != null) {
-            invocationBuilder.property(ClientProperties.CONNECT_TIMEOUT, connectionTimeout);
+        metrics.setRetries(retry.retryCount);
+        if (listener == null) {
+            return;
         }
-        if (readTimeout != null) {
-            invocationBuilder.property(ClientProperties.READ_TIMEOUT, readTimeout);
+        try {
+            listener.onRetry(metrics, cause);
+        } catch (Exception e) {
+            logger.warn("Error in metrics listener", e);
+        }
+    }
+
+    private void notifyComplete(RestMetricsListener listener, RestRequestMetrics metrics, boolean success, Throwable error) {
+        if (metrics == null) {
+            return;
+        }
+        metrics.finish(success, error);
+        if (listener == null) {
+            return;
+        }
+        try {
+            listener.onComplete(metrics);
+        } catch (Exception e) {
+            logger.warn("Error in metrics listener", e);
         }
+    }
+
+    private static void attachPhases(Exception e, RestRequestMetrics metrics) {
+        if (metrics != null && metrics.getPhases() != null && e instanceof RestException) {
+            ((RestException) e).setPhases(metrics.getPhases());
+        }
+    }
 
-        String stringResponse = null;
-        final String uri = target.getUri().toString();
-        int retryCount = 0;
+    /**
+     * Size in bytes of the body of a request, or -1 if it is not known before writing it
+     */
+    private static long bodySize(Object body) {
+        if (body instanceof byte[]) {
+            return ((byte[]) body).length;
+        } else if (body instanceof String) {
+            final String string = (String) body;
+            long size = 0;
+            for (int i = 0; i < string.length(); i++) {
+                final char c = string.charAt(i);
+                if (c < 0x80) {
+                    size++;
+                } else if (c < 0x800) {
+                    size += 2;
+                } else if (Character.isHighSurrogate(c)) {
+                    size += 4;
+                    i++;
+                } else {
+                    size += 3;
+                }
+            }
+            return size;
+        }
+        return -1;
+    }
 
+    private void logRequest(RestMethod method, String uri, Entity postData) {
         logInfo(decorateLog("Executing method [%s %s]", method.name(), uri));
         if (logger.isTraceEnabled()) {
             try {
                 String sData = null;
                 if (postData != null && postData.getEntity() != null) {
                     sData = postData.getEntity().toString();
-                    if (StringUtils.isNotBlank(sData) && sData.length() > 7000) {
-                        sData = sData.substring(0, 7000) + "...";
+                    if (StringUtils.isNotBlank(sData) && sData.length() > TRACE_LIMIT) {
+                        sData = sData.substring(0, TRACE_LIMIT) + "...";
                     }
                 }
                 if (StringUtils.isBlank(sData)) {
@@ -364,173 +1387,360 @@ public abstract class RestClient {
                 logTrace(decorateLog("Exception when generates trace of data to send"));
             }
         }
+    }
 
-        boolean retry;
-        boolean canRetry = true;
-        int maxRetries = MAX_RETRIES;
-        if (retries != null) {
-            maxRetries = retries;
-            if(maxRetries <= 0){
-                canRetry = false;
-            }
+    /**
+     * Reads the body of the response directly into the Json parser. The body is only kept as a string,
+     * up to the size of the trace, when trace logs are enabled.
+     *
+     * @param cached the cached response of the request if the response cache is enabled, or <code>null</code>
+     */
+    private Json readResponse(RestMethod method, String uri, Response response, RestResponseCache.Lookup cached, RestRequestMetrics metrics) throws RestException {
+        if (metrics != null) {
+            metrics.setStatus(response.getStatus());
+            metrics.setBytesReceived(0);
+        }
+        if (cached != null && cached.isNotModified(response.getStatus())) {
+            final MultivaluedMap<String, String> headers = response.getStringHeaders();
+            response.close();
+            logInfo(decorateLog("Not modified response from [%s %s]", method.name(), uri));
+            return cached.notModified(headers);
+        }
+        // HEAD responses are not checked and have no body, like it has always been
+        if (method != RestMethod.HEAD) {
+            checkStatus(response);
+        }
+        if (rateLimiter != null) {
+            rateLimiter.onSuccess(uri);
         }
-        do {
-            retry = false;
+        try {
+            logInfo(decorateLog("Successful response from [%s %s]", method.name(), uri));
+            if (method == RestMethod.HEAD || !response.hasEntity()) {
+                final Json json = Json.map();
+                updateCache(method, uri, response, cached, json);
+                return json;
+            }
+
+            InputStream stream = response.readEntity(InputStream.class);
+            final RequestPhases phases = metrics != null ? metrics.getPhases() : null;
+            MeteredInputStream metered = null;
+            if (metrics != null) {
+                metered = new MeteredInputStream(stream, phases != null);
+                stream = metered;
+            }
+            TraceInputStream trace = null;
+            if (logger.isTraceEnabled()) {
+                trace = new TraceInputStream(stream, TRACE_LIMIT);
+                stream = trace;
+            }
+            final Charset charset = getCharset(response.getMediaType());
+            final long parseStart = phases != null ? System.nanoTime() : 0;
+            final Json json;
             try {
-                stringResponse = executeOperation(method, postData, invocationBuilder);
-            } catch (ResponseProcessingException rpe) {
-                throw new PermanentRestException(RestErrorType.API_EXCEPTION, String.format("Error processing response [%s]: %s", rpe.getMessage(), rpe.getResponse() != null ? rpe.getResponse() : "-"), rpe);
-            } catch (ProcessingException pe) {
-                retryCount++;
-                if (retryCount >= maxRetries) {
-                    if(pe.getCause() instanceof IOException){
-                        throw new PermanentRestException(RestErrorType.CLIENT_EXCEPTION, String.format("Error processing request [%s]", RestException.getProcessingExceptionMessage(pe)), pe);
-                    } else {
-                        throw new RetryableRestException(RestErrorType.API_EXCEPTION, String.format("Error processing request [%s]", pe.getMessage()), pe);
-                    }
-                } else if ((StringUtils.isNotBlank(pe.getMessage()) && pe.getMessage().contains("org.apache.http.NoHttpResponseException"))) {
-                    if (pe.getMessage().contains("ConnectTimeoutException")) {
-                        logInfo("No Http response error received", pe);
-                        return null;
-                    } else {
-                        logWarn(decorateLog("Retry [%s] for request [%s %s]. Reason: [%s].", retryCount, method.name(), uri, pe.getMessage()));
-                        retry = canRetry;
-                        try {
-                            Thread.sleep(retryCount * 1000);
-                        } catch (InterruptedException e) {
-                            // do nothing
-                        }
-                    }
+                if (charset != null) {
+                    json = Json.parse(new InputStreamReader(stream, charset));
                 } else {
-                    logWarn(decorateLog("Retry [%s] for request [%s %s]. Reason: [%s]", retryCount, method.name(), uri, pe.getMessage()));
-                    retry = canRetry;
-                    try {
-                        Thread.sleep(retryCount * 1000);
-                    } catch (InterruptedException e) {
-                        // do nothing
-                    }
+                    json = Json.parse(stream);
                 }
-            } catch (WebApplicationException wae) {
-                Response r = wae.getResponse();
-                String details = null;
-                // these might be retryable status codes according to W3: http://www.w3.org/Protocols/rfc2616/rfc2616-sec10.html
-                if (r != null && (r.getStatus() == 408 || r.getStatus() == 500 || r.getStatus() == 502 || r.getStatus() == 503 || r.getStatus() == 504)) {
-                    retryCount++;
-                    if (retryCount >= maxRetries) {
-                        throw new RetryableRestException(RestErrorType.API_EXCEPTION, wae.getMessage(), wae);
-                    } else {
-                        logWarn(decorateLog("Retry [%s] for request [%s %s]. Reason: [%s]", retryCount, method.name(), uri, r.getStatus()));
-                        retry = canRetry;
-                        try {
-                            Thread.sleep(retryCount * 1000);
-                        } catch (InterruptedException e) {
-                            // do nothing
-                        }
-                    }
-                } else {
-                    // add more information for bad request status code
-                    Map<String, Object> errorDetails = null;
-                    if (details != null) {
-                        // try to parse messages
-                        try {
-                            final Json jsonDetail = Json.parse(details);
-                            errorDetails = jsonDetail.toMap();
-                        } catch (Exception e) {
-                            // do nothing
-                        }
-                    }
-                    throw new PermanentRestException(RestErrorType.API_EXCEPTION, wae.getMessage(), wae, errorDetails);
-                }
-            } catch (RestException e) {
-                if (e.toString().contains("ConnectTimeoutException")) {
-                    logInfo("No Http response error received", e);
-                    return null;
-                } else {
-                    throw e;
+            } catch (IOException ex) {
+                // errors reading the body can be retried like the ones sending the request
+                throw new ProcessingException(ex.getMessage(), ex);
+            } catch (RuntimeException ex) {
+                throw new RestException(RestErrorType.CONVERSION_EXCEPTION, ex.getMessage(), ex);
+            }
+            if (trace != null) {
+                logTrace(decorateLog("Response received from [%s %s]: %s", method.name(), uri, trace.captured(charset != null ? charset : StandardCharsets.UTF_8)));
+            }
+            if (metered != null) {
+                metrics.setBytesReceived(metered.bytes);
+                if (phases != null) {
+                    phases.bodyParsed(metered.nanos, System.nanoTime() - parseStart);
                 }
-            } catch (Exception e) {
-                // we assume this is an unhandled exception that is a programming error
-                throw new PermanentRestException(RestErrorType.GENERIC_ERROR, e.getMessage(), e);
             }
-        } while (retry);
+            updateCache(method, uri, response, cached, json);
+            return json;
+        } finally {
+            response.close();
+        }
+    }
 
-        logInfo(decorateLog("Successful response from [%s %s]", method.name(), uri));
-        if (stringResponse != null && logger.isTraceEnabled()) {
-            if(stringResponse.length() > 7000){
-                logTrace(decorateLog("Response received from [%s %s]: %s...", method.name(), uri, stringResponse.substring(0, 7000)));
-            } else {
-                logTrace(decorateLog("Response received from [%s %s]: %s", method.name(), uri, stringResponse));
-            }
+    private RestResponseCache.Lookup lookupCache(RestMethod method, WebTarget target, String uri, Map<String, Object> headers) {
+        final RestResponseCache cache = responseCache;
+        // the credentials of authentication features are not in the headers, so they cannot be in the key
+        if (cache == null || method != RestMethod.GET || TransportRequest.hasAuthentication(target)) {
+            return null;
         }
+        return cache.lookup(uri, headers);
+    }
 
+    private void updateCache(RestMethod method, String uri, Response response, RestResponseCache.Lookup cached, Json json) {
+        if (cached != null) {
+            cached.store(response.getStringHeaders(), json);
+        } else if (responseCache != null && method != RestMethod.GET && method != RestMethod.HEAD && method != RestMethod.OPTIONS) {
+            // the resource was modified
+            responseCache.invalidate(uri);
+        }
+    }
+
+    private static Map<String, Object> addHeaders(Map<String, Object> headers, Map<String, Object> additionalHeaders) {
+        if (additionalHeaders == null || additionalHeaders.isEmpty()) {
+            return headers;
+        }
+        final Map<String, Object> mixedHeaders = new HashMap<>();
+        if (headers != null) {
+            mixedHeaders.putAll(headers);
+        }
+        mixedHeaders.putAll(additionalHeaders);
+        return mixedHeaders;
+    }
+
+    /**
+     * Throws the same exceptions than Jersey when the status of the response is not successful. The body
+     * of the response is buffered so it can be read as details of the error.
+     */
+    private static void checkStatus(Response response) {
+        final Response.StatusType status = response.getStatusInfo();
+        if (status.getFamily() == Response.Status.Family.SUCCESSFUL) {
+            return;
+        }
         try {
-            return Json.parse(stringResponse != null ? stringResponse : "{}");
-        } catch (Exception ex) {
-            throw new RestException(RestErrorType.CONVERSION_EXCEPTION, ex.getMessage(), ex);
-        }
-    }
-
-    private static String executeOperation(RestMethod method, Entity postData, Invocation.Builder invocationBuilder) {
-        String stringResponse = null;
-        switch (method) {
-            case POST:
-                stringResponse = invocationBuilder.post(postData, String.class);
-                break;
-            case PUT:
-                stringResponse = invocationBuilder.put(postData, String.class);
-                break;
-            case PATCH:
-                stringResponse = invocationBuilder.method(RestMethod.PATCH.name(), postData, String.class);
-                break;
-            case DELETE:
-                if (postData != null) {
-                    stringResponse = invocationBuilder.method(RestMethod.DELETE.name(), postData, String.class);
-                } else {
-                    stringResponse = invocationBuilder.delete(String.class);
-                }
-                break;
-            case HEAD:
-                final Object response = invocationBuilder.head().getEntity();
-                if (response instanceof InputStream) {
-                    stringResponse = convertToString((InputStream) response);
-                } else if (response != null) {
-                    stringResponse = response.toString();
-                }
-                break;
-            case OPTIONS:
-                stringResponse = invocationBuilder.options(String.class);
-                break;
+            response.bufferEntity();
+        } catch (Exception e) {
+            // the body is not available as details
+        }
+        switch (status.getStatusCode()) {
+            case 400:
+                throw new BadRequestException(response);
+            case 401:
+                throw new NotAuthorizedException(response);
+            case 403:
+                throw new ForbiddenException(response);
+            case 404:
+                throw new NotFoundException(response);
+            case 405:
+                throw new NotAllowedException(response);
+            case 406:
+                throw new NotAcceptableException(response);
+            case 415:
+                throw new NotSupportedException(response);
+            case 500:
+                throw new InternalServerErrorException(response);
+            case 503:
+                throw new ServiceUnavailableException(response);
+        }
+        switch (status.getFamily()) {
+            case REDIRECTION:
+                throw new RedirectionException(response);
+            case CLIENT_ERROR:
+                throw new ClientErrorException(response);
+            case SERVER_ERROR:
+                throw new ServerErrorException(response);
             default:
-                // GET by default
-                stringResponse = invocationBuilder.get(String.class);
-                break;
+                throw new WebApplicationException(response);
+        }
+    }
+
+    private static String readErrorDetails(Response response) {
+        if (response == null) {
+            return null;
+        }
+        try {
+            if (response.hasEntity()) {
+                return response.readEntity(String.class);
+            }
+        } catch (Exception e) {
+            // body is not available
         }
-        return stringResponse;
+        return null;
     }
 
-    private static String convertToString(InputStream inputStream) {
+    /**
+     * Returns the charset of the body if it is not one that the parser detects by itself
+     */
+    private static Charset getCharset(MediaType mediaType) {
+        if (mediaType == null) {
+            return null;
+        }
+        final String name = mediaType.getParameters().get(MediaType.CHARSET_PARAMETER);
+        if (StringUtils.isBlank(name) || name.toUpperCase().startsWith("UTF-")) {
+            return null;
+        }
         try {
-            return IOUtils.toString(inputStream, StandardCharsets.UTF_8);
-        } catch (IOException e) {
-            logger.warn("Error parsing string from input stream", e);
+            return Charset.forName(name);
+        } catch (Exception e) {
             return null;
         }
     }
 
+    /**
+     * Counts the bytes read from the stream and, if it is timed, the time blocked reading them
+     */
+    private static class MeteredInputStream extends FilterInputStream {
+        private final boolean timed;
+        private long bytes = 0;
+        private long nanos = 0;
+
+        private MeteredInputStream(InputStream in, boolean timed) {
+            super(in);
+            this.timed = timed;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final long start = timed ? System.nanoTime() : 0;
+            final int b = super.read();
+            if (timed) {
+                nanos += System.nanoTime() - start;
+            }
+            if (b >= 0) {
+                bytes++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            final long start = timed ? System.nanoTime() : 0;
+            final int read = super.read(b, off, len);
+            if (timed) {
+                nanos += System.nanoTime() - start;
+            }
+            if (read > 0) {
+                bytes += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            final long skipped = super.skip(n);
+            bytes += skipped;
+            return skipped;
+        }
+    }
+
+    /**
+     * Keeps a copy of the first bytes read from the stream to log them
+     */
+    private static class TraceInputStream extends FilterInputStream {
+        private final ByteArrayOutputStream buffer;
+        private final int limit;
+        private boolean truncated = false;
+
+        private TraceInputStream(InputStream in, int limit) {
+            super(in);
+            this.limit = limit;
+            this.buffer = new ByteArrayOutputStream(Math.min(limit, 1024));
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b >= 0) {
+                capture(new byte[]{(byte) b}, 0, 1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            final int read = super.read(b, off, len);
+            if (read > 0) {
+                capture(b, off, read);
+            }
+            return read;
+        }
+
+        private void capture(byte[] b, int off, int len) {
+            final int available = limit - buffer.size();
+            if (len > available) {
+                truncated = true;
+            }
+            if (available > 0) {
+                buffer.write(b, off, Math.min(len, available));
+            }
+        }
+
+        private String captured(Charset charset) {
+            final String text = new String(buffer.toByteArray(), charset);
+            return truncated ? text + "..." : text;
+        }
+    }
+
+    /**
+     * Scheduler for the retries of asynchronous requests and their timeouts. Tasks are short, so a
+     * single daemon thread is shared by all clients.
+     */
+    static ScheduledExecutorService scheduler() {
+        if (scheduler == null) {
+            synchronized (RestClient.class) {
+                if (scheduler == null) {
+                    final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+                        final Thread thread = new Thread(runnable, "rest-client-scheduler");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    executor.setRemoveOnCancelPolicy(true);
+                    scheduler = executor;
+                }
+            }
+        }
+        return scheduler;
+    }
+
     public InputStream download(WebTarget target) {
         return download(target, false);
     }
 
     public InputStream download(WebTarget target, boolean throwException) {
-        return download((target != null ? target : apiTarget), apiHeaders, throwException);
+        final WebTarget downloadTarget = target != null ? target : apiTarget;
+        final RestMetricsListener listener = metricsListener;
+        if (listener == null && !phaseTimings) {
+            return download(downloadTarget, apiHeaders, throwException);
+        }
+        // the body is read by the caller, so the download is reported when the response is received
+        final RestRequestMetrics metrics = newMetrics(listener, RestMethod.GET, downloadTarget.getUri().toString(), true);
+        boolean success = false;
+        Throwable error = null;
+        try {
+            final InputStream stream = download(downloadTarget, apiHeaders, throwException, metrics);
+            success = true;
+            return stream;
+        } catch (RuntimeException e) {
+            error = e;
+            attachPhases(e, metrics);
+            throw e;
+        } finally {
+            notifyComplete(listener, metrics, success, error);
+        }
     }
 
     static InputStream download(WebTarget target, Map<String, Object> apiHeaders, boolean throwException) {
+        return download(target, apiHeaders, throwException, null);
+    }
+
+    private static InputStream download(WebTarget target, Map<String, Object> apiHeaders, boolean throwException, RestRequestMetrics metrics) {
         final Invocation.Builder invocationBuilder = target.request();
         if (apiHeaders != null) {
             apiHeaders.forEach(invocationBuilder::header);
         }
-        final Response res = invocationBuilder.get();
+        final RequestPhases phases = metrics != null ? metrics.startAttempt() : null;
+        final Response res;
+        if (phases != null) {
+            final RequestPhases previous = RequestPhases.attach(phases);
+            try {
+                res = invocationBuilder.get();
+            } finally {
+                RequestPhases.detach(previous);
+            }
+            phases.responseReceived();
+        } else {
+            res = invocationBuilder.get();
+        }
+        if (metrics != null && res != null) {
+            metrics.setStatus(res.getStatus());
+            metrics.setBytesReceived(res.getLength());
+        }
         if (throwException) {
             if (res == null) {
                 throw new PermanentRestException(RestErrorType.GENERIC_ERROR, "Error downloading file");
@@ -1,10 +1,19 @@
 package io.slingr.api.common;
 
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.config.Registry;
 import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
 import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.LayeredConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
 import org.apache.log4j.Logger;
 import org.glassfish.jersey.apache.connector.ApacheClientProperties;
 import org.glassfish.jersey.apache.connector.ApacheConnectorProvider;
@@ -15,10 +24,15 @@ import org.glassfish.jersey.media.multipart.MultiPartFeature;
 import javax.net.ssl.*;
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.security.cert.X509Certificate;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * <p>Factory of secure REST clients
@@ -29,6 +43,12 @@ public class RestClientFactory {
     private static final Logger logger = Logger.getLogger(RestClientFactory.class);
 
     private final static int DEFAULT_MAX_CONNECTIONS = 50;
+    private final static int DEFAULT_COMPRESSION_THRESHOLD = 8 * 1024;
+    private final static int DEFAULT_VALIDATE_AFTER_INACTIVITY = 2 * 1000;
+    private final static long DEFAULT_IDLE_CONNECTION_TIMEOUT = 30 * 1000;
+
+    // the socket factory that trusts all certificates is created once
+    private static volatile SSLConnectionSocketFactory trustAllSocketFactory;
 
     public static class RestClientOptions {
         public boolean allowSelfSignedCertificate = false;
@@ -37,6 +57,37 @@ public class RestClientFactory {
         public int maxConnections = DEFAULT_MAX_CONNECTIONS;
         public boolean allowMultipart = true;
         public boolean sharedConnectionManager = true;
+        // responses are requested with gzip or deflate encoding and decompressed while they are read
+        public boolean compressResponses = true;
+        // bodies of requests bigger than the threshold (in bytes) are sent with gzip encoding
+        public boolean compressRequests = false;
+        public int compressRequestsThreshold = DEFAULT_COMPRESSION_THRESHOLD;
+        // max requests per second (disabled when it is zero), with bursts of rateLimitBurst requests
+        public double rateLimit = 0;
+        public int rateLimitBurst = 1;
+        public boolean rateLimitPerHost = true;
+        // requests over the limit wait up to rateLimitMaxWait ms (no limit when negative) or are rejected
+        public RateLimiter.Mode rateLimitMode = RateLimiter.Mode.QUEUE;
+        public long rateLimitMaxWait = -1;
+        // clients with the same options share the Jersey client and its connections (see RestClientRegistry)
+        public boolean sharedClient = true;
+        // connections that were idle for more than this (in ms) are checked before they are reused
+        public int validateAfterInactivity = DEFAULT_VALIDATE_AFTER_INACTIVITY;
+        // connections are not reused after this time (in ms) since they were opened (no limit when negative)
+        public long connectionTimeToLive = -1;
+        // idle connections are closed by a background task after this time (in ms), so it should be lower than
+        // the keep-alive timeout of the servers (disabled when negative). It does not apply to configureClient().
+        public long idleConnectionTimeout = DEFAULT_IDLE_CONNECTION_TIMEOUT;
+
+        /**
+         * Key of the options used to create the Jersey client. Clients with the same key can be shared.
+         */
+        String clientKey() {
+            return String.format("selfSigned=%s,compliance=%s,redirects=%s,connections=%s,multipart=%s,sharedManager=%s,compression=%s/%s/%s,pool=%s/%s/%s",
+                    allowSelfSignedCertificate, supressHttpComplianceValidation, followRedirects, maxConnections,
+                    allowMultipart, sharedConnectionManager, compressResponses, compressRequests, compressRequestsThreshold,
+                    validateAfterInactivity, connectionTimeToLive, idleConnectionTimeout);
+        }
     }
 
     public static Client configureClient() {
@@ -44,19 +95,28 @@ public class RestClientFactory {
     }
 
     public static Client configureClient(RestClientOptions options)  {
+        return configureClient(options, createConnectionManager(options));
+    }
+
+    static PoolingHttpClientConnectionManager createConnectionManager(RestClientOptions options) {
         try {
-            // pool connection manager
-            final PoolingHttpClientConnectionManager connectionManager;
-            if (options.allowSelfSignedCertificate) {
-                final Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory>create()
-                        .register("https", configureSSL())
-                        .build();
-                connectionManager = new PoolingHttpClientConnectionManager(registry);
-            } else {
-                connectionManager = new PoolingHttpClientConnectionManager();
-            }
+            final Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory>create()
+                    .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                    .register("https", new TimedSslSocketFactory(options.allowSelfSignedCertificate ? configureSSL() : SSLConnectionSocketFactory.getSocketFactory()))
+                    .build();
+            final PoolingHttpClientConnectionManager connectionManager = new TimedConnectionManager(registry, options.connectionTimeToLive);
             connectionManager.setMaxTotal(options.maxConnections);
             connectionManager.setDefaultMaxPerRoute(options.maxConnections);
+            connectionManager.setValidateAfterInactivity(options.validateAfterInactivity);
+            return connectionManager;
+        } catch (Exception e) {
+            logger.error("Could not create secure rest client", e);
+            throw new RuntimeException("Could not create secure rest client", e);
+        }
+    }
+
+    static Client configureClient(RestClientOptions options, PoolingHttpClientConnectionManager connectionManager) {
+        try {
             ApacheConnectorProvider connector = new ApacheConnectorProvider();
 
             // client config
@@ -68,6 +128,12 @@ public class RestClientFactory {
             clientConfig.property(ClientProperties.FOLLOW_REDIRECTS, options.followRedirects);
             clientConfig.property(ApacheClientProperties.CONNECTION_MANAGER, connectionManager);
             clientConfig.property(ApacheClientProperties.CONNECTION_MANAGER_SHARED, options.sharedConnectionManager);
+            // compression is done by the client filters instead of the http client, so it can be configured
+            // and buffers are pooled
+            clientConfig.property(ApacheClientProperties.REQUEST_CONFIG, RequestConfig.custom().setContentCompressionEnabled(false).build());
+            if (options.compressResponses || options.compressRequests) {
+                clientConfig.register(new HttpCompression(options.compressResponses, options.compressRequests, options.compressRequestsThreshold));
+            }
             clientConfig.connectorProvider(connector);
 
             // create client
@@ -81,6 +147,24 @@ public class RestClientFactory {
     }
 
     private static SSLConnectionSocketFactory configureSSL() throws KeyManagementException, NoSuchAlgorithmException {
+        if (trustAllSocketFactory == null) {
+            synchronized (RestClientFactory.class) {
+                if (trustAllSocketFactory == null) {
+                    trustAllSocketFactory = createTrustAllSocketFactory();
+                }
+            }
+        }
+        return trustAllSocketFactory;
+    }
+
+    private static SSLConnectionSocketFactory createTrustAllSocketFactory() throws KeyManagementException, NoSuchAlgorithmException {
+        return new SSLConnectionSocketFactory(trustAllSslContext(), new TrustAllHostNameVerifier());
+    }
+
+    /**
+     * SSL context that trusts all certificates, for transports that allow self signed certificates
+     */
+    static SSLContext trustAllSslContext() throws KeyManagementException, NoSuchAlgorithmException {
         // Create a trust manager that does not validate certificate chains
         TrustManager[] trustAllCerts = new TrustManager[]{new X509TrustManager() {
             public X509Certificate[] getAcceptedIssuers() {
@@ -96,7 +180,102 @@ public class RestClientFactory {
         };
         SSLContext sslContext = SSLContext.getInstance("SSL");
         sslContext.init(null, trustAllCerts, new SecureRandom());
-        return new SSLConnectionSocketFactory(sslContext, new TrustAllHostNameVerifier());
+        return sslContext;
+    }
+
+    /**
+     * Pool that records the time waiting for a connection and opening it in the {@link RequestPhases} of the
+     * request sent by the thread
+     */
+    private static class TimedConnectionManager extends PoolingHttpClientConnectionManager {
+
+        private TimedConnectionManager(Registry<ConnectionSocketFactory> registry, long timeToLive) {
+            super(registry, null, null, null, timeToLive, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+            final ConnectionRequest request = super.requestConnection(route, state);
+            final RequestPhases phases = RequestPhases.current();
+            if (phases == null) {
+                return request;
+            }
+            final long start = System.nanoTime();
+            return new ConnectionRequest() {
+                @Override
+                public HttpClientConnection get(long timeout, TimeUnit timeUnit) throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+                    final HttpClientConnection connection = request.get(timeout, timeUnit);
+                    phases.connectionLeased(System.nanoTime() - start);
+                    return connection;
+                }
+
+                @Override
+                public boolean cancel() {
+                    return request.cancel();
+                }
+            };
+        }
+
+        @Override
+        public void connect(HttpClientConnection connection, HttpRoute route, int connectTimeout, HttpContext context) throws IOException {
+            final RequestPhases phases = RequestPhases.current();
+            if (phases == null) {
+                super.connect(connection, route, connectTimeout, context);
+                return;
+            }
+            final long start = System.nanoTime();
+            super.connect(connection, route, connectTimeout, context);
+            phases.connected(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Socket factory that opens the connection and then does the TLS handshake with the given factory, to
+     * record the time of the handshake in the {@link RequestPhases} of the request sent by the thread
+     */
+    private static class TimedSslSocketFactory implements LayeredConnectionSocketFactory {
+        private final SSLConnectionSocketFactory delegate;
+
+        private TimedSslSocketFactory(SSLConnectionSocketFactory delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Socket createSocket(HttpContext context) throws IOException {
+            return delegate.createSocket(context);
+        }
+
+        @Override
+        public Socket connectSocket(int connectTimeout, Socket socket, HttpHost host, InetSocketAddress remoteAddress,
+                                    InetSocketAddress localAddress, HttpContext context) throws IOException {
+            final Socket sock = socket != null ? socket : createSocket(context);
+            // the connect timeout also applies to the handshake when there is no read timeout yet
+            if (connectTimeout > 0 && sock.getSoTimeout() == 0) {
+                sock.setSoTimeout(connectTimeout);
+            }
+            PlainConnectionSocketFactory.getSocketFactory().connectSocket(connectTimeout, sock, host, remoteAddress, localAddress, context);
+            final long start = System.nanoTime();
+            try {
+                final Socket secure = delegate.createLayeredSocket(sock, host.getHostName(), remoteAddress.getPort(), context);
+                final RequestPhases phases = RequestPhases.current();
+                if (phases != null) {
+                    phases.handshake(System.nanoTime() - start);
+                }
+                return secure;
+            } catch (IOException | RuntimeException e) {
+                try {
+                    sock.close();
+                } catch (IOException ce) {
+                    // the handshake error is thrown
+                }
+                throw e;
+            }
+        }
+
+        @Override
+        public Socket createLayeredSocket(Socket socket, String target, int port, HttpContext context) throws IOException {
+            return delegate.createLayeredSocket(socket, target, port, context);
+        }
     }
 
     private static class TrustAllHostNameVerifier implements HostnameVerifier {
@@ -0,0 +1,203 @@
+package io.slingr.api.common;
+
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.log4j.Logger;
+
+import javax.ws.rs.client.Client;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Registry of the Jersey clients, with their connection pools, used by {@link RestClient}. Rest clients
+ * created with the same {@link RestClientFactory.RestClientOptions} share the Jersey client, so creating
+ * them is cheap and they reuse the connections that are kept alive by the others.
+ * <p/>
+ * <p>Shared clients are reference counted: each rest client takes a reference and gives it back in
+ * {@link RestClient#close()}. When there are no references the client is kept for a while, so short lived
+ * rest clients still find warm connections, and then it is closed. Rest clients that are never closed keep
+ * their shared client open, like a client that is not shared.
+ * <p/>
+ * <p>A rest client gets its own Jersey client when <code>sharedClient</code> is false in the options.
+ */
+public class RestClientRegistry {
+    private static final Logger logger = Logger.getLogger(RestClientRegistry.class);
+
+    // milliseconds that a client without references is kept open
+    private static final long LINGER_TIME = 60 * 1000;
+    // limits of the period of the task that closes idle connections
+    private static final long MIN_EVICTION_PERIOD = 1000;
+    private static final long MAX_EVICTION_PERIOD = 5000;
+
+    private static final Map<String, SharedClient> clients = new HashMap<>();
+    private static volatile long lingerTime = LINGER_TIME;
+
+    private RestClientRegistry() {
+    }
+
+    /**
+     * Returns a reference to the client for the options, creating it if needed
+     */
+    static SharedClient acquire(RestClientFactory.RestClientOptions options) {
+        if (!options.sharedClient) {
+            final SharedClient client = new SharedClient(null, options);
+            client.references = 1;
+            return client;
+        }
+        final String key = options.clientKey();
+        synchronized (clients) {
+            SharedClient client = clients.get(key);
+            if (client == null) {
+                client = new SharedClient(key, options);
+                clients.put(key, client);
+                logger.debug(String.format("Shared rest client created for [%s]", key));
+            }
+            client.references++;
+            if (client.closeTask != null) {
+                client.closeTask.cancel(false);
+                client.closeTask = null;
+            }
+            return client;
+        }
+    }
+
+    /**
+     * Milliseconds that a client without references is kept open (one minute by default)
+     */
+    static void lingerTime(long lingerTime) {
+        RestClientRegistry.lingerTime = Math.max(lingerTime, 0);
+    }
+
+    /**
+     * Number of shared clients that are open
+     */
+    public static int size() {
+        synchronized (clients) {
+            return clients.size();
+        }
+    }
+
+    public static Json toJson() {
+        final Json json = Json.list();
+        synchronized (clients) {
+            for (SharedClient client : clients.values()) {
+                json.push(Json.map()
+                        .set("options", client.key)
+                        .set("references", client.references)
+                        .set("pool", poolStats(client.connectionManager)));
+            }
+        }
+        return json;
+    }
+
+    /**
+     * Returns the connections of the pool, in total and for each route: <code>leased</code> are in use,
+     * <code>available</code> are idle and <code>pending</code> is the number of requests waiting for a
+     * connection. Pending requests mean that the pool is saturated.
+     */
+    static Json poolStats(PoolingHttpClientConnectionManager connectionManager) {
+        final Json routes = Json.map();
+        for (HttpRoute route : connectionManager.getRoutes()) {
+            routes.set(route.getTargetHost().toURI(), poolStats(connectionManager.getStats(route)));
+        }
+        return poolStats(connectionManager.getTotalStats()).set("routes", routes);
+    }
+
+    private static Json poolStats(PoolStats stats) {
+        return Json.map()
+                .set("leased", stats.getLeased())
+                .set("available", stats.getAvailable())
+                .set("pending", stats.getPending())
+                .set("max", stats.getMax());
+    }
+
+    /**
+     * Jersey client and connection pool shared by the rest clients with the same options
+     */
+    static class SharedClient {
+        private final String key;
+        private final PoolingHttpClientConnectionManager connectionManager;
+        private final Client client;
+        private final ScheduledFuture<?> evictionTask;
+        private int references;
+        private ScheduledFuture<?> closeTask;
+        private volatile boolean closed;
+
+        private SharedClient(String key, RestClientFactory.RestClientOptions options) {
+            this.key = key;
+            this.connectionManager = RestClientFactory.createConnectionManager(options);
+            this.client = RestClientFactory.configureClient(options, connectionManager);
+            final long idleTimeout = options.idleConnectionTimeout;
+            if (idleTimeout >= 0) {
+                // closes the connections before the servers do, so they are not found closed when reused
+                final long period = Math.max(MIN_EVICTION_PERIOD, Math.min(idleTimeout / 2, MAX_EVICTION_PERIOD));
+                this.evictionTask = RestClient.scheduler().scheduleWithFixedDelay(() -> {
+                    try {
+                        connectionManager.closeExpiredConnections();
+                        connectionManager.closeIdleConnections(idleTimeout, TimeUnit.MILLISECONDS);
+                    } catch (Exception e) {
+                        logger.warn("Error closing idle connections", e);
+                    }
+                }, period, period, TimeUnit.MILLISECONDS);
+            } else {
+                this.evictionTask = null;
+            }
+        }
+
+        Client getClient() {
+            return client;
+        }
+
+        PoolingHttpClientConnectionManager getConnectionManager() {
+            return connectionManager;
+        }
+
+        /**
+         * Gives back a reference. The client is closed when nobody uses it.
+         */
+        void release() {
+            if (key == null) {
+                synchronized (this) {
+                    if (--references == 0) {
+                        close();
+                    }
+                }
+                return;
+            }
+            synchronized (clients) {
+                if (references <= 0 || --references > 0) {
+                    return;
+                }
+                closeTask = RestClient.scheduler().schedule(() -> {
+                    synchronized (clients) {
+                        if (references > 0 || clients.get(key) != this) {
+                            return;
+                        }
+                        clients.remove(key);
+                    }
+                    logger.debug(String.format("Shared rest client closed for [%s]", key));
+                    close();
+                }, lingerTime, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        boolean isClosed() {
+            return closed;
+        }
+
+        private void close() {
+            closed = true;
+            if (evictionTask != null) {
+                evictionTask.cancel(false);
+            }
+            try {
+                client.close();
+            } finally {
+                connectionManager.shutdown();
+            }
+        }
+    }
+}
@@ -19,6 +19,7 @@ public class RestException extends RuntimeException {
     protected RestErrorType error = RestErrorType.GENERIC_ERROR;
     protected Object description = null;
     protected Map<String, Object> details;
+    protected RequestPhases phases;
 
     public RestException(RestErrorType error, Object description) {
         this(error, description, null);
@@ -123,6 +124,20 @@ public class RestException extends RuntimeException {
         return details;
     }
 
+    /**
+     * Returns the time spent in each phase of the last attempt of the request, if phase timings are enabled
+     * in the client
+     *
+     * @return the phases or <code>null</code> if they were not recorded
+     */
+    public RequestPhases getPhases() {
+        return phases;
+    }
+
+    void setPhases(RequestPhases phases) {
+        this.phases = phases;
+    }
+
     @Override
     public String toString() {
         return toJson().toString();
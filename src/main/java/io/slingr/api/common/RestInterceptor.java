@@ -0,0 +1,68 @@
+package io.slingr.api.common;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * <p>Interceptor of the requests done by a {@link RestClient}. The interceptors of a client form a chain in the
+ * order they were added: each one receives the {@link RestCallContext} of the call and decides whether to
+ * proceed with the next one, changing the context before, handling the response or errors after, proceeding
+ * again, or returning a response without proceeding at all.
+ * <p/>
+ * <p>The last link of the chain does the request with the retries, caches and limits of the client. For
+ * example, an interceptor that sends a token and gets a new one when it expires:
+ * <p/>
+ * <code>
+ * client.addInterceptor((context, chain) -> {
+ *     context.setHeader("token", tokens.current());
+ *     try {
+ *         return chain.proceed(context);
+ *     } catch (RestException e) {
+ *         if (e.getStatusCode() != 401) {
+ *             throw e;
+ *         }
+ *         context.setHeader("token", tokens.refresh());
+ *         return chain.proceed(context);
+ *     }
+ * });
+ * </code>
+ * <p/>
+ * <p>Asynchronous requests go through {@link #interceptAsync(RestCallContext, AsyncChain)}, that proceeds
+ * without changes by default, so interceptors that change the requests should implement it too.
+ */
+@FunctionalInterface
+public interface RestInterceptor {
+
+    /**
+     * Next links of the chain of a synchronous request
+     */
+    interface Chain {
+        Json proceed(RestCallContext context) throws RestException;
+    }
+
+    /**
+     * Next links of the chain of an asynchronous request
+     */
+    interface AsyncChain {
+        CompletableFuture<Json> proceed(RestCallContext context);
+    }
+
+    /**
+     * Intercepts a synchronous request
+     *
+     * @param context call being done
+     * @param chain   next links of the chain
+     * @return the response of the call
+     */
+    Json intercept(RestCallContext context, Chain chain) throws RestException;
+
+    /**
+     * Intercepts an asynchronous request. It must not block the calling thread.
+     *
+     * @param context call being done
+     * @param chain   next links of the chain
+     * @return the future response of the call
+     */
+    default CompletableFuture<Json> interceptAsync(RestCallContext context, AsyncChain chain) {
+        return chain.proceed(context);
+    }
+}
@@ -0,0 +1,34 @@
+package io.slingr.api.common;
+
+/**
+ * <p>Listener of the requests done by a {@link RestClient}, to collect metrics about them. It is called when
+ * each request finishes, after all its retries, and before each retry. Downloads are reported when the
+ * response is received, as the body is read later by the caller.
+ * <p/>
+ * <p>Listeners are called in the thread that completes the request, so they should be fast and must not
+ * block. Exceptions thrown by them are logged and ignored. {@link RestMetricsRecorder} is a listener that
+ * keeps latency histograms and counters per endpoint:
+ * <p/>
+ * <code>
+ * RestMetricsRecorder metrics = new RestMetricsRecorder();
+ * SimpleRestClient client = SimpleRestClient.uri("https://api.example.com").metricsListener(metrics);
+ * ...
+ * Json snapshot = metrics.toJson();
+ * </code>
+ */
+public interface RestMetricsListener {
+
+    /**
+     * Called when a request finishes, successfully or not
+     */
+    void onComplete(RestRequestMetrics metrics);
+
+    /**
+     * Called when an attempt of a request fails and it is going to be retried
+     *
+     * @param metrics metrics of the request so far
+     * @param cause   error of the attempt
+     */
+    default void onRetry(RestRequestMetrics metrics, Throwable cause) {
+    }
+}
@@ -0,0 +1,330 @@
+package io.slingr.api.common;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>{@link RestMetricsListener} that keeps metrics per endpoint, that is the method and the route of the
+ * requests: a {@link LatencyHistogram} of the durations and counters of requests, outcomes by error type and
+ * status, retries and bytes sent and received. Recording a request does not allocate once its endpoint
+ * exists, besides building the route.
+ * <p/>
+ * <p>By default the route is the host and the path of the URI, with the segments that look like ids
+ * (numbers, UUIDs and long hexadecimal strings) replaced by <code>{id}</code>, so
+ * <code>https://api.example.com/users/5b1e4f2c9a1d3e0001a2b3c4?x=1</code> is recorded as
+ * <code>api.example.com/users/{id}</code>. Requests beyond the max number of endpoints are recorded in the
+ * route <code>other</code>.
+ * <p/>
+ * <p>When the client records {@link RequestPhases}, the endpoints also have a histogram of each phase, to know
+ * whether slow requests wait for connections, open them or wait for the server or the body.
+ * <p/>
+ * <p>{@link #toJson()} returns a snapshot of all the endpoints that can be scraped periodically.
+ */
+public class RestMetricsRecorder implements RestMetricsListener {
+    private static final int DEFAULT_MAX_ENDPOINTS = 1000;
+    private static final String OTHER_ROUTE = "other";
+    private static final String ID_SEGMENT = "{id}";
+    // min length of the hexadecimal segments that are considered ids, like the 24 chars of object ids
+    private static final int MIN_HEX_ID_LENGTH = 16;
+
+    /**
+     * Builds the route of a request, that groups the requests with the same URI template
+     */
+    public interface RouteNormalizer {
+        String route(String uri);
+    }
+
+    /**
+     * Route with the host and the path, replacing ids by <code>{id}</code>
+     */
+    public static RouteNormalizer templateRoutes() {
+        return RestMetricsRecorder::templateRoute;
+    }
+
+    private final Map<String, Endpoint>[] endpoints;
+    private volatile RouteNormalizer routeNormalizer = templateRoutes();
+    private volatile int maxEndpoints = DEFAULT_MAX_ENDPOINTS;
+    private final LongAdder endpointCount = new LongAdder();
+
+    @SuppressWarnings("unchecked")
+    public RestMetricsRecorder() {
+        endpoints = (Map<String, Endpoint>[]) new Map<?, ?>[RestMethod.values().length];
+        for (int i = 0; i < endpoints.length; i++) {
+            endpoints[i] = new ConcurrentHashMap<>();
+        }
+    }
+
+    public RestMetricsRecorder routeNormalizer(RouteNormalizer routeNormalizer) {
+        if (routeNormalizer == null) {
+            throw new IllegalArgumentException("Route normalizer cannot be null");
+        }
+        this.routeNormalizer = routeNormalizer;
+        return this;
+    }
+
+    /**
+     * Sets the max number of endpoints that are recorded separately
+     */
+    public RestMetricsRecorder maxEndpoints(int maxEndpoints) {
+        if (maxEndpoints < 1) {
+            throw new IllegalArgumentException(String.format("Invalid max endpoints [%s]", maxEndpoints));
+        }
+        this.maxEndpoints = maxEndpoints;
+        return this;
+    }
+
+    @Override
+    public void onComplete(RestRequestMetrics metrics) {
+        endpoint(metrics.getMethod(), metrics.getUri()).record(metrics);
+    }
+
+    /**
+     * Returns the latency histogram of the endpoint, or <code>null</code> if there are no requests to it
+     */
+    public LatencyHistogram getLatency(RestMethod method, String route) {
+        final Endpoint endpoint = endpoints[method.ordinal()].get(route);
+        return endpoint != null ? endpoint.latency : null;
+    }
+
+    /**
+     * Removes all the endpoints and their metrics
+     */
+    public void reset() {
+        for (Map<String, Endpoint> map : endpoints) {
+            map.clear();
+        }
+        endpointCount.reset();
+    }
+
+    /**
+     * Returns the metrics of each endpoint, with latencies in milliseconds
+     */
+    public Json toJson() {
+        final Json json = Json.list();
+        for (RestMethod method : RestMethod.values()) {
+            for (Map.Entry<String, Endpoint> entry : new TreeMap<>(endpoints[method.ordinal()]).entrySet()) {
+                json.push(entry.getValue().toJson(method, entry.getKey()));
+            }
+        }
+        return json;
+    }
+
+    @Override
+    public String toString() {
+        return toJson().toString();
+    }
+
+    private Endpoint endpoint(RestMethod method, String uri) {
+        final Map<String, Endpoint> map = endpoints[method.ordinal()];
+        final String route = routeNormalizer.route(uri);
+        Endpoint endpoint = map.get(route);
+        if (endpoint == null) {
+            if (endpointCount.sum() >= maxEndpoints) {
+                return map.computeIfAbsent(OTHER_ROUTE, key -> new Endpoint());
+            }
+            endpoint = map.computeIfAbsent(route, key -> {
+                endpointCount.increment();
+                return new Endpoint();
+            });
+        }
+        return endpoint;
+    }
+
+    static String templateRoute(String uri) {
+        int start = uri.indexOf("://");
+        start = start >= 0 ? start + 3 : 0;
+        int end = uri.length();
+        for (int i = start; i < end; i++) {
+            final char c = uri.charAt(i);
+            if (c == '?' || c == '#') {
+                end = i;
+                break;
+            }
+        }
+        final StringBuilder route = new StringBuilder(end - start);
+        int segment = start;
+        while (segment < end) {
+            int next = uri.indexOf('/', segment);
+            if (next < 0 || next > end) {
+                next = end;
+            }
+            // the first segment is the host
+            if (segment > start && isId(uri, segment, next)) {
+                route.append(ID_SEGMENT);
+            } else {
+                route.append(uri, segment, next);
+            }
+            if (next < end) {
+                route.append('/');
+            }
+            segment = next + 1;
+        }
+        return route.toString();
+    }
+
+    private static boolean isId(String uri, int start, int end) {
+        final int length = end - start;
+        if (length == 0) {
+            return false;
+        }
+        boolean digits = true;
+        boolean hex = true;
+        int dashes = 0;
+        for (int i = start; i < end; i++) {
+            final char c = uri.charAt(i);
+            if (c == '-') {
+                dashes++;
+                digits = false;
+            } else if (c < '0' || c > '9') {
+                digits = false;
+                if ((c < 'a' || c > 'f') && (c < 'A' || c > 'F')) {
+                    hex = false;
+                }
+            }
+        }
+        if (digits) {
+            return true;
+        }
+        if (!hex) {
+            return false;
+        }
+        // UUIDs or hexadecimal ids
+        return (length == 36 && dashes == 4) || (dashes == 0 && length >= MIN_HEX_ID_LENGTH);
+    }
+
+    /**
+     * Metrics of the requests with the same method and route
+     */
+    private static class Endpoint {
+        private static final RestErrorType[] ERROR_TYPES = RestErrorType.values();
+        // classes of status from 1xx to 5xx, and no response at 0
+        private static final int STATUS_CLASSES = 6;
+        // in the order they are recorded
+        private static final String[] PHASES = {"poolWait", "connect", "tls", "timeToFirstByte", "download", "parse"};
+
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder cached = new LongAdder();
+        private final LongAdder retries = new LongAdder();
+        private final LongAdder bytesSent = new LongAdder();
+        private final LongAdder bytesReceived = new LongAdder();
+        private final AtomicLongArray errors = new AtomicLongArray(ERROR_TYPES.length);
+        private final AtomicLongArray statuses = new AtomicLongArray(STATUS_CLASSES);
+        private final ConcurrentHashMap<Integer, LongAdder> statusCodes = new ConcurrentHashMap<>();
+        // histograms of the phases, created when the first request with phases is recorded
+        private volatile AtomicReferenceArray<LatencyHistogram> phases;
+
+        private void record(RestRequestMetrics metrics) {
+            latency.recordNanos(metrics.getDuration());
+            requests.increment();
+            if (!metrics.isSuccess()) {
+                failures.increment();
+            }
+            if (metrics.isCached()) {
+                cached.increment();
+            }
+            if (metrics.getErrorType() != null) {
+                errors.incrementAndGet(metrics.getErrorType().ordinal());
+            }
+            final int status = metrics.getStatus();
+            if (status >= 100 && status < 600) {
+                statuses.incrementAndGet(status / 100);
+                LongAdder counter = statusCodes.get(status);
+                if (counter == null) {
+                    counter = statusCodes.computeIfAbsent(status, key -> new LongAdder());
+                }
+                counter.increment();
+            } else if (!metrics.isCached()) {
+                statuses.incrementAndGet(0);
+            }
+            retries.add(metrics.getRetries());
+            if (metrics.getBytesSent() > 0) {
+                bytesSent.add(metrics.getBytesSent() * (metrics.getRetries() + 1));
+            }
+            if (metrics.getBytesReceived() > 0) {
+                bytesReceived.add(metrics.getBytesReceived());
+            }
+            if (metrics.getPhases() != null) {
+                recordPhases(metrics.getPhases());
+            }
+        }
+
+        private void recordPhases(RequestPhases requestPhases) {
+            AtomicReferenceArray<LatencyHistogram> histograms = phases;
+            if (histograms == null) {
+                synchronized (this) {
+                    histograms = phases;
+                    if (histograms == null) {
+                        histograms = new AtomicReferenceArray<>(PHASES.length);
+                        for (int i = 0; i < PHASES.length; i++) {
+                            histograms.set(i, new LatencyHistogram());
+                        }
+                        phases = histograms;
+                    }
+                }
+            }
+            recordPhase(histograms.get(0), requestPhases.getPoolWait());
+            recordPhase(histograms.get(1), requestPhases.getConnect());
+            recordPhase(histograms.get(2), requestPhases.getTls());
+            recordPhase(histograms.get(3), requestPhases.getTimeToFirstByte());
+            recordPhase(histograms.get(4), requestPhases.getDownload());
+            recordPhase(histograms.get(5), requestPhases.getParse());
+        }
+
+        private static void recordPhase(LatencyHistogram histogram, long nanos) {
+            if (nanos >= 0) {
+                histogram.recordNanos(nanos);
+            }
+        }
+
+        private Json toJson(RestMethod method, String route) {
+            final Json errorsJson = Json.map();
+            for (RestErrorType type : ERROR_TYPES) {
+                final long value = errors.get(type.ordinal());
+                if (value > 0) {
+                    errorsJson.set(type.name(), value);
+                }
+            }
+            final Json statusJson = Json.map();
+            if (statuses.get(0) > 0) {
+                statusJson.set("none", statuses.get(0));
+            }
+            for (int i = 1; i < STATUS_CLASSES; i++) {
+                if (statuses.get(i) > 0) {
+                    statusJson.set(i + "xx", statuses.get(i));
+                }
+            }
+            final Json codesJson = Json.map();
+            new TreeMap<>(statusCodes).forEach((code, counter) -> codesJson.set(String.valueOf(code), counter.sum()));
+            final AtomicReferenceArray<LatencyHistogram> histograms = phases;
+            Json phasesJson = null;
+            if (histograms != null) {
+                phasesJson = Json.map();
+                for (int i = 0; i < PHASES.length; i++) {
+                    if (histograms.get(i).getCount() > 0) {
+                        phasesJson.set(PHASES[i], histograms.get(i).toJson());
+                    }
+                }
+            }
+            return Json.map()
+                    .set("method", method.name())
+                    .set("route", route)
+                    .set("requests", requests.sum())
+                    .set("failures", failures.sum())
+                    .set("cached", cached.sum())
+                    .set("retries", retries.sum())
+                    .set("errors", errorsJson)
+                    .set("statusClasses", statusJson)
+                    .set("statusCodes", codesJson)
+                    .set("bytesSent", bytesSent.sum())
+                    .set("bytesReceived", bytesReceived.sum())
+                    .set("latency", latency.toJson())
+                    .set("phases", phasesJson);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package io.slingr.api.common;
+
+/**
+ * Metrics of a request done by a {@link RestClient}, given to its {@link RestMetricsListener}
+ */
+public class RestRequestMetrics {
+    private final RestMethod method;
+    private final String uri;
+    private final boolean download;
+    private final boolean timePhases;
+    private final long start = System.nanoTime();
+    private long duration = -1;
+    private int status = -1;
+    private boolean success = false;
+    private boolean cached = false;
+    private RestErrorType errorType;
+    private int retries = 0;
+    private long bytesSent = 0;
+    private long bytesReceived = -1;
+    private RequestPhases phases;
+
+    RestRequestMetrics(RestMethod method, String uri, boolean download, boolean timePhases) {
+        this.method = method;
+        this.uri = uri;
+        this.download = download;
+        this.timePhases = timePhases;
+    }
+
+    public RestMethod getMethod() {
+        return method;
+    }
+
+    public String getUri() {
+        return uri;
+    }
+
+    /**
+     * Returns true if the request is a download, whose body is read by the caller
+     */
+    public boolean isDownload() {
+        return download;
+    }
+
+    /**
+     * Nanoseconds since the request started until it finished, including retries, or -1 if it has not finished
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * Status code of the last response, or -1 if no response was received
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * Returns true if the request returned a response
+     */
+    public boolean isSuccess() {
+        return success;
+    }
+
+    /**
+     * Returns true if the response was taken from the response cache without doing the request
+     */
+    public boolean isCached() {
+        return cached;
+    }
+
+    /**
+     * Type of the error of the request, or <code>null</code> if it did not fail with an exception
+     */
+    public RestErrorType getErrorType() {
+        return errorType;
+    }
+
+    /**
+     * Number of retries done by the request
+     */
+    public int getRetries() {
+        return retries;
+    }
+
+    /**
+     * Bytes of the body sent in each attempt, or -1 if the size is not known
+     */
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * Bytes of the body of the last response after decompressing it, or -1 if it is not known
+     */
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    /**
+     * Time spent in each phase of the last attempt, or <code>null</code> if phase timings are not enabled in
+     * the client
+     */
+    public RequestPhases getPhases() {
+        return phases;
+    }
+
+    /**
+     * Starts the phases of a new attempt, returning them or <code>null</code> if they are not recorded
+     */
+    RequestPhases startAttempt() {
+        if (!timePhases) {
+            return null;
+        }
+        phases = new RequestPhases();
+        return phases;
+    }
+
+    void setStatus(int status) {
+        this.status = status;
+    }
+
+    void setCached(boolean cached) {
+        this.cached = cached;
+    }
+
+    void setRetries(int retries) {
+        this.retries = retries;
+    }
+
+    void setBytesSent(long bytesSent) {
+        this.bytesSent = bytesSent;
+    }
+
+    void setBytesReceived(long bytesReceived) {
+        this.bytesReceived = bytesReceived;
+    }
+
+    /**
+     * Sets the request as finished, with the error if it failed
+     */
+    void finish(boolean success, Throwable error) {
+        this.duration = System.nanoTime() - start;
+        this.success = success;
+        if (error instanceof RestException) {
+            this.errorType = ((RestException) error).getError();
+            final int statusCode = ((RestException) error).getStatusCode();
+            if (statusCode > 0) {
+                this.status = statusCode;
+            }
+        } else if (error != null) {
+            this.errorType = RestErrorType.GENERIC_ERROR;
+        }
+    }
+
+    public Json toJson() {
+        return Json.map()
+                .set("method", method.name())
+                .set("uri", uri)
+                .set("download", download)
+                .set("duration", duration / 1000000.0)
+                .set("status", status)
+                .set("success", success)
+                .set("cached", cached)
+                .set("errorType", errorType != null ? errorType.name() : null)
+                .set("retries", retries)
+                .set("bytesSent", bytesSent)
+                .set("bytesReceived", bytesReceived)
+                .set("phases", phases != null ? phases.toJson() : null);
+    }
+
+    @Override
+    public String toString() {
+        return toJson().toString();
+    }
+}
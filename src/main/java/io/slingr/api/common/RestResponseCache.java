@@ -0,0 +1,405 @@
+package io.slingr.api.common;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.http.client.utils.DateUtils;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedMap;
+import java.util.*;
+
+/**
+ * <p>Cache of the responses of GET requests done by {@link RestClient}. It follows the HTTP caching rules for
+ * private caches:
+ * <ul>
+ * <li>responses are fresh during the <code>max-age</code> of <code>Cache-Control</code> or until
+ * <code>Expires</code>, and they are returned without doing the request</li>
+ * <li>stale responses with <code>ETag</code> or <code>Last-Modified</code> are revalidated with
+ * <code>If-None-Match</code> and <code>If-Modified-Since</code>, and a 304 response returns the cached Json
+ * without parsing anything</li>
+ * <li>responses with <code>no-store</code> or <code>Vary: *</code> are not cached, and <code>no-cache</code>
+ * ones are always revalidated</li>
+ * <li>a successful POST, PUT, PATCH or DELETE on a URI removes the cached response of that URI</li>
+ * </ul>
+ * <p/>
+ * <p>The cache is bounded by number of entries and by the estimated size of the cached Json objects, evicting
+ * the least recently used entries. Callers always receive copies, so they can modify them freely.
+ * <p/>
+ * <code>
+ * RestResponseCache cache = new RestResponseCache(1000, 50 * 1024 * 1024);
+ * SimpleRestClient client = SimpleRestClient.uri("https://api.example.com").responseCache(cache);
+ * </code>
+ * <p/>
+ * <p>The credential headers of the requests, <code>Authorization</code> and <code>token</code> by default, are
+ * part of the key, so a cache can be shared by clients that use different credentials. Clients that authenticate
+ * with other headers must add them with {@link #credentialHeaders(String...)}. Requests of clients with basic or
+ * digest authentication are not cached, because their credentials are not in the headers.
+ */
+public class RestResponseCache {
+    private static final String[] DEFAULT_CREDENTIAL_HEADERS = {"Authorization", "token"};
+    // estimated size of an entry without the Json
+    private static final int ENTRY_OVERHEAD = 200;
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private volatile String[] credentialHeaders = DEFAULT_CREDENTIAL_HEADERS;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    private long hits;
+    private long misses;
+    private long revalidations;
+    private long evictions;
+
+    /**
+     * @param maxEntries maximum number of cached responses
+     * @param maxBytes   maximum estimated bytes of heap used by the cached responses
+     */
+    public RestResponseCache(int maxEntries, long maxBytes) {
+        if (maxEntries <= 0 || maxBytes <= 0) {
+            throw new IllegalArgumentException(String.format("Invalid cache limits, entries [%s] and bytes [%s]", maxEntries, maxBytes));
+        }
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Sets the headers with the credentials of the requests, that are part of the key of the responses
+     */
+    public RestResponseCache credentialHeaders(String... credentialHeaders) {
+        if (credentialHeaders == null) {
+            throw new IllegalArgumentException("Credential headers cannot be null");
+        }
+        this.credentialHeaders = credentialHeaders.clone();
+        return this;
+    }
+
+    public String[] getCredentialHeaders() {
+        return credentialHeaders.clone();
+    }
+
+    /**
+     * Finds the cached response of a GET request
+     *
+     * @param uri     URI of the request
+     * @param headers headers of the request
+     */
+    Lookup lookup(String uri, Map<String, Object> headers) {
+        final String key = key(uri, headers);
+        final Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        if (entry != null && !entry.matches(headers)) {
+            return new Lookup(key, headers, null);
+        }
+        return new Lookup(key, headers, entry);
+    }
+
+    /**
+     * Removes the cached responses of the URI
+     */
+    public synchronized void invalidate(String uri) {
+        final String prefix = uri + "\n";
+        final Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<String, Entry> entry = iterator.next();
+            if (entry.getKey().startsWith(prefix)) {
+                bytes -= entry.getValue().bytes;
+                iterator.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getEstimatedBytes() {
+        return bytes;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getRevalidations() {
+        return revalidations;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized Json toJson() {
+        final long requests = hits + revalidations + misses;
+        return Json.map()
+                .set("entries", entries.size())
+                .set("maxEntries", maxEntries)
+                .set("estimatedBytes", bytes)
+                .set("maxBytes", maxBytes)
+                .set("hits", hits)
+                .set("revalidations", revalidations)
+                .set("misses", misses)
+                .set("evictions", evictions)
+                .set("hitRate", requests > 0 ? (double) (hits + revalidations) / requests : 0.0);
+    }
+
+    @Override
+    public String toString() {
+        return toJson().toString();
+    }
+
+    private synchronized void put(String key, Entry entry) {
+        final Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            bytes -= previous.bytes;
+        }
+        bytes += entry.bytes;
+        final Iterator<Entry> iterator = entries.values().iterator();
+        while ((entries.size() > maxEntries || bytes > maxBytes) && iterator.hasNext()) {
+            final Entry eldest = iterator.next();
+            bytes -= eldest.bytes;
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    private synchronized void remove(String key) {
+        final Entry entry = entries.remove(key);
+        if (entry != null) {
+            bytes -= entry.bytes;
+        }
+    }
+
+    private String key(String uri, Map<String, Object> headers) {
+        final StringBuilder key = new StringBuilder(uri).append('\n');
+        for (String name : credentialHeaders) {
+            final Object value = Entry.header(headers, name);
+            if (value != null) {
+                key.append(name).append('=').append(value).append('\n');
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * Result of looking for a request in the cache. It is used to do the request and to store its response.
+     */
+    class Lookup {
+        private final String key;
+        private final Map<String, Object> requestHeaders;
+        private final Entry entry;
+        private boolean counted = false;
+
+        private Lookup(String key, Map<String, Object> requestHeaders, Entry entry) {
+            this.key = key;
+            this.requestHeaders = requestHeaders;
+            this.entry = entry;
+        }
+
+        /**
+         * Returns a copy of the cached response if it is fresh, or <code>null</code> if the request has to be done
+         */
+        Json fresh() {
+            if (entry != null && entry.expiresAt > System.currentTimeMillis()) {
+                synchronized (RestResponseCache.this) {
+                    hits++;
+                }
+                counted = true;
+                return entry.json.deepClone();
+            }
+            return null;
+        }
+
+        /**
+         * Returns the headers to add to the request to revalidate the cached response
+         */
+        Map<String, Object> conditionalHeaders() {
+            final Map<String, Object> headers = new HashMap<>();
+            if (entry != null) {
+                if (entry.etag != null) {
+                    headers.put(HttpHeaders.IF_NONE_MATCH, entry.etag);
+                }
+                if (entry.lastModified != null) {
+                    headers.put(HttpHeaders.IF_MODIFIED_SINCE, entry.lastModified);
+                }
+            }
+            return headers;
+        }
+
+        /**
+         * Returns true if the response is a 304 for the cached response
+         */
+        boolean isNotModified(int status) {
+            return status == 304 && entry != null;
+        }
+
+        /**
+         * Updates the freshness of the cached response with the headers of a 304 response and returns a copy of it
+         */
+        Json notModified(MultivaluedMap<String, String> responseHeaders) {
+            final Entry updated = entry.refresh(responseHeaders);
+            synchronized (RestResponseCache.this) {
+                revalidations++;
+                if (entries.get(key) == entry) {
+                    entries.put(key, updated);
+                }
+            }
+            counted = true;
+            return entry.json.deepClone();
+        }
+
+        /**
+         * Stores the response if it can be cached. The given Json is not modified and a copy is kept in the cache.
+         */
+        void store(MultivaluedMap<String, String> responseHeaders, Json json) {
+            if (!counted) {
+                synchronized (RestResponseCache.this) {
+                    misses++;
+                }
+                counted = true;
+            }
+            final Entry created = Entry.create(requestHeaders, responseHeaders, json);
+            if (created == null) {
+                remove(key);
+            } else if (created.bytes <= maxBytes) {
+                put(key, created);
+            }
+        }
+    }
+
+    private static class Entry {
+        private final Json json;
+        private final long bytes;
+        private final String etag;
+        private final String lastModified;
+        private final long expiresAt;
+        private final Map<String, Object> vary;
+
+        private Entry(Json json, long bytes, String etag, String lastModified, long expiresAt, Map<String, Object> vary) {
+            this.json = json;
+            this.bytes = bytes;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.expiresAt = expiresAt;
+            this.vary = vary;
+        }
+
+        /**
+         * Creates the entry of the response, or returns <code>null</code> if it cannot be cached
+         */
+        private static Entry create(Map<String, Object> requestHeaders, MultivaluedMap<String, String> responseHeaders, Json json) {
+            final Set<String> cacheControl = cacheControl(responseHeaders);
+            if (cacheControl.contains("no-store")) {
+                return null;
+            }
+            final Map<String, Object> vary = new HashMap<>();
+            for (String value : values(responseHeaders, HttpHeaders.VARY)) {
+                for (String name : value.split(",")) {
+                    name = name.trim();
+                    if (name.equals("*")) {
+                        return null;
+                    }
+                    if (!name.isEmpty()) {
+                        vary.put(name, header(requestHeaders, name));
+                    }
+                }
+            }
+            final String etag = responseHeaders.getFirst(HttpHeaders.ETAG);
+            final String lastModified = responseHeaders.getFirst(HttpHeaders.LAST_MODIFIED);
+            final long expiresAt = expiresAt(cacheControl, responseHeaders);
+            if (expiresAt <= System.currentTimeMillis() && etag == null && lastModified == null) {
+                // it could never be used
+                return null;
+            }
+            final Json copy = json.deepClone();
+            return new Entry(copy, copy.estimateRetainedBytes() + ENTRY_OVERHEAD, etag, lastModified, expiresAt, vary);
+        }
+
+        private Entry refresh(MultivaluedMap<String, String> responseHeaders) {
+            final String newEtag = responseHeaders.getFirst(HttpHeaders.ETAG);
+            final String newLastModified = responseHeaders.getFirst(HttpHeaders.LAST_MODIFIED);
+            return new Entry(json, bytes, newEtag != null ? newEtag : etag, newLastModified != null ? newLastModified : lastModified,
+                    expiresAt(cacheControl(responseHeaders), responseHeaders), vary);
+        }
+
+        private boolean matches(Map<String, Object> requestHeaders) {
+            for (Map.Entry<String, Object> entry : vary.entrySet()) {
+                if (!Objects.equals(entry.getValue(), header(requestHeaders, entry.getKey()))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static long expiresAt(Set<String> cacheControl, MultivaluedMap<String, String> responseHeaders) {
+            final long now = System.currentTimeMillis();
+            if (cacheControl.contains("no-cache")) {
+                return now;
+            }
+            for (String directive : cacheControl) {
+                if (directive.startsWith("max-age=")) {
+                    try {
+                        long age = 0;
+                        final String ageHeader = responseHeaders.getFirst("Age");
+                        if (StringUtils.isNotBlank(ageHeader)) {
+                            age = Long.parseLong(ageHeader.trim());
+                        }
+                        return now + (Long.parseLong(directive.substring("max-age=".length()).replace("\"", "")) - age) * 1000;
+                    } catch (NumberFormatException e) {
+                        return now;
+                    }
+                }
+            }
+            final String expires = responseHeaders.getFirst(HttpHeaders.EXPIRES);
+            if (expires != null) {
+                final Date expiresDate = DateUtils.parseDate(expires);
+                final Date date = DateUtils.parseDate(StringUtils.defaultString(responseHeaders.getFirst(HttpHeaders.DATE)));
+                if (expiresDate != null) {
+                    // relative to the date of the server to avoid problems with clocks
+                    return now + expiresDate.getTime() - (date != null ? date.getTime() : now);
+                }
+            }
+            return now;
+        }
+
+        private static Set<String> cacheControl(MultivaluedMap<String, String> responseHeaders) {
+            final Set<String> directives = new HashSet<>();
+            for (String value : values(responseHeaders, HttpHeaders.CACHE_CONTROL)) {
+                for (String directive : value.split(",")) {
+                    directive = directive.trim().toLowerCase();
+                    if (!directive.isEmpty()) {
+                        directives.add(directive.replace(" ", ""));
+                    }
+                }
+            }
+            return directives;
+        }
+
+        private static List<String> values(MultivaluedMap<String, String> headers, String name) {
+            final List<String> values = headers.get(name);
+            return values != null ? values : Collections.emptyList();
+        }
+
+        private static Object header(Map<String, Object> headers, String name) {
+            if (headers == null) {
+                return null;
+            }
+            for (Map.Entry<String, Object> entry : headers.entrySet()) {
+                if (entry.getKey().equalsIgnoreCase(name)) {
+                    return entry.getValue();
+                }
+            }
+            return null;
+        }
+    }
+}
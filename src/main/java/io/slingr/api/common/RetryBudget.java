@@ -0,0 +1,131 @@
+package io.slingr.api.common;
+
+/**
+ * <p>Limits the retries of a client to a fraction of its requests, so when a service is failing the
+ * clients do not multiply the load with their retries. Requests and retries are counted over a sliding
+ * window of time, and a minimum number of retries per second is always allowed so clients with low
+ * traffic can still retry.
+ * <p/>
+ * <p>The same budget can be shared by several clients that call the same service:
+ * <p/>
+ * <code>
+ * RetryBudget budget = new RetryBudget(0.1, 5);
+ * client1.setRetryBudget(budget);
+ * client2.setRetryBudget(budget);
+ * </code>
+ */
+public class RetryBudget {
+    private static final long DEFAULT_WINDOW = 10 * 1000;
+
+    private final double ratio;
+    private final int minRetriesPerSecond;
+    private final long window;
+
+    private long windowStart;
+    private long currentRequests;
+    private long currentRetries;
+    private long previousRequests;
+    private long previousRetries;
+    private long rejectedRetries;
+
+    /**
+     * @param ratio               maximum retries as a fraction of the requests, like 0.1 for 10%
+     * @param minRetriesPerSecond retries per second that are allowed regardless of the ratio
+     */
+    public RetryBudget(double ratio, int minRetriesPerSecond) {
+        this(ratio, minRetriesPerSecond, DEFAULT_WINDOW);
+    }
+
+    /**
+     * @param ratio               maximum retries as a fraction of the requests, like 0.1 for 10%
+     * @param minRetriesPerSecond retries per second that are allowed regardless of the ratio
+     * @param window              milliseconds of the window where requests and retries are counted
+     */
+    public RetryBudget(double ratio, int minRetriesPerSecond, long window) {
+        if (ratio < 0 || minRetriesPerSecond < 0 || window < 1000) {
+            throw new IllegalArgumentException(String.format("Invalid retry budget, ratio [%s], min retries per second [%s] and window [%s]", ratio, minRetriesPerSecond, window));
+        }
+        this.ratio = ratio;
+        this.minRetriesPerSecond = minRetriesPerSecond;
+        this.window = window;
+        this.windowStart = System.currentTimeMillis();
+    }
+
+    /**
+     * Records a new request (the first attempt)
+     */
+    public void onRequest() {
+        onRequest(System.currentTimeMillis());
+    }
+
+    synchronized void onRequest(long now) {
+        roll(now);
+        currentRequests++;
+    }
+
+    /**
+     * Records a retry if it is allowed by the budget
+     *
+     * @return true if the retry can be done, false if the budget is exhausted
+     */
+    public boolean tryRetry() {
+        return tryRetry(System.currentTimeMillis());
+    }
+
+    synchronized boolean tryRetry(long now) {
+        roll(now);
+        // previous window is weighted by the part of it that is still inside the sliding window
+        final double previousWeight = 1.0 - (double) (now - windowStart) / window;
+        final double requests = currentRequests + previousRequests * previousWeight;
+        final double retries = currentRetries + previousRetries * previousWeight;
+        final double allowed = requests * ratio + minRetriesPerSecond * (window / 1000.0);
+        if (retries + 1 > allowed) {
+            rejectedRetries++;
+            return false;
+        }
+        currentRetries++;
+        return true;
+    }
+
+    private void roll(long now) {
+        if (now - windowStart >= window) {
+            if (now - windowStart >= 2 * window) {
+                previousRequests = 0;
+                previousRetries = 0;
+            } else {
+                previousRequests = currentRequests;
+                previousRetries = currentRetries;
+            }
+            currentRequests = 0;
+            currentRetries = 0;
+            windowStart = now - (now - windowStart) % window;
+        }
+    }
+
+    public double getRatio() {
+        return ratio;
+    }
+
+    public int getMinRetriesPerSecond() {
+        return minRetriesPerSecond;
+    }
+
+    public synchronized long getRejectedRetries() {
+        return rejectedRetries;
+    }
+
+    public synchronized Json toJson() {
+        return Json.map()
+                .set("ratio", ratio)
+                .set("minRetriesPerSecond", minRetriesPerSecond)
+                .set("window", window)
+                .set("requests", currentRequests + previousRequests)
+                .set("retries", currentRetries + previousRetries)
+                .set("rejectedRetries", rejectedRetries);
+    }
+
+    @Override
+    public String toString() {
+        return toJson().toString();
+    }
+}
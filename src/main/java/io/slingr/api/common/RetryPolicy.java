@@ -0,0 +1,116 @@
+package io.slingr.api.common;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * <p>Decides how long {@link RestClient} waits before retrying a failed request. The maximum number of
+ * attempts is still given by the retries of the client; a policy can stop earlier by returning a negative
+ * delay.
+ * <p/>
+ * <p>The default policy waits one more second on each retry, like the client always did. For services that
+ * can be overloaded it is better to use an exponential backoff with jitter, so clients do not retry in
+ * lockstep:
+ * <p/>
+ * <code>
+ * client.setRetryPolicy(RetryPolicy.exponential(200, 10000, RetryPolicy.Jitter.FULL).withMaxElapsedTime(30000));
+ * </code>
+ */
+public interface RetryPolicy {
+
+    /**
+     * Policy used by clients when no other one is configured
+     */
+    RetryPolicy DEFAULT = linear(1000);
+
+    enum Jitter {
+        /**
+         * Delays are exactly the exponential backoff
+         */
+        NONE,
+        /**
+         * Delays are random between zero and the exponential backoff
+         */
+        FULL,
+        /**
+         * Delays are random between the base delay and three times the previous delay
+         */
+        DECORRELATED
+    }
+
+    /**
+     * Returns the time in milliseconds to wait before the next attempt, or a negative value if the
+     * request should not be retried anymore.
+     *
+     * @param retryCount    number of the retry, starting at 1
+     * @param previousDelay delay used before the previous retry, or zero for the first one
+     * @param elapsedTime   milliseconds since the first attempt started
+     */
+    long nextDelay(int retryCount, long previousDelay, long elapsedTime);
+
+    /**
+     * Returns a policy that stops retrying when the next attempt would start after the given time
+     * since the first attempt.
+     *
+     * @param maxElapsedTime maximum time in milliseconds
+     */
+    default RetryPolicy withMaxElapsedTime(long maxElapsedTime) {
+        if (maxElapsedTime <= 0) {
+            throw new IllegalArgumentException(String.format("Invalid max elapsed time [%s]", maxElapsedTime));
+        }
+        final RetryPolicy policy = this;
+        return (retryCount, previousDelay, elapsedTime) -> {
+            final long delay = policy.nextDelay(retryCount, previousDelay, elapsedTime);
+            if (delay < 0 || elapsedTime + delay > maxElapsedTime) {
+                return -1;
+            }
+            return delay;
+        };
+    }
+
+    /**
+     * Delays grow by the given step on each retry: step, 2 * step, 3 * step...
+     *
+     * @param step milliseconds added on each retry
+     */
+    static RetryPolicy linear(long step) {
+        if (step < 0) {
+            throw new IllegalArgumentException(String.format("Invalid step [%s]", step));
+        }
+        return (retryCount, previousDelay, elapsedTime) -> retryCount * step;
+    }
+
+    /**
+     * Delays double on each retry starting from the base delay and up to the max delay.
+     *
+     * @param baseDelay delay of the first retry in milliseconds
+     * @param maxDelay  maximum delay in milliseconds
+     * @param jitter    randomization applied to the delays
+     */
+    static RetryPolicy exponential(long baseDelay, long maxDelay, Jitter jitter) {
+        return exponential(baseDelay, maxDelay, jitter, null);
+    }
+
+    /**
+     * Like {@link #exponential(long, long, Jitter)}, but the jitter takes the random values from the given
+     * generator, so the delays can be reproduced with a seed.
+     *
+     * @param random generator of the jitter, or <code>null</code> to use {@link ThreadLocalRandom}
+     */
+    static RetryPolicy exponential(long baseDelay, long maxDelay, Jitter jitter, Random random) {
+        if (baseDelay <= 0 || maxDelay < baseDelay) {
+            throw new IllegalArgumentException(String.format("Invalid delays, base [%s] and max [%s]", baseDelay, maxDelay));
+        }
+        final Jitter type = jitter != null ? jitter : Jitter.NONE;
+        return (retryCount, previousDelay, elapsedTime) -> {
+            final Random generator = random != null ? random : ThreadLocalRandom.current();
+            if (type == Jitter.DECORRELATED) {
+                final long upper = Math.min(maxDelay, Math.max(baseDelay, previousDelay) * 3);
+                return baseDelay + (long) (generator.nextDouble() * (upper - baseDelay + 1));
+            }
+            final int shift = Math.min(Math.max(retryCount - 1, 0), 62);
+            final long backoff = baseDelay > (maxDelay >> shift) ? maxDelay : baseDelay << shift;
+            return type == Jitter.FULL ? (long) (generator.nextDouble() * (backoff + 1)) : backoff;
+        };
+    }
+}
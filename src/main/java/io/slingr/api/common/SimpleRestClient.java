@@ -5,6 +5,11 @@ import org.glassfish.jersey.media.multipart.MultiPart;
 
 import javax.ws.rs.client.WebTarget;
 import java.io.InputStream;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Simple Rest client over a unique URI
@@ -13,11 +18,19 @@ import java.io.InputStream;
  */
 public class SimpleRestClient extends RestClient {
     private static final Logger logger = Logger.getLogger(SimpleRestClient.class);
+    // max number of paths whose targets are kept by the client, the least recently used ones are evicted
+    private static final int MAX_PATH_TARGETS = 256;
+
+    private volatile PathTargets pathTargets;
 
     public SimpleRestClient(String apiUri) throws RestException {
         super(apiUri, isSecureConnection(apiUri));
     }
 
+    public SimpleRestClient(String apiUri, RestClientFactory.RestClientOptions options) throws RestException {
+        super(apiUri, options);
+    }
+
     public SimpleRestClient setHeader(String name, Object value) {
         setupDefaultHeader(name, value);
         return this;
@@ -38,6 +51,69 @@ public class SimpleRestClient extends RestClient {
         return this;
     }
 
+    public SimpleRestClient retryPolicy(RetryPolicy retryPolicy) {
+        this.setRetryPolicy(retryPolicy);
+        return this;
+    }
+
+    public SimpleRestClient retryBudget(RetryBudget retryBudget) {
+        this.setRetryBudget(retryBudget);
+        return this;
+    }
+
+    public SimpleRestClient responseCache(RestResponseCache responseCache) {
+        this.setResponseCache(responseCache);
+        return this;
+    }
+
+    public SimpleRestClient requestCoalescer(RequestCoalescer requestCoalescer) {
+        this.setRequestCoalescer(requestCoalescer);
+        return this;
+    }
+
+    public SimpleRestClient circuitBreakers(CircuitBreakerRegistry circuitBreakers) {
+        this.setCircuitBreakers(circuitBreakers);
+        return this;
+    }
+
+    public SimpleRestClient rateLimiter(RateLimiter rateLimiter) {
+        this.setRateLimiter(rateLimiter);
+        return this;
+    }
+
+    public SimpleRestClient concurrencyLimiter(ConcurrencyLimiter concurrencyLimiter) {
+        this.setConcurrencyLimiter(concurrencyLimiter);
+        return this;
+    }
+
+    public SimpleRestClient transport(Transport transport) {
+        this.setTransport(transport);
+        return this;
+    }
+
+    public SimpleRestClient metricsListener(RestMetricsListener metricsListener) {
+        this.setMetricsListener(metricsListener);
+        return this;
+    }
+
+    public SimpleRestClient hedgePolicy(HedgePolicy hedgePolicy) {
+        this.setHedgePolicy(hedgePolicy);
+        return this;
+    }
+
+    public SimpleRestClient phaseTimings(boolean phaseTimings) {
+        this.setPhaseTimings(phaseTimings);
+        return this;
+    }
+
+    /**
+     * Adds an interceptor at the end of the chain of the requests
+     */
+    public SimpleRestClient interceptor(RestInterceptor interceptor) {
+        this.addInterceptor(interceptor);
+        return this;
+    }
+
     public SimpleRestClient connectionTimeout(Integer timeout) {
         this.setConnectionTimeout(timeout);
         return this;
@@ -48,6 +124,11 @@ public class SimpleRestClient extends RestClient {
         return this;
     }
 
+    public SimpleRestClient asyncTimeout(Integer timeout) {
+        this.setAsyncTimeout(timeout);
+        return this;
+    }
+
     public SimpleRestClient silenceLogger() {
         this.setSilenceLogger(true);
         return this;
@@ -62,17 +143,21 @@ public class SimpleRestClient extends RestClient {
         return new SimpleRestClient(apiUri);
     }
 
+    public static SimpleRestClient uri(String apiUri, RestClientFactory.RestClientOptions options){
+        return new SimpleRestClient(apiUri, options);
+    }
+
     public Json get() throws RestException {
         return super.get(null);
     }
 
     public Json get(String path) throws RestException {
-        WebTarget target = getApiTarget().path(path);
+        WebTarget target = target(path);
         return super.get(target);
     }
 
     public Json get(String path, Json params) throws RestException {
-        WebTarget target = getApiTarget().path(path);
+        WebTarget target = target(path);
         for (String key : params.keys()) {
             target = target.queryParam(key, params.string(key));
         }
@@ -84,7 +169,7 @@ public class SimpleRestClient extends RestClient {
     }
 
     public Json post(String path) throws RestException {
-        WebTarget target = getApiTarget().path(path);
+        WebTarget target = target(path);
         return super.post(target);
     }
 
@@ -93,7 +178,7 @@ public class SimpleRestClient extends RestClient {
     }
 
     public Json post(String path, Json content) throws RestException {
-        WebTarget target = getApiTarget().path(path);
+        WebTarget target = target(path);
         return super.post(target, content);
     }
 
@@ -102,7 +187,7 @@ public class SimpleRestClient extends RestClient {
     }
 
     public Json post(String path, MultiPart content) throws RestException {
-        WebTarget target = getApiTarget().path(path);
+        WebTarget target = target(path);
         return super.post(target, content);
     }
 
@@ -111,7 +196,7 @@ public class SimpleRestClient extends RestClient {
     }
 
     public Json put(String path) throws RestException {
-        WebTarget target = getApiTarget().path(path);
+        WebTarget target = target(path);
         return super.put(target);
     }
 
@@ -120,7 +205,7 @@ public class SimpleRestClient extends RestClient {
     }
 
     public Json put(String path, Json content) throws RestException {
-        WebTarget target = getApiTarget().path(path);
+        WebTarget target = target(path);
         return super.put(target, content);
     }
 
@@ -141,7 +226,7 @@ public class SimpleRestClient extends RestClient {
     }
 
     public Json delete(String path) throws RestException {
-        WebTarget target = getApiTarget().path(path);
+        WebTarget target = target(path);
         return super.delete(target);
     }
 
@@ -161,12 +246,158 @@ public class SimpleRestClient extends RestClient {
         return get();
     }
 
+    public CompletableFuture<Json> getAsync() {
+        return executeAsync(RestMethod.GET, null, null);
+    }
+
+    public CompletableFuture<Json> getAsync(String path) {
+        WebTarget target = target(path);
+        return executeAsync(RestMethod.GET, target, null);
+    }
+
+    public CompletableFuture<Json> getAsync(String path, Json params) {
+        WebTarget target = target(path);
+        for (String key : params.keys()) {
+            target = target.queryParam(key, params.string(key));
+        }
+        return executeAsync(RestMethod.GET, target, null);
+    }
+
+    public CompletableFuture<Json> postAsync() {
+        return executeAsync(RestMethod.POST, null, null);
+    }
+
+    public CompletableFuture<Json> postAsync(String path) {
+        WebTarget target = target(path);
+        return executeAsync(RestMethod.POST, target, null);
+    }
+
+    public CompletableFuture<Json> postAsync(Json content) {
+        return executeAsync(RestMethod.POST, null, content);
+    }
+
+    public CompletableFuture<Json> postAsync(String path, Json content) {
+        WebTarget target = target(path);
+        return executeAsync(RestMethod.POST, target, content);
+    }
+
+    public CompletableFuture<Json> putAsync() {
+        return executeAsync(RestMethod.PUT, null, null);
+    }
+
+    public CompletableFuture<Json> putAsync(String path) {
+        WebTarget target = target(path);
+        return executeAsync(RestMethod.PUT, target, null);
+    }
+
+    public CompletableFuture<Json> putAsync(Json content) {
+        return executeAsync(RestMethod.PUT, null, content);
+    }
+
+    public CompletableFuture<Json> putAsync(String path, Json content) {
+        WebTarget target = target(path);
+        return executeAsync(RestMethod.PUT, target, content);
+    }
+
+    public CompletableFuture<Json> patchAsync() {
+        return executeAsync(RestMethod.PATCH, null, null);
+    }
+
+    public CompletableFuture<Json> patchAsync(Json content) {
+        return executeAsync(RestMethod.PATCH, null, content);
+    }
+
+    public CompletableFuture<Json> headAsync() {
+        return executeAsync(RestMethod.HEAD, null, null);
+    }
+
+    public CompletableFuture<Json> deleteAsync() {
+        return executeAsync(RestMethod.DELETE, null, null);
+    }
+
+    public CompletableFuture<Json> deleteAsync(String path) {
+        WebTarget target = target(path);
+        return executeAsync(RestMethod.DELETE, target, null);
+    }
+
+    public CompletableFuture<Json> optionsAsync() {
+        return executeAsync(RestMethod.OPTIONS, null, null);
+    }
+
+    public CompletableFuture<Json> executeAsync(RestMethod method, Json jsonRequest) {
+        switch (method) {
+            case POST: return postAsync(jsonRequest);
+            case PUT: return putAsync(jsonRequest);
+            case PATCH: return patchAsync(jsonRequest);
+            case DELETE: return deleteAsync();
+            case HEAD: return headAsync();
+            case OPTIONS: return optionsAsync();
+        }
+        return getAsync();
+    }
+
+    public CompletableFuture<Json> executeAsync(RestCall call) {
+        if (call == null) {
+            throw new IllegalArgumentException("Call cannot be null");
+        }
+        WebTarget target = call.getPath() != null ? target(call.getPath()) : null;
+        if (call.getParams() != null) {
+            if (target == null) {
+                target = getApiTarget();
+            }
+            for (String key : call.getParams().keys()) {
+                target = target.queryParam(key, call.getParams().string(key));
+            }
+        }
+        return executeAsync(call.getMethod(), target, call.getContent());
+    }
+
+    /**
+     * <p>Executes the calls with bounded parallelism and waits until all of them finish, the batch stops at the
+     * first failure in fail fast mode, or its timeout expires. Calls are asynchronous requests that share the
+     * connection pool, retries and limits of the client, so no threads are needed for them.
+     * <p/>
+     * <p>The failure of a call does not throw an exception: it is kept in its {@link RestCallResult}, like the calls
+     * that were skipped when the batch stopped.
+     *
+     * @param calls   calls to execute, started in the order they are given
+     * @param options parallelism, failure mode, timeout and result listener of the batch, or <code>null</code>
+     *                for the defaults
+     * @return results of the calls in the order they were given
+     */
+    public BatchResult executeAll(Collection<RestCall> calls, BatchOptions options) throws RestException {
+        final RestBatch batch = new RestBatch(this, calls, options);
+        final CompletableFuture<BatchResult> result = batch.start();
+        try {
+            return result.get();
+        } catch (InterruptedException ie) {
+            final RestException error = new RetryableRestException(RestErrorType.GENERIC_ERROR, "Interrupted while waiting for batch", ie);
+            batch.stop(error, false);
+            Thread.currentThread().interrupt();
+            throw error;
+        } catch (ExecutionException e) {
+            // results are recorded without failing the batch
+            throw new RestException(RestErrorType.CLIENT_EXCEPTION, "Error executing batch", e);
+        }
+    }
+
+    public BatchResult executeAll(Collection<RestCall> calls) throws RestException {
+        return executeAll(calls, null);
+    }
+
+    /**
+     * Executes the calls like {@link #executeAll(Collection, BatchOptions)} without blocking the caller
+     */
+    public CompletableFuture<BatchResult> executeAllAsync(Collection<RestCall> calls, BatchOptions options) {
+        return new RestBatch(this, calls, options).start();
+    }
+
     public InputStream download(){
         return super.download(null);
     }
 
     public InputStream download(String path) {
-        WebTarget target = getApiTarget().path(path);
+        WebTarget target = target(path);
         return super.download(target);
     }
 
@@ -175,7 +406,51 @@ public class SimpleRestClient extends RestClient {
     }
 
     public InputStream download(String path, boolean throwException) {
-        WebTarget target = getApiTarget().path(path);
+        WebTarget target = target(path);
         return super.download(target, throwException);
     }
+
+    /**
+     * Returns the target of the path. Targets are immutable and building one copies the configuration of
+     * the base target, so the targets of the most used paths are kept until the base target changes.
+     */
+    private WebTarget target(String path) {
+        final WebTarget base = getApiTarget();
+        PathTargets targets = pathTargets;
+        if (targets == null || targets.base != base) {
+            targets = new PathTargets(base);
+            pathTargets = targets;
+        }
+        WebTarget target = targets.get(path);
+        if (target == null) {
+            target = base.path(path);
+            targets.put(path, target);
+        }
+        return target;
+    }
+
+    /**
+     * Targets of the paths of a base target, in access order so the least recently used one is evicted
+     */
+    private static class PathTargets {
+        private final WebTarget base;
+        private final LinkedHashMap<String, WebTarget> targets = new LinkedHashMap<>(16, 0.75f, true);
+
+        private PathTargets(WebTarget base) {
+            this.base = base;
+        }
+
+        private synchronized WebTarget get(String path) {
+            return targets.get(path);
+        }
+
+        private synchronized void put(String path, WebTarget target) {
+            targets.put(path, target);
+            if (targets.size() > MAX_PATH_TARGETS) {
+                final Iterator<String> eldest = targets.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+        }
+    }
 }
@@ -0,0 +1,336 @@
+package io.slingr.api.common;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.utils.DateUtils;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.core.*;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.lang.annotation.Annotation;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * <p>Response received by a {@link Transport} that does not use Jersey. The body can be read as an
+ * <code>InputStream</code>, a <code>String</code> or a <code>byte[]</code>, that is what {@link RestClient}
+ * needs to parse the response and report errors.
+ * <p/>
+ * <p>The stream of the body has to be closed by reading it completely or closing the response.
+ */
+public class StreamResponse extends Response {
+    private final int status;
+    private final MultivaluedMap<String, String> headers;
+    private InputStream body;
+    private byte[] buffered;
+    private boolean closed = false;
+
+    /**
+     * @param status  status code of the response
+     * @param headers headers of the response; they are copied to a map where names are case insensitive
+     * @param body    stream of the body, or <code>null</code> if there is no body
+     */
+    public StreamResponse(int status, Map<String, List<String>> headers, InputStream body) {
+        this.status = status;
+        this.headers = new AbstractMultivaluedMap<String, String>(new TreeMap<>(String.CASE_INSENSITIVE_ORDER)) {
+        };
+        if (headers != null) {
+            headers.forEach((name, values) -> {
+                if (name != null && values != null) {
+                    this.headers.addAll(name, values);
+                }
+            });
+        }
+        this.body = body;
+    }
+
+    @Override
+    public int getStatus() {
+        return status;
+    }
+
+    @Override
+    public StatusType getStatusInfo() {
+        final Status known = Status.fromStatusCode(status);
+        if (known != null) {
+            return known;
+        }
+        return new StatusType() {
+            @Override
+            public int getStatusCode() {
+                return status;
+            }
+
+            @Override
+            public Status.Family getFamily() {
+                return Status.Family.familyOf(status);
+            }
+
+            @Override
+            public String getReasonPhrase() {
+                return "";
+            }
+        };
+    }
+
+    @Override
+    public Object getEntity() {
+        checkOpen();
+        return buffered != null ? buffered : body;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T readEntity(Class<T> entityType) {
+        checkOpen();
+        final InputStream in = buffered != null ? new ByteArrayInputStream(buffered) : body;
+        try {
+            if (entityType == InputStream.class) {
+                return (T) (in != null ? in : new ByteArrayInputStream(new byte[0]));
+            }
+            final byte[] bytes = in != null ? IOUtils.toByteArray(in) : new byte[0];
+            if (buffered == null) {
+                close();
+            }
+            if (entityType == byte[].class) {
+                return (T) bytes;
+            } else if (entityType == String.class) {
+                return (T) new String(bytes, charset());
+            }
+        } catch (IOException e) {
+            throw new ProcessingException("Error reading the body of the response", e);
+        }
+        throw new ProcessingException(String.format("Body of the response cannot be read as [%s]", entityType.getName()));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T readEntity(GenericType<T> entityType) {
+        return (T) readEntity(entityType.getRawType());
+    }
+
+    @Override
+    public <T> T readEntity(Class<T> entityType, Annotation[] annotations) {
+        return readEntity(entityType);
+    }
+
+    @Override
+    public <T> T readEntity(GenericType<T> entityType, Annotation[] annotations) {
+        return readEntity(entityType);
+    }
+
+    @Override
+    public boolean hasEntity() {
+        checkOpen();
+        if (buffered != null) {
+            return buffered.length > 0;
+        }
+        if (body == null) {
+            return false;
+        }
+        try {
+            final PushbackInputStream in = body instanceof PushbackInputStream ? (PushbackInputStream) body : new PushbackInputStream(body);
+            body = in;
+            final int b = in.read();
+            if (b < 0) {
+                return false;
+            }
+            in.unread(b);
+            return true;
+        } catch (IOException e) {
+            throw new ProcessingException("Error reading the body of the response", e);
+        }
+    }
+
+    @Override
+    public boolean bufferEntity() {
+        checkOpen();
+        if (buffered != null) {
+            return true;
+        }
+        if (body == null) {
+            return false;
+        }
+        try {
+            buffered = IOUtils.toByteArray(body);
+        } catch (IOException e) {
+            throw new ProcessingException("Error buffering the body of the response", e);
+        } finally {
+            IOUtils.closeQuietly(body);
+            body = null;
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        if (buffered == null) {
+            closed = true;
+        }
+        if (body != null) {
+            IOUtils.closeQuietly(body);
+            body = null;
+        }
+    }
+
+    @Override
+    public MediaType getMediaType() {
+        final String value = getHeaderString(HttpHeaders.CONTENT_TYPE);
+        return value != null ? MediaType.valueOf(value) : null;
+    }
+
+    @Override
+    public Locale getLanguage() {
+        final String value = getHeaderString(HttpHeaders.CONTENT_LANGUAGE);
+        return value != null ? Locale.forLanguageTag(value) : null;
+    }
+
+    @Override
+    public int getLength() {
+        final String value = getHeaderString(HttpHeaders.CONTENT_LENGTH);
+        try {
+            return value != null ? Integer.parseInt(value.trim()) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public Set<String> getAllowedMethods() {
+        final Set<String> methods = new HashSet<>();
+        final List<String> values = headers.get(HttpHeaders.ALLOW);
+        if (values != null) {
+            for (String value : values) {
+                for (String method : value.split(",")) {
+                    if (!method.trim().isEmpty()) {
+                        methods.add(method.trim().toUpperCase());
+                    }
+                }
+            }
+        }
+        return methods;
+    }
+
+    @Override
+    public Map<String, NewCookie> getCookies() {
+        final Map<String, NewCookie> cookies = new HashMap<>();
+        final List<String> values = headers.get(HttpHeaders.SET_COOKIE);
+        if (values != null) {
+            for (String value : values) {
+                try {
+                    final NewCookie cookie = NewCookie.valueOf(value);
+                    cookies.put(cookie.getName(), cookie);
+                } catch (IllegalArgumentException e) {
+                    // invalid cookies are ignored
+                }
+            }
+        }
+        return cookies;
+    }
+
+    @Override
+    public EntityTag getEntityTag() {
+        final String value = getHeaderString(HttpHeaders.ETAG);
+        return value != null ? EntityTag.valueOf(value) : null;
+    }
+
+    @Override
+    public Date getDate() {
+        return getDateHeader(HttpHeaders.DATE);
+    }
+
+    @Override
+    public Date getLastModified() {
+        return getDateHeader(HttpHeaders.LAST_MODIFIED);
+    }
+
+    @Override
+    public URI getLocation() {
+        final String value = getHeaderString(HttpHeaders.LOCATION);
+        return value != null ? URI.create(value) : null;
+    }
+
+    @Override
+    public Set<Link> getLinks() {
+        final Set<Link> links = new HashSet<>();
+        final List<String> values = headers.get(HttpHeaders.LINK);
+        if (values != null) {
+            for (String value : values) {
+                try {
+                    links.add(Link.valueOf(value));
+                } catch (IllegalArgumentException e) {
+                    // invalid links are ignored
+                }
+            }
+        }
+        return links;
+    }
+
+    @Override
+    public boolean hasLink(String relation) {
+        return getLink(relation) != null;
+    }
+
+    @Override
+    public Link getLink(String relation) {
+        for (Link link : getLinks()) {
+            if (link.getRels().contains(relation)) {
+                return link;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Link.Builder getLinkBuilder(String relation) {
+        final Link link = getLink(relation);
+        return link != null ? Link.fromLink(link) : null;
+    }
+
+    @Override
+    public MultivaluedMap<String, Object> getMetadata() {
+        final MultivaluedMap<String, Object> metadata = new AbstractMultivaluedMap<String, Object>(new TreeMap<>(String.CASE_INSENSITIVE_ORDER)) {
+        };
+        headers.forEach((name, values) -> metadata.put(name, new ArrayList<>(values)));
+        return metadata;
+    }
+
+    @Override
+    public MultivaluedMap<String, String> getStringHeaders() {
+        return headers;
+    }
+
+    @Override
+    public String getHeaderString(String name) {
+        final List<String> values = headers.get(name);
+        return values != null && !values.isEmpty() ? String.join(",", values) : null;
+    }
+
+    private Date getDateHeader(String name) {
+        final String value = getHeaderString(name);
+        return value != null ? DateUtils.parseDate(value) : null;
+    }
+
+    private Charset charset() {
+        final MediaType mediaType = getMediaType();
+        final String charset = mediaType != null ? mediaType.getParameters().get(MediaType.CHARSET_PARAMETER) : null;
+        try {
+            return charset != null ? Charset.forName(charset) : StandardCharsets.UTF_8;
+        } catch (Exception e) {
+            return StandardCharsets.UTF_8;
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("The response is closed");
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package io.slingr.api.common;
+
+import javax.ws.rs.core.Response;
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * <p>Sends the HTTP requests of a {@link RestClient}. The client builds the requests and processes the
+ * responses, with its retries, cache and limits; the transport only does the exchange.
+ * <p/>
+ * <p>By default requests are sent by Jersey with the Apache connector ({@link #jersey()}), that uses HTTP/1.1.
+ * {@link #apacheHttpClient(RestClientFactory.RestClientOptions)} uses the Apache client directly, skipping
+ * the JAX-RS layer, that is lighter for plain Json requests.
+ * On Java 11 or later, {@link #jdkHttpClient(RestClientFactory.RestClientOptions)} sends them with the HTTP
+ * client of the JDK, that multiplexes the requests to a host over a single HTTP/2 connection:
+ * <p/>
+ * <code>
+ * Transport http2 = Transport.jdkHttpClient(new RestClientFactory.RestClientOptions());
+ * SimpleRestClient client = SimpleRestClient.uri("https://api.example.com").transport(http2);
+ * </code>
+ * <p/>
+ * <p>A transport can be shared by several clients.
+ */
+public interface Transport {
+
+    /**
+     * Sends the request and returns its response, whatever its status is
+     *
+     * @throws javax.ws.rs.ProcessingException if the request cannot be sent or the response cannot be received
+     */
+    Response execute(TransportRequest request);
+
+    /**
+     * Sends the request asynchronously. Cancelling the returned future aborts the request when the transport
+     * supports it.
+     */
+    CompletableFuture<Response> executeAsync(TransportRequest request);
+
+    /**
+     * Releases the resources of the transport
+     */
+    default void close() {
+    }
+
+    /**
+     * Transport that sends the requests with the Jersey client of the rest client
+     */
+    static Transport jersey() {
+        return JerseyTransport.INSTANCE;
+    }
+
+    /**
+     * Transport that sends the requests with an Apache HTTP client, without the JAX-RS layer of Jersey.
+     * It has its own connection pool, so it should be shared by the clients and closed at the end.
+     */
+    static Transport apacheHttpClient(RestClientFactory.RestClientOptions options) {
+        return new ApacheHttpTransport(options);
+    }
+
+    /**
+     * Transport that sends the requests with the HTTP client of the JDK, using HTTP/2 when the server supports
+     * it. It needs Java 11 or later.
+     *
+     * @throws IllegalStateException if it is not available in this Java version
+     */
+    static Transport jdkHttpClient(RestClientFactory.RestClientOptions options) {
+        try {
+            return (Transport) Class.forName("io.slingr.api.common.JdkHttpTransport")
+                    .getConstructor(RestClientFactory.RestClientOptions.class)
+                    .newInstance(options);
+        } catch (ClassNotFoundException | UnsupportedClassVersionError e) {
+            throw new IllegalStateException("The HTTP client of the JDK needs Java 11 or later", e);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Could not create the JDK transport", e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not create the JDK transport", e);
+        }
+    }
+}
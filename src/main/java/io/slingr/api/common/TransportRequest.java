@@ -0,0 +1,109 @@
+package io.slingr.api.common;
+
+import org.glassfish.jersey.client.authentication.HttpAuthenticationFeature;
+
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.Configuration;
+import java.net.URI;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Request built by a {@link RestClient} to be sent by a {@link Transport}. The response is expected in JSON.
+ */
+public class TransportRequest {
+    private final RestMethod method;
+    private final WebTarget target;
+    private final URI uri;
+    private final Map<String, Object> headers;
+    private final Entity<?> entity;
+    private final Integer connectionTimeout;
+    private final Integer readTimeout;
+
+    TransportRequest(RestMethod method, WebTarget target, URI uri, Map<String, Object> headers, Entity<?> entity, Integer connectionTimeout, Integer readTimeout) {
+        this.method = method;
+        this.target = target;
+        // the target builds the URI each time it is asked, so it is built once by the client
+        this.uri = uri;
+        this.headers = headers != null ? headers : Collections.emptyMap();
+        this.entity = entity;
+        this.connectionTimeout = connectionTimeout;
+        this.readTimeout = readTimeout;
+    }
+
+    public RestMethod getMethod() {
+        return method;
+    }
+
+    /**
+     * Target of the request. Besides the URI, it has the configuration of the Jersey client for the request.
+     */
+    public WebTarget getTarget() {
+        return target;
+    }
+
+    public URI getUri() {
+        return uri;
+    }
+
+    public Map<String, Object> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Body of the request, or <code>null</code> if there is none. It is not sent in GET, HEAD and OPTIONS requests.
+     */
+    public Entity<?> getEntity() {
+        return entity;
+    }
+
+    /**
+     * Connection timeout in milliseconds, or <code>null</code> to use the default one
+     */
+    public Integer getConnectionTimeout() {
+        return connectionTimeout;
+    }
+
+    /**
+     * Read timeout in milliseconds, or <code>null</code> to use the default one
+     */
+    public Integer getReadTimeout() {
+        return readTimeout;
+    }
+
+    /**
+     * Returns true if the body has to be sent with the request
+     */
+    public boolean hasBody() {
+        return entity != null && method != RestMethod.GET && method != RestMethod.HEAD && method != RestMethod.OPTIONS;
+    }
+
+    /**
+     * Checks that the target does not have authentication features of Jersey, for the transports that do not
+     * run them
+     *
+     * @throws IllegalStateException if the target has authentication features
+     */
+    void checkNoAuthentication(String transport) {
+        if (hasAuthentication(target)) {
+            throw new IllegalStateException(String.format("Authentication features are not supported by the %s transport", transport));
+        }
+    }
+
+    /**
+     * Returns true if the target has authentication features of Jersey, whose credentials are not in the headers
+     */
+    static boolean hasAuthentication(WebTarget target) {
+        final Configuration configuration = target.getConfiguration();
+        if (configuration.isRegistered(HttpAuthenticationFeature.class)) {
+            return true;
+        }
+        for (Object instance : configuration.getInstances()) {
+            if (instance instanceof HttpAuthenticationFeature) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
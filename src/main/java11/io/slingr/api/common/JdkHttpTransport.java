@@ -0,0 +1,211 @@
+package io.slingr.api.common;
+
+import javax.net.ssl.SSLContext;
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>Transport that sends the requests with the HTTP client of the JDK. It negotiates HTTP/2 with the servers
+ * that support it (with ALPN in https), so all the requests to a host are multiplexed over one connection
+ * instead of taking one connection of the pool each; otherwise it uses HTTP/1.1.
+ * <p/>
+ * <p>It is created with {@link Transport#jdkHttpClient(RestClientFactory.RestClientOptions)}, that takes
+ * from the options if self signed certificates are allowed, if redirects are followed and if responses are
+ * compressed. Bodies of requests are not compressed, and multipart bodies and the authentication features
+ * of Jersey are not supported; those clients need the Jersey transport.
+ * <p/>
+ * <p>The connect timeout of the HTTP client of the JDK cannot be set per request, so there is one HTTP client
+ * for each connect timeout of the requests (usually only the one of the client), and requests without it use
+ * a timeout of 5 seconds.
+ */
+class JdkHttpTransport implements Transport {
+    private static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(5);
+    // headers that are set by the HTTP client and cannot be set in the requests
+    private static final Set<String> RESTRICTED_HEADERS = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+    static {
+        RESTRICTED_HEADERS.add("Connection");
+        RESTRICTED_HEADERS.add("Content-Length");
+        RESTRICTED_HEADERS.add("Date");
+        RESTRICTED_HEADERS.add("Expect");
+        RESTRICTED_HEADERS.add("From");
+        RESTRICTED_HEADERS.add("Host");
+        RESTRICTED_HEADERS.add("Upgrade");
+        RESTRICTED_HEADERS.add("Via");
+        RESTRICTED_HEADERS.add("Warning");
+    }
+
+    private final HttpClient.Redirect redirect;
+    private final SSLContext sslContext;
+    private final ConcurrentMap<Duration, HttpClient> clients = new ConcurrentHashMap<>();
+    private final boolean compressResponses;
+
+    public JdkHttpTransport() {
+        this(new RestClientFactory.RestClientOptions());
+    }
+
+    public JdkHttpTransport(RestClientFactory.RestClientOptions options) {
+        this.redirect = options.followRedirects ? HttpClient.Redirect.NORMAL : HttpClient.Redirect.NEVER;
+        if (options.allowSelfSignedCertificate) {
+            try {
+                this.sslContext = RestClientFactory.trustAllSslContext();
+            } catch (Exception e) {
+                throw new IllegalStateException("Could not create the SSL context", e);
+            }
+        } else {
+            this.sslContext = null;
+        }
+        this.compressResponses = options.compressResponses;
+        // the client of the default timeout is created here, so errors in the configuration are thrown by the constructor
+        client(null);
+    }
+
+    @Override
+    public Response execute(TransportRequest request) {
+        final HttpRequest httpRequest = buildRequest(request);
+        try {
+            return toResponse(request, client(request.getConnectionTimeout()).send(httpRequest, HttpResponse.BodyHandlers.ofInputStream()));
+        } catch (IOException e) {
+            // the message has the class of the cause, as in Jersey, so connect timeouts are detected by the client
+            throw new ProcessingException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ProcessingException("Interrupted while waiting for the response", e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Response> executeAsync(TransportRequest request) {
+        final HttpRequest httpRequest = buildRequest(request);
+        final CompletableFuture<HttpResponse<InputStream>> exchange = client(request.getConnectionTimeout()).sendAsync(httpRequest, HttpResponse.BodyHandlers.ofInputStream());
+        final CompletableFuture<Response> result = new CompletableFuture<>();
+        exchange.whenComplete((response, e) -> {
+            if (e != null) {
+                final Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                result.completeExceptionally(cause instanceof IOException ? new ProcessingException(cause) : cause);
+                return;
+            }
+            final Response converted;
+            try {
+                converted = toResponse(request, response);
+            } catch (Exception ex) {
+                result.completeExceptionally(ex);
+                return;
+            }
+            if (!result.complete(converted)) {
+                // cancelled while the response was received
+                converted.close();
+            }
+        });
+        result.whenComplete((response, e) -> {
+            if (e != null) {
+                // unlike the futures of the other transports, no thread is interrupted here: on Java 16 or later,
+                // cancelling with interruption is how the HTTP client of the JDK aborts the exchange
+                exchange.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Returns the HTTP client for the given connect timeout in milliseconds, creating it the first time
+     */
+    HttpClient client(Integer connectTimeout) {
+        final Duration timeout = connectTimeout != null && connectTimeout > 0 ? Duration.ofMillis(connectTimeout) : DEFAULT_CONNECT_TIMEOUT;
+        return clients.computeIfAbsent(timeout, t -> {
+            final HttpClient.Builder builder = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_2)
+                    .connectTimeout(t)
+                    .followRedirects(redirect);
+            if (sslContext != null) {
+                builder.sslContext(sslContext);
+            }
+            return builder.build();
+        });
+    }
+
+    private HttpRequest buildRequest(TransportRequest request) {
+        request.checkNoAuthentication("JDK");
+        final HttpRequest.Builder builder = HttpRequest.newBuilder(request.getUri());
+        if (request.getReadTimeout() != null && request.getReadTimeout() > 0) {
+            builder.timeout(Duration.ofMillis(request.getReadTimeout()));
+        }
+        boolean accept = false;
+        boolean acceptEncoding = false;
+        boolean contentType = false;
+        for (Map.Entry<String, Object> header : request.getHeaders().entrySet()) {
+            if (header.getValue() == null || RESTRICTED_HEADERS.contains(header.getKey())) {
+                continue;
+            }
+            builder.header(header.getKey(), header.getValue().toString());
+            accept |= header.getKey().equalsIgnoreCase(HttpHeaders.ACCEPT);
+            acceptEncoding |= header.getKey().equalsIgnoreCase(HttpHeaders.ACCEPT_ENCODING);
+            contentType |= header.getKey().equalsIgnoreCase(HttpHeaders.CONTENT_TYPE);
+        }
+        if (!accept) {
+            builder.header(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON);
+        }
+        if (compressResponses && !acceptEncoding) {
+            builder.header(HttpHeaders.ACCEPT_ENCODING, HttpCompression.ACCEPT_ENCODING);
+        }
+        if (request.hasBody()) {
+            final Entity<?> entity = request.getEntity();
+            if (!contentType && entity.getMediaType() != null) {
+                builder.header(HttpHeaders.CONTENT_TYPE, entity.getMediaType().toString());
+            }
+            builder.method(request.getMethod().name(), bodyPublisher(entity.getEntity()));
+        } else {
+            builder.method(request.getMethod().name(), HttpRequest.BodyPublishers.noBody());
+        }
+        return builder.build();
+    }
+
+    private static HttpRequest.BodyPublisher bodyPublisher(Object body) {
+        if (body == null) {
+            return HttpRequest.BodyPublishers.noBody();
+        } else if (body instanceof String) {
+            return HttpRequest.BodyPublishers.ofString((String) body);
+        } else if (body instanceof byte[]) {
+            return HttpRequest.BodyPublishers.ofByteArray((byte[]) body);
+        } else if (body instanceof Json) {
+            return HttpRequest.BodyPublishers.ofString(body.toString());
+        } else if (body instanceof Map || body instanceof Iterable) {
+            return HttpRequest.BodyPublishers.ofString(Json.fromObject(body).toString());
+        }
+        throw new IllegalStateException(String.format("Body of type [%s] is not supported by the JDK transport", body.getClass().getName()));
+    }
+
+    private static Response toResponse(TransportRequest request, HttpResponse<InputStream> response) throws IOException {
+        InputStream body = response.body();
+        final String encoding = response.headers().firstValue(HttpHeaders.CONTENT_ENCODING).orElse(null);
+        // responses without body can have the encoding that the body would have
+        if (encoding != null && request.getMethod() != RestMethod.HEAD && response.statusCode() != 204 && response.statusCode() != 304) {
+            final InputStream decoded = HttpCompression.decode(encoding, body);
+            if (decoded != null) {
+                body = decoded;
+                final Map<String, List<String>> headers = new HashMap<>(response.headers().map());
+                headers.keySet().removeIf(name -> name.equalsIgnoreCase(HttpHeaders.CONTENT_ENCODING) || name.equalsIgnoreCase(HttpHeaders.CONTENT_LENGTH));
+                return new StreamResponse(response.statusCode(), headers, body);
+            }
+        }
+        return new StreamResponse(response.statusCode(), response.headers().map(), body);
+    }
+}
@@ -0,0 +1,135 @@
+package io.slingr.api.app;
+
+import io.slingr.api.common.Json;
+import io.slingr.api.common.RestException;
+import io.slingr.api.common.StreamResponse;
+import io.slingr.api.common.Transport;
+import io.slingr.api.common.TransportRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.core.Response;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SlingrAppClientTest {
+    private static final String API = "https://test.slingrs.io/prod/runtime/api";
+    private static final String LOGIN = "/prod/runtime/api/auth/login";
+
+    private final StubTransport transport = new StubTransport();
+    private SlingrAppClient client;
+
+    @Before
+    public void setUp() {
+        client = SlingrAppClient.create(API, transport, "user@example.com", "secret");
+        client.retries(0);
+    }
+
+    @After
+    public void tearDown() {
+        client.close();
+    }
+
+    @Test
+    public void expiredTokensLogInAgain() throws Exception {
+        assertEquals(1, transport.logins.get());
+        transport.validToken = "expired";
+
+        assertEquals("/prod/runtime/api/data/companies", client.get("/data/companies").string("path"));
+        assertEquals(2, transport.logins.get());
+        assertEquals("token1", transport.requests.get(1).getHeaders().get("token"));
+        assertEquals("token2", transport.requests.get(3).getHeaders().get("token"));
+
+        // the new token is used by the next requests
+        client.get("/data/companies");
+        assertEquals(2, transport.logins.get());
+        assertEquals("token2", transport.requests.get(4).getHeaders().get("token"));
+    }
+
+    @Test
+    public void expiredTokensLogInAgainInAsyncRequests() throws Exception {
+        transport.validToken = "expired";
+
+        assertEquals("/prod/runtime/api/data/companies", client.getAsync("/data/companies").get(5, TimeUnit.SECONDS).string("path"));
+        assertEquals(2, transport.logins.get());
+        assertEquals("token2", transport.requests.get(3).getHeaders().get("token"));
+        client.getAsync("/data/companies").get(5, TimeUnit.SECONDS);
+        assertEquals("token2", transport.requests.get(4).getHeaders().get("token"));
+    }
+
+    @Test
+    public void pathsThatEndLikeTheLoginPathAreNotLogins() throws Exception {
+        transport.validToken = "expired";
+        assertEquals("/prod/runtime/api/data/auth/login", client.get("/data/auth/login").string("path"));
+        assertEquals(2, transport.logins.get());
+    }
+
+    @Test
+    public void failedLoginsAreNotRetried() throws Exception {
+        transport.rejectLogins = true;
+        try {
+            client.login();
+            fail("The login did not fail");
+        } catch (RestException e) {
+            assertEquals(401, e.getStatusCode());
+        }
+        try {
+            client.postAsync("/auth/login", Json.map()).get(5, TimeUnit.SECONDS);
+            fail("The login did not fail");
+        } catch (ExecutionException e) {
+            assertEquals(401, ((RestException) e.getCause()).getStatusCode());
+        }
+        // the first login was done when the client was created
+        assertEquals(3, transport.logins.get());
+        assertEquals(3, transport.requests.size());
+    }
+
+    /**
+     * Server of an app that gives a new token in each login and answers with the path the requests that have
+     * the last token
+     */
+    private static class StubTransport implements Transport {
+        private final List<TransportRequest> requests = new CopyOnWriteArrayList<>();
+        private final AtomicInteger logins = new AtomicInteger();
+        private volatile String validToken;
+        private volatile boolean rejectLogins;
+
+        @Override
+        public Response execute(TransportRequest request) {
+            requests.add(request);
+            final String path = request.getUri().getPath();
+            if (path.equals(LOGIN)) {
+                logins.incrementAndGet();
+                if (rejectLogins) {
+                    return response(401, Json.map().set("message", "Invalid credentials"));
+                }
+                validToken = "token" + logins.get();
+                return response(200, Json.map().set("token", validToken));
+            }
+            if (!validToken.equals(request.getHeaders().get("token"))) {
+                return response(401, Json.map().set("message", "Expired token"));
+            }
+            return response(200, Json.map().set("path", path));
+        }
+
+        @Override
+        public CompletableFuture<Response> executeAsync(TransportRequest request) {
+            return CompletableFuture.completedFuture(execute(request));
+        }
+
+        private static Response response(int status, Json body) {
+            return new StreamResponse(status, Collections.singletonMap("Content-Type", Collections.singletonList("application/json")),
+                    new ByteArrayInputStream(body.toString().getBytes(StandardCharsets.UTF_8)));
+        }
+    }
+}
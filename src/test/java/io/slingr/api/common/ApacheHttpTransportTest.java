@@ -0,0 +1,143 @@
+package io.slingr.api.common;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpEntity;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.client.Entity;
+import java.io.ByteArrayOutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+public class ApacheHttpTransportTest {
+    private HttpServer server;
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicInteger received = new AtomicInteger();
+
+    @Before
+    public void startServer() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", exchange -> {
+            received.incrementAndGet();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            final byte[] body = "{\"id\":1}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        release.countDown();
+        server.stop(0);
+        ((ExecutorService) server.getExecutor()).shutdownNow();
+    }
+
+    @Test
+    public void jsonBodiesCanBeReadAgain() throws Exception {
+        final ApacheHttpTransport transport = new ApacheHttpTransport();
+        try {
+            final Json json = Json.map().set("id", 1).set("name", "test");
+            final HttpEntity entity = transport.buildEntity(Entity.json(json));
+            assertTrue(entity.isRepeatable());
+            assertEquals(json.toString(), IOUtils.toString(entity.getContent(), StandardCharsets.UTF_8));
+            assertEquals(json.toString(), IOUtils.toString(entity.getContent(), StandardCharsets.UTF_8));
+        } finally {
+            transport.close();
+        }
+    }
+
+    @Test
+    public void compressedBodiesCanBeReadAgain() throws Exception {
+        final RestClientFactory.RestClientOptions options = new RestClientFactory.RestClientOptions();
+        options.compressRequests = true;
+        options.compressRequestsThreshold = 0;
+        final ApacheHttpTransport transport = new ApacheHttpTransport(options);
+        try {
+            final Json json = Json.map().set("id", 1).set("name", "test");
+            final HttpEntity entity = transport.buildEntity(Entity.json(json));
+            assertTrue(entity.isRepeatable());
+            assertEquals(HttpCompression.GZIP, entity.getContentEncoding().getValue());
+            for (int i = 0; i < 2; i++) {
+                final byte[] content = IOUtils.toByteArray(new GZIPInputStream(entity.getContent()));
+                assertEquals(json.toString(), new String(content, StandardCharsets.UTF_8));
+            }
+            // the content is the same that is written to the request
+            final ByteArrayOutputStream written = new ByteArrayOutputStream();
+            entity.writeTo(written);
+            assertArrayEquals(written.toByteArray(), IOUtils.toByteArray(entity.getContent()));
+        } finally {
+            transport.close();
+        }
+    }
+
+    @Test
+    public void asyncRequestsUseAsManyThreadsAsConnections() throws Exception {
+        final RestClientFactory.RestClientOptions options = new RestClientFactory.RestClientOptions();
+        options.maxConnections = 2;
+        final ApacheHttpTransport transport = new ApacheHttpTransport(options);
+        final SimpleRestClient client = SimpleRestClient.uri("http://localhost:" + server.getAddress().getPort())
+                .transport(transport)
+                .retries(0);
+        try {
+            final Set<Thread> before = transportThreads();
+            final List<CompletableFuture<Json>> futures = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                futures.add(client.getAsync());
+            }
+            final long deadline = System.currentTimeMillis() + 5000;
+            while (received.get() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            Thread.sleep(100);
+            final Set<Thread> started = transportThreads();
+            started.removeAll(before);
+            assertEquals(2, started.size());
+            assertEquals(2, received.get());
+
+            // the queued requests are sent when the threads are free
+            release.countDown();
+            for (CompletableFuture<Json> future : futures) {
+                assertEquals(1, (int) future.get(5, TimeUnit.SECONDS).integer("id"));
+            }
+            assertEquals(6, received.get());
+        } finally {
+            client.close();
+            transport.close();
+        }
+    }
+
+    private static Set<Thread> transportThreads() {
+        final Set<Thread> threads = new HashSet<>();
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("rest-client-apache-")) {
+                threads.add(thread);
+            }
+        }
+        return threads;
+    }
+}
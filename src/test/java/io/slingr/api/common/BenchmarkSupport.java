@@ -0,0 +1,36 @@
+package io.slingr.api.common;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+
+/**
+ * Helpers of the benchmarks. Benchmarks are not run by the build (their names do not end with Test), so they
+ * are run one at a time with <code>mvn test -Dtest=JsonBinaryBenchmark</code>. It is public because the
+ * benchmarks of the processor module use it too.
+ */
+public class BenchmarkSupport {
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * Runs the task the given times after warming it up, and returns the median of the milliseconds it took
+     */
+    public static double measure(int warmups, int runs, Callable<?> task) throws Exception {
+        for (int i = 0; i < warmups; i++) {
+            task.call();
+        }
+        final double[] times = new double[runs];
+        for (int i = 0; i < runs; i++) {
+            final long start = System.nanoTime();
+            task.call();
+            times[i] = (System.nanoTime() - start) / 1000000.0;
+        }
+        Arrays.sort(times);
+        return times[runs / 2];
+    }
+
+    public static void report(String format, Object... args) {
+        System.out.println(String.format(format, args));
+    }
+}
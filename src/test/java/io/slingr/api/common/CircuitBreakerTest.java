@@ -0,0 +1,151 @@
+package io.slingr.api.common;
+
+import org.junit.Test;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.WebApplicationException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class CircuitBreakerTest {
+    private static final Exception CONNECTION_ERROR = new ProcessingException("Connection refused");
+
+    private final List<String> changes = new ArrayList<>();
+
+    private CircuitBreaker circuitBreaker(long waitInOpenState) {
+        return new CircuitBreakerRegistry()
+                .windowSize(4)
+                .minimumCalls(4)
+                .failureRateThreshold(50)
+                .slowCallDuration(1000)
+                .waitInOpenState(waitInOpenState)
+                .halfOpenCalls(2)
+                .listener((circuitBreaker, from, to) -> changes.add(from + "->" + to))
+                .get("https://api.example.com:443");
+    }
+
+    private static void call(CircuitBreaker circuitBreaker, Exception error) throws CircuitOpenException {
+        circuitBreaker.acquire();
+        circuitBreaker.record(error, TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    @Test
+    public void opensWhenTheFailureRateIsReached() throws Exception {
+        final CircuitBreaker circuitBreaker = circuitBreaker(60000);
+        call(circuitBreaker, null);
+        call(circuitBreaker, CONNECTION_ERROR);
+        call(circuitBreaker, null);
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        // the minimum calls are reached with 2 of 4 failures
+        call(circuitBreaker, CONNECTION_ERROR);
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        try {
+            circuitBreaker.acquire();
+            fail("Open circuit let a call go through");
+        } catch (CircuitOpenException e) {
+            assertEquals("https://api.example.com:443", e.getCircuit());
+        }
+        assertEquals(1L, (long) circuitBreaker.toJson().long_("notPermittedCalls"));
+        assertEquals(1, changes.size());
+        assertEquals("CLOSED->OPEN", changes.get(0));
+    }
+
+    @Test
+    public void errorsOfTheServiceAreNotFailures() throws Exception {
+        final CircuitBreaker circuitBreaker = circuitBreaker(60000);
+        for (int i = 0; i < 4; i++) {
+            call(circuitBreaker, new RestException(RestErrorType.CLIENT_EXCEPTION, new WebApplicationException(404)));
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        call(circuitBreaker, new WebApplicationException(503));
+        call(circuitBreaker, new WebApplicationException(429));
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+    }
+
+    @Test
+    public void slowCallsOpenTheCircuit() throws Exception {
+        final CircuitBreaker circuitBreaker = new CircuitBreakerRegistry()
+                .windowSize(2)
+                .minimumCalls(2)
+                .slowCallRateThreshold(100)
+                .slowCallDuration(10)
+                .get("https://api.example.com:443");
+        circuitBreaker.acquire();
+        circuitBreaker.record(null, TimeUnit.MILLISECONDS.toNanos(20));
+        circuitBreaker.acquire();
+        circuitBreaker.record(null, TimeUnit.MILLISECONDS.toNanos(20));
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+    }
+
+    @Test
+    public void halfOpenClosesAfterTheTrialCalls() throws Exception {
+        final CircuitBreaker circuitBreaker = circuitBreaker(0);
+        for (int i = 0; i < 4; i++) {
+            call(circuitBreaker, CONNECTION_ERROR);
+        }
+        // without wait it is half-open as soon as it opened
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        circuitBreaker.acquire();
+        circuitBreaker.acquire();
+        try {
+            circuitBreaker.acquire();
+            fail("Half-open circuit let more than the trial calls go through");
+        } catch (CircuitOpenException e) {
+            // expected
+        }
+        circuitBreaker.record(null, 0);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        circuitBreaker.record(null, 0);
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertEquals("[CLOSED->OPEN, OPEN->HALF_OPEN, HALF_OPEN->CLOSED]", changes.toString());
+    }
+
+    @Test
+    public void halfOpenOpensAgainOnFailure() throws Exception {
+        final CircuitBreaker circuitBreaker = circuitBreaker(0);
+        for (int i = 0; i < 4; i++) {
+            call(circuitBreaker, CONNECTION_ERROR);
+        }
+        circuitBreaker.acquire();
+        circuitBreaker.record(CONNECTION_ERROR, 0);
+        assertEquals("[CLOSED->OPEN, OPEN->HALF_OPEN, HALF_OPEN->OPEN]", changes.toString());
+    }
+
+    @Test
+    public void releasedPermitsCanBeUsedAgain() throws Exception {
+        final CircuitBreaker circuitBreaker = circuitBreaker(0);
+        for (int i = 0; i < 4; i++) {
+            call(circuitBreaker, CONNECTION_ERROR);
+        }
+        circuitBreaker.acquire();
+        circuitBreaker.acquire();
+        circuitBreaker.release();
+        circuitBreaker.acquire();
+        circuitBreaker.record(null, 0);
+        circuitBreaker.record(null, 0);
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    @Test
+    public void resetClosesTheCircuit() throws Exception {
+        final CircuitBreaker circuitBreaker = circuitBreaker(60000);
+        for (int i = 0; i < 4; i++) {
+            call(circuitBreaker, CONNECTION_ERROR);
+        }
+        circuitBreaker.reset();
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertEquals(0, (int) circuitBreaker.toJson().integer("calls"));
+    }
+
+    @Test
+    public void keysAreHostsOrRoutes() {
+        final URI uri = URI.create("https://api.example.com/v1/items?limit=10");
+        assertEquals("https://api.example.com:443", new CircuitBreakerRegistry().key(uri));
+        assertEquals("https://api.example.com:443/v1/items", new CircuitBreakerRegistry().perRoute(true).key(uri));
+        assertEquals("http://localhost:8080", new CircuitBreakerRegistry().key(URI.create("http://localhost:8080/a")));
+    }
+}
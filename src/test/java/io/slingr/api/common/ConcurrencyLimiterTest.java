@@ -0,0 +1,168 @@
+package io.slingr.api.common;
+
+import org.junit.Test;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.core.Response;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.Assert.*;
+
+public class ConcurrencyLimiterTest {
+    private static final String URI = "https://api.example.com/v1/items";
+
+    private static Json target(ConcurrencyLimiter limiter) {
+        return limiter.toJson().json("targets").json("https://api.example.com");
+    }
+
+    @Test
+    public void notStartedPermitsOnlyReleaseTheSlot() {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter(ConcurrencyLimiter.Algorithm.AIMD).initialLimit(1);
+        final ConcurrencyLimiter.Permit permit = limiter.acquire(URI).join();
+        final CompletableFuture<ConcurrencyLimiter.Permit> waiting = limiter.acquire(URI);
+        assertFalse(waiting.isDone());
+
+        // an overload error of a request that was never sent does not reduce the limit
+        permit.release(new ProcessingException("Connection refused"));
+        assertEquals(1, limiter.getLimit(URI));
+        assertTrue(waiting.isDone());
+        assertEquals(1, (int) target(limiter).integer("inFlight"));
+        assertEquals(0L, (long) target(limiter).long_("dropped"));
+    }
+
+    @Test
+    public void permitsAreReleasedOnce() {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter(ConcurrencyLimiter.Algorithm.AIMD).initialLimit(2);
+        final ConcurrencyLimiter.Permit permit = limiter.acquire(URI).join();
+        limiter.acquire(URI).join();
+        permit.release(null);
+        permit.release(null);
+        assertEquals(1, (int) target(limiter).integer("inFlight"));
+    }
+
+    @Test
+    public void startedPermitsAdjustTheLimit() {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter(ConcurrencyLimiter.Algorithm.AIMD).initialLimit(2);
+        ConcurrencyLimiter.Permit permit = limiter.acquire(URI).join();
+        permit.start();
+        permit.release(null);
+        assertEquals(3, limiter.getLimit(URI));
+
+        permit = limiter.acquire(URI).join();
+        permit.start();
+        permit.release(new ProcessingException("Read timed out"));
+        // 3 * 0.9
+        assertEquals(2, limiter.getLimit(URI));
+        assertEquals(1L, (long) target(limiter).long_("dropped"));
+    }
+
+    @Test
+    public void errorsThatAreNotResponsesDoNotAdjustTheLimit() {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter(ConcurrencyLimiter.Algorithm.AIMD).initialLimit(2);
+        final ConcurrencyLimiter.Permit permit = limiter.acquire(URI).join();
+        permit.start();
+        permit.release(new CancellationException());
+        assertEquals(2, limiter.getLimit(URI));
+        assertEquals(0, (int) target(limiter).integer("inFlight"));
+    }
+
+    @Test
+    public void rejectModeFailsOverTheLimit() {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter(ConcurrencyLimiter.Algorithm.VEGAS)
+                .initialLimit(1)
+                .mode(ConcurrencyLimiter.Mode.REJECT);
+        limiter.acquire(URI).join();
+        try {
+            limiter.acquire(URI).join();
+            fail("Request over the limit was not rejected");
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof ConcurrencyLimitException);
+        }
+        assertEquals(1L, (long) target(limiter).long_("rejected"));
+    }
+
+    @Test
+    public void expiredWaitersDoNotTakeTheSlot() throws Exception {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter(ConcurrencyLimiter.Algorithm.GRADIENT)
+                .initialLimit(1)
+                .maxWait(20);
+        final ConcurrencyLimiter.Permit permit = limiter.acquire(URI).join();
+        try {
+            limiter.acquireAndWait(URI);
+            fail("Request over the max wait was not rejected");
+        } catch (ConcurrencyLimitException e) {
+            // expected
+        }
+        permit.release(null);
+        assertEquals(0, (int) target(limiter).integer("inFlight"));
+        assertEquals(0, (int) target(limiter).integer("waiting"));
+        limiter.acquireAndWait(URI).release(null);
+    }
+
+    @Test
+    public void limitsArePerHost() {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter(ConcurrencyLimiter.Algorithm.AIMD)
+                .initialLimit(1)
+                .mode(ConcurrencyLimiter.Mode.REJECT);
+        limiter.acquire(URI).join();
+        assertFalse(limiter.acquire("https://other.example.com/v1").isCompletedExceptionally());
+        assertTrue(limiter.acquire("https://other.example.com/v1").isCompletedExceptionally());
+    }
+
+    @Test
+    public void callsRejectedByTheCircuitBreakerDoNotTakePermits() throws Exception {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter(ConcurrencyLimiter.Algorithm.AIMD).initialLimit(5);
+        final CircuitBreakerRegistry circuitBreakers = new CircuitBreakerRegistry()
+                .windowSize(2).minimumCalls(2).failureRateThreshold(50).waitInOpenState(60000);
+        final Transport refused = new Transport() {
+            @Override
+            public Response execute(TransportRequest request) {
+                throw new ProcessingException("Connection refused");
+            }
+
+            @Override
+            public CompletableFuture<Response> executeAsync(TransportRequest request) {
+                final CompletableFuture<Response> future = new CompletableFuture<>();
+                future.completeExceptionally(new ProcessingException("Connection refused"));
+                return future;
+            }
+        };
+        final SimpleRestClient client = SimpleRestClient.uri("https://api.example.com").transport(refused)
+                .concurrencyLimiter(limiter).circuitBreakers(circuitBreakers).retries(0);
+        try {
+            for (int i = 0; i < 2; i++) {
+                try {
+                    client.get("/v1/items");
+                    fail("Request did not fail");
+                } catch (RestException e) {
+                    assertFalse(e instanceof CircuitOpenException);
+                }
+            }
+            assertEquals(CircuitBreaker.State.OPEN, circuitBreakers.get(new java.net.URI(URI)).getState());
+            final int limit = limiter.getLimit(URI);
+
+            for (int i = 0; i < 5; i++) {
+                try {
+                    client.get("/v1/items");
+                    fail("Open circuit let a call go through");
+                } catch (CircuitOpenException e) {
+                    // expected
+                }
+                try {
+                    client.getAsync("/v1/items").join();
+                    fail("Open circuit let a call go through");
+                } catch (CompletionException e) {
+                    assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof CircuitOpenException);
+                }
+            }
+            // the rejected calls did not reach the limiter, so they are not samples of the limit
+            assertEquals(limit, limiter.getLimit(URI));
+            assertEquals(2L, (long) target(limiter).long_("requests"));
+            assertEquals(0, (int) target(limiter).integer("inFlight"));
+        } finally {
+            client.close();
+        }
+    }
+}
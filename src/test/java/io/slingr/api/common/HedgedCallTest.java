@@ -0,0 +1,153 @@
+package io.slingr.api.common;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.core.Response;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class HedgedCallTest {
+    private static final long DELAY = 50;
+
+    private final StubTransport transport = new StubTransport();
+    private HedgePolicy policy;
+    private SimpleRestClient client;
+
+    @Before
+    public void setUp() {
+        // the budget allows a hedge for each request
+        policy = HedgePolicy.fixed(DELAY).withBudget(new RetryBudget(1.0, 100));
+        client = SimpleRestClient.uri("http://localhost:1").transport(transport).hedgePolicy(policy).retries(0);
+    }
+
+    @After
+    public void tearDown() {
+        client.close();
+    }
+
+    @Test
+    public void fastResponsesAreNotHedged() throws Exception {
+        final CompletableFuture<Json> result = client.getAsync("/items");
+        transport.awaitCalls(1).complete(response("primary"));
+        assertEquals("primary", result.get(1, TimeUnit.SECONDS).string("from"));
+        Thread.sleep(DELAY * 2);
+        assertEquals(1, transport.calls.size());
+        assertEquals(0L, (long) policy.toJson().long_("hedges"));
+    }
+
+    @Test
+    public void hedgeWinsAndThePrimaryIsCancelled() throws Exception {
+        final long start = System.nanoTime();
+        final CompletableFuture<Json> result = client.getAsync("/items");
+        transport.awaitCalls(2);
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= DELAY - 10);
+
+        transport.calls.get(1).complete(response("hedge"));
+        assertEquals("hedge", result.get(1, TimeUnit.SECONDS).string("from"));
+        assertTrue(transport.calls.get(0).isCancelled());
+        assertEquals(1L, (long) policy.toJson().long_("hedges"));
+        assertEquals(1L, (long) policy.toJson().long_("hedgeWins"));
+    }
+
+    @Test
+    public void responseOfTheLoserIsClosed() throws Exception {
+        transport.cancellable = false;
+        final CompletableFuture<Json> result = client.getAsync("/items");
+        transport.awaitCalls(2);
+        transport.calls.get(0).complete(response("primary"));
+        assertEquals("primary", result.get(1, TimeUnit.SECONDS).string("from"));
+
+        // the transport could not abort the hedge, so its response arrives later
+        final TrackedResponse loser = response("hedge");
+        transport.calls.get(1).complete(loser);
+        assertTrue(loser.closed.get());
+        assertEquals(0L, (long) policy.toJson().long_("hedgeWins"));
+    }
+
+    @Test
+    public void failureWithoutResponseWaitsForTheOtherRequest() throws Exception {
+        final CompletableFuture<Json> result = client.getAsync("/items");
+        transport.awaitCalls(2);
+        transport.calls.get(0).completeExceptionally(new ProcessingException("Connection reset"));
+        assertFalse(result.isDone());
+        transport.calls.get(1).complete(response("hedge"));
+        assertEquals("hedge", result.get(1, TimeUnit.SECONDS).string("from"));
+    }
+
+    @Test
+    public void nonIdempotentMethodsAreNotHedged() throws Exception {
+        final CompletableFuture<Json> result = client.postAsync("/items", Json.map());
+        transport.awaitCalls(1);
+        Thread.sleep(DELAY * 2);
+        assertEquals(1, transport.calls.size());
+        transport.calls.get(0).complete(response("primary"));
+        assertEquals("primary", result.get(1, TimeUnit.SECONDS).string("from"));
+    }
+
+    private static TrackedResponse response(String from) {
+        return new TrackedResponse(Json.map().set("from", from).toString());
+    }
+
+    /**
+     * Response that tells if it was closed
+     */
+    private static class TrackedResponse extends StreamResponse {
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private TrackedResponse(String body) {
+            super(200, Collections.singletonMap("Content-Type", Collections.singletonList("application/json")),
+                    new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+        }
+
+        @Override
+        public void close() {
+            closed.set(true);
+            super.close();
+        }
+    }
+
+    /**
+     * Transport whose responses are completed by the tests
+     */
+    private static class StubTransport implements Transport {
+        private final List<CompletableFuture<Response>> calls = new CopyOnWriteArrayList<>();
+        private volatile boolean cancellable = true;
+
+        @Override
+        public Response execute(TransportRequest request) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompletableFuture<Response> executeAsync(TransportRequest request) {
+            final CompletableFuture<Response> call = cancellable ? new CompletableFuture<>() : new CompletableFuture<Response>() {
+                @Override
+                public boolean cancel(boolean mayInterruptIfRunning) {
+                    return false;
+                }
+            };
+            calls.add(call);
+            return call;
+        }
+
+        private CompletableFuture<Response> awaitCalls(int count) throws InterruptedException {
+            final long deadline = System.currentTimeMillis() + 5000;
+            while (calls.size() < count && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(count, calls.size());
+            return calls.get(count - 1);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package io.slingr.api.common;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static io.slingr.api.common.BenchmarkSupport.report;
+
+/**
+ * Latency of requests to a local stub server where some responses are slow, without hedging and with the
+ * fixed and percentile hedge policies
+ */
+public class HedgingBenchmark {
+    private static final int REQUESTS = 1000;
+    private static final int FAST = 2;
+    private static final int SLOW = 200;
+    // fraction of the responses that are slow
+    private static final double SLOW_RATE = 0.05;
+    private static final byte[] BODY = "{\"id\":\"5f1a2b3c4d5e6f\",\"status\":\"ACTIVE\"}".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void hedging() throws Exception {
+        // without it the server waits for the ack of the headers before sending the body
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        final HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", exchange -> {
+            try {
+                Thread.sleep(ThreadLocalRandom.current().nextDouble() < SLOW_RATE ? SLOW : FAST);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, BODY.length);
+            exchange.getResponseBody().write(BODY);
+            exchange.close();
+        });
+        server.start();
+        try {
+            final String uri = "http://localhost:" + server.getAddress().getPort();
+            report("%d sequential requests, %.0f%% take %d ms and the others %d ms", REQUESTS, SLOW_RATE * 100, SLOW, FAST);
+            report("%-16s %8s %8s %8s %8s %8s", "policy", "p50 ms", "p99 ms", "max ms", "hedges", "wins");
+            run("none", uri, null);
+            run("fixed 20 ms", uri, HedgePolicy.fixed(20).withBudget(new RetryBudget(0.2, 10)));
+            run("p90 5-100 ms", uri, HedgePolicy.percentile(90, 5, 100).withBudget(new RetryBudget(0.2, 10)));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static void run(String name, String uri, HedgePolicy policy) throws Exception {
+        final SimpleRestClient client = SimpleRestClient.uri(uri)
+                .transport(Transport.apacheHttpClient(new RestClientFactory.RestClientOptions()))
+                .silenceLogger();
+        if (policy != null) {
+            client.hedgePolicy(policy);
+        }
+        try {
+            // warm up, that also gives the percentile policy its samples
+            for (int i = 0; i < 200; i++) {
+                client.get("/items");
+            }
+            final double[] times = new double[REQUESTS];
+            for (int i = 0; i < REQUESTS; i++) {
+                final long start = System.nanoTime();
+                client.get("/items");
+                times[i] = (System.nanoTime() - start) / 1000000.0;
+            }
+            Arrays.sort(times);
+            report("%-16s %8.1f %8.1f %8.1f %8s %8s", name, times[REQUESTS / 2], times[REQUESTS * 99 / 100], times[REQUESTS - 1],
+                    policy != null ? policy.toJson().long_("hedges") : "-", policy != null ? policy.toJson().long_("hedgeWins") : "-");
+        } finally {
+            client.close();
+        }
+    }
+}
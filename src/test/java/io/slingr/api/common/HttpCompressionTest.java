@@ -0,0 +1,264 @@
+package io.slingr.api.common;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.ReaderInterceptorContext;
+import javax.ws.rs.ext.WriterInterceptorContext;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+public class HttpCompressionTest {
+
+    private static byte[] body(int records) {
+        final Json json = Json.list();
+        for (int i = 0; i < records; i++) {
+            json.push(Json.map().set("id", "record" + i).set("status", i % 2 == 0 ? "ACTIVE" : "INACTIVE"));
+        }
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (HttpCompression.GzipOutputStream gzip = new HttpCompression.GzipOutputStream(out)) {
+            gzip.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] decode(String encoding, byte[] data) throws IOException {
+        try (InputStream in = HttpCompression.decode(encoding, new ByteArrayInputStream(data))) {
+            return IOUtils.toByteArray(in);
+        }
+    }
+
+    @Test
+    public void gzipRoundTrip() throws IOException {
+        final byte[] data = body(1000);
+        final byte[] compressed = gzip(data);
+        assertTrue(compressed.length < data.length / 4);
+        assertArrayEquals(data, decode("gzip", compressed));
+        assertArrayEquals(data, decode(" X-GZIP ", compressed));
+        // the format is the standard one
+        assertArrayEquals(data, IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(compressed))));
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        }
+        assertArrayEquals(data, decode("gzip", out.toByteArray()));
+    }
+
+    @Test
+    public void concatenatedGzipMembersAreOneBody() throws IOException {
+        final byte[] first = "first part, ".getBytes(StandardCharsets.UTF_8);
+        final byte[] second = "second part".getBytes(StandardCharsets.UTF_8);
+        final ByteArrayOutputStream members = new ByteArrayOutputStream();
+        members.write(gzip(first));
+        members.write(gzip(second));
+        assertEquals("first part, second part", new String(decode("gzip", members.toByteArray()), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void deflateRoundTripWithAndWithoutZlibHeader() throws IOException {
+        final byte[] data = body(1000);
+        final ByteArrayOutputStream zlib = new ByteArrayOutputStream();
+        try (DeflaterOutputStream out = new DeflaterOutputStream(zlib)) {
+            out.write(data);
+        }
+        assertArrayEquals(data, decode("deflate", zlib.toByteArray()));
+
+        final ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try (DeflaterOutputStream out = new DeflaterOutputStream(raw, deflater)) {
+            out.write(data);
+        } finally {
+            deflater.end();
+        }
+        assertArrayEquals(data, decode("deflate", raw.toByteArray()));
+    }
+
+    @Test
+    public void unknownEncodingsAreNotDecoded() throws IOException {
+        assertNull(HttpCompression.decode("br", new ByteArrayInputStream(new byte[0])));
+
+        final byte[] data = "not compressed".getBytes(StandardCharsets.UTF_8);
+        final MultivaluedMap<String, String> headers = new MultivaluedHashMap<>();
+        headers.putSingle(HttpHeaders.CONTENT_ENCODING, "br");
+        final InputStream[] stream = {new ByteArrayInputStream(data)};
+        final ReaderInterceptorContext context = proxy(ReaderInterceptorContext.class, (method, args) -> {
+            switch (method) {
+                case "getHeaders":
+                    return headers;
+                case "getInputStream":
+                    return stream[0];
+                case "setInputStream":
+                    stream[0] = (InputStream) args[0];
+                    return null;
+                case "proceed":
+                    return IOUtils.toByteArray(stream[0]);
+                default:
+                    throw new UnsupportedOperationException(method);
+            }
+        });
+        final HttpCompression compression = new HttpCompression(true, true, 0);
+        assertArrayEquals(data, (byte[]) compression.aroundReadFrom(context));
+        assertEquals("br", headers.getFirst(HttpHeaders.CONTENT_ENCODING));
+
+        // supported encodings are decoded and the header is removed
+        headers.putSingle(HttpHeaders.CONTENT_ENCODING, "gzip");
+        stream[0] = new ByteArrayInputStream(gzip(data));
+        assertArrayEquals(data, (byte[]) compression.aroundReadFrom(context));
+        assertFalse(headers.containsKey(HttpHeaders.CONTENT_ENCODING));
+    }
+
+    @Test
+    public void bodiesBelowTheThresholdAreNotCompressed() {
+        final HttpCompression compression = new HttpCompression(true, true, 100);
+
+        final RequestStub small = new RequestStub(new String(new char[99]));
+        compression.filter(small.context);
+        assertFalse(small.headers.containsKey(HttpHeaders.CONTENT_ENCODING));
+        assertTrue(small.properties.isEmpty());
+        assertEquals(HttpCompression.ACCEPT_ENCODING, small.headers.getFirst(HttpHeaders.ACCEPT_ENCODING));
+
+        final RequestStub big = new RequestStub(new byte[100]);
+        compression.filter(big.context);
+        assertEquals(HttpCompression.GZIP, big.headers.getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertFalse(big.properties.isEmpty());
+
+        // bodies of unknown size are not compressed
+        final RequestStub stream = new RequestStub(new ByteArrayInputStream(new byte[1000]));
+        compression.filter(stream.context);
+        assertFalse(stream.headers.containsKey(HttpHeaders.CONTENT_ENCODING));
+
+        // encodings set by the caller are kept
+        final RequestStub encoded = new RequestStub(new byte[1000]);
+        encoded.headers.putSingle(HttpHeaders.ACCEPT_ENCODING, "identity");
+        encoded.headers.putSingle(HttpHeaders.CONTENT_ENCODING, "br");
+        compression.filter(encoded.context);
+        assertEquals("identity", encoded.headers.getFirst(HttpHeaders.ACCEPT_ENCODING));
+        assertEquals("br", encoded.headers.getFirst(HttpHeaders.CONTENT_ENCODING));
+    }
+
+    @Test
+    public void failedWriteReturnsTheDeflaterWithoutUsingItAgain() throws IOException {
+        final byte[] data = body(1000);
+        final ByteArrayOutputStream failedOut = new ByteArrayOutputStream();
+        final OutputStream[] stream = {failedOut};
+        final WriterInterceptorContext context = proxy(WriterInterceptorContext.class, (method, args) -> {
+            switch (method) {
+                case "getProperty":
+                    return Boolean.TRUE;
+                case "getOutputStream":
+                    return stream[0];
+                case "setOutputStream":
+                    stream[0] = (OutputStream) args[0];
+                    return null;
+                case "proceed":
+                    stream[0].write(data, 0, data.length / 2);
+                    throw new IOException("Connection reset");
+                default:
+                    throw new UnsupportedOperationException(method);
+            }
+        });
+        try {
+            new HttpCompression(true, true, 0).aroundWriteTo(context);
+            fail("Error was not thrown");
+        } catch (IOException e) {
+            assertEquals("Connection reset", e.getMessage());
+        }
+        final OutputStream failed = stream[0];
+        final int failedSize = failedOut.size();
+
+        // the next stream takes the deflater from the pool, and closing the failed one does not touch it
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final HttpCompression.GzipOutputStream gzip = new HttpCompression.GzipOutputStream(out);
+        gzip.write(data, 0, data.length / 2);
+        failed.close();
+        gzip.write(data, data.length / 2, data.length - data.length / 2);
+        gzip.close();
+        assertEquals(failedSize, failedOut.size());
+        assertArrayEquals(data, decode("gzip", out.toByteArray()));
+        try {
+            failed.write(1);
+            fail("Released stream was written");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void corruptBodiesReturnTheInflaterReset() throws IOException {
+        final byte[] data = body(1000);
+        final byte[] corrupt = gzip(data);
+        for (int i = 20; i < corrupt.length - 8; i += 7) {
+            corrupt[i] ^= 0x55;
+        }
+        for (int i = 0; i < 40; i++) {
+            try {
+                decode("gzip", corrupt);
+                fail("Corrupt body was decoded");
+            } catch (IOException e) {
+                // expected
+            }
+        }
+        // more failures than the size of the pool, and then the pooled inflaters still work
+        for (int i = 0; i < 40; i++) {
+            assertArrayEquals(data, decode("gzip", gzip(data)));
+        }
+    }
+
+    private interface Handler {
+        Object handle(String method, Object[] args) throws Exception;
+    }
+
+    private static <T> T proxy(Class<T> type, Handler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> handler.handle(method.getName(), args)));
+    }
+
+    /**
+     * Request with the given entity, that keeps the headers and properties set by the filter
+     */
+    private static class RequestStub {
+        private final MultivaluedMap<String, Object> headers = new MultivaluedHashMap<>();
+        private final Map<String, Object> properties = new HashMap<>();
+        private final ClientRequestContext context;
+
+        private RequestStub(Object entity) {
+            context = proxy(ClientRequestContext.class, (method, args) -> {
+                switch (method) {
+                    case "getHeaders":
+                        return headers;
+                    case "hasEntity":
+                        return true;
+                    case "getEntity":
+                        return entity;
+                    case "setProperty":
+                        properties.put((String) args[0], args[1]);
+                        return null;
+                    default:
+                        throw new UnsupportedOperationException(method);
+                }
+            });
+        }
+    }
+}
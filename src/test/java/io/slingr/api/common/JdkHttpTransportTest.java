@@ -0,0 +1,28 @@
+package io.slingr.api.common;
+
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+
+import static org.junit.Assert.*;
+
+public class JdkHttpTransportTest {
+
+    @Test
+    public void thereIsOneClientForEachConnectTimeout() throws Exception {
+        final Transport transport = Transport.jdkHttpClient(new RestClientFactory.RestClientOptions());
+        // the transport is compiled for Java 11, so its package methods are called by reflection
+        final Method client = transport.getClass().getDeclaredMethod("client", Integer.class);
+        client.setAccessible(true);
+
+        final Object defaultClient = client.invoke(transport, (Integer) null);
+        assertSame(defaultClient, client.invoke(transport, 0));
+        assertSame(defaultClient, client.invoke(transport, 5000));
+
+        final Object fast = client.invoke(transport, 200);
+        assertNotSame(defaultClient, fast);
+        assertSame(fast, client.invoke(transport, 200));
+        final Method connectTimeout = Class.forName("java.net.http.HttpClient").getMethod("connectTimeout");
+        assertEquals("Optional[PT0.2S]", connectTimeout.invoke(fast).toString());
+    }
+}
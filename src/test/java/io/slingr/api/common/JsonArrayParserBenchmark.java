@@ -0,0 +1,39 @@
+package io.slingr.api.common;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static io.slingr.api.common.BenchmarkSupport.measure;
+import static io.slingr.api.common.BenchmarkSupport.report;
+
+/**
+ * Speed of the parallel parser of big arrays against parsing them sequentially with Jackson
+ */
+public class JsonArrayParserBenchmark {
+    private static final int RECORDS = 200000;
+
+    @Test
+    public void parse() throws Exception {
+        final Json records = Json.list();
+        for (int i = 0; i < RECORDS; i++) {
+            records.push(Json.map()
+                    .set("id", "5f1a2b3c4d5e6f" + i)
+                    .set("number", i)
+                    .set("status", i % 3 == 0 ? "ACTIVE" : "INACTIVE")
+                    .set("amount", i * 1.25)
+                    .set("company", Json.map().set("id", "c" + (i % 100)).set("label", "Company " + (i % 100)))
+                    .set("tags", Json.list().push("a").push("b")));
+        }
+        final String text = records.toString();
+        final ObjectMapper mapper = new ObjectMapper();
+        final JsonArrayParser parser = new JsonArrayParser(mapper);
+
+        report("%d records, %.1f MB, %d threads", RECORDS, text.length() / 1024.0 / 1024.0, ForkJoinPool.commonPool().getParallelism());
+        report("%-10s %10.1f ms", "sequential", measure(3, 7, () -> Json.fromList(mapper.readValue(text, List.class))));
+        report("%-10s %10.1f ms", "parallel", measure(3, 7, () -> parser.parse(text)));
+        report("%-10s %10.1f ms", "scan", measure(3, 7, () -> JsonArrayParser.scan(text)));
+    }
+}
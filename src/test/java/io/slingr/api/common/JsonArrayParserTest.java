@@ -0,0 +1,51 @@
+package io.slingr.api.common;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class JsonArrayParserTest {
+    private final JsonArrayParser parser = new JsonArrayParser(new ObjectMapper(), new ForkJoinPool(4));
+
+    @Test
+    public void parsesLikeTheSequentialParser() throws Exception {
+        final StringBuilder array = new StringBuilder(" [\n");
+        for (int i = 0; i < 20000; i++) {
+            if (i > 0) {
+                array.append(", ");
+            }
+            array.append(Json.map()
+                    .set("id", i)
+                    .set("name", "item \"" + i + "\" with, commas ] and [ brackets")
+                    .set("tags", Json.list().push("a").push(Json.map().set("b", "}")))
+                    .toString());
+        }
+        array.append("\n] ");
+        final Json parsed = parser.parse(array.toString());
+        assertNotNull(parsed);
+        assertEquals(20000, parsed.size());
+        assertEquals(Json.fromList(new ObjectMapper().readValue(array.toString(), List.class)).toString(), parsed.toString());
+        assertEquals("item \"19999\" with, commas ] and [ brackets", parsed.jsons().get(19999).string("name"));
+    }
+
+    @Test
+    public void scanFindsTheElements() {
+        assertArrayEquals(new int[]{1, 2, 3, 8, 10, 15}, JsonArrayParser.scan("[1,\"a,]\" ,[1,2]]"));
+        assertArrayEquals(new int[0], JsonArrayParser.scan(" [ ] "));
+    }
+
+    @Test
+    public void malformedArraysAreNotParsed() {
+        assertNull(JsonArrayParser.scan("[1,,2]"));
+        assertNull(JsonArrayParser.scan("[1,2,]"));
+        assertNull(JsonArrayParser.scan("[1,2"));
+        assertNull(JsonArrayParser.scan("[\"a]"));
+        assertNull(JsonArrayParser.scan("[1] x"));
+        assertNull(JsonArrayParser.scan("{\"a\":1}"));
+        assertNull(parser.parse("[1, {\"a\" 1}]"));
+    }
+}
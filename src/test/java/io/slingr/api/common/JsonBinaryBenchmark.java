@@ -0,0 +1,46 @@
+package io.slingr.api.common;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static io.slingr.api.common.BenchmarkSupport.measure;
+import static io.slingr.api.common.BenchmarkSupport.report;
+
+/**
+ * Size and speed of the text, Smile and CBOR encodings of a list of records
+ */
+public class JsonBinaryBenchmark {
+    private static final int RECORDS = 100000;
+
+    private static Json records() {
+        final Json records = Json.list();
+        for (int i = 0; i < RECORDS; i++) {
+            records.push(Json.map()
+                    .set("id", "5f1a2b3c4d5e6f" + i)
+                    .set("number", i)
+                    .set("status", i % 3 == 0 ? "ACTIVE" : "INACTIVE")
+                    .set("amount", i * 1.25)
+                    .set("company", Json.map().set("id", "c" + (i % 100)).set("label", "Company " + (i % 100)))
+                    .set("tags", Json.list().push("a").push("b")));
+        }
+        return records;
+    }
+
+    @Test
+    public void encodings() throws Exception {
+        final Json records = records();
+        final String text = records.toString();
+        final byte[] smile = records.toSmile();
+        final byte[] cbor = records.toCbor();
+
+        report("%d records", RECORDS);
+        report("%-6s %10s %10s %10s", "format", "bytes", "encode ms", "decode ms");
+        report("%-6s %10d %10.1f %10.1f", "text", text.getBytes(StandardCharsets.UTF_8).length,
+                measure(3, 7, records::toString), measure(3, 7, () -> Json.parse(text)));
+        report("%-6s %10d %10.1f %10.1f", "smile", smile.length,
+                measure(3, 7, records::toSmile), measure(3, 7, () -> Json.fromSmile(smile)));
+        report("%-6s %10d %10.1f %10.1f", "cbor", cbor.length,
+                measure(3, 7, records::toCbor), measure(3, 7, () -> Json.fromCbor(cbor)));
+    }
+}
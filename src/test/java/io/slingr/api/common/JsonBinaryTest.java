@@ -0,0 +1,129 @@
+package io.slingr.api.common;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.function.Function;
+
+import static org.junit.Assert.*;
+
+public class JsonBinaryTest {
+
+    private static Json sample() {
+        return Json.map()
+                .set("name", "Acme")
+                .set("active", true)
+                .set("count", 42)
+                .set("big", 12345678901234L)
+                .set("ratio", 0.25)
+                .set("nothing", null)
+                .set("address", Json.map()
+                        .set("street", "Main")
+                        .set("geo", Json.map().set("lat", -34.6).set("lng", -58.4)))
+                .set("tags", Json.list().push("a").push("b"))
+                .set("matrix", Json.list()
+                        .push(Json.list().push(1).push(2))
+                        .push(Json.list().push(Json.map().set("deep", "value"))));
+    }
+
+    private static void assertRoundTrip(Function<Json, byte[]> encode, Function<byte[], Json> decode) {
+        final Json json = sample();
+        final Json decoded = decode.apply(encode.apply(json));
+        assertEquals(json.toString(), decoded.toString());
+        assertTrue(decoded.isMap());
+        assertEquals("value", decoded.json("matrix").objects().size() == 2
+                ? ((Json) ((Json) decoded.json("matrix").objects().get(1)).objects().get(0)).string("deep") : null);
+        assertTrue(decoded.contains("nothing"));
+        assertNull(decoded.object("nothing"));
+    }
+
+    @Test
+    public void smileRoundTrip() {
+        assertRoundTrip(Json::toSmile, Json::fromSmile);
+    }
+
+    @Test
+    public void cborRoundTrip() {
+        assertRoundTrip(Json::toCbor, Json::fromCbor);
+    }
+
+    @Test
+    public void smileFromStream() throws Exception {
+        final Json json = sample();
+        assertEquals(json.toString(), Json.fromSmile(new ByteArrayInputStream(json.toSmile())).toString());
+    }
+
+    @Test
+    public void listsAtTheRoot() {
+        final Json list = Json.list().push(Json.map().set("id", 1)).push(Json.map().set("id", 2));
+        assertEquals(list.toString(), Json.fromSmile(list.toSmile()).toString());
+        assertEquals(list.toString(), Json.fromCbor(list.toCbor()).toString());
+        assertTrue(Json.fromSmile(list.toSmile()).isList());
+    }
+
+    @Test
+    public void nullsInsideListsAreSkippedLikeText() {
+        final Json json = Json.map().set("values", Json.fromList(Arrays.asList("a", null, "b")));
+        final Json text = Json.parse(json.toString());
+        assertEquals(2, text.json("values").objects().size());
+        assertEquals(text.toString(), Json.fromSmile(json.toSmile()).toString());
+        assertEquals(text.toString(), Json.fromCbor(json.toCbor()).toString());
+    }
+
+    @Test
+    public void datesAreTimestamps() {
+        final Date date = new Date(1500000000123L);
+        final Json json = Json.map().set("created", date);
+        final Json text = Json.parse(json.toString());
+        for (Json decoded : new Json[]{Json.fromSmile(json.toSmile()), Json.fromCbor(json.toCbor())}) {
+            assertEquals(date.getTime(), ((Number) decoded.object("created")).longValue());
+            assertEquals(text.toString(), decoded.toString());
+        }
+    }
+
+    @Test
+    public void bigNumbersKeepTheirPrecision() {
+        final BigDecimal decimal = new BigDecimal("12345678901234567890.123456789012345678901");
+        final BigInteger integer = new BigInteger("123456789012345678901234567890");
+        final Json json = Json.map().set("decimal", decimal).set("integer", integer);
+        for (Json decoded : new Json[]{Json.fromSmile(json.toSmile()), Json.fromCbor(json.toCbor())}) {
+            assertEquals(0, decimal.compareTo(new BigDecimal(decoded.object("decimal").toString())));
+            assertEquals(integer, new BigInteger(decoded.object("integer").toString()));
+        }
+    }
+
+    @Test
+    public void repeatedNamesAndValuesAreShared() {
+        final Json records = Json.list();
+        for (int i = 0; i < 500; i++) {
+            records.push(Json.map()
+                    .set("identifier", i)
+                    .set("status", i % 2 == 0 ? "ACTIVE" : "INACTIVE")
+                    .set("country", "Argentina")
+                    .set("company", Json.map().set("label", "Acme Corporation")));
+        }
+        final byte[] smile = records.toSmile();
+        final Json decoded = Json.fromSmile(smile);
+        assertEquals(records.toString(), decoded.toString());
+        assertEquals(500, decoded.objects().size());
+        // names and short values are written once and referenced after that
+        assertTrue(smile.length < records.toString().length() / 3);
+        assertEquals(records.toString(), Json.fromCbor(records.toCbor()).toString());
+    }
+
+    @Test
+    public void emptyContentIsAnEmptyMap() {
+        assertTrue(Json.fromSmile(new byte[0]).isEmpty());
+        assertTrue(Json.fromCbor(new byte[0]).isEmpty());
+        assertEquals("{}", Json.fromSmile(Json.map().toSmile()).toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidContentFails() {
+        Json.fromSmile(new byte[]{1, 2, 3});
+    }
+}
@@ -0,0 +1,123 @@
+package io.slingr.api.common;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class JsonIndexTest {
+
+    private static Json record(String id, String code) {
+        return Json.map().set("id", id).set("code", code);
+    }
+
+    @Test
+    public void pushIsTrackedByAllIndexes() {
+        final Json records = Json.list().push(record("1", "a"));
+        final JsonIndex byId = JsonIndex.unique(records, "id");
+        final JsonIndex byCode = JsonIndex.multi(records, "code");
+        records.push(record("2", "a"));
+        assertEquals("2", byId.get("2").string("id"));
+        assertEquals(2, byCode.getAll("a").size());
+        records.remove(0);
+        assertNull(byId.get("1"));
+        assertEquals(1, byCode.getAll("a").size());
+    }
+
+    @Test
+    public void failedPushLeavesNoEntries() {
+        final Json records = Json.list().push(record("1", "a"));
+        final JsonIndex byCode = JsonIndex.multi(records, "code");
+        final JsonIndex byId = JsonIndex.unique(records, "id");
+        try {
+            records.push(record("1", "b"));
+            fail("Duplicated key was accepted");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertEquals(1, records.size());
+        assertFalse(byCode.containsKey("b"));
+        assertEquals(1, byId.size());
+    }
+
+    @Test
+    public void failedPushAllLeavesListAndIndexesUntouched() {
+        final Json records = Json.list().push(record("1", "a"));
+        final JsonIndex byCode = JsonIndex.multi(records, "code");
+        final JsonIndex byId = JsonIndex.unique(records, "id");
+        try {
+            records.pushAll(Json.list().push(record("2", "b")).push(record("3", "c")).push(record("1", "d")));
+            fail("Duplicated key was accepted");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertEquals(1, records.size());
+        assertEquals(1, byId.size());
+        assertNull(byId.get("2"));
+        assertFalse(byCode.containsKey("b"));
+        assertFalse(byCode.containsKey("c"));
+        assertFalse(byCode.containsKey("d"));
+
+        records.pushAll(Json.list().push(record("2", "b")).push(record("3", "b")));
+        assertEquals(3, records.size());
+        assertEquals(2, byCode.getAll("b").size());
+    }
+
+    @Test
+    public void setByPathOnElementsIsTracked() {
+        final Json root = Json.map().set("items", Json.list().push(record("1", "a")).push(record("2", "b")));
+        final Json records = root.json("items");
+        final JsonIndex byId = JsonIndex.unique(records, "id");
+
+        root.setByPath("items[0]", record("3", "c"));
+        assertNull(byId.get("1"));
+        assertEquals("c", byId.get("3").string("code"));
+
+        root.setByPath("items[1]", record("4", "d"), Json.map().set("shiftElements", true));
+        assertEquals(3, records.size());
+        assertEquals("d", byId.get("4").string("code"));
+
+        root.removeByPath("items[0]");
+        assertNull(byId.get("3"));
+        assertEquals(2, byId.size());
+    }
+
+    @Test
+    public void failedSetByPathKeepsThePreviousElement() {
+        final Json root = Json.map().set("items", Json.list().push(record("1", "a")).push(record("2", "b")));
+        final Json records = root.json("items");
+        final JsonIndex byId = JsonIndex.unique(records, "id");
+        try {
+            root.setByPath("items[0]", record("2", "c"));
+            fail("Duplicated key was accepted");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertEquals("a", records.jsons().get(0).string("code"));
+        assertEquals("a", byId.get("1").string("code"));
+        try {
+            root.setByPath("items[0]", record("2", "c"), Json.map().set("shiftElements", true));
+            fail("Duplicated key was accepted");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertEquals(2, records.size());
+        assertEquals("b", byId.get("2").string("code"));
+    }
+
+    @Test
+    public void failedRebuildKeepsThePreviousEntries() {
+        final Json records = Json.list().push(record("1", "a")).push(record("2", "b"));
+        final JsonIndex byId = JsonIndex.unique(records, "id");
+        // changes on the fields of the elements are not tracked
+        records.jsons().get(1).set("id", "1");
+        try {
+            byId.rebuild();
+            fail("Duplicated key was accepted");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertEquals(2, byId.size());
+        assertEquals("a", byId.get("1").string("code"));
+        assertEquals("b", byId.get("2").string("code"));
+    }
+}
@@ -0,0 +1,138 @@
+package io.slingr.api.common;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class JsonJoinTest {
+
+    private static Json customer(String id, String name) {
+        return Json.map().set("id", id).set("name", name);
+    }
+
+    private static Json order(String number, String customerId) {
+        return Json.map().set("number", number).set("customer", Json.map().set("id", customerId).set("label", "Customer " + customerId));
+    }
+
+    // orders without customer, with one customer and with a customer that has two records
+    private static Json orders() {
+        return Json.list().push(order("1", "none")).push(order("2", "c1")).push(order("3", "c2"));
+    }
+
+    private static Json customers() {
+        return Json.list().push(customer("c1", "Acme")).push(customer("c2", "Globex")).push(customer("c2", "Globex Europe"));
+    }
+
+    private static List<String> values(Json records, String path) {
+        final List<String> values = new ArrayList<>();
+        for (Json record : records.jsons()) {
+            values.add(record.string(path));
+        }
+        return values;
+    }
+
+    @Test
+    public void innerJoinReturnsOneRecordForEachMatch() {
+        final Json result = JsonJoin.of(orders(), "customer", customers(), "id").execute();
+        assertEquals(Arrays.asList("2", "3", "3"), values(result, "number"));
+        assertEquals(Arrays.asList("Acme", "Globex", "Globex Europe"), values(result, "name"));
+        // fields of the left record are kept
+        assertEquals("Customer c1", result.jsons().get(0).json("customer").string("label"));
+    }
+
+    @Test
+    public void leftJoinKeepsRecordsWithoutMatches() {
+        final Json result = JsonJoin.of(orders(), "customer", customers(), "id").type(JsonJoin.Type.LEFT).execute();
+        assertEquals(Arrays.asList("1", "2", "3", "3"), values(result, "number"));
+        assertEquals(Arrays.asList(null, "Acme", "Globex", "Globex Europe"), values(result, "name"));
+    }
+
+    @Test
+    public void semiJoinReturnsEachMatchingRecordOnce() {
+        final Json result = JsonJoin.of(orders(), "customer", customers(), "id").type(JsonJoin.Type.SEMI).execute();
+        assertEquals(Arrays.asList("2", "3"), values(result, "number"));
+        assertFalse(result.jsons().get(0).contains("name"));
+    }
+
+    @Test
+    public void antiJoinReturnsRecordsWithoutMatches() {
+        final Json result = JsonJoin.of(orders(), "customer", customers(), "id").type(JsonJoin.Type.ANTI).execute();
+        assertEquals(Arrays.asList("1"), values(result, "number"));
+    }
+
+    @Test
+    public void embedReplacesTheRelationshipField() {
+        final Json orders = orders();
+        final Json result = JsonJoin.of(orders, "customer", customers(), "id").embed().execute();
+        assertEquals("Acme", result.jsons().get(0).json("customer").string("name"));
+        assertFalse(result.jsons().get(0).contains("name"));
+        // the left records are not modified
+        assertEquals("Customer c1", orders.jsons().get(1).json("customer").string("label"));
+        assertFalse(orders.jsons().get(1).json("customer").contains("name"));
+    }
+
+    @Test
+    public void embedWithIdPathReplacesTheParentField() {
+        final Json orders = orders();
+        final Json result = JsonJoin.of(orders, "customer.id", customers(), "id").embed().execute();
+        assertEquals("Acme", result.jsons().get(0).json("customer").string("name"));
+        assertEquals("Globex Europe", result.jsons().get(2).json("customer").string("name"));
+        assertFalse(orders.jsons().get(1).json("customer").contains("name"));
+    }
+
+    @Test
+    public void prefixCopiesAllTheFieldsOfTheRightRecord() {
+        final Json result = JsonJoin.of(orders(), "customer", customers(), "id").prefix("customer_").execute();
+        final Json first = result.jsons().get(0);
+        assertEquals("c1", first.string("customer_id"));
+        assertEquals("Acme", first.string("customer_name"));
+        assertFalse(first.contains("name"));
+    }
+
+    @Test
+    public void plainValuesAndRelationshipsJoinTheSameWay() {
+        final Json orders = Json.list()
+                .push(Json.map().set("number", "1").set("customer", Json.map().set("id", "c1").set("label", "Acme")))
+                .push(Json.map().set("number", "2").set("customer", "c1"));
+        final Json result = JsonJoin.of(orders, "customer", customers(), "id").execute();
+        assertEquals(Arrays.asList("Acme", "Acme"), values(result, "name"));
+    }
+
+    @Test
+    public void indexOfTheRightListIsReused() {
+        final Json customers = customers();
+        JsonIndex.multi(customers, "id");
+        // changes on the fields are not tracked by the index, so the join still finds the record by the old id
+        customers.jsons().get(0).set("id", "c9");
+        final Json result = JsonJoin.of(orders(), "customer", customers, "id").execute();
+        assertEquals("Acme", result.jsons().get(0).string("name"));
+    }
+
+    @Test
+    public void rowsGiveTheSameResultThanExecute() {
+        for (JsonJoin.Type type : JsonJoin.Type.values()) {
+            final JsonJoin join = JsonJoin.of(orders(), "customer", customers(), "id").type(type);
+            final Json merged = Json.list();
+            for (JsonJoin.Row row : join.rows()) {
+                merged.push(row.merged());
+            }
+            assertEquals(type.name(), join.execute().toString(), merged.toString());
+        }
+    }
+
+    @Test
+    public void rightPathIsValidated() {
+        for (String path : new String[]{null, " ", "items[0].id"}) {
+            try {
+                JsonJoin.of(orders(), "customer", customers(), path);
+                fail("Invalid path was accepted: " + path);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package io.slingr.api.common;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class JsonMemoryStatsTest {
+
+    @Test
+    public void estimateGrowsWithTheContent() {
+        final Json json = Json.map();
+        long previous = json.estimateRetainedBytes();
+        assertTrue(previous > 0);
+        for (int i = 0; i < 20; i++) {
+            json.set("field" + i, "value " + i);
+            final long bytes = json.estimateRetainedBytes();
+            assertTrue(bytes > previous);
+            previous = bytes;
+        }
+        json.set("nested", Json.map().set("text", "a longer value than the others"));
+        assertTrue(json.estimateRetainedBytes() > previous);
+        previous = json.estimateRetainedBytes();
+        json.set("items", Json.list().push("a").push("b"));
+        assertTrue(json.estimateRetainedBytes() > previous);
+    }
+
+    @Test
+    public void sharedSubtreesAreCountedOnce() {
+        final Json child = Json.map();
+        for (int i = 0; i < 50; i++) {
+            child.set("field" + i, "value " + i);
+        }
+        final long childBytes = child.estimateRetainedBytes();
+
+        final Json once = Json.map().set("a", child);
+        final Json twice = Json.map().set("a", child).set("b", child);
+        final long onceBytes = once.estimateRetainedBytes();
+        assertTrue(onceBytes > childBytes);
+        // the second reference only adds the entry of the map
+        assertTrue(twice.estimateRetainedBytes() - onceBytes < childBytes / 10);
+    }
+
+    @Test
+    public void duplicatedStringsAreReported() {
+        final Json records = Json.list();
+        for (int i = 0; i < 5; i++) {
+            // new instances with the same content, like the ones created by the parser
+            records.push(Json.map().set("status", new String("ACTIVE")).set("number", "n" + i));
+        }
+        records.push(Json.map().set("status", "unique"));
+
+        final JsonMemoryStats stats = records.memoryStats();
+        assertEquals(1, stats.getDuplicatedStrings().size());
+        final JsonMemoryStats.DuplicatedString duplicated = stats.getDuplicatedStrings().get(0);
+        assertEquals("ACTIVE", duplicated.getValue());
+        assertEquals(5, duplicated.getInstances());
+        assertTrue(duplicated.getWastedBytes() > 0);
+        assertEquals(duplicated.getWastedBytes(), stats.getDuplicatedStringsBytes());
+
+        assertEquals(6, stats.getMaps());
+        assertEquals(1, stats.getLists());
+        assertEquals(stats.getTotalBytes(), records.estimateRetainedBytes());
+    }
+
+    @Test
+    public void sameInstancesAreNotDuplicates() {
+        final String status = new String("ACTIVE");
+        final Json records = Json.list();
+        for (int i = 0; i < 5; i++) {
+            records.push(Json.map().set("status", status));
+        }
+        assertTrue(records.memoryStats().getDuplicatedStrings().isEmpty());
+    }
+}
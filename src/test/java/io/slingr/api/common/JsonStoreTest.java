@@ -0,0 +1,200 @@
+package io.slingr.api.common;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class JsonStoreTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static Json record(String id, int version) {
+        return Json.map().set("id", id).set("version", version).set("check", "v" + version);
+    }
+
+    @Test
+    public void putGetAndRemovePastTheResizeThreshold() {
+        try (JsonStore store = JsonStore.offHeap(4096)) {
+            // the index starts with 64 slots, so this resizes it several times
+            for (int i = 0; i < 1000; i++) {
+                store.put(record("r" + i, i));
+            }
+            assertEquals(1000, store.size());
+            for (int i = 0; i < 1000; i++) {
+                assertEquals(i, (int) store.json("r" + i).integer("version"));
+            }
+            for (int i = 0; i < 1000; i += 2) {
+                assertTrue(store.remove("r" + i));
+            }
+            assertFalse(store.remove("r0"));
+            assertEquals(500, store.size());
+            for (int i = 0; i < 1000; i++) {
+                assertEquals(i % 2 == 1, store.contains("r" + i));
+            }
+            assertNull(store.get("r0"));
+            assertNull(store.get("missing"));
+        }
+    }
+
+    @Test
+    public void removedSlotsAreReused() {
+        try (JsonStore store = JsonStore.offHeap(4096)) {
+            for (int round = 0; round < 20; round++) {
+                for (int i = 0; i < 30; i++) {
+                    store.put(record("r" + i, round));
+                }
+                for (int i = 0; i < 30; i += 3) {
+                    store.remove("r" + i);
+                }
+            }
+            assertEquals(20, store.size());
+            // ids inserted again in removed slots are found once, with their last version
+            final Set<String> ids = new HashSet<>();
+            store.forEach(view -> {
+                assertTrue(ids.add(view.getId()));
+                assertEquals(19, (int) view.json().integer("version"));
+            });
+            assertEquals(20, ids.size());
+
+            store.put(record("r0", 100));
+            store.put(record("r0", 101));
+            assertEquals(21, store.size());
+            assertEquals(101, (int) store.json("r0").integer("version"));
+        }
+    }
+
+    @Test
+    public void compactionKeepsLiveRecords() {
+        try (JsonStore store = JsonStore.offHeap(4096)) {
+            for (int version = 0; version < 5; version++) {
+                for (int i = 0; i < 100; i++) {
+                    store.put(record("r" + i, version));
+                }
+            }
+            for (int i = 0; i < 100; i += 4) {
+                store.remove("r" + i);
+            }
+            final long usedBefore = store.getUsedBytes();
+            assertTrue(store.getDeadBytes() > 0);
+
+            store.compact();
+            assertEquals(0, store.getDeadBytes());
+            assertTrue(store.getUsedBytes() < usedBefore / 4);
+            assertEquals(75, store.size());
+            for (int i = 0; i < 100; i++) {
+                final Json json = store.json("r" + i);
+                if (i % 4 == 0) {
+                    assertNull(json);
+                } else {
+                    assertEquals(4, (int) json.integer("version"));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void mappedStoreDeletesItsFiles() throws Exception {
+        final File directory = folder.newFolder();
+        final JsonStore store = JsonStore.mapped(directory, 4096);
+        for (int i = 0; i < 200; i++) {
+            store.put(record("r" + i, i));
+        }
+        final int files = directory.list().length;
+        assertTrue(files > 1);
+        for (int i = 0; i < 200; i++) {
+            store.put(record("r" + i, i + 1));
+        }
+        store.compact();
+        assertEquals(files, directory.list().length);
+        assertEquals(200, (int) store.json("r199").integer("version"));
+        store.close();
+        assertEquals(0, directory.list().length);
+    }
+
+    @Test
+    public void viewsAreNotAffectedByLaterWrites() {
+        try (JsonStore store = JsonStore.offHeap(4096)) {
+            store.put(record("a", 1));
+            final JsonStore.Record view = store.get("a");
+            store.put(record("a", 2));
+            store.remove("a");
+            assertEquals(1, (int) view.json().integer("version"));
+        }
+    }
+
+    @Test
+    public void viewsCanBeReadAfterCompactAndClose() throws Exception {
+        final JsonStore store = JsonStore.mapped(folder.newFolder(), 4096);
+        for (int i = 0; i < 100; i++) {
+            store.put(record("r" + i, i));
+        }
+        final JsonStore.Record beforeCompact = store.get("r1");
+        store.put(record("r1", 1000));
+        store.compact();
+        // the view was not decoded yet, so it reads the segment that was retired
+        assertEquals(1, (int) beforeCompact.json().integer("version"));
+
+        final JsonStore.Record beforeClose = store.get("r2");
+        store.close();
+        assertEquals("v2", beforeClose.json().string("check"));
+        assertEquals(beforeClose.getEncodedSize(), beforeClose.toSmile().length);
+        try {
+            store.get("r2");
+            fail("Closed store was used");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void readersSeeCompleteVersionsDuringWrites() throws Exception {
+        try (JsonStore store = JsonStore.offHeap(64 * 1024)) {
+            for (int i = 0; i < 100; i++) {
+                store.put(record("r" + i, 0));
+            }
+            final AtomicBoolean done = new AtomicBoolean();
+            final List<Throwable> errors = new CopyOnWriteArrayList<>();
+            final CountDownLatch readers = new CountDownLatch(4);
+            for (int t = 0; t < 4; t++) {
+                new Thread(() -> {
+                    try {
+                        while (!done.get()) {
+                            for (int i = 0; i < 100; i++) {
+                                final Json json = store.json("r" + i);
+                                assertNotNull(json);
+                                assertEquals("v" + json.integer("version"), json.string("check"));
+                            }
+                        }
+                    } catch (Throwable e) {
+                        errors.add(e);
+                    } finally {
+                        readers.countDown();
+                    }
+                }).start();
+            }
+            for (int version = 1; version <= 50; version++) {
+                for (int i = 0; i < 100; i++) {
+                    store.put(record("r" + i, version));
+                }
+                if (version % 10 == 0) {
+                    store.compact();
+                }
+            }
+            done.set(true);
+            assertTrue(readers.await(10, TimeUnit.SECONDS));
+            assertTrue(errors.toString(), errors.isEmpty());
+            assertEquals(50, (int) store.json("r99").integer("version"));
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package io.slingr.api.common;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void smallValuesAreExact() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 64; i++) {
+            histogram.record(i);
+        }
+        assertEquals(64, histogram.getCount());
+        assertEquals(0, histogram.getMin());
+        assertEquals(63, histogram.getMax());
+        assertEquals(31.5, histogram.getMean(), 0.001);
+        assertEquals(0, histogram.getValueAtPercentile(0));
+        assertEquals(31, histogram.getValueAtPercentile(50));
+        assertEquals(57, histogram.getValueAtPercentile(90));
+        assertEquals(63, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void percentilesAreWithinTheErrorOfTheBuckets() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100000; i++) {
+            histogram.record(i);
+        }
+        assertEquals(1, histogram.getMin());
+        assertEquals(100000, histogram.getMax());
+        assertEquals(50000.5, histogram.getMean(), 0.001);
+        for (double percentile : new double[]{1, 10, 25, 50, 75, 90, 99, 99.9, 100}) {
+            final double expected = percentile * 1000;
+            final long value = histogram.getValueAtPercentile(percentile);
+            assertEquals("p" + percentile, expected, value, expected * 0.032);
+        }
+    }
+
+    @Test
+    public void percentilesAreLimitedToTheRecordedValues() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        // both values are in the same bucket, whose middle is bigger than them, so the max is returned
+        histogram.record(1000000);
+        histogram.record(1000001);
+        assertEquals(1000001, histogram.getValueAtPercentile(0));
+        assertEquals(1000001, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void valuesOutOfTheRangeAreClamped() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(2, histogram.getCount());
+        assertEquals(0, histogram.getMin());
+        assertEquals((1L << 36) - 1, histogram.getMax());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        assertEquals((1L << 36) - 1, histogram.getValueAtPercentile(100), ((1L << 36) - 1) * 0.032);
+    }
+
+    @Test
+    public void nanosAreRecordedAsMicros() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordNanos(1999);
+        assertEquals(1, histogram.getMax());
+    }
+
+    @Test
+    public void bucketsCoverAllTheValues() {
+        for (long value = 0; value < 1 << 20; value++) {
+            final int index = LatencyHistogram.index(value);
+            assertTrue(value + " in " + index, LatencyHistogram.lowestValue(index) <= value && value <= LatencyHistogram.highestValue(index));
+        }
+        final int last = LatencyHistogram.index((1L << 36) - 1);
+        assertEquals((1L << 36) - 1, LatencyHistogram.highestValue(last));
+    }
+
+    @Test
+    public void resetClearsTheValues() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(100);
+        histogram.record(200);
+        final Json snapshot = histogram.toJson();
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMin());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getMean(), 0);
+        assertEquals(0, histogram.getValueAtPercentile(99));
+        // snapshots are not changed by the reset
+        assertEquals(2L, (long) snapshot.long_("count"));
+        assertEquals(0.1, snapshot.decimal("min"), 0);
+        assertEquals(0.2, snapshot.decimal("max"), 0);
+
+        histogram.record(300);
+        assertEquals(300, histogram.getMin());
+        assertEquals(300, histogram.getValueAtPercentile(50));
+    }
+
+    @Test
+    public void snapshotIsInMilliseconds() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        final Json snapshot = histogram.toJson();
+        assertEquals(1000L, (long) snapshot.long_("count"));
+        assertEquals(1.0, snapshot.decimal("min"), 0);
+        assertEquals(500.5, snapshot.decimal("mean"), 0.001);
+        assertEquals(500, snapshot.decimal("p50"), 500 * 0.032);
+        assertEquals(990, snapshot.decimal("p99"), 990 * 0.032);
+        assertEquals(1000.0, snapshot.decimal("max"), 0);
+    }
+
+    @Test
+    public void invalidPercentiles() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (double percentile : new double[]{-1, 100.1}) {
+            try {
+                histogram.getValueAtPercentile(percentile);
+                fail("The percentile was accepted: " + percentile);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package io.slingr.api.common;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RateLimiterTest {
+    private static final String URI = "https://api.example.com/v1/items";
+
+    @Test
+    public void burstGoesWithoutWaiting() throws Exception {
+        final RateLimiter rateLimiter = new RateLimiter(10, 3);
+        assertEquals(0, rateLimiter.acquire(URI));
+        assertEquals(0, rateLimiter.acquire(URI));
+        assertEquals(0, rateLimiter.acquire(URI));
+        // after the burst requests are spaced by the interval of the rate, 100 ms
+        final long wait = rateLimiter.acquire(URI);
+        assertTrue(String.valueOf(wait), wait >= 50 && wait <= 100);
+        final long next = rateLimiter.acquire(URI);
+        assertTrue(String.valueOf(next), next >= 150 && next <= 200);
+        assertEquals(5L, (long) rateLimiter.toJson().json("buckets").json("https://api.example.com").long_("requests"));
+        assertEquals(2L, (long) rateLimiter.toJson().json("buckets").json("https://api.example.com").long_("delayed"));
+    }
+
+    @Test
+    public void rejectModeFailsInsteadOfWaiting() throws Exception {
+        final RateLimiter rateLimiter = new RateLimiter(10, 1).mode(RateLimiter.Mode.REJECT);
+        assertEquals(0, rateLimiter.acquire(URI));
+        try {
+            rateLimiter.acquire(URI);
+            fail("Request over the limit was not rejected");
+        } catch (RateLimitedException e) {
+            assertTrue(String.valueOf(e.getRetryAfter()), e.getRetryAfter() >= 50 && e.getRetryAfter() <= 101);
+        }
+        // rejected requests do not take the slot
+        assertEquals(1L, (long) rateLimiter.toJson().json("buckets").json("https://api.example.com").long_("requests"));
+        assertEquals(1L, (long) rateLimiter.toJson().json("buckets").json("https://api.example.com").long_("rejected"));
+    }
+
+    @Test
+    public void queueModeRejectsOverTheMaxWait() throws Exception {
+        final RateLimiter rateLimiter = new RateLimiter(10, 1).maxWait(50);
+        assertEquals(0, rateLimiter.acquire(URI));
+        try {
+            rateLimiter.acquire(URI);
+            fail("Request over the max wait was not rejected");
+        } catch (RateLimitedException e) {
+            // expected
+        }
+        rateLimiter.maxWait(200);
+        final long wait = rateLimiter.acquire(URI);
+        assertTrue(String.valueOf(wait), wait >= 50 && wait <= 100);
+    }
+
+    @Test
+    public void throttlingPausesAndHalvesTheRate() throws Exception {
+        final RateLimiter rateLimiter = new RateLimiter(10, 3);
+        rateLimiter.onThrottled(URI, 1000);
+        // the first request waits for the pause and the next ones follow at 5 per second
+        final long first = rateLimiter.acquire(URI);
+        assertTrue(String.valueOf(first), first >= 950 && first <= 1000);
+        final long second = rateLimiter.acquire(URI);
+        assertTrue(String.valueOf(second), second >= 1150 && second <= 1200);
+        assertEquals(5.0, rateLimiter.toJson().json("buckets").json("https://api.example.com").decimal("rate"), 0.001);
+    }
+
+    @Test
+    public void successesRecoverTheRate() {
+        final RateLimiter rateLimiter = new RateLimiter(10, 3);
+        rateLimiter.onThrottled(URI, -1);
+        rateLimiter.onThrottled(URI, -1);
+        assertEquals(2.5, rateLimiter.toJson().json("buckets").json("https://api.example.com").decimal("rate"), 0.001);
+        for (int i = 0; i < 10; i++) {
+            rateLimiter.onSuccess(URI);
+        }
+        assertEquals(3.5, rateLimiter.toJson().json("buckets").json("https://api.example.com").decimal("rate"), 0.001);
+        for (int i = 0; i < 1000; i++) {
+            rateLimiter.onSuccess(URI);
+        }
+        assertEquals(10.0, rateLimiter.toJson().json("buckets").json("https://api.example.com").decimal("rate"), 0.001);
+    }
+
+    @Test
+    public void bucketsArePerHost() throws Exception {
+        final RateLimiter rateLimiter = new RateLimiter(10, 1);
+        assertEquals(0, rateLimiter.acquire(URI));
+        assertEquals(0, rateLimiter.acquire("https://other.example.com/v1/items"));
+        assertTrue(rateLimiter.acquire(URI + "/1") > 0);
+
+        final RateLimiter shared = new RateLimiter(10, 1).perHost(false);
+        assertEquals(0, shared.acquire(URI));
+        assertTrue(shared.acquire("https://other.example.com/v1/items") > 0);
+    }
+
+    @Test
+    public void hostsAreParsedWithoutTheURIClass() {
+        assertEquals("https://api.example.com:8443", RateLimiter.host("https://api.example.com:8443/v1?x=1"));
+        assertEquals("http://localhost", RateLimiter.host("http://localhost"));
+    }
+}
@@ -0,0 +1,183 @@
+package io.slingr.api.common;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class RequestCoalescerTest {
+    private static final String URI = "https://api.example.com/data/companies";
+
+    @Test
+    public void keysHaveToken() {
+        final RequestCoalescer coalescer = new RequestCoalescer();
+        final String a = coalescer.key(RestMethod.GET, URI, Collections.singletonMap("token", "a"));
+        final String b = coalescer.key(RestMethod.GET, URI, Collections.singletonMap("token", "b"));
+        assertNotEquals(a, b);
+        assertEquals(a, coalescer.key(RestMethod.GET, URI, Collections.singletonMap("TOKEN", "a")));
+    }
+
+    @Test
+    public void followersShareTheResponse() throws Exception {
+        final RequestCoalescer coalescer = new RequestCoalescer();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<Json> leader = executor.submit(() -> coalescer.execute("key", () -> {
+                started.countDown();
+                release.await();
+                return Json.map().set("id", 1);
+            }, 0));
+            started.await();
+            final Future<Json> follower = executor.submit(() -> coalescer.execute("key", () -> Json.map().set("id", 2), 0));
+            waitForCoalesced(coalescer, 1);
+            release.countDown();
+
+            assertEquals(1, (int) leader.get(5, TimeUnit.SECONDS).integer("id"));
+            assertEquals(1, (int) follower.get(5, TimeUnit.SECONDS).integer("id"));
+            assertEquals(0, coalescer.getInFlight());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void changesOfTheLeaderAreNotSeenByTheFollowers() throws Exception {
+        final RequestCoalescer coalescer = new RequestCoalescer();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Json response = Json.map().set("id", 1);
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<Json> leader = executor.submit(() -> coalescer.execute("key", () -> {
+                started.countDown();
+                release.await();
+                return response;
+            }, 0));
+            started.await();
+            final Future<Json> follower = executor.submit(() -> coalescer.execute("key", Json::map, 0));
+            waitForCoalesced(coalescer, 1);
+            release.countDown();
+
+            final Json leaderJson = leader.get(5, TimeUnit.SECONDS);
+            final Json followerJson = follower.get(5, TimeUnit.SECONDS);
+            assertNotSame(response, leaderJson);
+            assertNotSame(leaderJson, followerJson);
+            leaderJson.set("id", 2);
+            assertEquals(1, (int) followerJson.integer("id"));
+            assertEquals(1, (int) response.integer("id"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void asyncLeaderGetsItsOwnCopy() throws Exception {
+        final RequestCoalescer coalescer = new RequestCoalescer();
+        final CompletableFuture<Json> request = new CompletableFuture<>();
+        final CompletableFuture<Json> leader = coalescer.executeAsync("key", () -> request);
+        final CompletableFuture<Json> follower = coalescer.executeAsync("key", () -> CompletableFuture.completedFuture(Json.map()));
+        final Json response = Json.map().set("id", 1);
+        request.complete(response);
+
+        final Json leaderJson = leader.get(5, TimeUnit.SECONDS);
+        assertNotSame(response, leaderJson);
+        leaderJson.set("id", 2);
+        assertEquals(1, (int) follower.get(5, TimeUnit.SECONDS).integer("id"));
+        assertEquals(1, coalescer.getCoalesced());
+    }
+
+    @Test
+    public void sharedResponsesAreTheSameInstance() {
+        final RequestCoalescer coalescer = new RequestCoalescer().sharedResponses(true);
+        final CompletableFuture<Json> request = new CompletableFuture<>();
+        final CompletableFuture<Json> leader = coalescer.executeAsync("key", () -> request);
+        final CompletableFuture<Json> follower = coalescer.executeAsync("key", () -> CompletableFuture.completedFuture(Json.map()));
+        final Json response = Json.map().set("id", 1);
+        request.complete(response);
+        assertSame(response, leader.join());
+        assertSame(response, follower.join());
+    }
+
+    @Test
+    public void errorsOfTheLeaderReleaseTheFollowers() throws Exception {
+        final RequestCoalescer coalescer = new RequestCoalescer();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<Json> leader = executor.submit(() -> coalescer.execute("key", () -> {
+                started.countDown();
+                release.await();
+                throw new AssertionError("broken");
+            }, 0));
+            started.await();
+            final Future<Json> follower = executor.submit(() -> coalescer.execute("key", Json::map, 0));
+            waitForCoalesced(coalescer, 1);
+            release.countDown();
+
+            try {
+                leader.get(5, TimeUnit.SECONDS);
+                fail("The error of the leader was not thrown");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof AssertionError);
+            }
+            try {
+                follower.get(5, TimeUnit.SECONDS);
+                fail("The error of the leader was not shared");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof RestException);
+            }
+            assertEquals(0, coalescer.getInFlight());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void followersWaitUpToTheMaxWait() throws Exception {
+        final RequestCoalescer coalescer = new RequestCoalescer();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            executor.submit(() -> coalescer.execute("key", () -> {
+                started.countDown();
+                release.await();
+                return Json.map();
+            }, 0));
+            started.await();
+            final long start = System.nanoTime();
+            try {
+                coalescer.execute("key", Json::map, 100);
+                fail("The follower did not time out");
+            } catch (RetryableRestException e) {
+                assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 100);
+            }
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void asyncErrorsOfTheRequestCompleteTheFuture() {
+        final RequestCoalescer coalescer = new RequestCoalescer();
+        final CompletableFuture<Json> future = coalescer.executeAsync("key", () -> {
+            throw new StackOverflowError();
+        });
+        assertTrue(future.isCompletedExceptionally());
+        assertEquals(0, coalescer.getInFlight());
+    }
+
+    private static void waitForCoalesced(RequestCoalescer coalescer, long coalesced) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (coalescer.getCoalesced() < coalesced && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(coalesced, coalescer.getCoalesced());
+    }
+}
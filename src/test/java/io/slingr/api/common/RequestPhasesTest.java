@@ -0,0 +1,129 @@
+package io.slingr.api.common;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class RequestPhasesTest {
+    private static final long HEDGE_DELAY = 50;
+
+    private HttpServer server;
+    private ApacheHttpTransport transport;
+    private SimpleRestClient client;
+    private final AtomicInteger slowRequests = new AtomicInteger();
+    private final CountDownLatch secondSlowRequest = new CountDownLatch(2);
+    private final List<RestRequestMetrics> completed = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", exchange -> {
+            // the first request to the slow path answers after the second one, so it is always hedged
+            if (exchange.getRequestURI().getPath().startsWith("/slow")) {
+                final boolean first = slowRequests.getAndIncrement() == 0;
+                secondSlowRequest.countDown();
+                try {
+                    if (first) {
+                        secondSlowRequest.await(5, TimeUnit.SECONDS);
+                        Thread.sleep(HEDGE_DELAY * 4);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            final byte[] body = "{\"id\":1}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+        transport = new ApacheHttpTransport();
+        client = SimpleRestClient.uri("http://localhost:" + server.getAddress().getPort())
+                .transport(transport)
+                .phaseTimings(true)
+                .metricsListener(completed::add)
+                .retries(0);
+    }
+
+    @After
+    public void tearDown() {
+        client.close();
+        transport.close();
+        server.stop(0);
+        ((ExecutorService) server.getExecutor()).shutdownNow();
+    }
+
+    @Test
+    public void plainRequestsRecordAllThePhases() throws Exception {
+        client.get("/items");
+        final RequestPhases first = completed.get(0).getPhases();
+        assertTrue(first.getPoolWait() >= 0);
+        assertTrue(first.getConnect() > 0);
+        // the connection is not secure
+        assertEquals(0, first.getTls());
+        assertTrue(first.getTimeToFirstByte() >= 0);
+        assertTrue(first.getDownload() >= 0);
+        assertTrue(first.getParse() >= 0);
+        assertEquals(6, first.toJson().size());
+
+        // the connection of the pool is reused
+        client.get("/items");
+        final RequestPhases second = completed.get(1).getPhases();
+        assertTrue(second.getPoolWait() >= 0);
+        assertEquals(0, second.getConnect());
+        assertEquals(0, second.getTls());
+        assertTrue(second.getTimeToFirstByte() >= 0);
+    }
+
+    @Test
+    public void asyncRequestsOfTheApacheTransportRecordAllThePhases() throws Exception {
+        client.getAsync("/items").get(5, TimeUnit.SECONDS);
+        final RequestPhases phases = completed.get(0).getPhases();
+        assertTrue(phases.getPoolWait() >= 0);
+        assertTrue(phases.getConnect() > 0);
+        assertEquals(0, phases.getTls());
+        assertTrue(phases.getTimeToFirstByte() >= 0);
+        assertTrue(phases.getDownload() >= 0);
+    }
+
+    @Test
+    public void hedgedRequestsDoNotRecordTheConnectionPhases() throws Exception {
+        final HedgePolicy policy = HedgePolicy.fixed(HEDGE_DELAY).withBudget(new RetryBudget(1.0, 100));
+        client.hedgePolicy(policy);
+
+        // the primary and the hedge open their own connections, but none of them are recorded
+        client.get("/slow");
+        assertEquals(1L, (long) policy.toJson().long_("hedges"));
+        assertEquals(2, slowRequests.get());
+        client.getAsync("/items").get(5, TimeUnit.SECONDS);
+
+        assertEquals(2, completed.size());
+        for (RestRequestMetrics metrics : completed) {
+            final RequestPhases phases = metrics.getPhases();
+            assertEquals(-1, phases.getPoolWait());
+            assertEquals(-1, phases.getConnect());
+            assertEquals(-1, phases.getTls());
+            assertTrue(phases.getTimeToFirstByte() >= 0);
+            assertTrue(phases.getDownload() >= 0);
+            assertTrue(phases.getParse() >= 0);
+            assertFalse(phases.toJson().contains("connect"));
+        }
+        // the time to first byte of the hedged request includes the delay of the hedge
+        assertTrue(completed.get(0).getPhases().getTimeToFirstByte() >= TimeUnit.MILLISECONDS.toNanos(HEDGE_DELAY));
+    }
+}
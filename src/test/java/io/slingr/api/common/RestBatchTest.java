@@ -0,0 +1,184 @@
+package io.slingr.api.common;
+
+import org.junit.After;
+import org.junit.Test;
+
+import javax.ws.rs.core.Response;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class RestBatchTest {
+    private final StubTransport transport = new StubTransport();
+    private final SimpleRestClient client = SimpleRestClient.uri("http://localhost:1").transport(transport).retries(0);
+
+    @After
+    public void tearDown() {
+        client.close();
+        transport.close();
+    }
+
+    private static List<RestCall> calls(String... paths) {
+        final List<RestCall> calls = new ArrayList<>();
+        for (String path : paths) {
+            calls.add(RestCall.get(path));
+        }
+        return calls;
+    }
+
+    @Test
+    public void resultsAreInTheOrderOfTheCalls() throws Exception {
+        final BatchResult result = client.executeAll(calls("/delay/1", "/ok/2", "/delay/3", "/ok/4"), new BatchOptions().parallelism(2));
+        assertTrue(result.isSuccess());
+        assertEquals(4, result.getSucceeded());
+        assertEquals(0, result.getFailed());
+        assertEquals(0, result.getSkipped());
+        final List<String> paths = new ArrayList<>();
+        for (Json response : result.getResponses()) {
+            paths.add(response.string("path"));
+        }
+        assertEquals(Arrays.asList("/delay/1", "/ok/2", "/delay/3", "/ok/4"), paths);
+    }
+
+    @Test
+    public void parallelismIsBounded() throws Exception {
+        final List<RestCall> calls = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            calls.add(RestCall.get("/delay/" + i));
+        }
+        final BatchResult result = client.executeAll(calls, new BatchOptions().parallelism(3));
+        assertEquals(30, result.getSucceeded());
+        assertEquals(3, transport.maxInFlight.get());
+    }
+
+    @Test
+    public void failuresDoNotStopTheBatch() throws Exception {
+        final BatchResult result = client.executeAll(calls("/ok/1", "/fail/2", "/ok/3"), new BatchOptions().parallelism(1));
+        assertFalse(result.isSuccess());
+        assertFalse(result.isStopped());
+        assertEquals(2, result.getSucceeded());
+        assertEquals(1, result.getFailed());
+        assertEquals(0, result.getSkipped());
+        assertNotNull(result.getResults().get(1).getError());
+        assertFalse(result.getResults().get(1).isSkipped());
+    }
+
+    @Test
+    public void failFastSkipsThePendingCalls() throws Exception {
+        final BatchResult result = client.executeAll(calls("/ok/1", "/fail/2", "/ok/3", "/ok/4"),
+                new BatchOptions().parallelism(1).failFast(true));
+        assertTrue(result.isStopped());
+        assertFalse(result.isTimedOut());
+        assertEquals(1, result.getSucceeded());
+        assertEquals(1, result.getFailed());
+        assertEquals(2, result.getSkipped());
+        assertTrue(result.getResults().get(2).isSkipped());
+        assertTrue(result.getResults().get(3).isSkipped());
+        assertEquals(0, result.getResults().get(3).getTime());
+        assertEquals(2, transport.calls.get());
+    }
+
+    @Test
+    public void timeoutCancelsTheCallsInFlight() throws Exception {
+        // the first call loads the classes of the client, that can take longer than the timeout of the batch
+        client.getAsync("/ok/0").get(5, TimeUnit.SECONDS);
+        transport.calls.set(0);
+        final BatchResult result = client.executeAll(calls("/ok/1", "/hang/2", "/hang/3", "/ok/4", "/ok/5"),
+                new BatchOptions().parallelism(2).timeout(100));
+        assertTrue(result.isTimedOut());
+        assertFalse(result.isStopped());
+        assertEquals(1, result.getSucceeded());
+        assertEquals(0, result.getFailed());
+        // the two calls that hang are cancelled and the last two are not started
+        assertEquals(4, result.getSkipped());
+        // the requests of the calls can be cancelled after the batch finished
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (transport.cancelled.get() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(2, transport.cancelled.get());
+        assertEquals(3, transport.calls.get());
+    }
+
+    @Test
+    public void resultsGoToTheListener() throws Exception {
+        final List<Integer> indexes = Collections.synchronizedList(new ArrayList<>());
+        final BatchResult result = client.executeAll(calls("/delay/1", "/ok/2", "/fail/3"),
+                new BatchOptions().resultListener(callResult -> indexes.add(callResult.getIndex())));
+        assertTrue(result.getResults().isEmpty());
+        assertEquals(2, result.getSucceeded());
+        assertEquals(1, result.getFailed());
+        Collections.sort(indexes);
+        assertEquals(Arrays.asList(0, 1, 2), indexes);
+    }
+
+    @Test
+    public void emptyBatchFinishesAtOnce() throws Exception {
+        final BatchResult result = client.executeAll(Collections.emptyList(), null);
+        assertTrue(result.isSuccess());
+        assertEquals(0, result.getSucceeded() + result.getFailed() + result.getSkipped());
+    }
+
+    /**
+     * Transport that answers by the path: <code>/ok</code> at once, <code>/delay</code> after a few milliseconds,
+     * <code>/fail</code> with status 404 and <code>/hang</code> never
+     */
+    private static class StubTransport implements Transport {
+        private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        private final AtomicInteger calls = new AtomicInteger();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger maxInFlight = new AtomicInteger();
+        private final AtomicInteger cancelled = new AtomicInteger();
+
+        @Override
+        public Response execute(TransportRequest request) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompletableFuture<Response> executeAsync(TransportRequest request) {
+            calls.incrementAndGet();
+            final String path = request.getUri().getPath();
+            final CompletableFuture<Response> future = new CompletableFuture<>();
+            if (path.startsWith("/ok")) {
+                future.complete(response(200, path));
+            } else if (path.startsWith("/fail")) {
+                future.complete(response(404, path));
+            } else if (path.startsWith("/delay")) {
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                executor.schedule(() -> {
+                    inFlight.decrementAndGet();
+                    future.complete(response(200, path));
+                }, 5, TimeUnit.MILLISECONDS);
+            } else {
+                future.whenComplete((r, e) -> {
+                    if (future.isCancelled()) {
+                        cancelled.incrementAndGet();
+                    }
+                });
+            }
+            return future;
+        }
+
+        @Override
+        public void close() {
+            executor.shutdownNow();
+        }
+
+        private static Response response(int status, String path) {
+            final byte[] body = Json.map().set("path", path).toString().getBytes(StandardCharsets.UTF_8);
+            return new StreamResponse(status, Collections.singletonMap("Content-Type", Collections.singletonList("application/json")),
+                    new ByteArrayInputStream(body));
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package io.slingr.api.common;
+
+import org.junit.After;
+import org.junit.Test;
+
+import javax.ws.rs.core.Response;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RestClientAsyncTest {
+    private final StubTransport transport = new StubTransport();
+    private final ConcurrencyLimiter limiter = new ConcurrencyLimiter(ConcurrencyLimiter.Algorithm.AIMD).initialLimit(1).perHost(false);
+    private final SimpleRestClient client = SimpleRestClient.uri("http://localhost:1").transport(transport).concurrencyLimiter(limiter).retries(0);
+
+    @After
+    public void tearDown() {
+        client.close();
+    }
+
+    @Test
+    public void responseCompletesTheFuture() throws Exception {
+        final CompletableFuture<Json> result = client.getAsync("/ok");
+        assertEquals("/ok", result.get(1, TimeUnit.SECONDS).string("path"));
+        assertEquals(0L, (long) limiter.toJson().json("targets").json("*").long_("inFlight"));
+    }
+
+    @Test
+    public void errorsAreTheSameThanInSyncRequests() throws Exception {
+        for (String path : new String[]{"/missing", "/unavailable"}) {
+            RestException syncError = null;
+            try {
+                client.get(path);
+            } catch (RestException e) {
+                syncError = e;
+            }
+            assertNotNull(path, syncError);
+
+            final RestException asyncError = asyncError(client.getAsync(path));
+            assertEquals(path, syncError.getClass(), asyncError.getClass());
+            assertEquals(path, syncError.getError(), asyncError.getError());
+            assertEquals(path, syncError.getStatusCode(), asyncError.getStatusCode());
+            assertEquals(path, syncError.getDetails(), asyncError.getDetails());
+        }
+        // 4xx are not retried, 5xx are retried but there are no retries left
+        assertTrue(asyncError(client.getAsync("/missing")) instanceof PermanentRestException);
+        assertTrue(asyncError(client.getAsync("/unavailable")) instanceof RetryableRestException);
+        assertEquals("notFound", asyncError(client.getAsync("/missing")).getDetails().get("code"));
+    }
+
+    @Test
+    public void cancellationReleasesThePermit() throws Exception {
+        final CompletableFuture<Json> hanging = client.getAsync("/hang");
+        transport.awaitCalls(1);
+        // the limit is one, so this one waits for the permit
+        final CompletableFuture<Json> queued = client.getAsync("/ok");
+        assertFalse(queued.isDone());
+
+        assertTrue(hanging.cancel(true));
+        assertTrue(transport.calls.get(0).isCancelled());
+        assertEquals("/ok", queued.get(1, TimeUnit.SECONDS).string("path"));
+        assertEquals(0L, (long) limiter.toJson().json("targets").json("*").long_("inFlight"));
+    }
+
+    @Test
+    public void cancellationWhileWaitingForThePermit() throws Exception {
+        final CompletableFuture<Json> hanging = client.getAsync("/hang");
+        transport.awaitCalls(1);
+        final CompletableFuture<Json> queued = client.getAsync("/ok");
+        assertTrue(queued.cancel(true));
+        hanging.cancel(true);
+
+        // the permit is free, and the cancelled request was not sent
+        assertEquals("/ok", client.getAsync("/ok").get(1, TimeUnit.SECONDS).string("path"));
+        assertEquals(2, transport.calls.size());
+        assertEquals(0L, (long) limiter.toJson().json("targets").json("*").long_("inFlight"));
+    }
+
+    private static RestException asyncError(CompletableFuture<Json> future) throws Exception {
+        try {
+            future.get(1, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof RestException);
+            return (RestException) e.getCause();
+        } catch (CancellationException e) {
+            fail("Request was cancelled");
+        }
+        fail("Request did not fail");
+        return null;
+    }
+
+    /**
+     * Transport that answers by the path: <code>/ok</code> with status 200, <code>/missing</code> with 404,
+     * <code>/unavailable</code> with 503 and <code>/hang</code> never
+     */
+    private static class StubTransport implements Transport {
+        private final List<CompletableFuture<Response>> calls = new CopyOnWriteArrayList<>();
+
+        @Override
+        public Response execute(TransportRequest request) {
+            return response(request.getUri().getPath());
+        }
+
+        @Override
+        public CompletableFuture<Response> executeAsync(TransportRequest request) {
+            final String path = request.getUri().getPath();
+            final CompletableFuture<Response> future = new CompletableFuture<>();
+            calls.add(future);
+            if (!path.equals("/hang")) {
+                future.complete(response(path));
+            }
+            return future;
+        }
+
+        private void awaitCalls(int count) throws InterruptedException {
+            final long deadline = System.currentTimeMillis() + 5000;
+            while (calls.size() < count && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(count, calls.size());
+        }
+
+        private static Response response(String path) {
+            final int status = path.equals("/missing") ? 404 : path.equals("/unavailable") ? 503 : 200;
+            final Json body = status == 404 ? Json.map().set("code", "notFound") : Json.map().set("path", path);
+            return new StreamResponse(status, Collections.singletonMap("Content-Type", Collections.singletonList("application/json")),
+                    new ByteArrayInputStream(body.toString().getBytes(StandardCharsets.UTF_8)));
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package io.slingr.api.common;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RestClientRegistryTest {
+    // clients of these tests have a pool size that no other test uses, so they are not shared with them
+    private static int maxConnections = 1000;
+
+    private static RestClientFactory.RestClientOptions options() {
+        final RestClientFactory.RestClientOptions options = new RestClientFactory.RestClientOptions();
+        options.maxConnections = maxConnections++;
+        return options;
+    }
+
+    @After
+    public void resetLingerTime() {
+        RestClientRegistry.lingerTime(60 * 1000);
+    }
+
+    @Test
+    public void clientsWithTheSameOptionsAreShared() {
+        final RestClientFactory.RestClientOptions options = options();
+        final RestClientRegistry.SharedClient first = RestClientRegistry.acquire(options);
+        final RestClientRegistry.SharedClient second = RestClientRegistry.acquire(options);
+        final RestClientRegistry.SharedClient other = RestClientRegistry.acquire(options());
+        try {
+            assertSame(first, second);
+            assertNotSame(first, other);
+        } finally {
+            first.release();
+            second.release();
+            other.release();
+        }
+    }
+
+    @Test
+    public void sharedClientIsClosedAfterTheLastReferenceAndTheLingerTime() throws Exception {
+        RestClientRegistry.lingerTime(50);
+        final RestClientFactory.RestClientOptions options = options();
+        final RestClientRegistry.SharedClient first = RestClientRegistry.acquire(options);
+        final RestClientRegistry.SharedClient second = RestClientRegistry.acquire(options);
+        first.release();
+        Thread.sleep(150);
+        assertFalse(first.isClosed());
+
+        second.release();
+        // extra releases are ignored
+        second.release();
+        assertFalse(first.isClosed());
+        waitClosed(first);
+        final RestClientRegistry.SharedClient next = RestClientRegistry.acquire(options);
+        assertNotSame(first, next);
+        next.release();
+    }
+
+    @Test
+    public void acquiringDuringTheLingerTimeKeepsTheClient() throws Exception {
+        RestClientRegistry.lingerTime(100);
+        final RestClientFactory.RestClientOptions options = options();
+        final RestClientRegistry.SharedClient client = RestClientRegistry.acquire(options);
+        client.release();
+        final RestClientRegistry.SharedClient again = RestClientRegistry.acquire(options);
+        assertSame(client, again);
+        Thread.sleep(300);
+        assertFalse(client.isClosed());
+        again.release();
+        waitClosed(client);
+    }
+
+    @Test
+    public void clientsThatAreNotSharedAreClosedAtOnce() {
+        final RestClientFactory.RestClientOptions options = options();
+        options.sharedClient = false;
+        final RestClientRegistry.SharedClient first = RestClientRegistry.acquire(options);
+        final RestClientRegistry.SharedClient second = RestClientRegistry.acquire(options);
+        assertNotSame(first, second);
+        first.release();
+        assertTrue(first.isClosed());
+        assertFalse(second.isClosed());
+        second.release();
+        assertTrue(second.isClosed());
+    }
+
+    private static void waitClosed(RestClientRegistry.SharedClient client) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (!client.isClosed() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(client.isClosed());
+    }
+}
@@ -0,0 +1,278 @@
+package io.slingr.api.common;
+
+import org.junit.After;
+import org.junit.Test;
+
+import javax.ws.rs.core.Response;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RestInterceptorTest {
+    private final StubTransport transport = new StubTransport();
+    private final SimpleRestClient client = SimpleRestClient.uri("http://localhost:1").transport(transport).retries(0);
+    private final List<String> calls = new CopyOnWriteArrayList<>();
+
+    @After
+    public void tearDown() {
+        client.close();
+    }
+
+    @Test
+    public void interceptorsAreCalledInOrder() throws Exception {
+        client.interceptor(tracing("a")).interceptor(tracing("b")).interceptor(tracing("c"));
+        assertEquals("/items", client.get("/items").string("path"));
+        assertEquals(Arrays.asList("a>", "b>", "c>", "request", "<c", "<b", "<a"), calls);
+
+        calls.clear();
+        assertEquals("/items", client.getAsync("/items").get(1, TimeUnit.SECONDS).string("path"));
+        assertEquals(Arrays.asList("a>", "b>", "c>", "request", "<c", "<b", "<a"), calls);
+    }
+
+    @Test
+    public void interceptorsCanBeRemoved() throws Exception {
+        final RestInterceptor b = tracing("b");
+        client.interceptor(tracing("a")).interceptor(b);
+        assertEquals(2, client.getInterceptors().size());
+        assertSame(b, client.getInterceptors().get(1));
+
+        assertTrue(client.removeInterceptor(b));
+        assertFalse(client.removeInterceptor(b));
+        client.get("/items");
+        assertEquals(Arrays.asList("a>", "request", "<a"), calls);
+    }
+
+    @Test
+    public void interceptorsCanReturnWithoutProceeding() throws Exception {
+        client.interceptor(tracing("a"))
+                .interceptor(new RestInterceptor() {
+                    @Override
+                    public Json intercept(RestCallContext context, Chain chain) {
+                        return Json.map().set("from", "interceptor");
+                    }
+
+                    @Override
+                    public CompletableFuture<Json> interceptAsync(RestCallContext context, AsyncChain chain) {
+                        return CompletableFuture.completedFuture(Json.map().set("from", "interceptor"));
+                    }
+                })
+                .interceptor(tracing("c"));
+
+        assertEquals("interceptor", client.get("/items").string("from"));
+        assertEquals("interceptor", client.getAsync("/items").get(1, TimeUnit.SECONDS).string("from"));
+        assertEquals(Arrays.asList("a>", "<a", "a>", "<a"), calls);
+        assertTrue(transport.requests.isEmpty());
+    }
+
+    @Test
+    public void errorsOfTheInterceptorsAreThrown() throws Exception {
+        client.interceptor(tracing("a"))
+                .interceptor(new RestInterceptor() {
+                    @Override
+                    public Json intercept(RestCallContext context, Chain chain) throws RestException {
+                        throw new PermanentRestException(RestErrorType.ARGUMENT_EXCEPTION, "rejected");
+                    }
+
+                    @Override
+                    public CompletableFuture<Json> interceptAsync(RestCallContext context, AsyncChain chain) {
+                        throw new IllegalStateException("rejected");
+                    }
+                });
+
+        try {
+            client.get("/items");
+            fail("The error of the interceptor was not thrown");
+        } catch (PermanentRestException e) {
+            assertEquals("rejected", e.getDescription());
+        }
+        try {
+            client.getAsync("/items").get(1, TimeUnit.SECONDS);
+            fail("The error of the interceptor was not thrown");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        // the previous interceptors see the errors
+        assertEquals(Arrays.asList("a>", "<a!", "a>", "<a!"), calls);
+        assertTrue(transport.requests.isEmpty());
+    }
+
+    @Test
+    public void errorsOfTheRequestGoThroughTheInterceptors() throws Exception {
+        client.interceptor(tracing("a"));
+        try {
+            client.get("/missing");
+            fail("The request did not fail");
+        } catch (RestException e) {
+            assertEquals(404, e.getStatusCode());
+        }
+        assertEquals(Arrays.asList("a>", "request", "<a!"), calls);
+    }
+
+    @Test
+    public void changesOfTheContextReachTheRequest() throws Exception {
+        client.setHeader("token", "default").setHeader("removed", "yes");
+        final RestInterceptor interceptor = new RestInterceptor() {
+            @Override
+            public Json intercept(RestCallContext context, Chain chain) throws RestException {
+                change(context);
+                return chain.proceed(context);
+            }
+
+            @Override
+            public CompletableFuture<Json> interceptAsync(RestCallContext context, AsyncChain chain) {
+                change(context);
+                return chain.proceed(context);
+            }
+
+            private void change(RestCallContext context) {
+                context.setHeader("token", "changed");
+                context.setHeader("removed", null);
+                context.setHeader("added", 1);
+                context.setTarget(context.getTarget().path("other"));
+                context.setAttribute("seen", true);
+            }
+        };
+        client.interceptor(interceptor);
+
+        client.get("/items");
+        client.getAsync("/items").get(1, TimeUnit.SECONDS);
+        assertEquals(2, transport.requests.size());
+        for (TransportRequest request : transport.requests) {
+            assertEquals("/items/other", request.getUri().getPath());
+            assertEquals("changed", request.getHeaders().get("token"));
+            assertEquals(1, request.getHeaders().get("added"));
+            assertFalse(request.getHeaders().containsKey("removed"));
+        }
+
+        // the default headers of the client are not changed
+        client.removeInterceptor(interceptor);
+        client.get("/items");
+        assertEquals("default", transport.requests.get(2).getHeaders().get("token"));
+        assertEquals("yes", transport.requests.get(2).getHeaders().get("removed"));
+        assertFalse(transport.requests.get(2).getHeaders().containsKey("added"));
+    }
+
+    @Test
+    public void headersOfTheContextAreSnapshots() throws Exception {
+        final List<Map<String, Object>> seen = new ArrayList<>();
+        client.setHeader("token", "first");
+        client.interceptor((context, chain) -> {
+            seen.add(context.getHeaders());
+            return chain.proceed(context);
+        });
+        client.get("/items");
+        client.setHeader("token", "second");
+        client.get("/items");
+
+        assertEquals("first", seen.get(0).get("token"));
+        assertEquals("second", seen.get(1).get("token"));
+        try {
+            seen.get(0).put("token", "changed");
+            fail("The headers of the context could be modified");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        // headers that were not changed are the default ones, without copies
+        final RestCallContext context = new RestCallContext(RestMethod.GET, null, seen.get(1), null);
+        context.setHeader("token", "second");
+        assertSame(seen.get(1), context.getHeaders());
+        context.setHeader("other", null);
+        assertSame(seen.get(1), context.getHeaders());
+        context.setHeader("token", "third");
+        assertNotSame(seen.get(1), context.getHeaders());
+        assertEquals("second", seen.get(1).get("token"));
+    }
+
+    @Test
+    public void defaultHeadersCanChangeWhileRequestsAreSent() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 3; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 200; i++) {
+                        client.get("/items");
+                    }
+                    return null;
+                }));
+            }
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 200; i++) {
+                    client.setHeader("header" + (i % 20), i);
+                }
+                return null;
+            }));
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(600, transport.requests.size());
+        client.get("/items");
+        assertEquals(20, transport.requests.get(600).getHeaders().keySet().stream().filter(name -> name.startsWith("header")).count());
+    }
+
+    /**
+     * Interceptor that records when the request goes through it, and whether it failed
+     */
+    private RestInterceptor tracing(String name) {
+        return new RestInterceptor() {
+            @Override
+            public Json intercept(RestCallContext context, Chain chain) throws RestException {
+                calls.add(name + ">");
+                try {
+                    final Json json = chain.proceed(context);
+                    calls.add("<" + name);
+                    return json;
+                } catch (RuntimeException e) {
+                    calls.add("<" + name + "!");
+                    throw e;
+                }
+            }
+
+            @Override
+            public CompletableFuture<Json> interceptAsync(RestCallContext context, AsyncChain chain) {
+                calls.add(name + ">");
+                return chain.proceed(context).whenComplete((json, e) -> calls.add("<" + name + (e != null ? "!" : "")));
+            }
+        };
+    }
+
+    /**
+     * Transport that answers the paths starting with <code>/missing</code> with status 404 and the others with
+     * their path
+     */
+    private class StubTransport implements Transport {
+        private final List<TransportRequest> requests = new CopyOnWriteArrayList<>();
+
+        @Override
+        public Response execute(TransportRequest request) {
+            calls.add("request");
+            requests.add(request);
+            final String path = request.getUri().getPath();
+            final int status = path.startsWith("/missing") ? 404 : 200;
+            final byte[] body = Json.map().set("path", path).toString().getBytes(StandardCharsets.UTF_8);
+            return new StreamResponse(status, Collections.singletonMap("Content-Type", Collections.singletonList("application/json")),
+                    new ByteArrayInputStream(body));
+        }
+
+        @Override
+        public CompletableFuture<Response> executeAsync(TransportRequest request) {
+            return CompletableFuture.completedFuture(execute(request));
+        }
+    }
+}
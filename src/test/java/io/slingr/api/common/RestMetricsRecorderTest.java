@@ -0,0 +1,199 @@
+package io.slingr.api.common;
+
+import org.junit.After;
+import org.junit.Test;
+
+import javax.ws.rs.core.Response;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RestMetricsRecorderTest {
+    private static final String HOST = "localhost:1";
+
+    private final RestMetricsRecorder recorder = new RestMetricsRecorder();
+    private final List<RestRequestMetrics> completed = new CopyOnWriteArrayList<>();
+    private final SimpleRestClient client = SimpleRestClient.uri("http://" + HOST).transport(new StubTransport()).retries(0)
+            .metricsListener(metrics -> {
+                completed.add(metrics);
+                recorder.onComplete(metrics);
+            });
+
+    @After
+    public void tearDown() {
+        client.close();
+    }
+
+    @Test
+    public void routesReplaceTheIds() {
+        assertEquals("api.example.com/users/{id}", RestMetricsRecorder.templateRoute("https://api.example.com/users/5b1e4f2c9a1d3e0001a2b3c4?x=1"));
+        assertEquals("api.example.com/users/{id}/roles/{id}", RestMetricsRecorder.templateRoute("https://api.example.com/users/123/roles/0f8fad5b-d9cb-469f-a165-70867728950e#top"));
+        assertEquals("api.example.com/users/me/abc", RestMetricsRecorder.templateRoute("https://api.example.com/users/me/abc"));
+        assertEquals("api.example.com", RestMetricsRecorder.templateRoute("https://api.example.com"));
+    }
+
+    @Test
+    public void listenerIsCalledOnSuccess() throws Exception {
+        client.get("/users/1");
+        client.getAsync("/users/2").get(1, TimeUnit.SECONDS);
+
+        assertEquals(2, completed.size());
+        for (RestRequestMetrics metrics : completed) {
+            assertTrue(metrics.isSuccess());
+            assertEquals(200, metrics.getStatus());
+            assertNull(metrics.getErrorType());
+        }
+        final Json endpoint = endpoint(RestMethod.GET, HOST + "/users/{id}");
+        assertEquals(2L, (long) endpoint.long_("requests"));
+        assertEquals(0L, (long) endpoint.long_("failures"));
+        assertEquals(2L, (long) endpoint.json("statusClasses").long_("2xx"));
+        assertEquals(2L, (long) endpoint.json("statusCodes").long_("200"));
+        assertEquals(2L, (long) endpoint.json("latency").long_("count"));
+        assertTrue(endpoint.json("errors").isEmpty());
+    }
+
+    @Test
+    public void listenerIsCalledOnError() throws Exception {
+        try {
+            client.get("/missing/1");
+            fail("The request did not fail");
+        } catch (RestException e) {
+            // expected
+        }
+        try {
+            client.getAsync("/missing/2").get(1, TimeUnit.SECONDS);
+            fail("The request did not fail");
+        } catch (ExecutionException e) {
+            // expected
+        }
+
+        assertEquals(2, completed.size());
+        for (RestRequestMetrics metrics : completed) {
+            assertFalse(metrics.isSuccess());
+            assertEquals(404, metrics.getStatus());
+            assertNotNull(metrics.getErrorType());
+        }
+        final Json endpoint = endpoint(RestMethod.GET, HOST + "/missing/{id}");
+        assertEquals(2L, (long) endpoint.long_("requests"));
+        assertEquals(2L, (long) endpoint.long_("failures"));
+        assertEquals(2L, (long) endpoint.json("statusClasses").long_("4xx"));
+        assertEquals(2L, (long) endpoint.json("statusCodes").long_("404"));
+        assertEquals(2L, (long) endpoint.json("errors").long_(completed.get(0).getErrorType().name()));
+    }
+
+    @Test
+    public void errorsOfTheListenerAreIgnored() throws Exception {
+        client.metricsListener(metrics -> {
+            throw new IllegalStateException("broken listener");
+        });
+        assertEquals("/users/1", client.get("/users/1").string("path"));
+        assertEquals("/users/2", client.getAsync("/users/2").get(1, TimeUnit.SECONDS).string("path"));
+    }
+
+    @Test
+    public void endpointsAreKeptPerMethod() throws Exception {
+        client.get("/users/1");
+        client.get("/users/2");
+        client.post("/users/3", Json.map().set("name", "test"));
+
+        assertEquals(2, recorder.getLatency(RestMethod.GET, HOST + "/users/{id}").getCount());
+        assertEquals(1, recorder.getLatency(RestMethod.POST, HOST + "/users/{id}").getCount());
+        assertNull(recorder.getLatency(RestMethod.PUT, HOST + "/users/{id}"));
+        assertNull(recorder.getLatency(RestMethod.GET, HOST + "/other"));
+
+        // in the order of the methods
+        final Json snapshot = recorder.toJson();
+        assertEquals(2, snapshot.size());
+        assertEquals("GET", snapshot.jsons().get(0).string("method"));
+        assertEquals("POST", snapshot.jsons().get(1).string("method"));
+        assertEquals(snapshot.jsons().get(0).string("route"), snapshot.jsons().get(1).string("route"));
+    }
+
+    @Test
+    public void endpointsBeyondTheMaxAreOther() {
+        recorder.maxEndpoints(2);
+        client.get("/a");
+        client.get("/b");
+        client.get("/c");
+        client.post("/d", Json.map());
+
+        assertEquals(1, recorder.getLatency(RestMethod.GET, HOST + "/a").getCount());
+        assertEquals(1, recorder.getLatency(RestMethod.GET, HOST + "/b").getCount());
+        assertNull(recorder.getLatency(RestMethod.GET, HOST + "/c"));
+        assertEquals(1, recorder.getLatency(RestMethod.GET, "other").getCount());
+        assertEquals(1, recorder.getLatency(RestMethod.POST, "other").getCount());
+    }
+
+    @Test
+    public void resetRemovesTheEndpoints() {
+        recorder.maxEndpoints(1);
+        client.get("/a");
+        final Json snapshot = recorder.toJson();
+        recorder.reset();
+
+        assertTrue(recorder.toJson().isEmpty());
+        assertNull(recorder.getLatency(RestMethod.GET, HOST + "/a"));
+        // snapshots are not changed by the reset
+        assertEquals(1, snapshot.size());
+        assertEquals(1L, (long) snapshot.jsons().get(0).long_("requests"));
+
+        // the count of endpoints starts again
+        client.get("/b");
+        assertEquals(1, recorder.getLatency(RestMethod.GET, HOST + "/b").getCount());
+        assertNull(recorder.getLatency(RestMethod.GET, "other"));
+    }
+
+    @Test
+    public void invalidConfiguration() {
+        try {
+            recorder.maxEndpoints(0);
+            fail("Invalid max endpoints were accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            recorder.routeNormalizer(null);
+            fail("A null normalizer was accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private Json endpoint(RestMethod method, String route) {
+        for (Json endpoint : recorder.toJson().jsons()) {
+            if (method.name().equals(endpoint.string("method")) && route.equals(endpoint.string("route"))) {
+                return endpoint;
+            }
+        }
+        fail("There are no metrics of " + method + " " + route);
+        return null;
+    }
+
+    /**
+     * Transport that answers the paths starting with <code>/missing</code> with status 404 and the others with
+     * their path
+     */
+    private static class StubTransport implements Transport {
+
+        @Override
+        public Response execute(TransportRequest request) {
+            final String path = request.getUri().getPath();
+            final int status = path.startsWith("/missing") ? 404 : 200;
+            final byte[] body = Json.map().set("path", path).toString().getBytes(StandardCharsets.UTF_8);
+            return new StreamResponse(status, Collections.singletonMap("Content-Type", Collections.singletonList("application/json")),
+                    new ByteArrayInputStream(body));
+        }
+
+        @Override
+        public CompletableFuture<Response> executeAsync(TransportRequest request) {
+            return CompletableFuture.completedFuture(execute(request));
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package io.slingr.api.common;
+
+import org.junit.Test;
+
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class RestResponseCacheTest {
+    private static final String URI = "https://api.example.com/data/companies/1";
+
+    private static MultivaluedMap<String, String> cacheable() {
+        final MultivaluedMap<String, String> headers = new MultivaluedHashMap<>();
+        headers.putSingle("Cache-Control", "max-age=60");
+        return headers;
+    }
+
+    private static Map<String, Object> headers(String name, String value) {
+        return Collections.singletonMap(name, value);
+    }
+
+    @Test
+    public void responsesAreKeyedByToken() {
+        final RestResponseCache cache = new RestResponseCache(10, 1024 * 1024);
+        cache.lookup(URI, headers("token", "a")).store(cacheable(), Json.map().set("user", "a"));
+
+        assertEquals("a", cache.lookup(URI, headers("token", "a")).fresh().string("user"));
+        assertNull(cache.lookup(URI, headers("token", "b")).fresh());
+        assertNull(cache.lookup(URI, Collections.emptyMap()).fresh());
+    }
+
+    @Test
+    public void responsesAreKeyedByAuthorization() {
+        final RestResponseCache cache = new RestResponseCache(10, 1024 * 1024);
+        cache.lookup(URI, headers("authorization", "Bearer a")).store(cacheable(), Json.map().set("user", "a"));
+
+        assertNotNull(cache.lookup(URI, headers("Authorization", "Bearer a")).fresh());
+        assertNull(cache.lookup(URI, headers("Authorization", "Bearer b")).fresh());
+    }
+
+    @Test
+    public void customCredentialHeaders() {
+        final RestResponseCache cache = new RestResponseCache(10, 1024 * 1024).credentialHeaders("X-Api-Key");
+        cache.lookup(URI, headers("X-Api-Key", "a")).store(cacheable(), Json.map().set("user", "a"));
+
+        assertNotNull(cache.lookup(URI, headers("X-Api-Key", "a")).fresh());
+        assertNull(cache.lookup(URI, headers("X-Api-Key", "b")).fresh());
+    }
+
+    @Test
+    public void invalidateRemovesAllCredentials() {
+        final RestResponseCache cache = new RestResponseCache(10, 1024 * 1024);
+        cache.lookup(URI, headers("token", "a")).store(cacheable(), Json.map());
+        cache.lookup(URI, headers("token", "b")).store(cacheable(), Json.map());
+        assertEquals(2, cache.size());
+
+        cache.invalidate(URI);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void targetsWithAuthenticationFeatureAreDetected() {
+        final SimpleRestClient client = SimpleRestClient.uri("https://api.example.com");
+        assertFalse(TransportRequest.hasAuthentication(client.getApiTarget()));
+        client.setupBasicAuthentication("user", "password");
+        assertTrue(TransportRequest.hasAuthentication(client.getApiTarget()));
+    }
+}
@@ -0,0 +1,74 @@
+package io.slingr.api.common;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RetryBudgetTest {
+    private static final long WINDOW = 10000;
+
+    @Test
+    public void retriesAreLimitedByTheRatioOfRequests() {
+        final long start = System.currentTimeMillis();
+        final RetryBudget budget = new RetryBudget(0.1, 0, WINDOW);
+        for (int i = 0; i < 100; i++) {
+            budget.onRequest(start + 10);
+        }
+        for (int i = 0; i < 10; i++) {
+            assertTrue(budget.tryRetry(start + 20));
+        }
+        assertFalse(budget.tryRetry(start + 20));
+        assertEquals(1, budget.getRejectedRetries());
+        // more requests allow more retries
+        for (int i = 0; i < 10; i++) {
+            budget.onRequest(start + 30);
+        }
+        assertTrue(budget.tryRetry(start + 40));
+        assertFalse(budget.tryRetry(start + 40));
+    }
+
+    @Test
+    public void minimumRetriesAreAllowedWithoutRequests() {
+        final long start = System.currentTimeMillis();
+        final RetryBudget budget = new RetryBudget(0.1, 2, WINDOW);
+        // two per second over the ten seconds of the window
+        for (int i = 0; i < 20; i++) {
+            assertTrue(budget.tryRetry(start + 10));
+        }
+        assertFalse(budget.tryRetry(start + 10));
+    }
+
+    @Test
+    public void previousWindowIsWeightedAndThenExpires() {
+        final long start = System.currentTimeMillis();
+        final RetryBudget budget = new RetryBudget(0.5, 0, WINDOW);
+        for (int i = 0; i < 10; i++) {
+            budget.onRequest(start + 10);
+        }
+        // half of the previous window is still in the sliding window: 5 requests, so 2.5 retries
+        assertTrue(budget.tryRetry(start + WINDOW + WINDOW / 2));
+        assertTrue(budget.tryRetry(start + WINDOW + WINDOW / 2));
+        assertFalse(budget.tryRetry(start + WINDOW + WINDOW / 2));
+        // the requests of the first window are not counted anymore
+        assertFalse(budget.tryRetry(start + 3 * WINDOW + WINDOW / 2));
+        budget.onRequest(start + 3 * WINDOW + WINDOW / 2);
+        budget.onRequest(start + 3 * WINDOW + WINDOW / 2);
+        assertTrue(budget.tryRetry(start + 3 * WINDOW + WINDOW / 2));
+    }
+
+    @Test
+    public void invalidBudgetsAreRejected() {
+        try {
+            new RetryBudget(-0.1, 0);
+            fail("Negative ratio was accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            new RetryBudget(0.1, 0, 999);
+            fail("Short window was accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package io.slingr.api.common;
+
+import org.junit.Test;
+
+import javax.ws.rs.core.Response;
+import java.io.ByteArrayInputStream;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class RetryPolicyTest {
+
+    @Test
+    public void exponentialWithoutJitterDoublesUpToTheMax() {
+        final RetryPolicy policy = RetryPolicy.exponential(200, 5000, RetryPolicy.Jitter.NONE);
+        assertEquals(200, policy.nextDelay(1, 0, 0));
+        assertEquals(400, policy.nextDelay(2, 200, 0));
+        assertEquals(800, policy.nextDelay(3, 400, 0));
+        assertEquals(3200, policy.nextDelay(5, 1600, 0));
+        assertEquals(5000, policy.nextDelay(6, 3200, 0));
+        // no overflow with many retries
+        assertEquals(5000, policy.nextDelay(100, 5000, 0));
+        assertEquals(5000, policy.nextDelay(Integer.MAX_VALUE, 5000, 0));
+    }
+
+    @Test
+    public void fullJitterIsBetweenZeroAndTheBackoff() {
+        final RetryPolicy policy = RetryPolicy.exponential(100, 2000, RetryPolicy.Jitter.FULL, new Random(7));
+        long max = 0;
+        for (int i = 0; i < 1000; i++) {
+            final int retryCount = i % 8 + 1;
+            final long backoff = Math.min(2000, 100L << (retryCount - 1));
+            final long delay = policy.nextDelay(retryCount, 0, 0);
+            assertTrue(delay + " > " + backoff, delay >= 0 && delay <= backoff);
+            max = Math.max(max, delay);
+        }
+        // delays are spread over the whole range
+        assertTrue(max > 1800);
+    }
+
+    @Test
+    public void decorrelatedJitterIsBetweenTheBaseAndThreeTimesThePreviousDelay() {
+        final RetryPolicy policy = RetryPolicy.exponential(100, 2000, RetryPolicy.Jitter.DECORRELATED, new Random(7));
+        long previous = 0;
+        for (int i = 0; i < 1000; i++) {
+            final long delay = policy.nextDelay(i + 1, previous, 0);
+            final long upper = Math.min(2000, Math.max(100, previous) * 3);
+            assertTrue(delay + " not in [100, " + upper + "]", delay >= 100 && delay <= upper);
+            previous = delay;
+        }
+    }
+
+    @Test
+    public void seededJitterIsReproducible() {
+        for (RetryPolicy.Jitter jitter : new RetryPolicy.Jitter[]{RetryPolicy.Jitter.FULL, RetryPolicy.Jitter.DECORRELATED}) {
+            final RetryPolicy first = RetryPolicy.exponential(100, 10000, jitter, new Random(42));
+            final RetryPolicy second = RetryPolicy.exponential(100, 10000, jitter, new Random(42));
+            long previous = 0;
+            for (int i = 1; i <= 10; i++) {
+                final long delay = first.nextDelay(i, previous, 0);
+                assertEquals(jitter.name(), delay, second.nextDelay(i, previous, 0));
+                previous = delay;
+            }
+        }
+    }
+
+    @Test
+    public void maxElapsedTimeStopsTheRetries() {
+        final RetryPolicy policy = RetryPolicy.linear(1000).withMaxElapsedTime(5000);
+        assertEquals(1000, policy.nextDelay(1, 0, 0));
+        assertEquals(2000, policy.nextDelay(2, 1000, 3000));
+        // the next attempt would start after the max time
+        assertEquals(-1, policy.nextDelay(2, 1000, 3001));
+        assertEquals(-1, policy.nextDelay(1, 0, 6000));
+        // policies that already stopped are not restarted
+        assertEquals(-1, ((RetryPolicy) (retryCount, previousDelay, elapsedTime) -> -1).withMaxElapsedTime(5000).nextDelay(1, 0, 0));
+    }
+
+    @Test
+    public void invalidArgumentsAreRejected() {
+        final Runnable[] invalid = {
+                () -> RetryPolicy.linear(-1),
+                () -> RetryPolicy.exponential(0, 1000, RetryPolicy.Jitter.NONE),
+                () -> RetryPolicy.exponential(1000, 100, RetryPolicy.Jitter.NONE),
+                () -> RetryPolicy.DEFAULT.withMaxElapsedTime(0)
+        };
+        for (Runnable runnable : invalid) {
+            try {
+                runnable.run();
+                fail("Invalid argument was accepted");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void interruptionWhileWaitingToRetryStopsTheRequest() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+        final Transport unavailable = new Transport() {
+            @Override
+            public Response execute(TransportRequest request) {
+                attempts.incrementAndGet();
+                return new StreamResponse(503, Collections.emptyMap(), new ByteArrayInputStream(new byte[0]));
+            }
+
+            @Override
+            public CompletableFuture<Response> executeAsync(TransportRequest request) {
+                throw new UnsupportedOperationException();
+            }
+        };
+        final SimpleRestClient client = SimpleRestClient.uri("http://localhost:1").transport(unavailable)
+                .retries(3).retryPolicy(RetryPolicy.linear(60000));
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final AtomicBoolean interrupted = new AtomicBoolean();
+        final Thread thread = new Thread(() -> {
+            try {
+                client.get("/items");
+            } catch (Throwable e) {
+                error.set(e);
+            }
+            interrupted.set(Thread.currentThread().isInterrupted());
+        });
+        try {
+            thread.start();
+            final long deadline = System.currentTimeMillis() + 5000;
+            while (attempts.get() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            thread.interrupt();
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+            assertFalse(thread.isAlive());
+            assertTrue(String.valueOf(error.get()), error.get() instanceof RetryableRestException);
+            assertTrue(interrupted.get());
+            assertEquals(1, attempts.get());
+        } finally {
+            client.close();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package io.slingr.api.common;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static io.slingr.api.common.BenchmarkSupport.measure;
+import static io.slingr.api.common.BenchmarkSupport.report;
+
+/**
+ * Throughput of the transports against a local stub server that answers a small Json after a short delay,
+ * with several threads sharing each client
+ */
+public class TransportBenchmark {
+    private static final int THREADS = 16;
+    private static final int REQUESTS = 2000;
+    private static final int DELAY = 2;
+    private static final byte[] BODY = "{\"id\":\"5f1a2b3c4d5e6f\",\"status\":\"ACTIVE\",\"amount\":10.5}".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void transports() throws Exception {
+        // without it the server waits for the ack of the headers before sending the body
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        final HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newFixedThreadPool(THREADS * 2));
+        server.createContext("/", exchange -> {
+            try {
+                Thread.sleep(DELAY);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, BODY.length);
+            exchange.getResponseBody().write(BODY);
+            exchange.close();
+        });
+        server.start();
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            final String uri = "http://localhost:" + server.getAddress().getPort();
+            report("%d requests, %d threads, %d ms per request in the server", REQUESTS, THREADS, DELAY);
+            report("%-8s %10s %10s", "client", "ms", "req/s");
+            run("jersey", SimpleRestClient.uri(uri), executor);
+            run("apache", SimpleRestClient.uri(uri).transport(Transport.apacheHttpClient(new RestClientFactory.RestClientOptions())), executor);
+            run("jdk", SimpleRestClient.uri(uri).transport(Transport.jdkHttpClient(new RestClientFactory.RestClientOptions())), executor);
+        } finally {
+            executor.shutdownNow();
+            server.stop(0);
+        }
+    }
+
+    private static void run(String name, SimpleRestClient client, ExecutorService executor) throws Exception {
+        client.silenceLogger();
+        try {
+            final double time = measure(1, 5, () -> {
+                final List<Future<?>> futures = new ArrayList<>();
+                for (int i = 0; i < THREADS; i++) {
+                    futures.add(executor.submit(() -> {
+                        for (int j = 0; j < REQUESTS / THREADS; j++) {
+                            client.get("/items");
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+                return null;
+            });
+            report("%-8s %10.1f %10.0f", name, time, REQUESTS * 1000 / time);
+        } finally {
+            client.close();
+        }
+    }
+}